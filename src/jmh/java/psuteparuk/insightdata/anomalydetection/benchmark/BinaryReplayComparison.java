@@ -0,0 +1,91 @@
+package psuteparuk.insightdata.anomalydetection.benchmark;
+
+import io.reactivex.schedulers.Schedulers;
+import psuteparuk.insightdata.anomalydetection.event.BinaryEventLog;
+import psuteparuk.insightdata.anomalydetection.event.BinaryEventLogWriter;
+import psuteparuk.insightdata.anomalydetection.event.EventDecoder;
+import psuteparuk.insightdata.anomalydetection.event.EventEntry;
+import psuteparuk.insightdata.anomalydetection.event.EventType;
+import psuteparuk.insightdata.anomalydetection.io.BinaryEventSource;
+import psuteparuk.insightdata.anomalydetection.io.FileStreamEventSource;
+import psuteparuk.insightdata.anomalydetection.network.UserNetwork;
+import psuteparuk.insightdata.anomalydetection.worker.BatchLogProcessor;
+
+import java.io.File;
+import java.io.IOException;
+
+/**
+ * Compare replaying a json log against replaying the same log converted
+ * to a {BinaryEventLog}: reading and decoding the events only, and loading
+ * them as a batch with the Rx BatchLogProcessor.
+ *
+ * Usage: BinaryReplayComparison jsonLogPath [rounds]
+ */
+public class BinaryReplayComparison {
+    public static void main(String[] args) throws IOException {
+        String jsonFilePath = args[0];
+        int rounds = (args.length > 1) ? Integer.parseInt(args[1]) : 3;
+        int parallelism = Runtime.getRuntime().availableProcessors();
+        File binaryFile = File.createTempFile("event_log", ".bin");
+        binaryFile.deleteOnExit();
+
+        long start = System.nanoTime();
+        new BinaryEventLogWriter().convert(jsonFilePath, binaryFile.getPath());
+        System.out.printf(
+            "convert %,8.0f ms, %,d -> %,d bytes%n",
+            (System.nanoTime() - start) / 1e6,
+            new File(jsonFilePath).length(),
+            binaryFile.length()
+        );
+
+        try (BinaryEventLog binaryEventLog = BinaryEventLog.open(binaryFile.getPath())) {
+            for (int round = 1; round <= rounds; round++) {
+                start = System.nanoTime();
+                EventDecoder eventDecoder = new EventDecoder();
+                long jsonEvents = new FileStreamEventSource(jsonFilePath)
+                    .toFlowable()
+                    .map(eventDecoder::decode)
+                    .filter((entry) -> entry.getEventType() != EventType.INVALID)
+                    .count()
+                    .blockingGet();
+                report(round, "decode (json)", System.nanoTime() - start, jsonEvents);
+
+                start = System.nanoTime();
+                long binaryEvents = new BinaryEventSource(binaryEventLog)
+                    .toFlowable()
+                    .map(EventEntry::getEventType)
+                    .count()
+                    .blockingGet();
+                report(round, "decode (binary)", System.nanoTime() - start, binaryEvents);
+
+                start = System.nanoTime();
+                UserNetwork jsonNetwork = new UserNetwork();
+                new BatchLogProcessor(
+                    new FileStreamEventSource(jsonFilePath).toFlowable().subscribeOn(Schedulers.io()),
+                    Schedulers.single(),
+                    jsonNetwork,
+                    parallelism
+                ).run();
+                report(round, "batch (json)", System.nanoTime() - start, jsonEvents);
+
+                start = System.nanoTime();
+                UserNetwork binaryNetwork = new UserNetwork();
+                new BatchLogProcessor(
+                    new BinaryEventSource(binaryEventLog),
+                    Schedulers.single(),
+                    binaryNetwork,
+                    parallelism,
+                    BatchLogProcessor.DEFAULT_PREFETCH
+                ).run();
+                report(round, "batch (binary)", System.nanoTime() - start, binaryEvents);
+            }
+        }
+    }
+
+    private static void report(int round, String name, long nanos, long events) {
+        System.out.printf(
+            "round %d %-16s %,8.0f ms %,12.0f events/s%n",
+            round, name, nanos / 1e6, events * 1e9 / nanos
+        );
+    }
+}
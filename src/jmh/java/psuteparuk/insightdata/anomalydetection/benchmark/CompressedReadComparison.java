@@ -0,0 +1,120 @@
+package psuteparuk.insightdata.anomalydetection.benchmark;
+
+import io.reactivex.Flowable;
+import io.reactivex.schedulers.Schedulers;
+import psuteparuk.insightdata.anomalydetection.event.EventDecoder;
+import psuteparuk.insightdata.anomalydetection.event.EventType;
+import psuteparuk.insightdata.anomalydetection.io.FileStreamEventSource;
+import psuteparuk.insightdata.anomalydetection.network.UserNetwork;
+import psuteparuk.insightdata.anomalydetection.worker.BatchLogProcessor;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+/**
+ * Compare reading a json log against reading the same log gzip-compressed:
+ * reading and decoding the lines only, and loading them as a batch with the
+ * Rx BatchLogProcessor. The compressed log is read both with the pipelined
+ * inflater of {FileStreamEventSource} and, for reference, with a GZIPInputStream
+ * inflated on the reading thread.
+ *
+ * Usage: CompressedReadComparison jsonLogPath [rounds]
+ */
+public class CompressedReadComparison {
+    public static void main(String[] args) throws IOException {
+        String jsonFilePath = args[0];
+        int rounds = (args.length > 1) ? Integer.parseInt(args[1]) : 3;
+        int parallelism = Runtime.getRuntime().availableProcessors();
+        File gzipFile = File.createTempFile("event_log", ".json.gz");
+        gzipFile.deleteOnExit();
+
+        long start = System.nanoTime();
+        try (OutputStream output = new GZIPOutputStream(Files.newOutputStream(gzipFile.toPath()), 1 << 16)) {
+            Files.copy(Paths.get(jsonFilePath), output);
+        }
+        System.out.printf(
+            "compress %,8.0f ms, %,d -> %,d bytes%n",
+            (System.nanoTime() - start) / 1e6,
+            new File(jsonFilePath).length(),
+            gzipFile.length()
+        );
+
+        for (int round = 1; round <= rounds; round++) {
+            start = System.nanoTime();
+            long events = decode(new FileStreamEventSource(jsonFilePath).toFlowable());
+            report(round, "decode (json)", System.nanoTime() - start, events);
+
+            start = System.nanoTime();
+            events = decode(inlineGzipLines(gzipFile.getPath()));
+            report(round, "decode (gzip inline)", System.nanoTime() - start, events);
+
+            start = System.nanoTime();
+            events = decode(new FileStreamEventSource(gzipFile.getPath()).toFlowable());
+            report(round, "decode (gzip)", System.nanoTime() - start, events);
+
+            start = System.nanoTime();
+            load(new FileStreamEventSource(jsonFilePath).toFlowable(), parallelism);
+            report(round, "batch (json)", System.nanoTime() - start, events);
+
+            start = System.nanoTime();
+            load(new FileStreamEventSource(gzipFile.getPath()).toFlowable(), parallelism);
+            report(round, "batch (gzip)", System.nanoTime() - start, events);
+        }
+    }
+
+    private static long decode(Flowable<String> lines) {
+        EventDecoder eventDecoder = new EventDecoder();
+        return lines
+            .map(eventDecoder::decode)
+            .filter((entry) -> entry.getEventType() != EventType.INVALID)
+            .count()
+            .blockingGet();
+    }
+
+    private static void load(Flowable<String> lines, int parallelism) {
+        new BatchLogProcessor(
+            lines.subscribeOn(Schedulers.io()),
+            Schedulers.single(),
+            new UserNetwork(),
+            parallelism
+        ).run();
+    }
+
+    /**
+     * The lines of a gzip file inflated on the thread that reads them.
+     */
+    private static Flowable<String> inlineGzipLines(String gzipFilePath) {
+        return Flowable.generate(
+            () -> {
+                InputStream input = new GZIPInputStream(Files.newInputStream(Paths.get(gzipFilePath)), 1 << 16);
+                return new BufferedReader(new InputStreamReader(input, UTF_8), FileStreamEventSource.DEFAULT_BUFFER_SIZE);
+            },
+            (reader, emitter) -> {
+                String line = reader.readLine();
+                if (line == null) {
+                    emitter.onComplete();
+                } else {
+                    emitter.onNext(line);
+                }
+            },
+            BufferedReader::close
+        );
+    }
+
+    private static void report(int round, String name, long nanos, long events) {
+        System.out.printf(
+            "round %d %-20s %,8.0f ms %,12.0f events/s%n",
+            round, name, nanos / 1e6, events * 1e9 / nanos
+        );
+    }
+}
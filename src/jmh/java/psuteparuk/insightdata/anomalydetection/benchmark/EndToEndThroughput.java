@@ -0,0 +1,136 @@
+package psuteparuk.insightdata.anomalydetection.benchmark;
+
+import psuteparuk.insightdata.anomalydetection.MainApplication;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.PrintStream;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Run the whole application on a workload folder (e.g. one made by {WorkloadGenerator})
+ * and report the throughput of the batch and stream phases and the peak heap.
+ *
+ * The application runs in this JVM. Every line it prints is shown with the time
+ * elapsed since the start, which gives the wall time of each of its phases. The batch
+ * phase ends when MainApplication.main returns, the stream phase when it prints
+ * "Finish stream process.". The heap is sampled every 10 ms.
+ *
+ * Usage: EndToEndThroughput workloadFolder [application options, e.g. --batch-mode MAPPED]
+ */
+public class EndToEndThroughput {
+    private static final String END_OF_STREAM = "Finish stream process.";
+    private static final long HEAP_SAMPLING_MILLIS = 10;
+
+    public static void main(String[] args) throws Exception {
+        Path workloadPath = Paths.get(args[0]);
+        Path batchPath = workloadPath.resolve("batch_log.json");
+        Path streamPath = workloadPath.resolve("stream_log.json");
+        Path flaggedPath = workloadPath.resolve("flagged_purchases.json");
+        long batchEvents = countLines(batchPath) - 1; // without the D and T line
+        long streamEvents = countLines(streamPath);
+
+        List<String> applicationArgs = new ArrayList<>(Arrays.asList(
+            "--batch", batchPath.toString(),
+            "--stream", streamPath.toString(),
+            "--flagged", flaggedPath.toString()
+        ));
+        applicationArgs.addAll(Arrays.asList(args).subList(1, args.length));
+
+        HeapSampler heapSampler = new HeapSampler();
+        heapSampler.start();
+
+        final long start = System.nanoTime();
+        final PrintStream out = System.out;
+        final CountDownLatch streamFinished = new CountDownLatch(1);
+        System.setOut(new PrintStream(out, true) {
+            @Override
+            public void println(String line) {
+                super.println(String.format("[%,8d ms] %s", elapsedMillis(start), line));
+                if (END_OF_STREAM.equals(line)) {
+                    streamFinished.countDown();
+                }
+            }
+
+            @Override
+            public void println(Object line) {
+                this.println(String.valueOf(line));
+            }
+        });
+
+        MainApplication.main(applicationArgs.toArray(new String[0]));
+        long batchMillis = elapsedMillis(start);
+        streamFinished.await();
+        long totalMillis = elapsedMillis(start);
+        long streamMillis = totalMillis - batchMillis;
+        heapSampler.interrupt();
+        heapSampler.join();
+
+        out.printf("batch   %,12d events %,8d ms %,12.0f events/s%n", batchEvents, batchMillis, rate(batchEvents, batchMillis));
+        out.printf("stream  %,12d events %,8d ms %,12.0f events/s%n", streamEvents, streamMillis, rate(streamEvents, streamMillis));
+        out.printf("total   %,12d events %,8d ms %,12.0f events/s%n", batchEvents + streamEvents, totalMillis, rate(batchEvents + streamEvents, totalMillis));
+        out.printf("flagged %,12d purchases%n", countLines(flaggedPath));
+        out.printf("peak heap %,d MB (max %,d MB)%n", heapSampler.peakBytes >> 20, Runtime.getRuntime().maxMemory() >> 20);
+
+        // the application keeps its threads alive once the stream is done
+        System.exit(0);
+    }
+
+    private static long elapsedMillis(long start) {
+        return TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+    }
+
+    private static double rate(long events, long millis) {
+        return events * 1000.0 / Math.max(1, millis);
+    }
+
+    private static long countLines(Path path) throws IOException {
+        long count = 0;
+        byte[] buffer = new byte[1 << 16];
+        try (InputStream input = Files.newInputStream(path)) {
+            int length;
+            while ((length = input.read(buffer)) != -1) {
+                for (int i = 0; i < length; i++) {
+                    if (buffer[i] == '\n') {
+                        count++;
+                    }
+                }
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Keep the highest used heap seen until interrupted.
+     */
+    private static class HeapSampler extends Thread {
+        final private MemoryMXBean memoryBean = ManagementFactory.getMemoryMXBean();
+        private volatile long peakBytes = 0;
+
+        HeapSampler() {
+            super("heap-sampler");
+            this.setDaemon(true);
+        }
+
+        @Override
+        public void run() {
+            try {
+                while (true) {
+                    this.peakBytes = Math.max(this.peakBytes, this.memoryBean.getHeapMemoryUsage().getUsed());
+                    Thread.sleep(HEAP_SAMPLING_MILLIS);
+                }
+            } catch (InterruptedException e) {
+                // done
+            }
+        }
+    }
+}
@@ -0,0 +1,78 @@
+package psuteparuk.insightdata.anomalydetection.benchmark;
+
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import psuteparuk.insightdata.anomalydetection.event.EventDecoder;
+import psuteparuk.insightdata.anomalydetection.event.EventEntry;
+
+import java.io.IOException;
+import java.util.Random;
+
+/**
+ * Compare the throughput of decoding event lines with ObjectMapper.readValue
+ * against the streaming EventDecoder, with a new entry per line and with a reused entry.
+ *
+ * Usage: EventDecodingComparison [numberOfLines] [rounds]
+ */
+public class EventDecodingComparison {
+    public static void main(String[] args) throws IOException {
+        int numberOfLines = (args.length > 0) ? Integer.parseInt(args[0]) : 1000000;
+        int rounds = (args.length > 1) ? Integer.parseInt(args[1]) : 5;
+        String[] lines = generateLines(numberOfLines);
+
+        ObjectMapper objectMapper = new ObjectMapper();
+        objectMapper.configure(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES, false);
+        EventDecoder eventDecoder = new EventDecoder();
+        EventEntry reusedEntry = new EventEntry();
+
+        for (int round = 1; round <= rounds; round++) {
+            long start = System.nanoTime();
+            long check = 0;
+            for (String line : lines) {
+                check += objectMapper.readValue(line, EventEntry.class).getEventType().ordinal();
+            }
+            report(round, "ObjectMapper.readValue", numberOfLines, System.nanoTime() - start, check);
+
+            start = System.nanoTime();
+            check = 0;
+            for (String line : lines) {
+                check += eventDecoder.decode(line).getEventType().ordinal();
+            }
+            report(round, "EventDecoder (new entry)", numberOfLines, System.nanoTime() - start, check);
+
+            start = System.nanoTime();
+            check = 0;
+            for (String line : lines) {
+                check += eventDecoder.decode(line, reusedEntry).getEventType().ordinal();
+            }
+            report(round, "EventDecoder (reused)", numberOfLines, System.nanoTime() - start, check);
+        }
+    }
+
+    static String[] generateLines(int numberOfLines) {
+        Random random = new Random(42);
+        String[] lines = new String[numberOfLines];
+        for (int i = 0; i < numberOfLines; i++) {
+            String timestamp = String.format("2017-06-13 %02d:%02d:%02d", (i / 3600) % 24, (i / 60) % 60, i % 60);
+            if (random.nextInt(10) < 7) {
+                lines[i] = String.format(
+                    "{\"event_type\":\"purchase\", \"timestamp\":\"%s\", \"id\": \"%d\", \"amount\": \"%.2f\"}",
+                    timestamp, random.nextInt(100000), random.nextDouble() * 1000
+                );
+            } else {
+                lines[i] = String.format(
+                    "{\"event_type\":\"%s\", \"timestamp\":\"%s\", \"id1\": \"%d\", \"id2\": \"%d\"}",
+                    random.nextBoolean() ? "befriend" : "unfriend", timestamp, random.nextInt(100000), random.nextInt(100000)
+                );
+            }
+        }
+        return lines;
+    }
+
+    private static void report(int round, String name, int numberOfLines, long nanos, long check) {
+        System.out.printf(
+            "round %d %-26s %,12.0f lines/s (check %d)%n",
+            round, name, numberOfLines * 1e9 / nanos, check
+        );
+    }
+}
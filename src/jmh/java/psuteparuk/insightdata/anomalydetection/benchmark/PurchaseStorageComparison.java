@@ -0,0 +1,184 @@
+package psuteparuk.insightdata.anomalydetection.benchmark;
+
+import com.sun.management.GarbageCollectionNotificationInfo;
+import psuteparuk.insightdata.anomalydetection.network.PurchaseBatch;
+import psuteparuk.insightdata.anomalydetection.network.PurchaseData;
+import psuteparuk.insightdata.anomalydetection.network.PurchaseStorageType;
+import psuteparuk.insightdata.anomalydetection.network.UserNetwork;
+
+import javax.management.NotificationEmitter;
+import javax.management.openmbean.CompositeData;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.Random;
+
+/**
+ * Compare the garbage collections and the throughput of the purchase storages
+ * with many users: the latest purchases of every user are loaded in bulk, then
+ * a stream of purchases is replayed, each one with the stats of its group.
+ *
+ * DEQUE is the former on-heap Deque of PurchaseData per user, which only takes
+ * part in the load since the network no longer stores it.
+ * Each storage is best measured in its own JVM, with the same heap size.
+ *
+ * Usage: PurchaseStorageComparison [numberOfUsers] [trackedNumber] [DEQUE|HEAP|OFF_HEAP]
+ */
+public class PurchaseStorageComparison {
+    private static final int BATCH_SIZE = 1 << 20;
+    private static final int STREAM_PURCHASES = 200000;
+    private static final int AVERAGE_DEGREE = 4;
+
+    // collections seen by the notification listener
+    private static long gcCount;
+    private static long gcPauseMillis;
+    private static long maxGcPauseMillis;
+
+    public static void main(String[] args) {
+        int numberOfUsers = (args.length > 0) ? Integer.parseInt(args[0]) : 1000000;
+        int trackedNumber = (args.length > 1) ? Integer.parseInt(args[1]) : 50;
+        String[] storages = (args.length > 2) ? new String[] { args[2] } : new String[] { "DEQUE", "HEAP", "OFF_HEAP" };
+        listenToCollections();
+
+        String[] ids = new String[numberOfUsers];
+        for (int i = 0; i < numberOfUsers; i++) {
+            ids[i] = String.valueOf(i);
+        }
+        System.out.println("users=" + numberOfUsers + ", T=" + trackedNumber + ", max heap=" + (Runtime.getRuntime().maxMemory() >> 20) + " MB");
+        for (String storage : storages) {
+            resetCollections();
+            long start = System.nanoTime();
+            Object retained = storage.equals("DEQUE")
+                ? loadDeques(ids, trackedNumber)
+                : loadNetwork(ids, trackedNumber, PurchaseStorageType.valueOf(storage));
+            report(storage, "load", (long) numberOfUsers * trackedNumber, System.nanoTime() - start);
+            resetCollections();
+            long usedHeap = usedHeap();
+            awaitNotifications();
+            synchronized (PurchaseStorageComparison.class) {
+                System.out.printf("%-9s heap after GC=%d MB, max full GC pause=%d ms%n", storage, usedHeap >> 20, maxGcPauseMillis);
+            }
+
+            if (retained instanceof UserNetwork) {
+                resetCollections();
+                start = System.nanoTime();
+                int flaggedCount = replayStream((UserNetwork) retained, ids, trackedNumber);
+                report(storage, "stream", STREAM_PURCHASES, System.nanoTime() - start);
+                System.out.printf("%-9s flagged=%d%n", storage, flaggedCount);
+            }
+        }
+    }
+
+    /**
+     * T purchases for every user, then random friendships.
+     */
+    private static UserNetwork loadNetwork(String[] ids, int trackedNumber, PurchaseStorageType storageType) {
+        UserNetwork userNetwork = new UserNetwork();
+        userNetwork.setPurchaseStorageType(storageType);
+        userNetwork.setDepthDegree(2);
+        userNetwork.setTrackedNumber(trackedNumber);
+        Random random = new Random(42);
+        long total = (long) ids.length * trackedNumber;
+        PurchaseBatch batch = new PurchaseBatch();
+        for (long i = 0; i < total; i++) {
+            batch.add(ids[(int) (i % ids.length)], i / ids.length, random.nextInt(100000) / 100.0);
+            if (batch.size() == BATCH_SIZE || i == total - 1) {
+                userNetwork.bulkAddPurchases(batch, 1);
+                batch = new PurchaseBatch();
+            }
+        }
+        for (long e = 0; e < (long) ids.length * AVERAGE_DEGREE / 2; e++) {
+            userNetwork.befriend(ids[random.nextInt(ids.length)], ids[random.nextInt(ids.length)]);
+        }
+        return userNetwork;
+    }
+
+    private static Deque<PurchaseData>[] loadDeques(String[] ids, int trackedNumber) {
+        @SuppressWarnings({"unchecked", "rawtypes"})
+        Deque<PurchaseData>[] deques = new Deque[ids.length];
+        Random random = new Random(42);
+        for (int timestamp = 0; timestamp < trackedNumber; timestamp++) {
+            for (int i = 0; i < ids.length; i++) {
+                if (deques[i] == null) {
+                    deques[i] = new ArrayDeque<>(trackedNumber);
+                }
+                deques[i].addLast(PurchaseData.create(random.nextInt(100000) / 100.0, timestamp, (long) timestamp * ids.length + i));
+            }
+        }
+        return deques;
+    }
+
+    /**
+     * @return the number of flagged purchases, the same for every storage
+     */
+    private static int replayStream(UserNetwork userNetwork, String[] ids, int firstTimestamp) {
+        Random random = new Random(7);
+        int flaggedCount = 0;
+        for (int i = 0; i < STREAM_PURCHASES; i++) {
+            String buyerId = ids[random.nextInt(ids.length)];
+            // one purchase in a hundred is five times larger
+            double amount = random.nextInt(100000) / 100.0 * ((random.nextInt(100) == 0) ? 5 : 1);
+            PurchaseData purchaseData = userNetwork.newPurchase(amount, firstTimestamp + i);
+            if (userNetwork.isPurchaseAnomaly(purchaseData, userNetwork.calculateGroupStats(buyerId))) {
+                flaggedCount++;
+            }
+            userNetwork.addPurchase(buyerId, purchaseData);
+        }
+        return flaggedCount;
+    }
+
+    private static void report(String storage, String phase, long purchases, long nanos) {
+        awaitNotifications();
+        synchronized (PurchaseStorageComparison.class) {
+            System.out.printf(
+                "%-9s %-6s %,.0f purchases/s, GCs=%d, GC pauses=%d ms, max pause=%d ms%n",
+                storage, phase, purchases * 1e9 / nanos, gcCount, gcPauseMillis, maxGcPauseMillis
+            );
+        }
+    }
+
+    /**
+     * The notifications of the last collections are delivered asynchronously.
+     */
+    private static void awaitNotifications() {
+        try {
+            Thread.sleep(200);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static void listenToCollections() {
+        for (GarbageCollectorMXBean collector : ManagementFactory.getGarbageCollectorMXBeans()) {
+            ((NotificationEmitter) collector).addNotificationListener((notification, handback) -> {
+                if (!notification.getType().equals(GarbageCollectionNotificationInfo.GARBAGE_COLLECTION_NOTIFICATION)) {
+                    return;
+                }
+                long duration = GarbageCollectionNotificationInfo
+                    .from((CompositeData) notification.getUserData())
+                    .getGcInfo()
+                    .getDuration();
+                synchronized (PurchaseStorageComparison.class) {
+                    gcCount++;
+                    gcPauseMillis += duration;
+                    maxGcPauseMillis = Math.max(maxGcPauseMillis, duration);
+                }
+            }, null, null);
+        }
+    }
+
+    private static synchronized void resetCollections() {
+        gcCount = 0;
+        gcPauseMillis = 0;
+        maxGcPauseMillis = 0;
+    }
+
+    private static long usedHeap() {
+        Runtime runtime = Runtime.getRuntime();
+        for (int i = 0; i < 5; i++) {
+            System.gc();
+        }
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+}
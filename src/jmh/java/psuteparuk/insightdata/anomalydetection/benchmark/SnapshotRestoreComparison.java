@@ -0,0 +1,65 @@
+package psuteparuk.insightdata.anomalydetection.benchmark;
+
+import io.reactivex.Flowable;
+import io.reactivex.schedulers.Schedulers;
+import psuteparuk.insightdata.anomalydetection.io.FileStreamEventSource;
+import psuteparuk.insightdata.anomalydetection.network.GraphStorageType;
+import psuteparuk.insightdata.anomalydetection.network.UserNetwork;
+import psuteparuk.insightdata.anomalydetection.network.UserNetworkSnapshot;
+import psuteparuk.insightdata.anomalydetection.worker.BatchLogProcessor;
+import psuteparuk.insightdata.anomalydetection.worker.MappedBatchLogLoader;
+
+import java.io.File;
+import java.io.IOException;
+
+/**
+ * Compare the time to get a ready network by replaying a batch log
+ * (with the Rx BatchLogProcessor and with the MappedBatchLogLoader)
+ * against restoring a snapshot of the same network.
+ *
+ * Usage: SnapshotRestoreComparison batchLogPath [rounds]
+ */
+public class SnapshotRestoreComparison {
+    public static void main(String[] args) throws IOException {
+        String batchFilePath = args[0];
+        int rounds = (args.length > 1) ? Integer.parseInt(args[1]) : 3;
+        int parallelism = Runtime.getRuntime().availableProcessors();
+        File snapshotFile = File.createTempFile("network", ".snapshot");
+        snapshotFile.deleteOnExit();
+
+        for (int round = 1; round <= rounds; round++) {
+            long start = System.nanoTime();
+            UserNetwork replayed = new UserNetwork();
+            new BatchLogProcessor(
+                new FileStreamEventSource(batchFilePath).toFlowable().subscribeOn(Schedulers.io()),
+                Schedulers.single(),
+                replayed,
+                parallelism
+            ).run();
+            report(round, "replay (RX)", System.nanoTime() - start, replayed);
+
+            start = System.nanoTime();
+            UserNetwork mapped = new UserNetwork();
+            new MappedBatchLogLoader(batchFilePath, mapped, parallelism).run();
+            report(round, "replay (MAPPED)", System.nanoTime() - start, mapped);
+
+            start = System.nanoTime();
+            UserNetworkSnapshot.write(replayed, snapshotFile.getPath(), batchFilePath);
+            report(round, "snapshot write", System.nanoTime() - start, replayed);
+
+            start = System.nanoTime();
+            UserNetwork restored = UserNetworkSnapshot.restore(
+                snapshotFile.getPath(),
+                batchFilePath,
+                UserNetwork.DEFAULT_DEPTH_GROUP_CACHE_SIZE,
+                GraphStorageType.HASH
+            );
+            report(round, "snapshot restore", System.nanoTime() - start, restored);
+        }
+        System.out.printf("snapshot size %,d bytes%n", snapshotFile.length());
+    }
+
+    private static void report(int round, String name, long nanos, UserNetwork userNetwork) {
+        System.out.printf("round %d %-18s %,8.0f ms (%d users)%n", round, name, nanos / 1e6, userNetwork.size());
+    }
+}
@@ -0,0 +1,65 @@
+package psuteparuk.insightdata.anomalydetection.benchmark;
+
+import psuteparuk.insightdata.anomalydetection.network.GraphStorageType;
+import psuteparuk.insightdata.anomalydetection.network.SocialNetwork;
+
+import java.util.Random;
+
+/**
+ * Compare the heap retained by each GraphStorage backend for the same random graph.
+ * The ID strings are created up front and shared, so only the graph structure is measured.
+ *
+ * Usage: SocialNetworkMemoryComparison [numberOfNodes] [averageDegree]
+ */
+public class SocialNetworkMemoryComparison {
+    public static void main(String[] args) {
+        int numberOfNodes = (args.length > 0) ? Integer.parseInt(args[0]) : 200000;
+        int averageDegree = (args.length > 1) ? Integer.parseInt(args[1]) : 20;
+
+        String[] ids = new String[numberOfNodes];
+        for (int i = 0; i < numberOfNodes; i++) {
+            ids[i] = String.valueOf(i);
+        }
+
+        System.out.println("nodes=" + numberOfNodes + ", average degree=" + averageDegree);
+        for (GraphStorageType storageType : GraphStorageType.values()) {
+            long before = usedHeap();
+            long start = System.nanoTime();
+            SocialNetwork<Void> network = buildNetwork(storageType, ids, averageDegree);
+            long buildMillis = (System.nanoTime() - start) / 1000000;
+            long retained = usedHeap() - before;
+            System.out.printf(
+                "%-9s retained=%,d bytes (%.1f bytes/edge), build=%d ms%n",
+                storageType,
+                retained,
+                retained * 2.0 / ((long) numberOfNodes * averageDegree),
+                buildMillis
+            );
+            // keep the network reachable until it has been measured
+            if (network.size() != numberOfNodes) {
+                throw new IllegalStateException();
+            }
+        }
+    }
+
+    private static SocialNetwork<Void> buildNetwork(GraphStorageType storageType, String[] ids, int averageDegree) {
+        SocialNetwork<Void> network = new SocialNetwork<>(storageType);
+        Random random = new Random(42);
+        long numberOfEdges = (long) ids.length * averageDegree / 2;
+        for (int i = 0; i < ids.length; i++) {
+            network.putNode(ids[i], null);
+        }
+        for (long e = 0; e < numberOfEdges; e++) {
+            network.befriend(ids[random.nextInt(ids.length)], ids[random.nextInt(ids.length)]);
+        }
+        return network;
+    }
+
+    private static long usedHeap() {
+        Runtime runtime = Runtime.getRuntime();
+        for (int i = 0; i < 5; i++) {
+            System.gc();
+        }
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+}
@@ -0,0 +1,190 @@
+package psuteparuk.insightdata.anomalydetection.benchmark;
+
+import psuteparuk.insightdata.anomalydetection.MainApplication;
+import psuteparuk.insightdata.anomalydetection.metrics.Histogram;
+import psuteparuk.insightdata.anomalydetection.metrics.MetricsRegistry;
+import psuteparuk.insightdata.anomalydetection.metrics.PipelineMetrics;
+
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.ConnectException;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+/**
+ * Run the whole application with its stream events received on a local port,
+ * and send it the stream log of a workload folder over several connections.
+ * Report the sustained throughput and the latency from sending an event to
+ * the start of its processing.
+ *
+ * The lines of the stream log are dealt to the connections in turn, each
+ * connection sends its share at an equal part of {@eventsPerSecond} (0 sends
+ * as fast as the application takes them). The n-th event processed is taken to be
+ * the n-th event sent, which holds as long as the connections are not far apart.
+ * Processed events are counted by the pipeline metrics, sampled every 100 us.
+ *
+ * Usage: SocketLoadClient workloadFolder connections eventsPerSecond [application options]
+ */
+public class SocketLoadClient {
+    private static final long SAMPLING_NANOS = TimeUnit.MICROSECONDS.toNanos(100);
+
+    public static void main(String[] args) throws Exception {
+        Path workloadPath = Paths.get(args[0]);
+        int connectionCount = Integer.parseInt(args[1]);
+        double eventsPerSecond = Double.parseDouble(args[2]);
+        List<String> lines = Files.readAllLines(workloadPath.resolve("stream_log.json"), UTF_8);
+        lines.removeIf(String::isEmpty);
+        int port = freePort();
+
+        List<String> applicationArgs = new ArrayList<>(Arrays.asList(
+            "--batch", workloadPath.resolve("batch_log.json").toString(),
+            "--flagged", workloadPath.resolve("flagged_purchases.json").toString(),
+            "--socket-port", String.valueOf(port),
+            "--metrics",
+            "--metrics-interval-ms", "0"
+        ));
+        applicationArgs.addAll(Arrays.asList(args).subList(3, args.length));
+        // returns once the batch log is applied, the stream is then received on another thread
+        MainApplication.main(applicationArgs.toArray(new String[0]));
+
+        long processedBefore = PipelineMetrics.LINES_PARSED.getCount();
+        long[] sendNanos = new long[lines.size()];
+        List<Thread> senders = new ArrayList<>();
+        List<Socket> sockets = new ArrayList<>();
+        for (int connection = 0; connection < connectionCount; connection++) {
+            sockets.add(connect(port));
+        }
+
+        final long start = System.nanoTime();
+        for (int connection = 0; connection < connectionCount; connection++) {
+            senders.add(new Sender(sockets.get(connection), lines, sendNanos, connection, connectionCount, eventsPerSecond, start));
+        }
+        senders.forEach(Thread::start);
+
+        // the n-th processed event is matched with the n-th sent one
+        MetricsRegistry registry = new MetricsRegistry();
+        registry.setEnabled(true);
+        Histogram latencyMicros = registry.histogram("latency.micros");
+        long matched = 0;
+        long lastProcessedNanos = start;
+        while (matched < lines.size()) {
+            long processed = Math.min(PipelineMetrics.LINES_PARSED.getCount() - processedBefore, lines.size());
+            long now = System.nanoTime();
+            for (; matched < processed; matched++) {
+                long sentAt = sendNanos[(int) matched];
+                if (sentAt != 0) {
+                    latencyMicros.record(TimeUnit.NANOSECONDS.toMicros(now - sentAt));
+                }
+                lastProcessedNanos = now;
+            }
+            LockSupport.parkNanos(SAMPLING_NANOS);
+        }
+        for (Thread sender : senders) {
+            sender.join();
+        }
+
+        long millis = TimeUnit.NANOSECONDS.toMillis(lastProcessedNanos - start);
+        System.out.printf("sent       %,12d events over %d connections in %,d ms%n", lines.size(), connectionCount, millis);
+        System.out.printf("throughput %,12.0f events/s (target %s)%n",
+            lines.size() * 1000.0 / Math.max(1, millis),
+            (eventsPerSecond > 0) ? String.format("%,.0f", eventsPerSecond) : "unpaced");
+        System.out.printf("latency    p50 %,d us, p99 %,d us, p99.9 %,d us, max %,d us%n",
+            latencyMicros.getP50(), latencyMicros.getP99(), latencyMicros.getP999(), latencyMicros.getMax());
+        System.out.println(PipelineMetrics.REGISTRY.summary());
+
+        for (Socket socket : sockets) {
+            socket.close();
+        }
+        // the application keeps its threads alive once the stream is done
+        System.exit(0);
+    }
+
+    /**
+     * Send every {@connectionCount}-th line from {@first}, each at its due time.
+     */
+    private static class Sender extends Thread {
+        final private Socket socket;
+        final private List<String> lines;
+        final private long[] sendNanos;
+        final private int first;
+        final private int connectionCount;
+        final private long intervalNanos;
+        final private long start;
+
+        Sender(
+            Socket socket,
+            List<String> lines,
+            long[] sendNanos,
+            int first,
+            int connectionCount,
+            double eventsPerSecond,
+            long start
+        ) {
+            super("load-sender-" + first);
+            this.socket = socket;
+            this.lines = lines;
+            this.sendNanos = sendNanos;
+            this.first = first;
+            this.connectionCount = connectionCount;
+            this.intervalNanos = (eventsPerSecond > 0) ? (long) (1e9 / eventsPerSecond) : 0;
+            this.start = start;
+        }
+
+        @Override
+        public void run() {
+            try {
+                OutputStream output = new BufferedOutputStream(this.socket.getOutputStream(), 64 * 1024);
+                for (int i = this.first; i < this.lines.size(); i += this.connectionCount) {
+                    if (this.intervalNanos > 0) {
+                        long due = this.start + i * this.intervalNanos;
+                        long wait = due - System.nanoTime();
+                        if (wait > 0) {
+                            LockSupport.parkNanos(wait);
+                        }
+                    }
+                    this.sendNanos[i] = System.nanoTime();
+                    output.write(this.lines.get(i).getBytes(UTF_8));
+                    output.write('\n');
+                    if (this.intervalNanos > 0) {
+                        output.flush();
+                    }
+                }
+                output.flush();
+            } catch (IOException e) {
+                throw new RuntimeException(e);
+            }
+        }
+    }
+
+    private static int freePort() throws IOException {
+        try (ServerSocket serverSocket = new ServerSocket(0)) {
+            return serverSocket.getLocalPort();
+        }
+    }
+
+    /**
+     * The application opens its port once the stream processor subscribes.
+     */
+    private static Socket connect(int port) throws Exception {
+        while (true) {
+            try {
+                Socket socket = new Socket("127.0.0.1", port);
+                socket.setTcpNoDelay(true);
+                return socket;
+            } catch (ConnectException e) {
+                Thread.sleep(10);
+            }
+        }
+    }
+}
@@ -0,0 +1,230 @@
+package psuteparuk.insightdata.anomalydetection.benchmark;
+
+import com.beust.jcommander.JCommander;
+import com.beust.jcommander.Parameter;
+import com.beust.jcommander.ParameterException;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.text.SimpleDateFormat;
+import java.util.Arrays;
+import java.util.Calendar;
+import java.util.Random;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+/**
+ * Generate a synthetic batch_log.json and stream_log.json of any size, offline.
+ *
+ * Users are "0" to "{@users} - 1". A befriend picks its first user uniformly and
+ * its second one, with probability {@preferentialRate}, proportionally to its
+ * current degree (a random end of an existing edge), so the friendship graph has
+ * a power-law degree distribution with a few hub users. An unfriend removes a
+ * random edge that was befriended before. A purchase picks its buyer uniformly;
+ * its amount is normally distributed, except for a share {@anomalyRate} of them
+ * that are far above the mean and likely to be flagged.
+ *
+ * The clock starts at 2017-06-13 00:00:00 and moves one second every
+ * {@eventsPerSecond} events, so events share timestamps as in the real logs.
+ * It skips the 12 o'clock hours, which the 12-hour timestamp format of the
+ * application reads as 0 o'clock.
+ *
+ * Usage: WorkloadGenerator --output dir [options], see --help
+ */
+public class WorkloadGenerator {
+    private static final double MEAN_AMOUNT = 50.0;
+    private static final double SD_AMOUNT = 15.0;
+
+    public static class Options {
+        @Parameter(
+            names = { "--output" },
+            description = "Output folder of batch_log.json and stream_log.json (required)",
+            required = true)
+        public String outputPath = null;
+
+        @Parameter(names = { "--users" }, description = "Number of users")
+        public int users = 100000;
+
+        @Parameter(names = { "--batch-events" }, description = "Number of events in the batch log")
+        public long batchEvents = 1000000;
+
+        @Parameter(names = { "--stream-events" }, description = "Number of events in the stream log")
+        public long streamEvents = 100000;
+
+        @Parameter(names = { "--purchase-weight" }, description = "Relative share of purchase events")
+        public int purchaseWeight = 60;
+
+        @Parameter(names = { "--befriend-weight" }, description = "Relative share of befriend events")
+        public int befriendWeight = 30;
+
+        @Parameter(names = { "--unfriend-weight" }, description = "Relative share of unfriend events")
+        public int unfriendWeight = 10;
+
+        @Parameter(names = { "--depth-degree" }, description = "D written at the top of the batch log")
+        public int depthDegree = 2;
+
+        @Parameter(names = { "--tracked-number" }, description = "T written at the top of the batch log")
+        public int trackedNumber = 50;
+
+        @Parameter(names = { "--anomaly-rate" }, description = "Share of purchases far above the mean")
+        public double anomalyRate = 0.001;
+
+        @Parameter(names = { "--preferential-rate" }, description = "Share of befriends whose second user is picked by degree")
+        public double preferentialRate = 0.9;
+
+        @Parameter(names = { "--events-per-second" }, description = "Number of events sharing a timestamp")
+        public int eventsPerSecond = 10;
+
+        @Parameter(names = { "--seed" }, description = "Random seed")
+        public long seed = 42;
+
+        @Parameter(names = { "-h", "--help" }, description = "Print this usage", help = true)
+        public boolean help;
+    }
+
+    final private Options options;
+    final private Random random;
+    final private Calendar clock = Calendar.getInstance();
+    final private SimpleDateFormat dateFormat = new SimpleDateFormat("yyyy-MM-dd HH:mm:ss");
+    final private StringBuilder line = new StringBuilder(128);
+
+    // Both ends of every befriended edge, in order, so a random end is picked by degree
+    private int[] edgeEnds = new int[1024];
+    private int edgeEndCount = 0;
+    private long eventCount = 0;
+    private String timestamp;
+
+    public WorkloadGenerator(Options options) {
+        this.options = options;
+        this.random = new Random(options.seed);
+        this.clock.clear();
+        this.clock.set(2017, Calendar.JUNE, 13, 0, 0, 0);
+        this.timestamp = this.dateFormat.format(this.clock.getTime());
+    }
+
+    public static void main(String[] args) throws IOException {
+        Options options = new Options();
+        JCommander jc = JCommander.newBuilder()
+            .addObject(options)
+            .build();
+        try {
+            jc.parse(args);
+        } catch (ParameterException e) {
+            jc.usage();
+            System.exit(1);
+        }
+        if (options.help) {
+            jc.usage();
+            return;
+        }
+
+        long start = System.nanoTime();
+        Path outputPath = Paths.get(options.outputPath);
+        Files.createDirectories(outputPath);
+        WorkloadGenerator generator = new WorkloadGenerator(options);
+        try (Writer writer = newWriter(outputPath.resolve("batch_log.json"))) {
+            writer.write("{\"D\":\"" + options.depthDegree + "\", \"T\":\"" + options.trackedNumber + "\"}\n");
+            generator.writeEvents(writer, options.batchEvents);
+        }
+        try (Writer writer = newWriter(outputPath.resolve("stream_log.json"))) {
+            generator.writeEvents(writer, options.streamEvents);
+        }
+        System.out.printf(
+            "Generated %,d batch and %,d stream events for %,d users (%,d edges befriended) in %,d ms%n",
+            options.batchEvents,
+            options.streamEvents,
+            options.users,
+            generator.edgeEndCount / 2,
+            (System.nanoTime() - start) / 1000000
+        );
+    }
+
+    private static Writer newWriter(Path path) throws IOException {
+        return new BufferedWriter(Files.newBufferedWriter(path, UTF_8), 1 << 20);
+    }
+
+    /**
+     * Write {@count} events, one per line, picked according to the weights.
+     */
+    private void writeEvents(Writer writer, long count) throws IOException {
+        int totalWeight = this.options.purchaseWeight + this.options.befriendWeight + this.options.unfriendWeight;
+        for (long i = 0; i < count; i++) {
+            this.tick();
+            int pick = this.random.nextInt(totalWeight);
+            this.line.setLength(0);
+            if (pick < this.options.purchaseWeight) {
+                this.appendPurchase();
+            } else if (pick < this.options.purchaseWeight + this.options.befriendWeight || this.edgeEndCount == 0) {
+                this.appendBefriend();
+            } else {
+                this.appendUnfriend();
+            }
+            this.line.append('\n');
+            writer.append(this.line);
+        }
+    }
+
+    private void appendPurchase() {
+        double amount = MEAN_AMOUNT + SD_AMOUNT * this.random.nextGaussian();
+        if (this.random.nextDouble() < this.options.anomalyRate) {
+            amount = MEAN_AMOUNT + SD_AMOUNT * (5 + 5 * this.random.nextDouble());
+        }
+        long cents = Math.max(100, Math.round(amount * 100));
+        this.line.append("{\"event_type\":\"purchase\", \"timestamp\":\"").append(this.timestamp)
+            .append("\", \"id\": \"").append(this.random.nextInt(this.options.users))
+            .append("\", \"amount\": \"").append(cents / 100).append('.');
+        if (cents % 100 < 10) {
+            this.line.append('0');
+        }
+        this.line.append(cents % 100).append("\"}");
+    }
+
+    private void appendBefriend() {
+        int user1 = this.random.nextInt(this.options.users);
+        int user2 = (this.edgeEndCount > 0 && this.random.nextDouble() < this.options.preferentialRate)
+            ? this.edgeEnds[this.random.nextInt(this.edgeEndCount)]
+            : this.random.nextInt(this.options.users);
+        if (user1 == user2) {
+            user2 = (user1 + 1) % this.options.users;
+        }
+        if (this.edgeEndCount + 2 > this.edgeEnds.length) {
+            this.edgeEnds = Arrays.copyOf(this.edgeEnds, this.edgeEnds.length << 1);
+        }
+        this.edgeEnds[this.edgeEndCount++] = user1;
+        this.edgeEnds[this.edgeEndCount++] = user2;
+        this.appendRelationship("befriend", user1, user2);
+    }
+
+    /**
+     * Remove a random edge befriended before, it may have been removed already.
+     */
+    private void appendUnfriend() {
+        int edge = this.random.nextInt(this.edgeEndCount / 2);
+        this.appendRelationship("unfriend", this.edgeEnds[2 * edge], this.edgeEnds[2 * edge + 1]);
+    }
+
+    private void appendRelationship(String eventType, int user1, int user2) {
+        this.line.append("{\"event_type\":\"").append(eventType)
+            .append("\", \"timestamp\":\"").append(this.timestamp)
+            .append("\", \"id1\": \"").append(user1)
+            .append("\", \"id2\": \"").append(user2).append("\"}");
+    }
+
+    /**
+     * Move the clock one second every {@eventsPerSecond} events.
+     */
+    private void tick() {
+        if (this.eventCount > 0 && this.eventCount % this.options.eventsPerSecond == 0) {
+            this.clock.add(Calendar.SECOND, 1);
+            if (this.clock.get(Calendar.HOUR_OF_DAY) == 12) {
+                this.clock.add(Calendar.HOUR_OF_DAY, 1);
+            }
+            this.timestamp = this.dateFormat.format(this.clock.getTime());
+        }
+        this.eventCount++;
+    }
+}
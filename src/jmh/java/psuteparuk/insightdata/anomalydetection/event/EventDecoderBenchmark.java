@@ -0,0 +1,66 @@
+package psuteparuk.insightdata.anomalydetection.event;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+/**
+ * Decoding one log line into a reused {EventEntry},
+ * from a String (the Rx pipeline) and from bytes (the mapped batch loader).
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class EventDecoderBenchmark {
+    public enum LineType {
+        PURCHASE("{\"event_type\":\"purchase\", \"timestamp\":\"2017-06-13 11:33:01\", \"id\": \"1\", \"amount\": \"16.83\"}"),
+        BEFRIEND("{\"event_type\":\"befriend\", \"timestamp\":\"2017-06-13 11:33:01\", \"id1\": \"1\", \"id2\": \"2\"}"),
+        NETWORK_PARAMETERS("{\"D\":\"3\", \"T\":\"50\"}");
+
+        final private String line;
+
+        LineType(String line) {
+            this.line = line;
+        }
+    }
+
+    @Param({"PURCHASE", "BEFRIEND", "NETWORK_PARAMETERS"})
+    public LineType lineType;
+
+    private final EventDecoder eventDecoder = new EventDecoder();
+    private final EventEntry entry = new EventEntry();
+    private String line;
+    private byte[] bytes;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        this.line = this.lineType.line;
+        this.bytes = this.line.getBytes(UTF_8);
+    }
+
+    @Benchmark
+    public EventEntry decodeString() {
+        return this.eventDecoder.decode(this.line, this.entry);
+    }
+
+    @Benchmark
+    public EventEntry decodeBytes() {
+        return this.eventDecoder.decode(this.bytes, 0, this.bytes.length, this.entry);
+    }
+}
@@ -0,0 +1,12 @@
+package psuteparuk.insightdata.anomalydetection.network;
+
+/**
+ * How the {NetworkGenerator} connects the users
+ *  - UNIFORM connects random pairs of users, so degrees are close to the average.
+ *  - POWER_LAW grows the graph by preferential attachment, so a few hub users
+ *      have a very high degree, as in real social networks.
+ */
+public enum DegreeDistribution {
+    UNIFORM,
+    POWER_LAW
+}
@@ -0,0 +1,107 @@
+package psuteparuk.insightdata.anomalydetection.network;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A stream purchase, adding it then calculating the stats of its buyer's group,
+ * with the stats merged on each purchase or read from windows, see {GroupStatsMode}.
+ * Buyers are picked in a fixed random order: {@hotBuyerShare} of the purchases
+ * are made by 1% of the users, the others by any user.
+ *
+ * The groups come from the {ReachabilityIndex} so that the time is not spent searching them.
+ * A whole round of purchases is made before measuring, so the windows are already built.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class GroupWindowsBenchmark {
+    private static final int QUERY_COUNT = 1 << 16;
+
+    @Param({"PULL", "ADAPTIVE"})
+    public GroupStatsMode groupStatsMode;
+
+    @Param({"0", "0.9"})
+    public double hotBuyerShare;
+
+    @Param({"2"})
+    public int depthDegree;
+
+    @Param({"100000"})
+    public int numberOfUsers;
+
+    @Param({"10"})
+    public int averageDegree;
+
+    @Param({"UNIFORM", "POWER_LAW"})
+    public DegreeDistribution degreeDistribution;
+
+    @Param({"10000"})
+    public int depthGroupCacheSize;
+
+    @Param({"50"})
+    public int trackedNumber;
+
+    private UserNetwork userNetwork;
+    private String[] userIds;
+    private int[] queryOrder;
+    private double[] amounts;
+    private int queryIndex;
+    private long timestamp;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        this.userNetwork = NetworkGenerator.generate(
+            this.numberOfUsers,
+            this.averageDegree,
+            this.degreeDistribution,
+            this.depthDegree,
+            this.trackedNumber,
+            this.depthGroupCacheSize,
+            GraphStorageType.HASH,
+            42
+        );
+        this.userNetwork.setDepthGroupMode(DepthGroupMode.INCREMENTAL);
+        this.userNetwork.setGroupStatsMode(this.groupStatsMode);
+        this.userIds = NetworkGenerator.userIds(this.numberOfUsers);
+
+        int[] hotBuyers = NetworkGenerator.queryOrder(this.numberOfUsers, this.numberOfUsers / 100, 5);
+        int[] anyBuyers = NetworkGenerator.queryOrder(this.numberOfUsers, QUERY_COUNT, 7);
+        Random random = new Random(11);
+        this.queryOrder = new int[QUERY_COUNT];
+        this.amounts = new double[QUERY_COUNT];
+        for (int i = 0; i < QUERY_COUNT; i++) {
+            this.queryOrder[i] = (random.nextDouble() < this.hotBuyerShare)
+                ? hotBuyers[random.nextInt(hotBuyers.length)]
+                : anyBuyers[i];
+            this.amounts[i] = random.nextInt(100000) / 100.0;
+        }
+        for (int i = 0; i < QUERY_COUNT; i++) {
+            this.purchase();
+        }
+    }
+
+    @Benchmark
+    public GroupStats purchase() {
+        this.queryIndex = (this.queryIndex + 1) & (QUERY_COUNT - 1);
+        String buyerId = this.userIds[this.queryOrder[this.queryIndex]];
+        this.userNetwork.addPurchase(buyerId, this.userNetwork.newPurchase(this.amounts[this.queryIndex], this.timestamp++));
+        return this.userNetwork.calculateGroupStats(buyerId);
+    }
+}
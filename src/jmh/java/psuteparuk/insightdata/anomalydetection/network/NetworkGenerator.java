@@ -0,0 +1,103 @@
+package psuteparuk.insightdata.anomalydetection.network;
+
+import java.util.Random;
+
+/**
+ * Build random user networks for the benchmarks, see {DegreeDistribution}.
+ * Every user gets {@trackedNumber} purchases.
+ */
+class NetworkGenerator {
+    private NetworkGenerator() {
+    }
+
+    /**
+     * @param numberOfUsers
+     * @param averageDegree
+     * @param degreeDistribution
+     * @param depthDegree
+     * @param trackedNumber
+     * @param depthGroupCacheSize
+     * @param storageType
+     * @param seed
+     * @return a new network, its user IDs are "0" to "{@numberOfUsers} - 1"
+     */
+    static UserNetwork generate(
+        int numberOfUsers,
+        int averageDegree,
+        DegreeDistribution degreeDistribution,
+        int depthDegree,
+        int trackedNumber,
+        int depthGroupCacheSize,
+        GraphStorageType storageType,
+        long seed
+    ) {
+        Random random = new Random(seed);
+        UserNetwork userNetwork = new UserNetwork(depthGroupCacheSize, storageType);
+        userNetwork.setDepthDegree(depthDegree);
+        userNetwork.setTrackedNumber(trackedNumber);
+
+        String[] userIds = userIds(numberOfUsers);
+        long timestamp = 0;
+        for (String userId : userIds) {
+            UserData userData = userNetwork.initializeData(userId);
+            for (int i = 0; i < trackedNumber; i++) {
+                userData.addPurchase(timestamp++, random.nextInt(100000) / 100.0);
+            }
+            userNetwork.putNode(userId, userData);
+        }
+
+        if (degreeDistribution == DegreeDistribution.POWER_LAW) {
+            attachPreferentially(userNetwork, userIds, averageDegree, random);
+        } else {
+            long numberOfEdges = (long) numberOfUsers * averageDegree / 2;
+            for (long e = 0; e < numberOfEdges; e++) {
+                userNetwork.befriend(userIds[random.nextInt(numberOfUsers)], userIds[random.nextInt(numberOfUsers)]);
+            }
+        }
+        return userNetwork;
+    }
+
+    static String[] userIds(int numberOfUsers) {
+        String[] userIds = new String[numberOfUsers];
+        for (int i = 0; i < numberOfUsers; i++) {
+            userIds[i] = String.valueOf(i);
+        }
+        return userIds;
+    }
+
+    /**
+     * Barabasi-Albert: each new user befriends {@averageDegree} / 2 existing users,
+     * picked with a probability proportional to their degree.
+     */
+    private static void attachPreferentially(
+        UserNetwork userNetwork,
+        String[] userIds,
+        int averageDegree,
+        Random random
+    ) {
+        int edgesPerUser = Math.max(1, averageDegree / 2);
+        // every edge adds both of its ends, so picking a random end is picking by degree
+        int[] edgeEnds = new int[2 * edgesPerUser * userIds.length];
+        int edgeEndCount = 0;
+        for (int user = 1; user < userIds.length; user++) {
+            for (int e = 0; e < edgesPerUser; e++) {
+                int friend = (edgeEndCount == 0) ? 0 : edgeEnds[random.nextInt(edgeEndCount)];
+                userNetwork.befriend(userIds[user], userIds[friend]);
+                edgeEnds[edgeEndCount++] = user;
+                edgeEnds[edgeEndCount++] = friend;
+            }
+        }
+    }
+
+    /**
+     * @return {@count} random user indexes, the order in which the users are queried
+     */
+    static int[] queryOrder(int numberOfUsers, int count, long seed) {
+        Random random = new Random(seed);
+        int[] order = new int[count];
+        for (int i = 0; i < count; i++) {
+            order[i] = random.nextInt(numberOfUsers);
+        }
+        return order;
+    }
+}
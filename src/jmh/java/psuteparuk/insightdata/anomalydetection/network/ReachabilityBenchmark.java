@@ -0,0 +1,133 @@
+package psuteparuk.insightdata.anomalydetection.network;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Searching the "depth" groups on each purchase (with the cache) against keeping
+ * them up to date on each friendship change, see {DepthGroupMode}.
+ *
+ * {changeFriendship} measures a friendship change alone. {churn} measures a friendship
+ * change followed by {@purchasesPerChange} purchases, the mode with the lower time wins
+ * for a stream with that ratio of purchases to friendship changes.
+ * A change alternately removes a friendship and adds it back, so the graph keeps its shape.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ReachabilityBenchmark {
+    private static final int CHANGE_COUNT = 1 << 12;
+    private static final int QUERY_COUNT = 1 << 12;
+
+    @Param({"SEARCH", "INCREMENTAL"})
+    public DepthGroupMode depthGroupMode;
+
+    @Param({"1", "10", "100"})
+    public int purchasesPerChange;
+
+    @Param({"1", "2"})
+    public int depthDegree;
+
+    @Param({"100000"})
+    public int numberOfUsers;
+
+    @Param({"10"})
+    public int averageDegree;
+
+    @Param({"UNIFORM", "POWER_LAW"})
+    public DegreeDistribution degreeDistribution;
+
+    @Param({"10000"})
+    public int depthGroupCacheSize;
+
+    @Param({"50"})
+    public int trackedNumber;
+
+    private UserNetwork userNetwork;
+    private String[] userIds;
+    private int[] queryOrder;
+    private int queryIndex;
+
+    // friendships that are removed and added back, in turn
+    final private String[] changedUser1Ids = new String[CHANGE_COUNT];
+    final private String[] changedUser2Ids = new String[CHANGE_COUNT];
+    private int changeIndex;
+    private boolean isRemoved = false;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        this.userNetwork = NetworkGenerator.generate(
+            this.numberOfUsers,
+            this.averageDegree,
+            this.degreeDistribution,
+            this.depthDegree,
+            this.trackedNumber,
+            this.depthGroupCacheSize,
+            GraphStorageType.HASH,
+            42
+        );
+        this.userNetwork.setDepthGroupMode(this.depthGroupMode);
+        this.userIds = NetworkGenerator.userIds(this.numberOfUsers);
+        this.queryOrder = NetworkGenerator.queryOrder(this.numberOfUsers, QUERY_COUNT, 7);
+
+        int[] changeOrder = NetworkGenerator.queryOrder(this.numberOfUsers, 4 * CHANGE_COUNT, 11);
+        int changeCount = 0;
+        for (int i = 0; i < changeOrder.length && changeCount < CHANGE_COUNT; i++) {
+            String userId = this.userIds[changeOrder[i]];
+            if (!this.userNetwork.getFriends(userId).isEmpty()) {
+                this.changedUser1Ids[changeCount] = userId;
+                this.changedUser2Ids[changeCount] = this.userNetwork.getFriends(userId).iterator().next();
+                changeCount++;
+            }
+        }
+        if (changeCount < CHANGE_COUNT) {
+            throw new IllegalStateException("Not enough users with friends");
+        }
+    }
+
+    @Benchmark
+    public void changeFriendship() {
+        this.nextChange();
+    }
+
+    @Benchmark
+    public void churn(Blackhole blackhole) {
+        this.nextChange();
+        for (int i = 0; i < this.purchasesPerChange; i++) {
+            blackhole.consume(this.userNetwork.calculateGroupStats(this.nextUserId()));
+        }
+    }
+
+    private void nextChange() {
+        String user1Id = this.changedUser1Ids[this.changeIndex];
+        String user2Id = this.changedUser2Ids[this.changeIndex];
+        if (this.isRemoved) {
+            this.userNetwork.befriend(user1Id, user2Id);
+            this.changeIndex = (this.changeIndex + 1) & (CHANGE_COUNT - 1);
+        } else {
+            this.userNetwork.unfriend(user1Id, user2Id);
+        }
+        this.isRemoved = !this.isRemoved;
+    }
+
+    private String nextUserId() {
+        this.queryIndex = (this.queryIndex + 1) & (QUERY_COUNT - 1);
+        return this.userIds[this.queryOrder[this.queryIndex]];
+    }
+}
@@ -0,0 +1,63 @@
+package psuteparuk.insightdata.anomalydetection.network;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Adding a purchase to a user whose tracked purchases are full,
+ * from a decoded {PurchaseData} and from its primitive key and amount.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class UserDataBenchmark {
+    private static final int PURCHASE_COUNT = 1 << 10;
+
+    @Param({"2", "50", "1000"})
+    public int trackedNumber;
+
+    private UserData userData;
+    private PurchaseData[] purchases;
+    private int purchaseIndex;
+    private long key;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        this.userData = new UserData("1", this.trackedNumber);
+        this.purchases = new PurchaseData[PURCHASE_COUNT];
+        for (int i = 0; i < PURCHASE_COUNT; i++) {
+            this.purchases[i] = PurchaseData.create(i / 100.0, i, i);
+        }
+        for (int i = 0; i < this.trackedNumber; i++) {
+            this.userData.addPurchase(this.key++, i);
+        }
+    }
+
+    @Benchmark
+    public UserData addPurchaseData() {
+        this.purchaseIndex = (this.purchaseIndex + 1) & (PURCHASE_COUNT - 1);
+        this.userData.addPurchase(this.purchases[this.purchaseIndex]);
+        return this.userData;
+    }
+
+    @Benchmark
+    public UserData addPurchaseKey() {
+        this.userData.addPurchase(this.key++, 16.83);
+        return this.userData;
+    }
+}
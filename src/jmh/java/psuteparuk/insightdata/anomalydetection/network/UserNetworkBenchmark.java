@@ -0,0 +1,92 @@
+package psuteparuk.insightdata.anomalydetection.network;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The purchase hot path of the stream: finding the "depth" group of a buyer
+ * and aggregating the latest purchases of that group.
+ * Buyers are picked in a fixed random order.
+ *
+ * With {@depthGroupCacheSize} 0 every call runs the breadth-first search,
+ * otherwise most groups are served from the cache (the graph does not change).
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class UserNetworkBenchmark {
+    private static final int QUERY_COUNT = 1 << 12;
+
+    @Param({"1", "2", "3"})
+    public int depthDegree;
+
+    @Param({"1000", "100000"})
+    public int numberOfUsers;
+
+    @Param({"10"})
+    public int averageDegree;
+
+    @Param({"UNIFORM", "POWER_LAW"})
+    public DegreeDistribution degreeDistribution;
+
+    @Param({"0", "10000"})
+    public int depthGroupCacheSize;
+
+    @Param({"50"})
+    public int trackedNumber;
+
+    @Param({"HASH"})
+    public GraphStorageType graphStorageType;
+
+    private UserNetwork userNetwork;
+    private String[] userIds;
+    private int[] queryOrder;
+    private int queryIndex;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        this.userNetwork = NetworkGenerator.generate(
+            this.numberOfUsers,
+            this.averageDegree,
+            this.degreeDistribution,
+            this.depthDegree,
+            this.trackedNumber,
+            this.depthGroupCacheSize,
+            this.graphStorageType,
+            42
+        );
+        this.userIds = NetworkGenerator.userIds(this.numberOfUsers);
+        this.queryOrder = NetworkGenerator.queryOrder(this.numberOfUsers, QUERY_COUNT, 7);
+    }
+
+    @Benchmark
+    public GroupStats calculateGroupStats() {
+        return this.userNetwork.calculateGroupStats(this.nextUserId());
+    }
+
+    @Benchmark
+    public Set<String> getDepthGroup() {
+        return this.userNetwork.getDepthGroup(this.nextUserId());
+    }
+
+    private String nextUserId() {
+        this.queryIndex = (this.queryIndex + 1) & (QUERY_COUNT - 1);
+        return this.userIds[this.queryOrder[this.queryIndex]];
+    }
+}
@@ -0,0 +1,103 @@
+package psuteparuk.insightdata.anomalydetection.worker;
+
+import io.reactivex.Flowable;
+import io.reactivex.schedulers.Schedulers;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import psuteparuk.insightdata.anomalydetection.event.EventDecoder;
+import psuteparuk.insightdata.anomalydetection.event.EventEntry;
+import psuteparuk.insightdata.anomalydetection.io.FileEventWriter;
+import psuteparuk.insightdata.anomalydetection.network.GroupStats;
+import psuteparuk.insightdata.anomalydetection.network.UserNetwork;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.text.DecimalFormat;
+import java.util.concurrent.TimeUnit;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+/**
+ * Formatting a flagged purchase: the original message with the mean and sd appended.
+ * The writer encodes it into its buffer, the String is only built for comparison.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class StreamLogProcessorBenchmark {
+    private FileEventWriter fileEventWriter;
+    private StreamLogProcessor streamLogProcessor;
+    private EventEntry entry;
+    private GroupStats groupStats;
+    private final ByteBuffer outputBuffer = ByteBuffer.allocate(4096);
+    private final DecimalFormat decimalFormat = new DecimalFormat("#0.00");
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        File outputFile = File.createTempFile("flagged_purchases", ".json");
+        outputFile.deleteOnExit();
+        // never written to, the processor only needs one to be built
+        this.fileEventWriter = new FileEventWriter(outputFile.getPath());
+        this.streamLogProcessor = new StreamLogProcessor(
+            Flowable.empty(),
+            this.fileEventWriter,
+            Schedulers.trampoline(),
+            new UserNetwork()
+        );
+        this.entry = new EventDecoder().decode(
+            "{\"event_type\":\"purchase\", \"timestamp\":\"2017-06-13 11:33:01\", \"id\": \"1\", \"amount\": \"1601.83\"}"
+        );
+        this.groupStats = GroupStats.create(29.1, 21.46);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        this.fileEventWriter.close();
+    }
+
+    @Benchmark
+    public String buildOutputMessage() {
+        return this.streamLogProcessor.buildOutputMessage(this.entry, this.groupStats);
+    }
+
+    /**
+     * What the writer thread does with a flagged purchase.
+     */
+    @Benchmark
+    public ByteBuffer encodeOutputMessage() {
+        this.outputBuffer.clear();
+        new FlaggedPurchaseMessage(this.entry.getOriginalMessage(), this.groupStats.mean(), this.groupStats.sd())
+            .encodeTo(this.outputBuffer);
+        return this.outputBuffer;
+    }
+
+    /**
+     * How the output message was built before it was encoded by the writer.
+     */
+    @Benchmark
+    public byte[] buildWithDecimalFormat() {
+        StringBuilder outputEvent = new StringBuilder();
+        outputEvent.append(this.entry.getOriginalMessage().trim());
+        outputEvent.deleteCharAt(outputEvent.length() - 1);
+        outputEvent.append(", \"mean\": \"");
+        outputEvent.append(this.decimalFormat.format(this.groupStats.mean()));
+        outputEvent.append("\", \"sd\": \"");
+        outputEvent.append(this.decimalFormat.format(this.groupStats.sd()));
+        outputEvent.append("\"}");
+        return outputEvent.toString().getBytes(UTF_8);
+    }
+}
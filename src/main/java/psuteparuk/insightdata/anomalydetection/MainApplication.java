@@ -1,17 +1,32 @@
 package psuteparuk.insightdata.anomalydetection;
 
-import io.reactivex.Observable;
+import io.reactivex.Flowable;
 import io.reactivex.Scheduler;
 import io.reactivex.schedulers.Schedulers;
 import psuteparuk.insightdata.anomalydetection.common.Arguments;
+import psuteparuk.insightdata.anomalydetection.event.BinaryEventLog;
+import psuteparuk.insightdata.anomalydetection.io.BinaryEventSource;
 import psuteparuk.insightdata.anomalydetection.io.FileEventWriter;
 import psuteparuk.insightdata.anomalydetection.io.FileStreamEventSource;
+import psuteparuk.insightdata.anomalydetection.io.LineAppendTimes;
+import psuteparuk.insightdata.anomalydetection.io.PipelinedGzipInputStream;
+import psuteparuk.insightdata.anomalydetection.io.SocketStreamEventSource;
+import psuteparuk.insightdata.anomalydetection.io.StreamEventSource;
+import psuteparuk.insightdata.anomalydetection.io.TailingFileEventSource;
+import psuteparuk.insightdata.anomalydetection.metrics.PipelineMetrics;
 import psuteparuk.insightdata.anomalydetection.network.UserNetwork;
+import psuteparuk.insightdata.anomalydetection.network.UserNetworkSnapshot;
 import psuteparuk.insightdata.anomalydetection.worker.BatchLogProcessor;
+import psuteparuk.insightdata.anomalydetection.worker.BatchMode;
+import psuteparuk.insightdata.anomalydetection.worker.MappedBatchLogLoader;
 import psuteparuk.insightdata.anomalydetection.worker.StreamLogProcessor;
 
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Paths;
 import java.util.concurrent.Executor;
 import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
 
 /**
  * Insight Data Engineering Coding Challenge (Sep 2017 batch)
@@ -22,44 +37,199 @@ public class MainApplication {
         // Parse CLI arguments
         Arguments arguments = new Arguments(args);
 
-        // Input sources as Observable
-        final Observable<String> batchLogSource = Observable
-            .defer(() -> new FileStreamEventSource(arguments.batchFilePath))
-            .subscribeOn(Schedulers.io()) // Read file on an io thread
-            .replay(1)
-            .refCount();
-        final Observable<String> streamLogSource = Observable
-            .defer(() -> new FileStreamEventSource(arguments.streamFilePath))
-            .subscribeOn(Schedulers.io())
-            .replay(1)
-            .refCount();
+        // Stage counters and latencies, exposed over JMX
+        if (arguments.metrics) {
+            PipelineMetrics.enable(arguments.metricsIntervalMillis);
+        }
 
-        FileEventWriter fileEventWriter = new FileEventWriter(arguments.flaggedFilePath);
+        // Input sources as Flowable, read only as fast as they are processed
+        final Flowable<String> batchLogSource = new FileStreamEventSource(arguments.batchFilePath, arguments.readBufferSize)
+            .toFlowable()
+            .subscribeOn(Schedulers.io()); // Read file on an io thread
+        // The stream events are either received on a socket,
+        // or read from the stream log once or as it grows
+        final LineAppendTimes lineAppendTimes = (arguments.tail || arguments.socketPort != null)
+            ? new LineAppendTimes()
+            : null;
+        final StreamEventSource<String> streamEventSource;
+        if (arguments.socketPort != null) {
+            streamEventSource = new SocketStreamEventSource(
+                arguments.socketHost,
+                arguments.socketPort,
+                arguments.socketBufferLines,
+                arguments.socketIdleTimeoutMillis,
+                arguments.readBufferSize,
+                lineAppendTimes
+            );
+        } else if (arguments.tail) {
+            streamEventSource = new TailingFileEventSource(
+                arguments.streamFilePath,
+                arguments.tailPollMillis,
+                arguments.tailIdleTimeoutMillis,
+                arguments.readBufferSize,
+                lineAppendTimes
+            );
+        } else {
+            streamEventSource = new FileStreamEventSource(arguments.streamFilePath, arguments.readBufferSize);
+        }
+        // Binary logs written by {BinaryEventLogWriter} are replayed from the mapped file,
+        // a stream log only when it is read once
+        final BinaryEventLog batchBinaryLog = openBinaryLog(arguments.batchFilePath);
+        final BinaryEventLog streamBinaryLog = (streamEventSource instanceof FileStreamEventSource)
+            ? openBinaryLog(arguments.streamFilePath)
+            : null;
+        final Flowable<String> streamLogSource = streamEventSource
+            .toFlowable()
+            .subscribeOn(Schedulers.io());
 
-        // Main graph storing user data and relationships
-        UserNetwork userNetwork = new UserNetwork();
+        FileEventWriter fileEventWriter = new FileEventWriter(
+            arguments.flaggedFilePath,
+            arguments.outputQueueSize,
+            arguments.outputFlushBytes,
+            arguments.outputFlushIntervalMillis,
+            arguments.outputFsyncPolicy
+        );
 
         // Run both batch and stream logs on the same thread provided on the Scheduler
         final Executor logProcessorThreadExecutor = Executors.newSingleThreadExecutor();
         Scheduler logProcessorScheduler = Schedulers.from(logProcessorThreadExecutor);
 
-        // Run the batch log processor befoe the stream log processor
-        BatchLogProcessor batchLogProcessor = new BatchLogProcessor(
-            batchLogSource,
-            logProcessorScheduler,
-            userNetwork
-        );
-        batchLogProcessor.run();
+        // Main graph storing user data and relationships,
+        // restored from the snapshot if there is a valid one
+        UserNetwork userNetwork = restoreSnapshot(arguments);
+        if (userNetwork != null) {
+            userNetwork.setPurchaseStorageType(arguments.purchaseStorageType);
+            userNetwork.setPurchaseHeapBudget(arguments.purchaseHeapBudgetMb << 20, arguments.coldStoreFilePath);
+        } else {
+            userNetwork = new UserNetwork(
+                arguments.depthGroupCacheSize,
+                arguments.graphStorageType
+            );
+            userNetwork.setPurchaseStorageType(arguments.purchaseStorageType);
+            userNetwork.setPurchaseHeapBudget(arguments.purchaseHeapBudgetMb << 20, arguments.coldStoreFilePath);
 
-        StreamLogProcessor streamLogProcessor = new StreamLogProcessor(
-            streamLogSource,
-            fileEventWriter,
-            logProcessorScheduler,
-            userNetwork
-        );
+            // Run the batch log processor before the stream log processor,
+            // it returns once the whole batch log has been applied.
+            // A binary or gzip batch log always goes through the Rx pipeline.
+            if (batchBinaryLog != null) {
+                BatchLogProcessor batchLogProcessor = new BatchLogProcessor(
+                    new BinaryEventSource(batchBinaryLog),
+                    logProcessorScheduler,
+                    userNetwork,
+                    arguments.batchParallelism,
+                    arguments.readPrefetch
+                );
+                batchLogProcessor.run();
+            } else if (arguments.batchMode == BatchMode.MAPPED && !PipelinedGzipInputStream.isGzip(arguments.batchFilePath)) {
+                MappedBatchLogLoader mappedBatchLogLoader = new MappedBatchLogLoader(
+                    arguments.batchFilePath,
+                    userNetwork,
+                    arguments.batchParallelism,
+                    arguments.batchChunkSize
+                );
+                mappedBatchLogLoader.run();
+            } else {
+                BatchLogProcessor batchLogProcessor = new BatchLogProcessor(
+                    batchLogSource,
+                    logProcessorScheduler,
+                    userNetwork,
+                    arguments.batchParallelism,
+                    arguments.readPrefetch
+                );
+                batchLogProcessor.run();
+            }
+            writeSnapshot(arguments, userNetwork);
+        }
+
+        // Built once the batch is applied, then kept up to date by the stream
+        userNetwork.setDepthGroupMode(arguments.depthGroupMode);
+        userNetwork.setGroupStatsMode(arguments.groupStatsMode);
+
+        StreamLogProcessor streamLogProcessor = (streamBinaryLog != null)
+            ? new StreamLogProcessor(
+                new BinaryEventSource(streamBinaryLog),
+                fileEventWriter,
+                logProcessorScheduler,
+                userNetwork,
+                arguments.streamMode,
+                arguments.streamParallelism,
+                arguments.streamEpochSize,
+                arguments.readPrefetch
+            )
+            : new StreamLogProcessor(
+                streamLogSource,
+                fileEventWriter,
+                logProcessorScheduler,
+                userNetwork,
+                arguments.streamMode,
+                arguments.streamParallelism,
+                arguments.streamEpochSize,
+                arguments.readPrefetch
+            );
+        streamLogProcessor.setLineAppendTimes(lineAppendTimes);
         streamLogProcessor.run();
 
         // Shutdown computation thread and not accept any more actions
         logProcessorScheduler.shutdown();
     }
+
+    /**
+     * @param logFilePath
+     * @return the opened log if {@logFilePath} is a binary event log, null otherwise
+     */
+    private static BinaryEventLog openBinaryLog(String logFilePath) {
+        if (logFilePath == null || !BinaryEventLog.isBinary(logFilePath)) {
+            return null;
+        }
+        try {
+            return BinaryEventLog.open(logFilePath);
+        } catch (IOException e) {
+            System.out.println("Cannot read the binary event log " + logFilePath + ": " + e.getMessage());
+            System.exit(1);
+            return null;
+        }
+    }
+
+    /**
+     * @param arguments
+     * @return the network saved in the snapshot file,
+     * or null if there is no snapshot file or it is not valid
+     */
+    private static UserNetwork restoreSnapshot(Arguments arguments) {
+        if (arguments.snapshotFilePath == null || !Files.exists(Paths.get(arguments.snapshotFilePath))) {
+            return null;
+        }
+        try {
+            long start = System.nanoTime();
+            UserNetwork userNetwork = UserNetworkSnapshot.restore(
+                arguments.snapshotFilePath,
+                arguments.batchFilePath,
+                arguments.depthGroupCacheSize,
+                arguments.graphStorageType
+            );
+            System.out.println("Restored snapshot in " + TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) + " ms.");
+            return userNetwork;
+        } catch (IOException e) {
+            System.out.println("Cannot restore the snapshot (" + e.getMessage() + "), replaying the batch log.");
+            return null;
+        }
+    }
+
+    /**
+     * Save the network built from the batch log, if a snapshot file is specified.
+     * @param arguments
+     * @param userNetwork
+     */
+    private static void writeSnapshot(Arguments arguments, UserNetwork userNetwork) {
+        if (arguments.snapshotFilePath == null) {
+            return;
+        }
+        try {
+            long start = System.nanoTime();
+            UserNetworkSnapshot.write(userNetwork, arguments.snapshotFilePath, arguments.batchFilePath);
+            System.out.println("Wrote snapshot in " + TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) + " ms.");
+        } catch (IOException e) {
+            System.out.println("Cannot write the snapshot (" + e.getMessage() + ").");
+        }
+    }
 }
@@ -3,12 +3,27 @@ package psuteparuk.insightdata.anomalydetection.common;
 import com.beust.jcommander.JCommander;
 import com.beust.jcommander.Parameter;
 import com.beust.jcommander.ParameterException;
+import psuteparuk.insightdata.anomalydetection.io.FileEventWriter;
+import psuteparuk.insightdata.anomalydetection.io.FileStreamEventSource;
+import psuteparuk.insightdata.anomalydetection.io.FsyncPolicy;
+import psuteparuk.insightdata.anomalydetection.io.SocketStreamEventSource;
+import psuteparuk.insightdata.anomalydetection.io.TailingFileEventSource;
+import psuteparuk.insightdata.anomalydetection.network.DepthGroupMode;
+import psuteparuk.insightdata.anomalydetection.network.GraphStorageType;
+import psuteparuk.insightdata.anomalydetection.network.GroupStatsMode;
+import psuteparuk.insightdata.anomalydetection.network.PurchaseStorageType;
+import psuteparuk.insightdata.anomalydetection.network.UserNetwork;
+import psuteparuk.insightdata.anomalydetection.worker.BatchMode;
+import psuteparuk.insightdata.anomalydetection.worker.MappedBatchLogLoader;
+import psuteparuk.insightdata.anomalydetection.worker.StreamLogProcessor;
+import psuteparuk.insightdata.anomalydetection.worker.StreamMode;
 
 /**
  * Handle CLI arguments using JCommander
  * There are three required arguments
- *  --batch, --stream, and --flagged
+ *  --batch, --stream (or --socket-port), and --flagged
  * that specify the input and output files.
+ * The optional arguments tune the engine.
  */
 public class Arguments {
     @Parameter(
@@ -19,8 +34,7 @@ public class Arguments {
 
     @Parameter(
         names = { "--stream" },
-        description = "Stream Log file path (required)",
-        required = true)
+        description = "Stream Log file path (required unless --socket-port is set)")
     public String streamFilePath = null;
 
     @Parameter(
@@ -29,6 +43,151 @@ public class Arguments {
         required = true)
     public String flaggedFilePath = null;
 
+    @Parameter(
+        names = { "--snapshot" },
+        description = "Network snapshot file path: restored instead of replaying the batch log if valid, written after the replay otherwise")
+    public String snapshotFilePath = null;
+
+    @Parameter(
+        names = { "--depth-cache-size" },
+        description = "Maximum number of cached depth groups, 0 disables the cache")
+    public int depthGroupCacheSize = UserNetwork.DEFAULT_DEPTH_GROUP_CACHE_SIZE;
+
+    @Parameter(
+        names = { "--depth-group-mode" },
+        description = "Depth group lookup: SEARCH (breadth-first search with cache) or INCREMENTAL (maintained on each befriend/unfriend)")
+    public DepthGroupMode depthGroupMode = DepthGroupMode.SEARCH;
+
+    @Parameter(
+        names = { "--group-stats-mode" },
+        description = "Group stats: PULL (merge on each purchase) or ADAPTIVE (latest purchases pushed to the groups where it pays off)")
+    public GroupStatsMode groupStatsMode = GroupStatsMode.PULL;
+
+    @Parameter(
+        names = { "--graph-storage" },
+        description = "Social graph backend: HASH or INTERNED (primitive int adjacency)")
+    public GraphStorageType graphStorageType = GraphStorageType.HASH;
+
+    @Parameter(
+        names = { "--purchase-storage" },
+        description = "Tracked purchases: HEAP (primitive arrays per user) or OFF_HEAP (direct buffer slabs)")
+    public PurchaseStorageType purchaseStorageType = PurchaseStorageType.HEAP;
+
+    @Parameter(
+        names = { "--purchase-heap-budget-mb" },
+        description = "Heap kept for the tracked purchases, the least recently read users are moved to a mapped file beyond it, 0 keeps them all on the heap")
+    public long purchaseHeapBudgetMb = 0;
+
+    @Parameter(
+        names = { "--cold-store-file" },
+        description = "File holding the purchases moved out of the heap (a temporary file by default)")
+    public String coldStoreFilePath = null;
+
+    @Parameter(
+        names = { "--batch-mode" },
+        description = "Batch log loading: RX or MAPPED (memory-mapped, decoded in parallel)")
+    public BatchMode batchMode = BatchMode.RX;
+
+    @Parameter(
+        names = { "--batch-parallelism" },
+        description = "Number of threads loading the batch log into the network (and decoding it in MAPPED mode)")
+    public int batchParallelism = Runtime.getRuntime().availableProcessors();
+
+    @Parameter(
+        names = { "--batch-chunk-size" },
+        description = "Approximate size in bytes of the batch log chunks in MAPPED mode")
+    public int batchChunkSize = MappedBatchLogLoader.DEFAULT_CHUNK_SIZE;
+
+    @Parameter(
+        names = { "--stream-mode" },
+        description = "Stream purchase evaluation: SERIAL or EPOCH (purchases between relationship changes evaluated in parallel)")
+    public StreamMode streamMode = StreamMode.SERIAL;
+
+    @Parameter(
+        names = { "--stream-parallelism" },
+        description = "Number of threads evaluating the stream purchases in EPOCH mode")
+    public int streamParallelism = Runtime.getRuntime().availableProcessors();
+
+    @Parameter(
+        names = { "--stream-epoch-size" },
+        description = "Maximum number of purchases evaluated together in EPOCH mode")
+    public int streamEpochSize = StreamLogProcessor.DEFAULT_EPOCH_SIZE;
+
+    @Parameter(
+        names = { "--read-prefetch" },
+        description = "Maximum number of log lines read ahead of the processing")
+    public int readPrefetch = StreamLogProcessor.DEFAULT_PREFETCH;
+
+    @Parameter(
+        names = { "--read-buffer-size" },
+        description = "Size of the reads from a log file or a stream connection")
+    public int readBufferSize = FileStreamEventSource.DEFAULT_BUFFER_SIZE;
+
+    @Parameter(
+        names = { "--tail" },
+        description = "Keep following the stream log as it grows, through rotation and truncation")
+    public boolean tail = false;
+
+    @Parameter(
+        names = { "--tail-poll-ms" },
+        description = "Maximum time between two checks of the followed stream log")
+    public long tailPollMillis = TailingFileEventSource.DEFAULT_POLL_MILLIS;
+
+    @Parameter(
+        names = { "--tail-idle-timeout-ms" },
+        description = "Stop following the stream log after this time without a new line, 0 to never stop")
+    public long tailIdleTimeoutMillis = 0;
+
+    @Parameter(
+        names = { "--socket-port" },
+        description = "Receive the stream events on this port instead of reading the stream log")
+    public Integer socketPort = null;
+
+    @Parameter(
+        names = { "--socket-host" },
+        description = "Address the stream events are received on")
+    public String socketHost = SocketStreamEventSource.DEFAULT_HOST;
+
+    @Parameter(
+        names = { "--socket-buffer-lines" },
+        description = "Maximum number of received events of a connection waiting to be processed")
+    public int socketBufferLines = SocketStreamEventSource.DEFAULT_MAX_BUFFERED_LINES;
+
+    @Parameter(
+        names = { "--socket-idle-timeout-ms" },
+        description = "Stop receiving stream events after this time without a connection, 0 to never stop")
+    public long socketIdleTimeoutMillis = 0;
+
+    @Parameter(
+        names = { "--output-queue-size" },
+        description = "Maximum number of flagged purchases waiting to be written")
+    public int outputQueueSize = FileEventWriter.DEFAULT_QUEUE_CAPACITY;
+
+    @Parameter(
+        names = { "--output-flush-bytes" },
+        description = "Write the pending flagged purchases once they reach this size")
+    public int outputFlushBytes = FileEventWriter.DEFAULT_FLUSH_BYTES;
+
+    @Parameter(
+        names = { "--output-flush-interval-ms" },
+        description = "Maximum time a flagged purchase waits to be written")
+    public long outputFlushIntervalMillis = FileEventWriter.DEFAULT_FLUSH_INTERVAL_MILLIS;
+
+    @Parameter(
+        names = { "--output-fsync" },
+        description = "When to force the output to disk: NEVER, EVERY_FLUSH or ON_CLOSE")
+    public FsyncPolicy outputFsyncPolicy = FsyncPolicy.NEVER;
+
+    @Parameter(
+        names = { "--metrics" },
+        description = "Record the counters and latencies of the pipeline stages and expose them over JMX")
+    public boolean metrics = false;
+
+    @Parameter(
+        names = { "--metrics-interval-ms" },
+        description = "Interval of the metrics summary line, 0 to only print it at the end")
+    public long metricsIntervalMillis = 10000;
+
     @Parameter(
         names = { "-h", "--help" },
         description = "Print this usage",
@@ -51,6 +210,12 @@ public class Arguments {
                 jc.usage();
                 System.exit(0);
             }
+            if (this.streamFilePath == null && this.socketPort == null) {
+                throw new ParameterException("Either --stream or --socket-port is required");
+            }
+            if (this.purchaseStorageType == PurchaseStorageType.OFF_HEAP && this.purchaseHeapBudgetMb > 0) {
+                throw new ParameterException("--purchase-heap-budget-mb only applies to HEAP purchases");
+            }
         } catch (ParameterException e) {
             jc.usage();
             System.exit(0);
@@ -7,17 +7,21 @@ import java.util.Set;
  * Node representation of an un-directional graph.
  * Store its id, data, and neighboring nodes.
  * Neighboring nodes are stored as a Set of ids.
+ * The version is bumped every time the set of neighbors changes so that
+ * anything derived from the node's adjacency can tell whether it is stale.
  * @param <T>
  */
 public class GraphNode<T> {
     final private String id; // Uniquely identified a node
     private T data;
     private Set<String> neighborIds;
+    private long version;
 
     public GraphNode(String id, T data) {
         this.id = id;
         this.data = data;
         this.neighborIds = new HashSet<>();
+        this.version = 0;
     }
 
     public String getId() {
@@ -36,11 +40,31 @@ public class GraphNode<T> {
         return this.neighborIds;
     }
 
-    public void addNeighbor(String neighborId) {
-        this.neighborIds.add(neighborId);
+    public long getVersion() {
+        return this.version;
     }
 
-    public void removeNeighbor(String neighborId) {
-        this.neighborIds.remove(neighborId);
+    /**
+     * @param neighborId
+     * @return whether the neighbor set has changed
+     */
+    public boolean addNeighbor(String neighborId) {
+        if (this.neighborIds.add(neighborId)) {
+            this.version++;
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * @param neighborId
+     * @return whether the neighbor set has changed
+     */
+    public boolean removeNeighbor(String neighborId) {
+        if (this.neighborIds.remove(neighborId)) {
+            this.version++;
+            return true;
+        }
+        return false;
     }
 }
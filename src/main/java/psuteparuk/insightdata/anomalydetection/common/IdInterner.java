@@ -0,0 +1,77 @@
+package psuteparuk.insightdata.anomalydetection.common;
+
+import java.util.Arrays;
+
+/**
+ * Map string IDs to dense ints (0, 1, 2, ...) in the order they are first seen.
+ * The lookup table uses open addressing over an int array so interning
+ * does not box anything, and the reverse mapping is a plain array.
+ */
+public class IdInterner {
+    private static final int EMPTY = -1;
+
+    private String[] names;
+    private int[] table; // slots hold ids, probed by the name's hash
+    private int size;
+
+    public IdInterner() {
+        this.names = new String[16];
+        this.table = new int[32];
+        Arrays.fill(this.table, EMPTY);
+    }
+
+    public int size() {
+        return this.size;
+    }
+
+    /**
+     * @param name
+     * @return the id of {@name}, or -1 if it has never been interned
+     */
+    public int find(String name) {
+        return this.table[this.indexOf(name)];
+    }
+
+    /**
+     * @param name
+     * @return the id of {@name}, assigning the next one if it is new
+     */
+    public int intern(String name) {
+        int index = this.indexOf(name);
+        if (this.table[index] != EMPTY) {
+            return this.table[index];
+        }
+        int id = this.size++;
+        if (id == this.names.length) {
+            this.names = Arrays.copyOf(this.names, id << 1);
+        }
+        this.names[id] = name;
+        this.table[index] = id;
+        if (this.size * 2 > this.table.length) {
+            this.rehash(this.table.length << 1);
+        }
+        return id;
+    }
+
+    public String name(int id) {
+        return this.names[id];
+    }
+
+    private int indexOf(String name) {
+        int mask = this.table.length - 1;
+        int h = name.hashCode() * 0x9E3779B9;
+        int index = (h ^ (h >>> 16)) & mask;
+        while (this.table[index] != EMPTY && !this.names[this.table[index]].equals(name)) {
+            index = (index + 1) & mask;
+        }
+        return index;
+    }
+
+    private void rehash(int capacity) {
+        this.table = new int[capacity];
+        Arrays.fill(this.table, EMPTY);
+        for (int id = 0; id < this.size; id++) {
+            this.table[this.indexOf(this.names[id])] = id;
+        }
+    }
+}
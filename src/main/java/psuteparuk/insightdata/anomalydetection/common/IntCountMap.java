@@ -0,0 +1,146 @@
+package psuteparuk.insightdata.anomalydetection.common;
+
+import java.util.Arrays;
+
+/**
+ * A map from non-negative ints to positive counts using open addressing with
+ * linear probing. A key is in the map while its count is above 0.
+ * Keys and counts are stored unboxed in two parallel int arrays, and removal
+ * shifts keys back like {IntHashSet}.
+ *
+ * Iterate with {@link #nextSlot(int)} and {@link #keyAt(int)}:
+ *  for (int slot = map.nextSlot(0); slot >= 0; slot = map.nextSlot(slot + 1)) { map.keyAt(slot) }
+ */
+public class IntCountMap {
+    private static final int EMPTY = -1;
+    private static final int MIN_CAPACITY = 4;
+
+    private int[] keys;
+    private int[] counts;
+    private int size;
+
+    public IntCountMap() {
+        this.keys = new int[MIN_CAPACITY];
+        this.counts = new int[MIN_CAPACITY];
+        Arrays.fill(this.keys, EMPTY);
+    }
+
+    public int size() {
+        return this.size;
+    }
+
+    public boolean isEmpty() {
+        return this.size == 0;
+    }
+
+    public boolean contains(int key) {
+        return this.keys[this.indexOf(key)] == key;
+    }
+
+    /**
+     * @param key
+     * @return the count of {@key}, 0 if it is not in the map
+     */
+    public int count(int key) {
+        int index = this.indexOf(key);
+        return (this.keys[index] == key) ? this.counts[index] : 0;
+    }
+
+    /**
+     * Add one to the count of {@key}, adding the key with a count of 1 if it is new.
+     * @param key
+     * @return the new count
+     */
+    public int increment(int key) {
+        int index = this.indexOf(key);
+        if (this.keys[index] == key) {
+            return ++this.counts[index];
+        }
+        this.keys[index] = key;
+        this.counts[index] = 1;
+        // keep the load factor below 3/4
+        if (++this.size * 4 > this.keys.length * 3) {
+            this.rehash(this.keys.length << 1);
+        }
+        return 1;
+    }
+
+    /**
+     * Take one from the count of {@key}, removing the key once it reaches 0.
+     * @param key
+     * @return the new count, or -1 if {@key} is not in the map
+     */
+    public int decrement(int key) {
+        int index = this.indexOf(key);
+        if (this.keys[index] != key) {
+            return -1;
+        }
+        if (--this.counts[index] > 0) {
+            return this.counts[index];
+        }
+        // shift back every following key that would no longer be reachable
+        int mask = this.keys.length - 1;
+        int next = (index + 1) & mask;
+        while (this.keys[next] != EMPTY) {
+            int home = mix(this.keys[next]) & mask;
+            if (((next - home) & mask) >= ((next - index) & mask)) {
+                this.keys[index] = this.keys[next];
+                this.counts[index] = this.counts[next];
+                index = next;
+            }
+            next = (next + 1) & mask;
+        }
+        this.keys[index] = EMPTY;
+        this.size--;
+        return 0;
+    }
+
+    /**
+     * @param fromSlot
+     * @return the first occupied slot at or after {@fromSlot}, or -1 if there is none
+     */
+    public int nextSlot(int fromSlot) {
+        for (int slot = fromSlot; slot < this.keys.length; slot++) {
+            if (this.keys[slot] != EMPTY) {
+                return slot;
+            }
+        }
+        return -1;
+    }
+
+    public int keyAt(int slot) {
+        return this.keys[slot];
+    }
+
+    private int indexOf(int key) {
+        int mask = this.keys.length - 1;
+        int index = mix(key) & mask;
+        while (this.keys[index] != EMPTY && this.keys[index] != key) {
+            index = (index + 1) & mask;
+        }
+        return index;
+    }
+
+    private void rehash(int capacity) {
+        int[] oldKeys = this.keys;
+        int[] oldCounts = this.counts;
+        this.keys = new int[capacity];
+        this.counts = new int[capacity];
+        Arrays.fill(this.keys, EMPTY);
+        for (int i = 0; i < oldKeys.length; i++) {
+            if (oldKeys[i] != EMPTY) {
+                int index = this.indexOf(oldKeys[i]);
+                this.keys[index] = oldKeys[i];
+                this.counts[index] = oldCounts[i];
+            }
+        }
+    }
+
+    /**
+     * Ids are dense so spread them over the table before masking.
+     */
+    private static int mix(int key) {
+        int h = key * 0x9E3779B9;
+        return h ^ (h >>> 16);
+    }
+}
@@ -0,0 +1,131 @@
+package psuteparuk.insightdata.anomalydetection.common;
+
+import java.util.Arrays;
+
+/**
+ * A set of non-negative ints using open addressing with linear probing.
+ * Keys are stored unboxed in a single int array. Removal shifts the following
+ * keys of the probe sequence back so no tombstones are needed.
+ *
+ * Iterate with {@link #nextSlot(int)} and {@link #keyAt(int)}:
+ *  for (int slot = set.nextSlot(0); slot >= 0; slot = set.nextSlot(slot + 1)) { set.keyAt(slot) }
+ */
+public class IntHashSet {
+    private static final int EMPTY = -1;
+    private static final int MIN_CAPACITY = 4;
+
+    private int[] keys;
+    private int size;
+
+    public IntHashSet() {
+        this(MIN_CAPACITY);
+    }
+
+    public IntHashSet(int expectedSize) {
+        int capacity = MIN_CAPACITY;
+        while (capacity * 3 < expectedSize * 4) {
+            capacity <<= 1;
+        }
+        this.keys = new int[capacity];
+        Arrays.fill(this.keys, EMPTY);
+    }
+
+    public int size() {
+        return this.size;
+    }
+
+    public boolean isEmpty() {
+        return this.size == 0;
+    }
+
+    public boolean contains(int key) {
+        return this.keys[this.indexOf(key)] == key;
+    }
+
+    /**
+     * @param key
+     * @return whether the set has changed
+     */
+    public boolean add(int key) {
+        int index = this.indexOf(key);
+        if (this.keys[index] == key) {
+            return false;
+        }
+        this.keys[index] = key;
+        // keep the load factor below 3/4
+        if (++this.size * 4 > this.keys.length * 3) {
+            this.rehash(this.keys.length << 1);
+        }
+        return true;
+    }
+
+    /**
+     * @param key
+     * @return whether the set has changed
+     */
+    public boolean remove(int key) {
+        int mask = this.keys.length - 1;
+        int index = this.indexOf(key);
+        if (this.keys[index] != key) {
+            return false;
+        }
+        // shift back every following key that would no longer be reachable
+        int next = (index + 1) & mask;
+        while (this.keys[next] != EMPTY) {
+            int home = mix(this.keys[next]) & mask;
+            if (((next - home) & mask) >= ((next - index) & mask)) {
+                this.keys[index] = this.keys[next];
+                index = next;
+            }
+            next = (next + 1) & mask;
+        }
+        this.keys[index] = EMPTY;
+        this.size--;
+        return true;
+    }
+
+    /**
+     * @param fromSlot
+     * @return the first occupied slot at or after {@fromSlot}, or -1 if there is none
+     */
+    public int nextSlot(int fromSlot) {
+        for (int slot = fromSlot; slot < this.keys.length; slot++) {
+            if (this.keys[slot] != EMPTY) {
+                return slot;
+            }
+        }
+        return -1;
+    }
+
+    public int keyAt(int slot) {
+        return this.keys[slot];
+    }
+
+    private int indexOf(int key) {
+        int mask = this.keys.length - 1;
+        int index = mix(key) & mask;
+        while (this.keys[index] != EMPTY && this.keys[index] != key) {
+            index = (index + 1) & mask;
+        }
+        return index;
+    }
+
+    private void rehash(int capacity) {
+        int[] oldKeys = this.keys;
+        this.keys = new int[capacity];
+        Arrays.fill(this.keys, EMPTY);
+        for (int key : oldKeys) {
+            if (key != EMPTY) {
+                this.keys[this.indexOf(key)] = key;
+            }
+        }
+    }
+
+    /**
+     * Ids are dense so spread them over the table before masking.
+     */
+    private static int mix(int key) {
+        int h = key * 0x9E3779B9;
+        return h ^ (h >>> 16);
+    }
+}
@@ -0,0 +1,83 @@
+package psuteparuk.insightdata.anomalydetection.common;
+
+/**
+ * Sort primitive long keys together with an int payload, e.g. timestamps
+ * and the indexes of the events they belong to, without boxing either.
+ */
+public class PrimitiveSort {
+    private static final int INSERTION_SORT_THRESHOLD = 16;
+
+    private PrimitiveSort() {
+    }
+
+    /**
+     * Sort {@keys}[from, to) in ascending order and move {@values} along with them.
+     * The sort is stable: values with equal keys keep their relative order.
+     * @param keys
+     * @param values
+     * @param from inclusive
+     * @param to exclusive
+     */
+    public static void stableSort(long[] keys, int[] values, int from, int to) {
+        int length = to - from;
+        if (length <= INSERTION_SORT_THRESHOLD) {
+            insertionSort(keys, values, from, to);
+            return;
+        }
+        long[] keyBuffer = new long[length];
+        int[] valueBuffer = new int[length];
+        mergeSort(keys, values, from, to, keyBuffer, valueBuffer);
+    }
+
+    /**
+     * Top-down merge sort, the buffers are indexed from {@from} of the first call.
+     */
+    private static void mergeSort(long[] keys, int[] values, int from, int to, long[] keyBuffer, int[] valueBuffer) {
+        if (to - from <= INSERTION_SORT_THRESHOLD) {
+            insertionSort(keys, values, from, to);
+            return;
+        }
+        int middle = (from + to) >>> 1;
+        mergeSort(keys, values, from, middle, keyBuffer, valueBuffer);
+        mergeSort(keys, values, middle, to, keyBuffer, valueBuffer);
+        if (keys[middle - 1] <= keys[middle]) {
+            return; // already in order
+        }
+
+        int leftLength = middle - from;
+        System.arraycopy(keys, from, keyBuffer, 0, leftLength);
+        System.arraycopy(values, from, valueBuffer, 0, leftLength);
+        int left = 0;
+        int right = middle;
+        int out = from;
+        while (left < leftLength && right < to) {
+            // take from the left on ties to keep the sort stable
+            if (keys[right] < keyBuffer[left]) {
+                keys[out] = keys[right];
+                values[out++] = values[right++];
+            } else {
+                keys[out] = keyBuffer[left];
+                values[out++] = valueBuffer[left++];
+            }
+        }
+        while (left < leftLength) {
+            keys[out] = keyBuffer[left];
+            values[out++] = valueBuffer[left++];
+        }
+    }
+
+    private static void insertionSort(long[] keys, int[] values, int from, int to) {
+        for (int i = from + 1; i < to; i++) {
+            long key = keys[i];
+            int value = values[i];
+            int j = i - 1;
+            while (j >= from && keys[j] > key) {
+                keys[j + 1] = keys[j];
+                values[j + 1] = values[j];
+                j--;
+            }
+            keys[j + 1] = key;
+            values[j + 1] = value;
+        }
+    }
+}
@@ -0,0 +1,100 @@
+package psuteparuk.insightdata.anomalydetection.common;
+
+import java.nio.ByteBuffer;
+import java.text.DecimalFormat;
+import java.text.DecimalFormatSymbols;
+
+/**
+ * Format a double with two decimals, exactly as {DecimalFormat("#0.00")} does,
+ * straight into a byte buffer and without allocating.
+ *
+ * The value is rounded half-even on its exact binary value, like DecimalFormat:
+ * 0.125 gives "0.12" but 2.675 (just below it in binary) gives "2.67" and 0.025
+ * (just above it) "0.03". The product by 100 is computed with its exact rounding
+ * error (Dekker's product), which decides the rounding when the product alone
+ * looks like a tie. A negative value keeps its sign even when it rounds to zero.
+ *
+ * Values of 1e13 or more, NaN, infinities and locales that do not format with
+ * '-', '.' and ASCII digits go through a DecimalFormat instead.
+ * It is stateless and can be used from any thread.
+ */
+public class TwoDecimalFormat {
+    // Upper bound of the bytes of a formatted value, including DecimalFormat's
+    // 309 digits of Double.MAX_VALUE in any locale
+    public static final int MAX_LENGTH = 1024;
+
+    private static final double FAST_PATH_LIMIT = 1e13;
+    private static final double SPLITTER = (1 << 27) + 1;
+
+    private static final String PATTERN = "#0.00";
+    private static final ThreadLocal<DecimalFormat> decimalFormat =
+        ThreadLocal.withInitial(() -> new DecimalFormat(PATTERN));
+    private static final boolean IS_ASCII_LOCALE = isAsciiLocale();
+
+    private TwoDecimalFormat() {
+    }
+
+    /**
+     * Append {@value} with two decimals to {@buffer}, which must have room
+     * for {@MAX_LENGTH} bytes.
+     * @param value
+     * @param buffer
+     */
+    public static void format(double value, ByteBuffer buffer) {
+        double magnitude = Math.abs(value);
+        if (!(magnitude < FAST_PATH_LIMIT) || !IS_ASCII_LOCALE) {
+            String formatted = decimalFormat.get().format(value);
+            Utf8.encode(formatted, 0, formatted.length(), buffer);
+            return;
+        }
+
+        // the sign bit, so -0.0 and negative values that round to zero keep it
+        if (Double.doubleToRawLongBits(value) < 0) {
+            buffer.put((byte) '-');
+        }
+        long hundredths = roundHundredths(magnitude);
+        long integerPart = hundredths / 100;
+        int decimals = (int) (hundredths % 100);
+        long divisor = 1;
+        while (divisor * 10 <= integerPart) {
+            divisor *= 10;
+        }
+        for (; divisor > 0; divisor /= 10) {
+            buffer.put((byte) ('0' + (integerPart / divisor) % 10));
+        }
+        buffer.put((byte) '.');
+        buffer.put((byte) ('0' + decimals / 10));
+        buffer.put((byte) ('0' + decimals % 10));
+    }
+
+    /**
+     * @param magnitude non-negative, below {@FAST_PATH_LIMIT}
+     * @return {@magnitude} * 100 rounded half-even on its exact value
+     */
+    static long roundHundredths(double magnitude) {
+        double scaled = magnitude * 100;
+        // scaled + error is exactly magnitude * 100, 100 does not need to be split
+        double split = magnitude * SPLITTER;
+        double high = split - (split - magnitude);
+        double low = magnitude - high;
+        double error = (high * 100 - scaled) + low * 100;
+
+        double floor = Math.floor(scaled);
+        long rounded = (long) floor;
+        // exact, and when it is not zero it outweighs the error
+        double distance = (scaled - floor) - 0.5;
+        if (distance > 0 || (distance == 0 && error > 0)) {
+            rounded++;
+        } else if (distance == 0 && error == 0 && (rounded & 1) == 1) {
+            rounded++;
+        }
+        return rounded;
+    }
+
+    private static boolean isAsciiLocale() {
+        DecimalFormatSymbols symbols = new DecimalFormat(PATTERN).getDecimalFormatSymbols();
+        return symbols.getDecimalSeparator() == '.'
+            && symbols.getMinusSign() == '-'
+            && symbols.getZeroDigit() == '0';
+    }
+}
@@ -0,0 +1,52 @@
+package psuteparuk.insightdata.anomalydetection.common;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Encode chars as UTF-8 straight into a byte buffer, without an intermediate byte array.
+ * The result is the same as {String.getBytes(UTF_8)}: an unpaired surrogate becomes '?'.
+ */
+public class Utf8 {
+    private Utf8() {
+    }
+
+    /**
+     * @param chars
+     * @return the maximum number of bytes {@chars} chars are encoded into
+     */
+    public static int maxLength(int chars) {
+        return 3 * chars;
+    }
+
+    /**
+     * Encode the chars of {@text} from {@start} to {@end} (exclusive) into {@buffer},
+     * which must have room for them, see {maxLength}.
+     * @param text
+     * @param start
+     * @param end
+     * @param buffer
+     */
+    public static void encode(CharSequence text, int start, int end, ByteBuffer buffer) {
+        for (int i = start; i < end; i++) {
+            char c = text.charAt(i);
+            if (c < 0x80) {
+                buffer.put((byte) c);
+            } else if (c < 0x800) {
+                buffer.put((byte) (0xc0 | (c >> 6)));
+                buffer.put((byte) (0x80 | (c & 0x3f)));
+            } else if (Character.isHighSurrogate(c) && i + 1 < end && Character.isLowSurrogate(text.charAt(i + 1))) {
+                int codePoint = Character.toCodePoint(c, text.charAt(++i));
+                buffer.put((byte) (0xf0 | (codePoint >> 18)));
+                buffer.put((byte) (0x80 | ((codePoint >> 12) & 0x3f)));
+                buffer.put((byte) (0x80 | ((codePoint >> 6) & 0x3f)));
+                buffer.put((byte) (0x80 | (codePoint & 0x3f)));
+            } else if (Character.isSurrogate(c)) {
+                buffer.put((byte) '?');
+            } else {
+                buffer.put((byte) (0xe0 | (c >> 12)));
+                buffer.put((byte) (0x80 | ((c >> 6) & 0x3f)));
+                buffer.put((byte) (0x80 | (c & 0x3f)));
+            }
+        }
+    }
+}
@@ -0,0 +1,330 @@
+package psuteparuk.insightdata.anomalydetection.event;
+
+import psuteparuk.insightdata.anomalydetection.network.NetworkParameters;
+
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.TimeZone;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static java.nio.file.StandardOpenOption.READ;
+
+/**
+ * A compact binary event log, written by {BinaryEventLogWriter} from a json log
+ * and read from a memory-mapped file without parsing any text.
+ *
+ * Layout (big-endian):
+ *  - a header: magic "ANDE", format version, D and T (-1 if the log has none),
+ *      the number of records, the offset of the string table, its number of strings
+ *      and the index of the time zone of the timestamps in it
+ *  - fixed-width records of {@RECORD_SIZE} bytes, one per valid event:
+ *      type, flags (has timestamp, has amount, raw amount), the IDs (buyer, or
+ *      the two users) as indexes into the string table (-1 for none), the index of
+ *      the original message (-1 if it is the canonical one), the timestamp in epoch
+ *      seconds and the amount in fixed point (1/10000), or as the bits of a double
+ *      when it is not exact in fixed point
+ *  - the string table: every ID once and the original messages that are not
+ *      canonical, in the order they came in the log, each as a length and UTF-8 bytes
+ *
+ * A record is decoded with absolute reads of the mapped file and its IDs are
+ * the Strings of the table, so decoding an event allocates only its entry. The
+ * original message of an event is only rebuilt when it is asked for, e.g. for a
+ * flagged purchase. The writer checks that the canonical message (the layout of
+ * the challenge logs, see {canonicalMessage}) is the original one, and keeps the
+ * original in the table otherwise, so flagged purchases are written exactly as
+ * from the json log.
+ *
+ * Timestamps are decoded by the writer, in its default time zone, which is recorded
+ * in the log so that the canonical messages are rebuilt in the same zone wherever
+ * the log is replayed (logs of version 1 have no zone and use the default one).
+ */
+public class BinaryEventLog implements Closeable {
+    public static final int MAGIC = 0x414E4445; // "ANDE"
+    static final int FORMAT_VERSION = 2;
+    static final int ZONELESS_FORMAT_VERSION = 1;
+    static final int HEADER_SIZE = 40;
+    static final int RECORD_SIZE = 32;
+
+    // Record types
+    static final byte PURCHASE = 0;
+    static final byte BEFRIEND = 1;
+    static final byte UNFRIEND = 2;
+
+    // Record flags
+    static final byte HAS_TIMESTAMP = 1;
+    static final byte HAS_AMOUNT = 2;
+    static final byte RAW_AMOUNT = 4;
+
+    static final double AMOUNT_SCALE = 10000.0;
+    static final int NONE = -1;
+
+    // Records are mapped in segments, a mapping cannot exceed 2 GB
+    private static final int SEGMENT_RECORDS = 1 << 25;
+    private static final int MAX_STRING_LENGTH = 1 << 20; // guards against corrupted lengths
+
+    static final String TIMESTAMP_PATTERN = "yyyy-MM-dd HH:mm:ss";
+
+    final private FileChannel fileChannel;
+    final private MappedByteBuffer[] segments;
+    final private long recordCount;
+    final private String[] strings;
+    final private NetworkParameters networkParameters;
+    final private TimeZone timeZone;
+    final private ThreadLocal<SimpleDateFormat> timestampFormat;
+
+    private BinaryEventLog(
+        FileChannel fileChannel,
+        MappedByteBuffer[] segments,
+        long recordCount,
+        String[] strings,
+        NetworkParameters networkParameters,
+        TimeZone timeZone
+    ) {
+        this.fileChannel = fileChannel;
+        this.segments = segments;
+        this.recordCount = recordCount;
+        this.strings = strings;
+        this.networkParameters = networkParameters;
+        this.timeZone = timeZone;
+        this.timestampFormat = ThreadLocal.withInitial(() -> newTimestampFormat(timeZone));
+    }
+
+    /**
+     * @param timeZone
+     * @return a format of the timestamps of the canonical messages in {@timeZone}
+     */
+    static SimpleDateFormat newTimestampFormat(TimeZone timeZone) {
+        SimpleDateFormat timestampFormat = new SimpleDateFormat(TIMESTAMP_PATTERN);
+        timestampFormat.setTimeZone(timeZone);
+        return timestampFormat;
+    }
+
+    /**
+     * @param filePath
+     * @return whether the file starts like a binary event log
+     */
+    public static boolean isBinary(String filePath) {
+        try (InputStream input = Files.newInputStream(Paths.get(filePath))) {
+            return new DataInputStream(input).readInt() == MAGIC;
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Map the records and read the string table.
+     * @param filePath
+     * @return the opened log
+     * @throws IOException if the file cannot be read or is not a valid binary event log
+     */
+    public static BinaryEventLog open(String filePath) throws IOException {
+        Path path = Paths.get(filePath);
+        FileChannel fileChannel = FileChannel.open(path, READ);
+        try {
+            long fileSize = fileChannel.size();
+            if (fileSize < HEADER_SIZE) {
+                throw new IOException("Not a binary event log");
+            }
+            ByteBuffer header = fileChannel.map(FileChannel.MapMode.READ_ONLY, 0, HEADER_SIZE);
+            if (header.getInt() != MAGIC) {
+                throw new IOException("Not a binary event log");
+            }
+            int formatVersion = header.getInt();
+            if (formatVersion != FORMAT_VERSION && formatVersion != ZONELESS_FORMAT_VERSION) {
+                throw new IOException("Unsupported binary event log version " + formatVersion);
+            }
+            int depthDegree = header.getInt();
+            int trackedNumber = header.getInt();
+            long recordCount = header.getLong();
+            long stringTableOffset = header.getLong();
+            int stringCount = header.getInt();
+            int timeZoneIndex = (formatVersion == FORMAT_VERSION) ? header.getInt() : NONE;
+            if (recordCount < 0
+                || stringTableOffset != HEADER_SIZE + recordCount * RECORD_SIZE
+                || stringTableOffset > fileSize
+                || stringCount < 0
+                || stringCount > (fileSize - stringTableOffset) / 4
+                || timeZoneIndex < NONE
+                || timeZoneIndex >= stringCount) {
+                throw new IOException("Corrupted binary event log header");
+            }
+
+            int segmentCount = (int) ((recordCount + SEGMENT_RECORDS - 1) / SEGMENT_RECORDS);
+            MappedByteBuffer[] segments = new MappedByteBuffer[segmentCount];
+            for (int segment = 0; segment < segmentCount; segment++) {
+                long firstRecord = (long) segment * SEGMENT_RECORDS;
+                long segmentRecords = Math.min(SEGMENT_RECORDS, recordCount - firstRecord);
+                segments[segment] = fileChannel.map(
+                    FileChannel.MapMode.READ_ONLY,
+                    HEADER_SIZE + firstRecord * RECORD_SIZE,
+                    segmentRecords * RECORD_SIZE
+                );
+            }
+
+            String[] strings = readStrings(fileChannel, stringTableOffset, fileSize - stringTableOffset, stringCount);
+            NetworkParameters networkParameters = (depthDegree == NONE || trackedNumber == NONE)
+                ? null
+                : new NetworkParameters(String.valueOf(depthDegree), String.valueOf(trackedNumber));
+            TimeZone timeZone = (timeZoneIndex == NONE) ? TimeZone.getDefault() : TimeZone.getTimeZone(strings[timeZoneIndex]);
+            return new BinaryEventLog(fileChannel, segments, recordCount, strings, networkParameters, timeZone);
+        } catch (IOException | RuntimeException e) {
+            fileChannel.close();
+            throw (e instanceof IOException) ? (IOException) e : new IOException("Corrupted binary event log", e);
+        }
+    }
+
+    private static String[] readStrings(FileChannel fileChannel, long offset, long size, int stringCount) throws IOException {
+        if (size > Integer.MAX_VALUE) {
+            throw new IOException("String table too large");
+        }
+        ByteBuffer table = fileChannel.map(FileChannel.MapMode.READ_ONLY, offset, size);
+        String[] strings = new String[stringCount];
+        byte[] bytes = new byte[256];
+        for (int i = 0; i < stringCount; i++) {
+            int length = table.getInt();
+            if (length < 0 || length > MAX_STRING_LENGTH || length > table.remaining()) {
+                throw new IOException("Invalid string length " + length);
+            }
+            if (length > bytes.length) {
+                bytes = new byte[Math.max(length, 2 * bytes.length)];
+            }
+            table.get(bytes, 0, length);
+            strings[i] = new String(bytes, 0, length, UTF_8);
+        }
+        if (table.hasRemaining()) {
+            throw new IOException("Unexpected data after the string table");
+        }
+        return strings;
+    }
+
+    public long getRecordCount() {
+        return this.recordCount;
+    }
+
+    /**
+     * @return the first valid network parameters of the original log, or null if it has none
+     */
+    public NetworkParameters getNetworkParameters() {
+        return this.networkParameters;
+    }
+
+    /**
+     * @return the time zone the timestamps were decoded in
+     */
+    public TimeZone getTimeZone() {
+        return this.timeZone;
+    }
+
+    /**
+     * Overwrite {@entry} with the event of record {@index}.
+     * The entry rebuilds its original message from this log when it is asked for.
+     * @param index
+     * @param entry
+     * @return {@entry}
+     */
+    public EventEntry decode(long index, EventEntry entry) {
+        ByteBuffer segment = this.segments[(int) (index / SEGMENT_RECORDS)];
+        int position = (int) (index % SEGMENT_RECORDS) * RECORD_SIZE;
+
+        entry.clear();
+        byte type = segment.get(position);
+        byte flags = segment.get(position + 1);
+        int id1 = segment.getInt(position + 4);
+        int id2 = segment.getInt(position + 8);
+        if (type == PURCHASE) {
+            entry.setEventType(EventType.PURCHASE);
+            entry.setBuyerId(this.stringAt(id1));
+        } else {
+            entry.setEventType((type == BEFRIEND) ? EventType.BEFRIEND : EventType.UNFRIEND);
+            entry.setUser1Id(this.stringAt(id1));
+            entry.setUser2Id(this.stringAt(id2));
+        }
+        if ((flags & HAS_TIMESTAMP) != 0) {
+            entry.setTimestamp(segment.getLong(position + 16));
+        }
+        if ((flags & HAS_AMOUNT) != 0) {
+            long amount = segment.getLong(position + 24);
+            entry.setAmount(((flags & RAW_AMOUNT) != 0) ? Double.longBitsToDouble(amount) : amount / AMOUNT_SCALE);
+        }
+        entry.setOriginalMessageSource(this, index);
+        return entry;
+    }
+
+    /**
+     * @param index
+     * @return the original message of record {@index}
+     */
+    String message(long index) {
+        ByteBuffer segment = this.segments[(int) (index / SEGMENT_RECORDS)];
+        int message = segment.getInt((int) (index % SEGMENT_RECORDS) * RECORD_SIZE + 12);
+        if (message != NONE) {
+            return this.strings[message];
+        }
+        return canonicalMessage(this.decode(index, new EventEntry()), this.timestampFormat.get());
+    }
+
+    private String stringAt(int index) {
+        return (index == NONE) ? null : this.strings[index];
+    }
+
+    /**
+     * The message of {@entry} in the layout of the challenge logs, e.g.
+     * {"event_type":"purchase", "timestamp":"2017-06-13 11:33:01", "id": "1", "amount": "16.83"}
+     * @param entry
+     * @param timestampFormat format of the timestamp, in the zone it was decoded in
+     * @return the message, or null if the entry cannot be written in that layout
+     */
+    static String canonicalMessage(EventEntry entry, SimpleDateFormat timestampFormat) {
+        Long timestamp = entry.getTimestamp();
+        if (timestamp == null) {
+            return null;
+        }
+        StringBuilder message = new StringBuilder(96);
+        message.append("{\"event_type\":\"").append(entry.getEventType()).append("\", \"timestamp\":\"");
+        message.append(timestampFormat.format(new Date(timestamp * 1000L))).append('"');
+        if (entry.getEventType() == EventType.PURCHASE) {
+            Double amount = entry.getAmount();
+            if (entry.getBuyerId() == null || amount == null) {
+                return null;
+            }
+            message.append(", \"id\": \"").append(entry.getBuyerId());
+            message.append("\", \"amount\": \"").append(formatAmount(amount)).append("\"}");
+        } else {
+            if (entry.getUser1Id() == null || entry.getUser2Id() == null) {
+                return null;
+            }
+            message.append(", \"id1\": \"").append(entry.getUser1Id());
+            message.append("\", \"id2\": \"").append(entry.getUser2Id()).append("\"}");
+        }
+        return message.toString();
+    }
+
+    /**
+     * Amounts with at most two decimals are written with exactly two, like the challenge logs.
+     */
+    private static String formatAmount(double amount) {
+        long cents = Math.round(amount * 100);
+        if (cents / 100.0 != amount || Math.abs(cents) >= (1L << 53)) {
+            return Double.toString(amount);
+        }
+        String sign = (cents < 0) ? "-" : "";
+        cents = Math.abs(cents);
+        long fraction = cents % 100;
+        return sign + (cents / 100) + ((fraction < 10) ? ".0" : ".") + fraction;
+    }
+
+    @Override
+    public void close() throws IOException {
+        this.fileChannel.close();
+    }
+}
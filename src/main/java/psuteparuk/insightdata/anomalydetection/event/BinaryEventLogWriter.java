@@ -0,0 +1,177 @@
+package psuteparuk.insightdata.anomalydetection.event;
+
+import psuteparuk.insightdata.anomalydetection.io.PipelinedGzipInputStream;
+import psuteparuk.insightdata.anomalydetection.network.NetworkParameters;
+
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TimeZone;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static java.nio.file.StandardCopyOption.ATOMIC_MOVE;
+import static java.nio.file.StandardCopyOption.REPLACE_EXISTING;
+import static java.nio.file.StandardOpenOption.WRITE;
+
+/**
+ * Convert a json event log into a {BinaryEventLog}.
+ * Lines are decoded like the json logs are when they are processed, and lines
+ * that are not valid events are left out. IDs are interned into the string table.
+ * The json log can be gzip-compressed.
+ * Timestamps are decoded in the default time zone, which is recorded in the log.
+ * The log is written to a temporary file and moved into place.
+ *
+ * Usage: BinaryEventLogWriter jsonLogPath binaryLogPath
+ */
+public class BinaryEventLogWriter {
+    private static final int BUFFER_SIZE = 1 << 16;
+
+    final private TimeZone timeZone = TimeZone.getDefault(); // the zone of the decoder
+    final private EventDecoder eventDecoder = new EventDecoder();
+    final private SimpleDateFormat timestampFormat = BinaryEventLog.newTimestampFormat(this.timeZone);
+    final private Map<String, Integer> stringIndexes = new HashMap<>();
+    final private List<String> strings = new ArrayList<>();
+    private NetworkParameters networkParameters = null;
+    private long recordCount = 0;
+    private long originalMessageCount = 0;
+
+    public static void main(String[] args) throws IOException {
+        long start = System.nanoTime();
+        BinaryEventLogWriter writer = new BinaryEventLogWriter();
+        writer.convert(args[0], args[1]);
+        System.out.printf(
+            "Converted %,d events in %,d ms: %,d strings, %,d original messages kept, %,d bytes.%n",
+            writer.recordCount,
+            (System.nanoTime() - start) / 1000000,
+            writer.strings.size(),
+            writer.originalMessageCount,
+            Files.size(Paths.get(args[1]))
+        );
+    }
+
+    /**
+     * @param jsonLogPath
+     * @param binaryLogPath
+     * @throws IOException if the json log cannot be read or the binary log cannot be written
+     */
+    public void convert(String jsonLogPath, String binaryLogPath) throws IOException {
+        Path temporaryPath = Paths.get(binaryLogPath + ".tmp");
+        int timeZoneIndex = this.intern(this.timeZone.getID());
+        try (
+            BufferedReader reader = new BufferedReader(new InputStreamReader(PipelinedGzipInputStream.open(jsonLogPath), UTF_8), BUFFER_SIZE);
+            DataOutputStream output = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temporaryPath), BUFFER_SIZE))
+        ) {
+            // the header is written once the counts are known
+            output.write(new byte[BinaryEventLog.HEADER_SIZE]);
+            String line;
+            while ((line = reader.readLine()) != null) {
+                EventEntry entry = this.eventDecoder.decode(line);
+                if (this.networkParameters == null) {
+                    this.networkParameters = this.eventDecoder.getNetworkParameters();
+                }
+                if (entry.getEventType() != EventType.INVALID) {
+                    this.writeRecord(output, entry, line);
+                }
+            }
+            for (String string : this.strings) {
+                byte[] bytes = string.getBytes(UTF_8);
+                output.writeInt(bytes.length);
+                output.write(bytes);
+            }
+        }
+
+        try (FileChannel fileChannel = FileChannel.open(temporaryPath, WRITE)) {
+            ByteBuffer header = ByteBuffer.allocate(BinaryEventLog.HEADER_SIZE);
+            header.putInt(BinaryEventLog.MAGIC);
+            header.putInt(BinaryEventLog.FORMAT_VERSION);
+            header.putInt((this.networkParameters == null) ? BinaryEventLog.NONE : this.networkParameters.getDepthDegree());
+            header.putInt((this.networkParameters == null) ? BinaryEventLog.NONE : this.networkParameters.getTrackedNumber());
+            header.putLong(this.recordCount);
+            header.putLong(BinaryEventLog.HEADER_SIZE + this.recordCount * BinaryEventLog.RECORD_SIZE);
+            header.putInt(this.strings.size());
+            header.putInt(timeZoneIndex);
+            header.flip();
+            while (header.hasRemaining()) {
+                fileChannel.write(header, header.position());
+            }
+        }
+        Files.move(temporaryPath, Paths.get(binaryLogPath), REPLACE_EXISTING, ATOMIC_MOVE);
+    }
+
+    private void writeRecord(DataOutputStream output, EventEntry entry, String line) throws IOException {
+        byte flags = 0;
+        long timestamp = 0;
+        long amount = 0;
+        if (entry.getTimestamp() != null) {
+            flags |= BinaryEventLog.HAS_TIMESTAMP;
+            timestamp = entry.getTimestamp();
+        }
+        if (entry.getAmount() != null) {
+            flags |= BinaryEventLog.HAS_AMOUNT;
+            double value = entry.getAmount();
+            long fixedPoint = Math.round(value * BinaryEventLog.AMOUNT_SCALE);
+            if (Math.abs(fixedPoint) < (1L << 53) && fixedPoint / BinaryEventLog.AMOUNT_SCALE == value) {
+                amount = fixedPoint;
+            } else {
+                flags |= BinaryEventLog.RAW_AMOUNT;
+                amount = Double.doubleToRawLongBits(value);
+            }
+        }
+
+        int message = BinaryEventLog.NONE;
+        if (!line.equals(BinaryEventLog.canonicalMessage(entry, this.timestampFormat))) {
+            message = this.strings.size();
+            this.strings.add(line);
+            this.originalMessageCount++;
+        }
+
+        switch (entry.getEventType()) {
+            case PURCHASE:
+                output.writeByte(BinaryEventLog.PURCHASE);
+                break;
+            case BEFRIEND:
+                output.writeByte(BinaryEventLog.BEFRIEND);
+                break;
+            default:
+                output.writeByte(BinaryEventLog.UNFRIEND);
+        }
+        output.writeByte(flags);
+        output.writeShort(0);
+        if (entry.getEventType() == EventType.PURCHASE) {
+            output.writeInt(this.intern(entry.getBuyerId()));
+            output.writeInt(BinaryEventLog.NONE);
+        } else {
+            output.writeInt(this.intern(entry.getUser1Id()));
+            output.writeInt(this.intern(entry.getUser2Id()));
+        }
+        output.writeInt(message);
+        output.writeLong(timestamp);
+        output.writeLong(amount);
+        this.recordCount++;
+    }
+
+    private int intern(String id) {
+        if (id == null) {
+            return BinaryEventLog.NONE;
+        }
+        Integer index = this.stringIndexes.get(id);
+        if (index == null) {
+            index = this.strings.size();
+            this.strings.add(id);
+            this.stringIndexes.put(id, index);
+        }
+        return index;
+    }
+}
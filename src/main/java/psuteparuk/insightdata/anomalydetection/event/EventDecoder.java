@@ -0,0 +1,288 @@
+package psuteparuk.insightdata.anomalydetection.event;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import psuteparuk.insightdata.anomalydetection.network.NetworkParameters;
+
+import java.io.IOException;
+
+/**
+ * Decode a json event line into an {EventEntry} with Jackson's streaming parser.
+ *
+ * It accepts exactly the lines the ObjectMapper / @JsonCreator path accepts:
+ * anything that is not a json object, is malformed, or has an array or object
+ * as the value of a known field becomes an INVALID entry. Unknown fields are skipped.
+ *
+ * The event type is matched and the amount is parsed directly from the parser's
+ * character buffer, so neither goes through an intermediate String.
+ *
+ * The same pass also picks up the "D" and "T" network parameters, so a log
+ * only needs to be parsed once. They are available from {@link #getNetworkParameters()}
+ * until the next line is decoded.
+ * A decoder is not thread-safe, use one per thread.
+ */
+public class EventDecoder {
+    private static final char[] PURCHASE = EventType.PURCHASE.toString().toCharArray();
+    private static final char[] BEFRIEND = EventType.BEFRIEND.toString().toCharArray();
+    private static final char[] UNFRIEND = EventType.UNFRIEND.toString().toCharArray();
+
+    // Powers of ten that are exactly representable as doubles
+    private static final double[] POWERS_OF_TEN = {
+        1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10,
+        1e11, 1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18, 1e19, 1e20, 1e21, 1e22
+    };
+    private static final int MAX_EXACT_DIGITS = 15; // any 15-digit integer is exact in a double
+
+    private final JsonFactory jsonFactory = new JsonFactory();
+    private final TimestampDecoder timestampDecoder = new TimestampDecoder();
+
+    // State of the line being decoded
+    private boolean isEventMappable;
+    private boolean isParametersMappable;
+    private String depthDegreeRaw;
+    private String trackedNumberRaw;
+
+    /**
+     * @param line
+     * @return a new entry for the line
+     */
+    public EventEntry decode(String line) {
+        return this.decode(line, new EventEntry());
+    }
+
+    /**
+     * Overwrite {@entry} with the content of the line.
+     * The original message is only kept for valid events.
+     * @param line
+     * @param entry
+     * @return {@entry}
+     */
+    public EventEntry decode(String line, EventEntry entry) {
+        try {
+            this.decodeLine(this.jsonFactory.createParser(line), entry);
+        } catch (IOException e) {
+            this.decodeLine(null, entry);
+        }
+        if (entry.getEventType() != EventType.INVALID) {
+            entry.setOriginalMessage(line);
+        }
+        return entry;
+    }
+
+    /**
+     * Overwrite {@entry} with the content of a UTF-8 encoded line.
+     * The original message is not kept.
+     * @param bytes
+     * @param offset start of the line in {@bytes}
+     * @param length length of the line, without the line terminator
+     * @param entry
+     * @return {@entry}
+     */
+    public EventEntry decode(byte[] bytes, int offset, int length, EventEntry entry) {
+        try {
+            this.decodeLine(this.jsonFactory.createParser(bytes, offset, length), entry);
+        } catch (IOException e) {
+            this.decodeLine(null, entry);
+        }
+        return entry;
+    }
+
+    /**
+     * @param parser parser over the line, or null if it could not be created
+     * @param entry
+     */
+    private void decodeLine(JsonParser parser, EventEntry entry) {
+        entry.clear();
+        this.isEventMappable = true;
+        this.isParametersMappable = true;
+        this.depthDegreeRaw = null;
+        this.trackedNumberRaw = null;
+        if (parser == null) {
+            this.isEventMappable = false;
+            this.isParametersMappable = false;
+        } else {
+            try (JsonParser lineParser = parser) {
+                if (!this.decodeObject(lineParser, entry)) {
+                    this.isEventMappable = false;
+                    this.isParametersMappable = false;
+                }
+            } catch (IOException e) {
+                this.isEventMappable = false;
+                this.isParametersMappable = false;
+            }
+        }
+        if (!this.isEventMappable) {
+            entry.clear();
+        }
+    }
+
+    /**
+     * @return the network parameters of the last decoded line,
+     * or null if it does not have valid "D" and "T" fields
+     */
+    public NetworkParameters getNetworkParameters() {
+        // most lines have no parameters, skip the failing parse
+        if (!this.isParametersMappable || this.depthDegreeRaw == null || this.trackedNumberRaw == null) {
+            return null;
+        }
+        NetworkParameters networkParameters = new NetworkParameters(this.depthDegreeRaw, this.trackedNumberRaw);
+        if (networkParameters.getDepthDegree() == null || networkParameters.getTrackedNumber() == null) {
+            return null;
+        }
+        return networkParameters;
+    }
+
+    /**
+     * A field with an array or object value only invalidates the object
+     * (event or parameters) it belongs to.
+     * @return false if the line is not a well-formed json object
+     */
+    private boolean decodeObject(JsonParser parser, EventEntry entry) throws IOException {
+        if (parser.nextToken() != JsonToken.START_OBJECT) {
+            return false;
+        }
+        JsonToken token;
+        while ((token = parser.nextToken()) == JsonToken.FIELD_NAME) {
+            String fieldName = parser.getCurrentName();
+            JsonToken valueToken = parser.nextToken();
+            boolean isScalar = isScalar(valueToken);
+            boolean isNull = (valueToken == JsonToken.VALUE_NULL);
+            switch (fieldName) {
+                case "event_type":
+                    if (isScalar) entry.setEventType(isNull ? EventType.INVALID : parseEventType(parser));
+                    break;
+                case "timestamp":
+                    if (isScalar && (isNull || !this.parseTimestamp(parser, entry))) entry.clearTimestamp();
+                    break;
+                case "amount":
+                    if (isScalar && (isNull || !parseAmount(parser, entry))) entry.clearAmount();
+                    break;
+                case "id":
+                    if (isScalar) entry.setBuyerId(isNull ? null : parser.getText());
+                    break;
+                case "id1":
+                    if (isScalar) entry.setUser1Id(isNull ? null : parser.getText());
+                    break;
+                case "id2":
+                    if (isScalar) entry.setUser2Id(isNull ? null : parser.getText());
+                    break;
+                case "D":
+                    if (isScalar) this.depthDegreeRaw = isNull ? null : parser.getText();
+                    break;
+                case "T":
+                    if (isScalar) this.trackedNumberRaw = isNull ? null : parser.getText();
+                    break;
+                default:
+                    isScalar = true; // unknown fields are ignored whatever their value
+            }
+            if (!isScalar) {
+                if (fieldName.equals("D") || fieldName.equals("T")) {
+                    this.isParametersMappable = false;
+                } else {
+                    this.isEventMappable = false;
+                }
+            }
+            parser.skipChildren();
+        }
+        // anything after the end of the object is ignored, as ObjectMapper does
+        return token == JsonToken.END_OBJECT;
+    }
+
+    private static boolean isScalar(JsonToken token) {
+        return token != null && token.isScalarValue();
+    }
+
+    /**
+     * Decode the timestamp straight from the parser buffer.
+     * @return whether it is a valid timestamp
+     */
+    private boolean parseTimestamp(JsonParser parser, EventEntry entry) throws IOException {
+        long timestamp = this.timestampDecoder.decode(parser.getTextCharacters(), parser.getTextOffset(), parser.getTextLength());
+        if (timestamp == TimestampDecoder.INVALID) {
+            return false;
+        }
+        entry.setTimestamp(timestamp);
+        return true;
+    }
+
+    private static EventType parseEventType(JsonParser parser) throws IOException {
+        char[] chars = parser.getTextCharacters();
+        int offset = parser.getTextOffset();
+        int length = parser.getTextLength();
+        if (matches(chars, offset, length, PURCHASE)) return EventType.PURCHASE;
+        if (matches(chars, offset, length, BEFRIEND)) return EventType.BEFRIEND;
+        if (matches(chars, offset, length, UNFRIEND)) return EventType.UNFRIEND;
+        return EventType.INVALID;
+    }
+
+    private static boolean matches(char[] chars, int offset, int length, char[] expected) {
+        if (length != expected.length) {
+            return false;
+        }
+        for (int i = 0; i < length; i++) {
+            if (chars[offset + i] != expected[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Parse plain decimals such as "16.83" from the character buffer.
+     * With at most 15 significant digits and 22 fractional digits, both the digits
+     * and the power of ten are exact doubles, so a single division gives the
+     * correctly rounded result, identical to Double.parseDouble.
+     * Anything else (exponents, signs other than a leading '-', whitespace, NaN, ...)
+     * falls back to Double.parseDouble.
+     * @return false if the value is not a number
+     */
+    private static boolean parseAmount(JsonParser parser, EventEntry entry) throws IOException {
+        char[] chars = parser.getTextCharacters();
+        int offset = parser.getTextOffset();
+        int end = offset + parser.getTextLength();
+
+        int i = offset;
+        boolean negative = (i < end && chars[i] == '-');
+        if (negative) i++;
+
+        long digits = 0;
+        int digitCount = 0;
+        int fractionDigits = 0;
+        boolean seenPoint = false;
+        boolean simple = i < end;
+        for (; i < end && simple; i++) {
+            char c = chars[i];
+            if (c >= '0' && c <= '9') {
+                // leading zeros do not count towards the precision
+                if (digits != 0 || c != '0') {
+                    digitCount++;
+                }
+                digits = digits * 10 + (c - '0');
+                if (seenPoint) fractionDigits++;
+            } else if (c == '.' && !seenPoint) {
+                seenPoint = true;
+            } else {
+                simple = false;
+            }
+        }
+        int length = end - offset - (negative ? 1 : 0);
+        simple = simple
+            && digitCount <= MAX_EXACT_DIGITS
+            && fractionDigits < POWERS_OF_TEN.length
+            && length > (seenPoint ? 1 : 0); // at least one digit
+
+        if (simple) {
+            double value = digits / POWERS_OF_TEN[fractionDigits];
+            entry.setAmount(negative ? -value : value);
+            return true;
+        }
+
+        Double value = EventEntry.parseAmount(new String(chars, offset, end - offset));
+        if (value == null) {
+            return false;
+        }
+        entry.setAmount(value);
+        return true;
+    }
+}
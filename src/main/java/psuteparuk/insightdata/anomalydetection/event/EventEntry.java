@@ -3,25 +3,32 @@ package psuteparuk.insightdata.anomalydetection.event;
 import com.fasterxml.jackson.annotation.JsonCreator;
 import com.fasterxml.jackson.annotation.JsonProperty;
 
-import java.text.ParseException;
-import java.text.SimpleDateFormat;
-import java.util.Date;
-
 /**
  * An object representation of events read from a json input.
  * Convert the type to an {EventType} enum.
  * Also store the original string representation {@originalMessage}.
+ *
+ * Entries are usually filled by an {EventDecoder}, which can reuse the same
+ * entry for every line when the consumer does not keep it. Entries filled from a
+ * {BinaryEventLog} rebuild their original message the first time it is asked for.
  */
 public class EventEntry {
     private EventType eventType;
-    private Date timestamp;
-    private Double amount;
+    private long timestamp; // epoch seconds
+    private boolean hasTimestamp;
+    private double amount;
+    private boolean hasAmount;
     private String buyerId;
     private String user1Id;
     private String user2Id;
     private String originalMessage;
+    // Rebuilds the original message when it is asked for, see {BinaryEventLog}
+    private BinaryEventLog messageLog;
+    private long messageRecord;
 
-    final SimpleDateFormat dateFormat = new SimpleDateFormat("yyyy-MM-dd hh:mm:ss");
+    // TimestampDecoder is not thread-safe, keep one per thread instead of one per entry
+    private static final ThreadLocal<TimestampDecoder> timestampDecoder =
+        ThreadLocal.withInitial(TimestampDecoder::new);
 
     @JsonCreator
     public EventEntry(
@@ -33,23 +40,39 @@ public class EventEntry {
         @JsonProperty("id2") String id2Raw
     ) {
         this.eventType = parseEventType(eventTypeRaw);
-        this.timestamp = parseTimestamp(timestampRaw);
-        this.amount = parseAmount(amountRaw);
+        this.timestamp = timestampDecoder.get().decode(timestampRaw);
+        this.hasTimestamp = this.timestamp != TimestampDecoder.INVALID;
+        Double parsedAmount = parseAmount(amountRaw);
+        this.hasAmount = parsedAmount != null;
+        this.amount = this.hasAmount ? parsedAmount : 0.0;
         this.buyerId = idRaw;
         this.user1Id = id1Raw;
         this.user2Id = id2Raw;
     }
 
+    /**
+     * An empty (invalid) entry to be filled by an {EventDecoder}.
+     */
+    public EventEntry() {
+        this.clear();
+    }
+
     public EventType getEventType() {
         return eventType;
     }
 
-    public Date getTimestamp() {
-        return timestamp;
+    /**
+     * @return the timestamp in epoch seconds, or null if it is missing or not a timestamp
+     */
+    public Long getTimestamp() {
+        return hasTimestamp ? timestamp : null;
     }
 
+    /**
+     * @return the amount, or null if it is missing or not a number
+     */
     public Double getAmount() {
-        return amount;
+        return hasAmount ? amount : null;
     }
 
     public String getBuyerId() {
@@ -65,6 +88,9 @@ public class EventEntry {
     }
 
     public String getOriginalMessage() {
+        if (originalMessage == null && messageLog != null) {
+            originalMessage = messageLog.message(messageRecord);
+        }
         return originalMessage;
     }
 
@@ -72,6 +98,62 @@ public class EventEntry {
         originalMessage = message;
     }
 
+    /**
+     * Setters used by the decoder
+     */
+
+    void clear() {
+        this.eventType = EventType.INVALID;
+        this.timestamp = 0;
+        this.hasTimestamp = false;
+        this.amount = 0.0;
+        this.hasAmount = false;
+        this.buyerId = null;
+        this.user1Id = null;
+        this.user2Id = null;
+        this.originalMessage = null;
+        this.messageLog = null;
+    }
+
+    void setEventType(EventType eventType) {
+        this.eventType = eventType;
+    }
+
+    void setTimestamp(long timestamp) {
+        this.timestamp = timestamp;
+        this.hasTimestamp = true;
+    }
+
+    void clearTimestamp() {
+        this.hasTimestamp = false;
+    }
+
+    void setAmount(double amount) {
+        this.amount = amount;
+        this.hasAmount = true;
+    }
+
+    void clearAmount() {
+        this.hasAmount = false;
+    }
+
+    void setOriginalMessageSource(BinaryEventLog messageLog, long messageRecord) {
+        this.messageLog = messageLog;
+        this.messageRecord = messageRecord;
+    }
+
+    void setBuyerId(String buyerId) {
+        this.buyerId = buyerId;
+    }
+
+    void setUser1Id(String user1Id) {
+        this.user1Id = user1Id;
+    }
+
+    void setUser2Id(String user2Id) {
+        this.user2Id = user2Id;
+    }
+
     private EventType parseEventType(String eventTypeRaw) {
         try {
             switch (eventTypeRaw) {
@@ -89,15 +171,7 @@ public class EventEntry {
         }
     }
 
-    private Date parseTimestamp(String timestampRaw) {
-        try {
-            return dateFormat.parse(timestampRaw);
-        } catch (ParseException | NullPointerException e) {
-            return null;
-        }
-    }
-
-    private Double parseAmount(String amountRaw) {
+    static Double parseAmount(String amountRaw) {
         try {
             return Double.parseDouble(amountRaw);
         } catch (NumberFormatException | NullPointerException e) {
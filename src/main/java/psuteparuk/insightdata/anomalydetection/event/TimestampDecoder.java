@@ -0,0 +1,131 @@
+package psuteparuk.insightdata.anomalydetection.event;
+
+import java.text.ParseException;
+import java.text.SimpleDateFormat;
+import java.util.Calendar;
+import java.util.Date;
+import java.util.GregorianCalendar;
+
+/**
+ * Decode "yyyy-MM-dd hh:mm:ss" timestamps into epoch seconds, with the same result
+ * as SimpleDateFormat in the default time zone (lenient, and "12" o'clock read as 0).
+ *
+ * Timestamps in the fixed-width layout are read digit by digit. The start of their
+ * hour is computed once per distinct "yyyy-MM-dd hh" with a Calendar, and the
+ * minutes and seconds (when below 60) are added to it. The last decoded timestamp is remembered
+ * as well, since consecutive events very often share the same second.
+ * Anything else (other widths, signs, trailing text...) goes through SimpleDateFormat.
+ *
+ * An instance is not thread-safe.
+ */
+public class TimestampDecoder {
+    public static final long INVALID = Long.MIN_VALUE;
+
+    private static final String PATTERN = "yyyy-MM-dd hh:mm:ss";
+    private static final int LENGTH = PATTERN.length();
+    private static final int HOUR_LENGTH = "yyyy-MM-dd hh".length();
+
+    final private Calendar calendar = new GregorianCalendar();
+    private SimpleDateFormat dateFormat; // only created for timestamps out of the fixed-width layout
+
+    // Last decoded timestamp
+    final private char[] lastChars = new char[LENGTH];
+    private long lastSeconds = INVALID;
+    // Start of the hour of the last decoded timestamp
+    final private char[] hourChars = new char[HOUR_LENGTH];
+    private long hourSeconds = INVALID;
+
+    final private char[] stringChars = new char[LENGTH];
+
+    /**
+     * @param timestampRaw
+     * @return the epoch seconds, or {@INVALID} if it is null or not a timestamp
+     */
+    public long decode(String timestampRaw) {
+        if (timestampRaw == null) {
+            return INVALID;
+        }
+        if (timestampRaw.length() != LENGTH) {
+            return this.decodeWithDateFormat(timestampRaw);
+        }
+        timestampRaw.getChars(0, LENGTH, this.stringChars, 0);
+        return this.decode(this.stringChars, 0, LENGTH);
+    }
+
+    /**
+     * @param chars
+     * @param offset
+     * @param length
+     * @return the epoch seconds, or {@INVALID} if it is not a timestamp
+     */
+    public long decode(char[] chars, int offset, int length) {
+        if (length == LENGTH && this.lastSeconds != INVALID && regionEquals(chars, offset, this.lastChars, LENGTH)) {
+            return this.lastSeconds;
+        }
+        if (length != LENGTH || !isFixedWidth(chars, offset)) {
+            return this.decodeWithDateFormat(new String(chars, offset, length));
+        }
+        int minutes = digits(chars, offset + 14, 2);
+        int seconds = digits(chars, offset + 17, 2);
+        if (minutes > 59 || seconds > 59) {
+            return this.decodeWithDateFormat(new String(chars, offset, length));
+        }
+
+        if (this.hourSeconds == INVALID || !regionEquals(chars, offset, this.hourChars, HOUR_LENGTH)) {
+            this.calendar.clear();
+            this.calendar.set(Calendar.YEAR, digits(chars, offset, 4));
+            this.calendar.set(Calendar.MONTH, digits(chars, offset + 5, 2) - 1);
+            this.calendar.set(Calendar.DAY_OF_MONTH, digits(chars, offset + 8, 2));
+            int hour = digits(chars, offset + 11, 2);
+            this.calendar.set(Calendar.HOUR, (hour == 12) ? 0 : hour);
+            this.hourSeconds = Math.floorDiv(this.calendar.getTimeInMillis(), 1000L);
+            System.arraycopy(chars, offset, this.hourChars, 0, HOUR_LENGTH);
+        }
+        this.lastSeconds = this.hourSeconds + 60 * minutes + seconds;
+        System.arraycopy(chars, offset, this.lastChars, 0, LENGTH);
+        return this.lastSeconds;
+    }
+
+    private long decodeWithDateFormat(String timestampRaw) {
+        if (this.dateFormat == null) {
+            this.dateFormat = new SimpleDateFormat(PATTERN);
+        }
+        try {
+            Date date = this.dateFormat.parse(timestampRaw);
+            return Math.floorDiv(date.getTime(), 1000L);
+        } catch (ParseException e) {
+            return INVALID;
+        }
+    }
+
+    /**
+     * @return whether the chars are "dddd-dd-dd dd:dd:dd"
+     */
+    private static boolean isFixedWidth(char[] chars, int offset) {
+        for (int i = 0; i < LENGTH; i++) {
+            char c = chars[offset + i];
+            char expected = PATTERN.charAt(i);
+            if (Character.isLetter(expected) ? (c < '0' || c > '9') : c != expected) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static int digits(char[] chars, int offset, int count) {
+        int value = 0;
+        for (int i = 0; i < count; i++) {
+            value = 10 * value + (chars[offset + i] - '0');
+        }
+        return value;
+    }
+
+    private static boolean regionEquals(char[] chars, int offset, char[] other, int length) {
+        for (int i = length - 1; i >= 0; i--) {
+            if (chars[offset + i] != other[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
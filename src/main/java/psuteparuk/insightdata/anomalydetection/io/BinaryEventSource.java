@@ -0,0 +1,39 @@
+package psuteparuk.insightdata.anomalydetection.io;
+
+import io.reactivex.Flowable;
+import psuteparuk.insightdata.anomalydetection.event.BinaryEventLog;
+import psuteparuk.insightdata.anomalydetection.event.EventEntry;
+
+/**
+ * An event source from a {BinaryEventLog} represented as a Flowable.
+ * The records are decoded straight from the mapped file, one new entry for
+ * each one requested, so there is no text to parse.
+ */
+public class BinaryEventSource implements StreamEventSource<EventEntry> {
+    private final BinaryEventLog binaryEventLog;
+
+    public BinaryEventSource(BinaryEventLog binaryEventLog) {
+        this.binaryEventLog = binaryEventLog;
+    }
+
+    public BinaryEventLog getBinaryEventLog() {
+        return this.binaryEventLog;
+    }
+
+    /**
+     * Each subscription reads the log from its first record.
+     */
+    @Override
+    public Flowable<EventEntry> toFlowable() {
+        return Flowable.generate(
+            () -> new long[] { 0 },
+            (nextRecord, emitter) -> {
+                if (nextRecord[0] == this.binaryEventLog.getRecordCount()) {
+                    emitter.onComplete();
+                } else {
+                    emitter.onNext(this.binaryEventLog.decode(nextRecord[0]++, new EventEntry()));
+                }
+            }
+        );
+    }
+}
@@ -0,0 +1,21 @@
+package psuteparuk.insightdata.anomalydetection.io;
+
+import java.nio.ByteBuffer;
+
+/**
+ * A message that encodes itself straight into the output buffer of a
+ * {FileEventWriter}, on the writer thread, instead of being turned into
+ * a String first.
+ */
+public interface EncodedMessage {
+    /**
+     * @return an upper bound of the number of bytes of the encoded message
+     */
+    int maxLength();
+
+    /**
+     * Append the encoded message, without a line separator.
+     * @param buffer has room for at least {maxLength} bytes
+     */
+    void encodeTo(ByteBuffer buffer);
+}
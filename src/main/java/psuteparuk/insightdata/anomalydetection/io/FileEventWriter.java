@@ -1,63 +1,267 @@
 package psuteparuk.insightdata.anomalydetection.io;
 
-import java.io.FileWriter;
+import psuteparuk.insightdata.anomalydetection.metrics.PipelineMetrics;
+
 import java.io.IOException;
-import java.io.PrintWriter;
-import java.nio.file.Files;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
 import java.nio.file.Paths;
-import java.util.Collections;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
 
 import static java.nio.charset.StandardCharsets.UTF_8;
-import static java.nio.file.StandardOpenOption.APPEND;
 import static java.nio.file.StandardOpenOption.CREATE;
+import static java.nio.file.StandardOpenOption.TRUNCATE_EXISTING;
+import static java.nio.file.StandardOpenOption.WRITE;
 
 /**
  * A file writer engine that appends new content to the specified output file.
  * It clears the previous content in the constructor.
+ *
+ * The file is kept open for the life of the writer. Messages go through a bounded
+ * queue to a writer thread that appends them in groups: a group is written once
+ * it reaches {@flushBytes} or once its oldest message has waited {@flushIntervalMillis}.
+ * {@write} blocks while the queue is full, which slows the producer down
+ * instead of buffering without bound.
+ *
+ * A message is either a String or an {EncodedMessage}, which is encoded
+ * straight into the pending buffer on the writer thread.
+ *
+ * If the writer thread fails (e.g. a message cannot be encoded), the file is closed
+ * and the next {@write} or {@close} throws, instead of waiting on a queue nobody drains.
  */
 public class FileEventWriter {
-    final private String outputFilePath;
+    public static final int DEFAULT_QUEUE_CAPACITY = 8192;
+    public static final int DEFAULT_FLUSH_BYTES = 64 * 1024;
+    public static final long DEFAULT_FLUSH_INTERVAL_MILLIS = 100;
+
+    private static final byte[] LINE_SEPARATOR = System.lineSeparator().getBytes(UTF_8);
+    // Marks the end of the queue, compared by reference
+    private static final String END_OF_QUEUE = new String("");
+    // How often a producer waiting on a full queue checks that the writer thread is alive
+    private static final long FAILURE_CHECK_MILLIS = 100;
+
+    final private FileChannel fileChannel;
+    final private BlockingQueue<Object> messageQueue;
+    final private int flushBytes;
+    final private long flushIntervalNanos;
+    final private FsyncPolicy fsyncPolicy;
+    final private Thread writerThread;
+
+    // Messages waiting to be written, only used on the writer thread
+    private ByteBuffer pendingBuffer;
+    private volatile boolean isClosed = false;
+    // Why the writer thread stopped before the end of the queue, null while it runs
+    private volatile Throwable failure = null;
 
     /**
      * Assign output file and clear the content right away.
      * @param outputFilePath
      */
     public FileEventWriter(String outputFilePath) {
-        this.outputFilePath = outputFilePath;
-        this.clearFile();
+        this(outputFilePath, DEFAULT_QUEUE_CAPACITY, DEFAULT_FLUSH_BYTES, DEFAULT_FLUSH_INTERVAL_MILLIS, FsyncPolicy.NEVER);
+    }
+
+    /**
+     * @param outputFilePath
+     * @param queueCapacity maximum number of messages waiting to be written
+     * @param flushBytes size of a group of messages that is written right away
+     * @param flushIntervalMillis maximum time a message waits to be written
+     * @param fsyncPolicy
+     */
+    public FileEventWriter(
+        String outputFilePath,
+        int queueCapacity,
+        int flushBytes,
+        long flushIntervalMillis,
+        FsyncPolicy fsyncPolicy
+    ) {
+        this.fileChannel = openFile(outputFilePath);
+        this.messageQueue = new ArrayBlockingQueue<>(queueCapacity);
+        this.flushBytes = flushBytes;
+        this.flushIntervalNanos = TimeUnit.MILLISECONDS.toNanos(flushIntervalMillis);
+        this.fsyncPolicy = fsyncPolicy;
+        this.pendingBuffer = ByteBuffer.allocate(flushBytes + 1024);
+
+        this.writerThread = new Thread(this::drainQueue, "flagged-purchases-writer");
+        this.writerThread.start();
     }
 
     /**
-     * Opens an io connection and append {@message} to the output file.
+     * Queue {@message} to be appended to the output file as a new line.
+     * Block while the queue is full.
      * @param message
+     * @throws IllegalStateException if the writer is closed or has failed, or if interrupted while blocked
      */
     public void write(String message) {
+        this.submit(message);
+    }
+
+    /**
+     * Queue {@message} to be encoded and appended to the output file as a new line.
+     * Block while the queue is full.
+     * @param message
+     * @throws IllegalStateException if the writer is closed or has failed, or if interrupted while blocked
+     */
+    public void write(EncodedMessage message) {
+        this.submit(message);
+    }
+
+    private void submit(Object message) {
+        if (this.isClosed) {
+            throw new IllegalStateException("The writer is closed.");
+        }
+        if (this.failure != null) {
+            throw this.failed();
+        }
+        // Mostly the time spent blocked on a full queue
+        long start = PipelineMetrics.OUTPUT_ENQUEUE_NANOS.startTimer();
+        boolean isQueued = this.enqueue(message);
+        PipelineMetrics.OUTPUT_ENQUEUE_NANOS.stopTimer(start);
+        if (!isQueued) {
+            throw this.failed();
+        }
+    }
+
+    /**
+     * Write every queued message and close the file.
+     * Block until done. Calling it again has no effect.
+     * @throws IllegalStateException if the writer has failed, or if interrupted while blocked
+     */
+    public synchronized void close() {
+        if (this.isClosed) {
+            return;
+        }
+        this.isClosed = true;
+        boolean isQueued = this.enqueue(END_OF_QUEUE);
         try {
-            Files.write(
-                Paths.get(this.outputFilePath),
-                Collections.singletonList(message),
-                UTF_8,
-                APPEND, // Append new content
-                CREATE // If the output file is not found, create a new one.
-            );
+            this.writerThread.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        if (!isQueued || this.failure != null) {
+            throw this.failed();
+        }
+    }
+
+    /**
+     * Wait for room in the queue while the writer thread runs.
+     * @param message
+     * @return false if the writer thread has failed, the message is not queued then
+     * @throws IllegalStateException if interrupted, the message is not queued then
+     */
+    private boolean enqueue(Object message) {
+        try {
+            while (!this.messageQueue.offer(message, FAILURE_CHECK_MILLIS, TimeUnit.MILLISECONDS)) {
+                if (this.failure != null) {
+                    return false;
+                }
+            }
+            return true;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while queuing a message for the writer.", e);
+        }
+    }
+
+    private IllegalStateException failed() {
+        return new IllegalStateException("The writer has failed.", this.failure);
+    }
+
+    /**
+     * Body of the writer thread.
+     */
+    private void drainQueue() {
+        try {
+            long flushDeadline = 0;
+            while (true) {
+                Object message;
+                if (this.pendingBuffer.position() == 0) {
+                    message = this.messageQueue.take();
+                    flushDeadline = System.nanoTime() + this.flushIntervalNanos;
+                } else {
+                    message = this.messageQueue.poll(flushDeadline - System.nanoTime(), TimeUnit.NANOSECONDS);
+                }
+
+                if (message == END_OF_QUEUE) {
+                    this.flush();
+                    if (this.fsyncPolicy == FsyncPolicy.ON_CLOSE) {
+                        this.fileChannel.force(false);
+                    }
+                    this.fileChannel.close();
+                    return;
+                }
+                if (message != null) {
+                    this.append(message);
+                }
+                if (this.pendingBuffer.position() >= this.flushBytes || System.nanoTime() - flushDeadline >= 0) {
+                    this.flush();
+                }
+            }
         } catch (IOException e) {
             System.out.println("Cannot write to file. Please make sure the output folder exists.");
             System.exit(1);
+        } catch (Throwable e) {
+            // nobody drains the queue anymore, fail the producers instead of blocking them
+            this.failure = e;
+            try {
+                this.fileChannel.close();
+            } catch (IOException closeException) {
+                e.addSuppressed(closeException);
+            }
         }
     }
 
+    private void append(Object message) {
+        if (message instanceof EncodedMessage) {
+            EncodedMessage encodedMessage = (EncodedMessage) message;
+            this.ensureRemaining(encodedMessage.maxLength() + LINE_SEPARATOR.length);
+            encodedMessage.encodeTo(this.pendingBuffer);
+        } else {
+            byte[] bytes = ((String) message).getBytes(UTF_8);
+            this.ensureRemaining(bytes.length + LINE_SEPARATOR.length);
+            this.pendingBuffer.put(bytes);
+        }
+        this.pendingBuffer.put(LINE_SEPARATOR);
+    }
+
+    private void ensureRemaining(int required) {
+        if (this.pendingBuffer.remaining() < required) {
+            ByteBuffer grownBuffer = ByteBuffer.allocate(Math.max(2 * this.pendingBuffer.capacity(), this.pendingBuffer.position() + required));
+            this.pendingBuffer.flip();
+            grownBuffer.put(this.pendingBuffer);
+            this.pendingBuffer = grownBuffer;
+        }
+    }
+
+    private void flush() throws IOException {
+        if (this.pendingBuffer.position() == 0) {
+            return;
+        }
+        long start = PipelineMetrics.OUTPUT_FLUSH_NANOS.startTimer();
+        PipelineMetrics.OUTPUT_FLUSH_BYTES.record(this.pendingBuffer.position());
+        this.pendingBuffer.flip();
+        while (this.pendingBuffer.hasRemaining()) {
+            this.fileChannel.write(this.pendingBuffer);
+        }
+        this.pendingBuffer.clear();
+        if (this.fsyncPolicy == FsyncPolicy.EVERY_FLUSH) {
+            this.fileChannel.force(false);
+        }
+        PipelineMetrics.OUTPUT_FLUSH_NANOS.stopTimer(start);
+    }
+
     /**
-     * Clear the content of the output file.
+     * Open the output file, clearing its content.
      */
-    private void clearFile() {
+    private static FileChannel openFile(String outputFilePath) {
         try {
-            FileWriter fileWriter = new FileWriter(this.outputFilePath, false);
-            PrintWriter printWriter = new PrintWriter(fileWriter, false);
-            printWriter.flush();
-            printWriter.close();
-            fileWriter.close();
+            return FileChannel.open(Paths.get(outputFilePath), WRITE, CREATE, TRUNCATE_EXISTING);
         } catch (IOException e) {
-            System.out.println("Cannot clear the output file. (File may not exist.)");
+            System.out.println("Cannot write to file. Please make sure the output folder exists.");
+            System.exit(1);
+            return null;
         }
     }
 }
@@ -1,36 +1,57 @@
 package psuteparuk.insightdata.anomalydetection.io;
 
-import io.reactivex.Observer;
+import io.reactivex.Flowable;
 
-import java.io.IOException;
-import java.nio.file.Files;
-import java.nio.file.Paths;
-import java.util.stream.Stream;
+import java.io.BufferedReader;
+import java.io.InputStreamReader;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
 
 /**
- * An event source from a file stream represented as an Observable.
- * Read lines from {@inputFilePath File} and push them onto an observer via the subscribe method.
+ * An event source from a file stream represented as a Flowable.
+ * Read lines from {@inputFilePath File}, one line for each one requested, so a
+ * slow subscriber holds the reading back instead of letting lines pile up.
+ * A gzip file is inflated ahead on its own thread, see {PipelinedGzipInputStream}.
  */
 public class FileStreamEventSource implements StreamEventSource<String> {
+    public static final int DEFAULT_BUFFER_SIZE = 64 * 1024;
+
     private final String inputFilePath;
+    private final int bufferSize;
 
     public FileStreamEventSource(String inputFilePath) {
+        this(inputFilePath, DEFAULT_BUFFER_SIZE);
+    }
+
+    /**
+     * @param inputFilePath
+     * @param bufferSize number of chars read from the file at once
+     */
+    public FileStreamEventSource(String inputFilePath, int bufferSize) {
         this.inputFilePath = inputFilePath;
+        this.bufferSize = bufferSize;
     }
 
     /**
-     * Push lines from file onto {@observer}
-     * @param observer
+     * The file is opened on subscription and closed once it is read,
+     * fails or the subscription is cancelled.
      */
     @Override
-    public void subscribe(Observer<? super String> observer) {
-        try {
-            Stream<String> fileStream = Files.lines(Paths.get(this.inputFilePath));
-            fileStream.forEach(observer::onNext);
-            fileStream.close();
-            observer.onComplete();
-        } catch (IOException e) {
-            observer.onError(e);
-        }
+    public Flowable<String> toFlowable() {
+        return Flowable.generate(
+            () -> new BufferedReader(
+                new InputStreamReader(PipelinedGzipInputStream.open(this.inputFilePath), UTF_8.newDecoder()),
+                this.bufferSize
+            ),
+            (reader, emitter) -> {
+                String line = reader.readLine();
+                if (line == null) {
+                    emitter.onComplete();
+                } else {
+                    emitter.onNext(line);
+                }
+            },
+            BufferedReader::close
+        );
     }
 }
@@ -0,0 +1,13 @@
+package psuteparuk.insightdata.anomalydetection.io;
+
+/**
+ * When the {FileEventWriter} forces written data to the storage device
+ *  - NEVER leaves it to the operating system.
+ *  - EVERY_FLUSH forces after each group of messages is written.
+ *  - ON_CLOSE forces once when the writer is closed.
+ */
+public enum FsyncPolicy {
+    NEVER,
+    EVERY_FLUSH,
+    ON_CLOSE
+}
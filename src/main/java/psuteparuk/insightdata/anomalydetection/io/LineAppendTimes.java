@@ -0,0 +1,29 @@
+package psuteparuk.insightdata.anomalydetection.io;
+
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/**
+ * When the lines of a source were appended, in the order the source emits them.
+ * The source adds a time for each line it emits and the processor takes one
+ * for each line it decodes, so both sides stay aligned without tagging the lines.
+ */
+public class LineAppendTimes {
+    public static final long UNKNOWN = -1;
+
+    final private ConcurrentLinkedQueue<Long> appendTimes = new ConcurrentLinkedQueue<>();
+
+    /**
+     * @param appendTimeMicros epoch microseconds
+     */
+    public void add(long appendTimeMicros) {
+        this.appendTimes.add(appendTimeMicros);
+    }
+
+    /**
+     * @return the append time of the next line in epoch microseconds, or {@UNKNOWN}
+     */
+    public long poll() {
+        Long appendTime = this.appendTimes.poll();
+        return (appendTime == null) ? UNKNOWN : appendTime;
+    }
+}
@@ -0,0 +1,227 @@
+package psuteparuk.insightdata.anomalydetection.io;
+
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * The decompressed content of a gzip stream, inflated ahead on its own thread.
+ *
+ * The inflater thread reads and inflates into a fixed pool of {@blockCount} blocks
+ * of {@blockSize} bytes and hands the full blocks over in order. The reader gives a
+ * block back once it has consumed it, so the same buffers are reused for the whole
+ * stream and at most {@blockCount} blocks are inflated ahead of the reader. Reading
+ * the file and inflating it overlap with whatever the reader does with the bytes,
+ * e.g. decoding the lines.
+ *
+ * Concatenated gzip members are read as one stream.
+ * A stream is meant to be read by a single thread.
+ */
+public class PipelinedGzipInputStream extends InputStream {
+    public static final int DEFAULT_BLOCK_SIZE = 1 << 20;
+    public static final int DEFAULT_BLOCK_COUNT = 4;
+
+    private static final int GZIP_MAGIC = 0x8b1f;
+
+    final private InputStream compressedInput;
+    final private int blockSize;
+    final private BlockingQueue<Block> freeBlocks;
+    final private BlockingQueue<Block> fullBlocks;
+    final private Thread inflaterThread;
+
+    // Block being read, only used by the reader
+    private Block currentBlock = null;
+    private int currentPosition = 0;
+    private boolean isEnded = false;
+    private volatile IOException inflateError = null;
+    private volatile boolean isClosed = false;
+
+    /**
+     * A block of inflated bytes, a negative length marks the end of the stream.
+     */
+    private static class Block {
+        final byte[] bytes;
+        int length;
+
+        Block(int size) {
+            this.bytes = new byte[size];
+        }
+    }
+
+    public PipelinedGzipInputStream(InputStream compressedInput) {
+        this(compressedInput, DEFAULT_BLOCK_SIZE, DEFAULT_BLOCK_COUNT);
+    }
+
+    /**
+     * Start inflating right away.
+     * @param compressedInput gzip stream, closed with this stream
+     * @param blockSize size of a block of inflated bytes
+     * @param blockCount number of blocks, at least 2 so inflating and reading overlap
+     */
+    public PipelinedGzipInputStream(InputStream compressedInput, int blockSize, int blockCount) {
+        this.compressedInput = compressedInput;
+        this.blockSize = blockSize;
+        this.freeBlocks = new ArrayBlockingQueue<>(blockCount);
+        this.fullBlocks = new ArrayBlockingQueue<>(blockCount);
+        for (int i = 0; i < blockCount; i++) {
+            this.freeBlocks.add(new Block(blockSize));
+        }
+
+        this.inflaterThread = new Thread(this::inflate, "gzip-inflater");
+        this.inflaterThread.setDaemon(true);
+        this.inflaterThread.start();
+    }
+
+    /**
+     * @param filePath
+     * @return whether the file starts with the gzip magic number
+     */
+    public static boolean isGzip(String filePath) {
+        try (InputStream input = Files.newInputStream(Paths.get(filePath))) {
+            DataInputStream dataInput = new DataInputStream(input);
+            // the magic number is little-endian
+            return (dataInput.readUnsignedByte() | (dataInput.readUnsignedByte() << 8)) == GZIP_MAGIC;
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    /**
+     * @param filePath
+     * @return the decompressed content of a gzip file, or the content of any other file
+     * @throws IOException if the file cannot be opened
+     */
+    public static InputStream open(String filePath) throws IOException {
+        InputStream input = Files.newInputStream(Paths.get(filePath));
+        return isGzip(filePath) ? new PipelinedGzipInputStream(input) : input;
+    }
+
+    /**
+     * Body of the inflater thread.
+     */
+    private void inflate() {
+        try (InputStream gzipInput = new GZIPInputStream(this.compressedInput, this.blockSize)) {
+            while (true) {
+                Block block = this.freeBlocks.take();
+                int length = 0;
+                int read = 0;
+                while (length < block.bytes.length
+                    && (read = gzipInput.read(block.bytes, length, block.bytes.length - length)) != -1) {
+                    length += read;
+                }
+                if (length > 0) {
+                    block.length = length;
+                    this.fullBlocks.put(block);
+                }
+                if (read == -1) {
+                    this.putEnd();
+                    return;
+                }
+            }
+        } catch (IOException e) {
+            if (!this.isClosed) {
+                this.inflateError = e;
+                this.putEnd();
+            }
+        } catch (InterruptedException e) {
+            // closed by the reader
+        }
+    }
+
+    private void putEnd() {
+        Block end = new Block(0);
+        end.length = -1;
+        try {
+            this.fullBlocks.put(end);
+        } catch (InterruptedException e) {
+            // closed by the reader
+        }
+    }
+
+    @Override
+    public int read() throws IOException {
+        if (!this.nextBlock()) {
+            return -1;
+        }
+        return this.currentBlock.bytes[this.currentPosition++] & 0xff;
+    }
+
+    @Override
+    public int read(byte[] bytes, int offset, int length) throws IOException {
+        if (length == 0) {
+            return 0;
+        }
+        if (!this.nextBlock()) {
+            return -1;
+        }
+        int count = Math.min(length, this.currentBlock.length - this.currentPosition);
+        System.arraycopy(this.currentBlock.bytes, this.currentPosition, bytes, offset, count);
+        this.currentPosition += count;
+        return count;
+    }
+
+    @Override
+    public int available() {
+        return (this.currentBlock == null) ? 0 : this.currentBlock.length - this.currentPosition;
+    }
+
+    /**
+     * Give the consumed block back and wait for the next one if needed.
+     * @return false at the end of the stream
+     */
+    private boolean nextBlock() throws IOException {
+        if (this.isClosed) {
+            throw new IOException("Stream closed");
+        }
+        if (this.currentBlock != null && this.currentPosition < this.currentBlock.length) {
+            return true;
+        }
+        if (this.isEnded) {
+            return false;
+        }
+        if (this.currentBlock != null) {
+            this.freeBlocks.add(this.currentBlock);
+            this.currentBlock = null;
+        }
+        Block block;
+        try {
+            block = this.fullBlocks.take();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while waiting for inflated data", e);
+        }
+        if (block.length < 0) {
+            this.isEnded = true;
+            if (this.inflateError != null) {
+                throw this.inflateError;
+            }
+            return false;
+        }
+        this.currentBlock = block;
+        this.currentPosition = 0;
+        return true;
+    }
+
+    /**
+     * Stop the inflater thread and close the compressed stream.
+     */
+    @Override
+    public void close() throws IOException {
+        if (this.isClosed) {
+            return;
+        }
+        this.isClosed = true;
+        this.inflaterThread.interrupt();
+        try {
+            this.inflaterThread.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        this.compressedInput.close();
+    }
+}
@@ -0,0 +1,272 @@
+package psuteparuk.insightdata.anomalydetection.io;
+
+import io.reactivex.Emitter;
+import io.reactivex.Flowable;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.concurrent.TimeUnit;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+/**
+ * An event source listening on a local port for producers sending one JSON event
+ * per line. Several producers can be connected at the same time. Their lines
+ * are emitted in the order they were received, each connection's in its own order.
+ *
+ * A single thread serves every connection with a non-blocking Selector.
+ * Each connection has at most {@maxBufferedLines} lines waiting to be emitted
+ * (plus those of one read): past that, it is not read until some have been emitted.
+ * Its producer is then held back by the socket buffers, so a slow stream
+ * processor slows the producers down instead of filling the heap.
+ *
+ * The source completes after {@idleTimeoutMillis} without any connection,
+ * or never if it is 0. The port is opened on subscription.
+ */
+public class SocketStreamEventSource implements StreamEventSource<String> {
+    public static final String DEFAULT_HOST = "127.0.0.1";
+    public static final int DEFAULT_MAX_BUFFERED_LINES = 1024;
+    public static final int DEFAULT_BUFFER_SIZE = 64 * 1024;
+    private static final long SELECT_MILLIS = 100;
+
+    private final InetSocketAddress address;
+    private final int maxBufferedLines;
+    private final long idleTimeoutMillis;
+    private final int bufferSize;
+    // Filled when the receive times of the lines are tracked, null otherwise
+    private final LineAppendTimes lineAppendTimes;
+
+    public SocketStreamEventSource(int port, long idleTimeoutMillis) {
+        this(DEFAULT_HOST, port, DEFAULT_MAX_BUFFERED_LINES, idleTimeoutMillis, DEFAULT_BUFFER_SIZE, null);
+    }
+
+    /**
+     * @param host address to listen on
+     * @param port
+     * @param maxBufferedLines maximum number of lines of a connection waiting to be emitted
+     * @param idleTimeoutMillis time without a connection before completing, 0 to listen forever
+     * @param bufferSize number of bytes read from a connection at once
+     * @param lineAppendTimes receives the time every emitted line was received, can be null
+     */
+    public SocketStreamEventSource(
+        String host,
+        int port,
+        int maxBufferedLines,
+        long idleTimeoutMillis,
+        int bufferSize,
+        LineAppendTimes lineAppendTimes
+    ) {
+        this.address = new InetSocketAddress(host, port);
+        this.maxBufferedLines = maxBufferedLines;
+        this.idleTimeoutMillis = idleTimeoutMillis;
+        this.bufferSize = bufferSize;
+        this.lineAppendTimes = lineAppendTimes;
+    }
+
+    /**
+     * The port is closed, along with every connection, once the source completes,
+     * fails or the subscription is cancelled.
+     */
+    @Override
+    public Flowable<String> toFlowable() {
+        return Flowable.defer(() -> {
+            Server server = new Server();
+            return Flowable.generate(() -> server, Server::next, Server::close)
+                // a server waiting for new lines sees the cancellation at its next select
+                .doOnCancel(server::cancel);
+        });
+    }
+
+    /**
+     * A producer connection and the start of its line that has not been received yet.
+     */
+    private class Connection {
+        final private SocketChannel channel;
+        final private SelectionKey key;
+        private byte[] partialLine = new byte[256];
+        private int partialLength = 0;
+        private int bufferedLines = 0;
+
+        Connection(SocketChannel channel, SelectionKey key) {
+            this.channel = channel;
+            this.key = key;
+        }
+
+        void appendPartial(byte[] bytes, int offset, int length) {
+            if (this.partialLength + length > this.partialLine.length) {
+                this.partialLine = Arrays.copyOf(this.partialLine, Math.max(2 * this.partialLine.length, this.partialLength + length));
+            }
+            System.arraycopy(bytes, offset, this.partialLine, this.partialLength, length);
+            this.partialLength += length;
+        }
+
+        boolean isPaused() {
+            return this.key.isValid() && this.key.interestOps() == 0;
+        }
+    }
+
+    /**
+     * The state of one subscription.
+     */
+    private class Server {
+        final private ByteBuffer buffer = ByteBuffer.allocate(bufferSize);
+        // Lines received but not emitted yet, with their connection and receive time
+        final private ArrayDeque<String> lines = new ArrayDeque<>();
+        final private ArrayDeque<Connection> owners = new ArrayDeque<>();
+        final private ArrayDeque<Long> receiveTimes = new ArrayDeque<>();
+
+        private Selector selector = null;
+        private ServerSocketChannel serverChannel = null;
+        private int connectionCount = 0;
+        private long lastActivityNanos = System.nanoTime();
+        private volatile boolean isCancelled = false;
+
+        void cancel() {
+            this.isCancelled = true;
+            if (this.selector != null) {
+                this.selector.wakeup();
+            }
+        }
+
+        /**
+         * Emit the next line, waiting for it if needed.
+         */
+        void next(Emitter<String> emitter) throws IOException {
+            if (this.selector == null) {
+                this.selector = Selector.open();
+                this.serverChannel = ServerSocketChannel.open();
+                this.serverChannel.setOption(StandardSocketOptions.SO_REUSEADDR, true);
+                this.serverChannel.bind(address);
+                this.serverChannel.configureBlocking(false);
+                this.serverChannel.register(this.selector, SelectionKey.OP_ACCEPT);
+            }
+
+            while (this.lines.isEmpty()) {
+                if (this.isCancelled) {
+                    return;
+                }
+                if (idleTimeoutMillis > 0
+                    && this.connectionCount == 0
+                    && System.nanoTime() - this.lastActivityNanos >= TimeUnit.MILLISECONDS.toNanos(idleTimeoutMillis)) {
+                    emitter.onComplete();
+                    return;
+                }
+                this.selector.select(SELECT_MILLIS);
+                Iterator<SelectionKey> selectedKeys = this.selector.selectedKeys().iterator();
+                while (selectedKeys.hasNext()) {
+                    SelectionKey key = selectedKeys.next();
+                    selectedKeys.remove();
+                    if (!key.isValid()) {
+                        continue;
+                    }
+                    if (key.isAcceptable()) {
+                        this.accept();
+                    } else if (key.isReadable()) {
+                        this.read((Connection) key.attachment());
+                    }
+                }
+            }
+
+            Connection owner = this.owners.poll();
+            long receiveTimeMicros = this.receiveTimes.poll();
+            owner.bufferedLines--;
+            if (owner.bufferedLines < maxBufferedLines && owner.isPaused()) {
+                owner.key.interestOps(SelectionKey.OP_READ);
+            }
+            if (lineAppendTimes != null) {
+                lineAppendTimes.add(receiveTimeMicros);
+            }
+            emitter.onNext(this.lines.poll());
+        }
+
+        private void accept() throws IOException {
+            SocketChannel channel = this.serverChannel.accept();
+            if (channel == null) {
+                return;
+            }
+            channel.configureBlocking(false);
+            channel.setOption(StandardSocketOptions.TCP_NODELAY, true);
+            SelectionKey key = channel.register(this.selector, SelectionKey.OP_READ);
+            key.attach(new Connection(channel, key));
+            this.connectionCount++;
+            this.lastActivityNanos = System.nanoTime();
+        }
+
+        /**
+         * Read what the connection has sent, stop reading it once it has too many lines waiting.
+         * A connection that fails is closed like one closed by its producer.
+         */
+        private void read(Connection connection) {
+            int readCount;
+            try {
+                readCount = connection.channel.read(this.buffer);
+            } catch (IOException e) {
+                readCount = -1;
+            }
+            this.lastActivityNanos = System.nanoTime();
+            long receiveTimeMicros = TimeUnit.MILLISECONDS.toMicros(System.currentTimeMillis());
+
+            if (readCount < 0) {
+                // the last line ends with the connection
+                if (connection.partialLength > 0) {
+                    this.addLine(connection, receiveTimeMicros);
+                }
+                connection.key.cancel();
+                try {
+                    connection.channel.close();
+                } catch (IOException e) {
+                    // already closed
+                }
+                this.connectionCount--;
+                return;
+            }
+
+            byte[] bytes = this.buffer.array();
+            int start = 0;
+            for (int i = 0; i < readCount; i++) {
+                if (bytes[i] == '\n') {
+                    connection.appendPartial(bytes, start, i - start);
+                    this.addLine(connection, receiveTimeMicros);
+                    start = i + 1;
+                }
+            }
+            connection.appendPartial(bytes, start, readCount - start);
+            this.buffer.clear();
+
+            if (connection.bufferedLines >= maxBufferedLines) {
+                connection.key.interestOps(0);
+            }
+        }
+
+        private void addLine(Connection connection, long receiveTimeMicros) {
+            int length = connection.partialLength;
+            if (length > 0 && connection.partialLine[length - 1] == '\r') {
+                length--;
+            }
+            this.lines.add(new String(connection.partialLine, 0, length, UTF_8));
+            this.owners.add(connection);
+            this.receiveTimes.add(receiveTimeMicros);
+            connection.partialLength = 0;
+            connection.bufferedLines++;
+        }
+
+        void close() throws IOException {
+            if (this.selector == null) {
+                return;
+            }
+            for (SelectionKey key : this.selector.keys()) {
+                key.channel().close();
+            }
+            this.selector.close();
+        }
+    }
+}
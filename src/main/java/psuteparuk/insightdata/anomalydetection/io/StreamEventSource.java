@@ -1,10 +1,15 @@
 package psuteparuk.insightdata.anomalydetection.io;
 
-import io.reactivex.ObservableSource;
+import io.reactivex.Flowable;
 
 /**
- * A stream source of events represented as Observable
+ * A stream source of events represented as Flowable
  * @param <T>
  */
-public interface StreamEventSource<T> extends ObservableSource<T> {
+public interface StreamEventSource<T> {
+    /**
+     * @return a Flowable that reads the source again on each subscription,
+     * and only as far as its subscriber has requested
+     */
+    Flowable<T> toFlowable();
 }
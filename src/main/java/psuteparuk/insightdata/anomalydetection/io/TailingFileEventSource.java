@@ -0,0 +1,314 @@
+package psuteparuk.insightdata.anomalydetection.io;
+
+import io.reactivex.Emitter;
+import io.reactivex.Flowable;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Objects;
+import java.util.concurrent.TimeUnit;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static java.nio.file.StandardOpenOption.READ;
+import static java.nio.file.StandardWatchEventKinds.ENTRY_CREATE;
+import static java.nio.file.StandardWatchEventKinds.ENTRY_DELETE;
+import static java.nio.file.StandardWatchEventKinds.ENTRY_MODIFY;
+
+/**
+ * An event source that follows a file as it grows, like "tail -F".
+ * The lines already in {@inputFilePath File} are read first, then the source waits
+ * for more: a WatchService on the folder wakes it up as soon as the file changes,
+ * and it checks the file every {@pollMillis} anyway in case a change is not reported.
+ * New bytes are read with positional reads from where the last read stopped, and
+ * a line is only emitted once its line separator has been appended.
+ *
+ * The file is expected to be rotated or truncated by its writer:
+ *  - rotated: once the path is another file (or the file is gone and comes back),
+ *      the rest of the old file is read, then the new one from its start
+ *  - truncated: once the file is shorter than what was read, it is read again from its start
+ *
+ * The source completes after {@idleTimeoutMillis} without any new line, or never if it is 0.
+ * A last line without a line separator is emitted then.
+ * A line is emitted for each one requested, the waiting happens on the subscribing thread,
+ * and the file is read one buffer at a time as the lines are requested.
+ *
+ * The append time of a line is estimated from the file's last modification, so it is
+ * only known for the lines of a read that reached the end of the file. The lines that
+ * were already in the file when it was opened, and those read while more were waiting
+ * behind them (catching up), were appended earlier than that and get {@LineAppendTimes.UNKNOWN}.
+ */
+public class TailingFileEventSource implements StreamEventSource<String> {
+    public static final long DEFAULT_POLL_MILLIS = 100;
+    public static final int DEFAULT_BUFFER_SIZE = 64 * 1024;
+
+    private final Path inputPath;
+    private final long pollMillis;
+    private final long idleTimeoutMillis;
+    private final int bufferSize;
+    // Filled when the append times of the lines are tracked, null otherwise
+    private final LineAppendTimes lineAppendTimes;
+
+    public TailingFileEventSource(String inputFilePath, long pollMillis, long idleTimeoutMillis) {
+        this(inputFilePath, pollMillis, idleTimeoutMillis, DEFAULT_BUFFER_SIZE, null);
+    }
+
+    /**
+     * @param inputFilePath
+     * @param pollMillis maximum time between two checks of the file
+     * @param idleTimeoutMillis time without a new line before completing, 0 to follow the file forever
+     * @param bufferSize number of bytes read from the file at once
+     * @param lineAppendTimes receives the estimated append time of every emitted line, or
+     *     {@LineAppendTimes.UNKNOWN} when the line was read while catching up, can be null
+     */
+    public TailingFileEventSource(
+        String inputFilePath,
+        long pollMillis,
+        long idleTimeoutMillis,
+        int bufferSize,
+        LineAppendTimes lineAppendTimes
+    ) {
+        this.inputPath = Paths.get(inputFilePath).toAbsolutePath();
+        this.pollMillis = pollMillis;
+        this.idleTimeoutMillis = idleTimeoutMillis;
+        this.bufferSize = bufferSize;
+        this.lineAppendTimes = lineAppendTimes;
+    }
+
+    /**
+     * The file and the watch service are opened on subscription and closed once
+     * the source completes, fails or the subscription is cancelled.
+     */
+    @Override
+    public Flowable<String> toFlowable() {
+        return Flowable.defer(() -> {
+            Tail tail = new Tail();
+            return Flowable.generate(() -> tail, Tail::next, Tail::close)
+                // a tail waiting for new lines sees the cancellation at its next check
+                .doOnCancel(tail::cancel);
+        });
+    }
+
+    /**
+     * The state of one subscription.
+     */
+    private class Tail {
+        final private ByteBuffer buffer = ByteBuffer.allocate(bufferSize);
+        // Lines read but not emitted yet, with their append times
+        final private ArrayDeque<String> lines = new ArrayDeque<>();
+        final private ArrayDeque<Long> appendTimes = new ArrayDeque<>();
+        // The start of a line whose separator has not been read yet
+        private byte[] partialLine = new byte[256];
+        private int partialLength = 0;
+
+        private WatchService watchService = null;
+        private FileChannel channel = null;
+        private Object fileKey = null;
+        private long position = 0;
+        // The end of what was in the file when it was opened, read while catching up
+        private long catchUpPosition = 0;
+        private long lastLineNanos = System.nanoTime();
+        private boolean isIdle = false;
+        private volatile boolean isCancelled = false;
+
+        void cancel() {
+            this.isCancelled = true;
+        }
+
+        /**
+         * Emit the next line, waiting for it if needed.
+         */
+        void next(Emitter<String> emitter) throws IOException, InterruptedException {
+            if (this.watchService == null) {
+                this.watchService = FileSystems.getDefault().newWatchService();
+                inputPath.getParent().register(this.watchService, ENTRY_CREATE, ENTRY_MODIFY, ENTRY_DELETE);
+            }
+
+            if (this.isIdle && this.lines.isEmpty()) {
+                emitter.onComplete();
+                return;
+            }
+            while (this.lines.isEmpty()) {
+                if (this.isCancelled) {
+                    return;
+                }
+                if (this.readLines()) {
+                    continue;
+                }
+                if (this.followFile()) {
+                    continue;
+                }
+                if (idleTimeoutMillis > 0
+                    && System.nanoTime() - this.lastLineNanos >= TimeUnit.MILLISECONDS.toNanos(idleTimeoutMillis)) {
+                    // the writer is done, a last line without a separator is complete
+                    if (this.partialLength > 0) {
+                        this.addLine(this.position > this.catchUpPosition ? appendTimeMicros() : LineAppendTimes.UNKNOWN);
+                        this.isIdle = true;
+                        break;
+                    }
+                    emitter.onComplete();
+                    return;
+                }
+                this.awaitChange();
+            }
+
+            long appendTimeMicros = this.appendTimes.poll();
+            if (lineAppendTimes != null) {
+                lineAppendTimes.add(appendTimeMicros);
+            }
+            emitter.onNext(this.lines.poll());
+        }
+
+        /**
+         * Read what has been appended since the last read, until a buffer completes
+         * at least one line or the end of the file is reached.
+         * @return true if anything was read
+         */
+        private boolean readLines() throws IOException {
+            if (this.channel == null) {
+                return false;
+            }
+            boolean hasRead = false;
+            int readCount;
+            while ((readCount = this.channel.read(this.buffer, this.position)) > 0) {
+                long bufferPosition = this.position;
+                this.position += readCount;
+                boolean isAtEnd = this.buffer.hasRemaining() || this.position >= this.channel.size();
+                this.buffer.flip();
+                int lineCount = this.splitLines(bufferPosition, isAtEnd ? appendTimeMicros() : LineAppendTimes.UNKNOWN);
+                this.buffer.clear();
+                hasRead = true;
+                if (lineCount > 0) {
+                    break;
+                }
+            }
+            return hasRead;
+        }
+
+        /**
+         * @param bufferPosition position of the buffer in the file
+         * @param appendTimeMicros append time of the lines of the buffer, if they are not catching up
+         * @return the number of lines completed by the buffer
+         */
+        private int splitLines(long bufferPosition, long appendTimeMicros) {
+            byte[] bytes = this.buffer.array();
+            int start = 0;
+            int end = this.buffer.limit();
+            int lineCount = 0;
+            for (int i = 0; i < end; i++) {
+                if (bytes[i] == '\n') {
+                    this.appendPartial(bytes, start, i - start);
+                    this.addLine(bufferPosition + i < this.catchUpPosition ? LineAppendTimes.UNKNOWN : appendTimeMicros);
+                    start = i + 1;
+                    lineCount++;
+                }
+            }
+            this.appendPartial(bytes, start, end - start);
+            return lineCount;
+        }
+
+        private void appendPartial(byte[] bytes, int offset, int length) {
+            if (this.partialLength + length > this.partialLine.length) {
+                this.partialLine = Arrays.copyOf(this.partialLine, Math.max(2 * this.partialLine.length, this.partialLength + length));
+            }
+            System.arraycopy(bytes, offset, this.partialLine, this.partialLength, length);
+            this.partialLength += length;
+        }
+
+        private void addLine(long appendTimeMicros) {
+            int length = this.partialLength;
+            if (length > 0 && this.partialLine[length - 1] == '\r') {
+                length--;
+            }
+            this.lines.add(new String(this.partialLine, 0, length, UTF_8));
+            this.appendTimes.add(appendTimeMicros);
+            this.partialLength = 0;
+            this.lastLineNanos = System.nanoTime();
+        }
+
+        /**
+         * Open the file, or reopen it once it has been rotated or truncated.
+         * @return true if there may be something new to read
+         */
+        private boolean followFile() throws IOException {
+            BasicFileAttributes attributes;
+            try {
+                attributes = Files.readAttributes(inputPath, BasicFileAttributes.class);
+            } catch (NoSuchFileException e) {
+                return false; // rotated away, wait for the new file
+            }
+
+            if (this.channel != null && Objects.equals(attributes.fileKey(), this.fileKey)) {
+                if (attributes.size() >= this.position) {
+                    return false;
+                }
+                // truncated, what was left of a line is gone with it
+                this.position = 0;
+                this.catchUpPosition = attributes.size();
+                this.partialLength = 0;
+                return true;
+            }
+
+            // a new file: the old one has been read to its end, its last line ends with it
+            if (this.channel != null) {
+                if (this.partialLength > 0) {
+                    // the modification time of the old file is not known anymore
+                    this.addLine(LineAppendTimes.UNKNOWN);
+                }
+                this.channel.close();
+                this.channel = null;
+            }
+            try {
+                this.channel = FileChannel.open(inputPath, READ);
+            } catch (NoSuchFileException e) {
+                return false;
+            }
+            this.fileKey = attributes.fileKey();
+            this.position = 0;
+            this.catchUpPosition = attributes.size();
+            return true;
+        }
+
+        /**
+         * Wait until the folder of the file changes, or for {@pollMillis} at most.
+         */
+        private void awaitChange() throws InterruptedException {
+            WatchKey watchKey = this.watchService.poll(pollMillis, TimeUnit.MILLISECONDS);
+            if (watchKey != null) {
+                watchKey.pollEvents();
+                watchKey.reset();
+            }
+        }
+
+        /**
+         * The file's last modification, which is when the lines of a read that reached
+         * the end of the file were appended or shortly after.
+         */
+        private long appendTimeMicros() {
+            try {
+                return Files.getLastModifiedTime(inputPath).to(TimeUnit.MICROSECONDS);
+            } catch (IOException e) {
+                return TimeUnit.MILLISECONDS.toMicros(System.currentTimeMillis());
+            }
+        }
+
+        void close() throws IOException {
+            if (this.channel != null) {
+                this.channel.close();
+            }
+            if (this.watchService != null) {
+                this.watchService.close();
+            }
+        }
+    }
+}
@@ -0,0 +1,43 @@
+package psuteparuk.insightdata.anomalydetection.metrics;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A count of events, e.g. parsed lines.
+ * It only counts while its registry is enabled. Threads add to separate cells
+ * of a LongAdder, so counting from several threads does not contend.
+ */
+public class Counter implements CounterMBean {
+    final private String name;
+    final private MetricsRegistry registry;
+    final private LongAdder count = new LongAdder();
+
+    Counter(String name, MetricsRegistry registry) {
+        this.name = name;
+        this.registry = registry;
+    }
+
+    public String getName() {
+        return this.name;
+    }
+
+    public void increment() {
+        this.add(1);
+    }
+
+    public void add(long amount) {
+        if (this.registry.isEnabled()) {
+            this.count.add(amount);
+        }
+    }
+
+    @Override
+    public long getCount() {
+        return this.count.sum();
+    }
+
+    @Override
+    public String toString() {
+        return this.name + "=" + this.getCount();
+    }
+}
@@ -0,0 +1,8 @@
+package psuteparuk.insightdata.anomalydetection.metrics;
+
+/**
+ * JMX view of a {Counter}.
+ */
+public interface CounterMBean {
+    long getCount();
+}
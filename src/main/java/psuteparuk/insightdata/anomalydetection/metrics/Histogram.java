@@ -0,0 +1,149 @@
+package psuteparuk.insightdata.anomalydetection.metrics;
+
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * The distribution of non-negative values, e.g. latencies in nanoseconds or group sizes.
+ * It only records while its registry is enabled.
+ *
+ * Values are counted in power-of-two buckets: bucket 0 holds 0, bucket i holds
+ * [2^(i-1), 2^i). Recording is a leading-zero count and a few LongAdder
+ * additions, with no lock and no allocation. Percentiles are therefore the upper
+ * bound of a bucket, within a factor of two of the exact value.
+ *
+ * Time a section with:
+ *  long start = histogram.startTimer(); ... histogram.stopTimer(start);
+ */
+public class Histogram implements HistogramMBean {
+    private static final int BUCKET_COUNT = 64;
+    private static final long NOT_TIMED = Long.MIN_VALUE;
+
+    final private String name;
+    final private MetricsRegistry registry;
+    final private LongAdder[] buckets = new LongAdder[BUCKET_COUNT];
+    final private LongAdder count = new LongAdder();
+    final private LongAdder sum = new LongAdder();
+    final private LongAccumulator max = new LongAccumulator(Long::max, 0);
+
+    Histogram(String name, MetricsRegistry registry) {
+        this.name = name;
+        this.registry = registry;
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            this.buckets[i] = new LongAdder();
+        }
+    }
+
+    public String getName() {
+        return this.name;
+    }
+
+    /**
+     * @param value negative values are recorded as 0
+     */
+    public void record(long value) {
+        if (!this.registry.isEnabled()) {
+            return;
+        }
+        long recorded = Math.max(0, value);
+        this.buckets[bucketOf(recorded)].increment();
+        this.count.increment();
+        this.sum.add(recorded);
+        this.max.accumulate(recorded);
+    }
+
+    /**
+     * @return the start of a timed section, to pass to {@stopTimer}
+     */
+    public long startTimer() {
+        return this.registry.isEnabled() ? System.nanoTime() : NOT_TIMED;
+    }
+
+    /**
+     * Record the nanoseconds since {@start}.
+     * @param start
+     */
+    public void stopTimer(long start) {
+        if (start != NOT_TIMED) {
+            this.record(System.nanoTime() - start);
+        }
+    }
+
+    @Override
+    public long getCount() {
+        return this.count.sum();
+    }
+
+    @Override
+    public long getSum() {
+        return this.sum.sum();
+    }
+
+    @Override
+    public long getMax() {
+        return this.max.get();
+    }
+
+    @Override
+    public double getMean() {
+        long count = this.getCount();
+        return (count == 0) ? 0.0 : (double) this.getSum() / count;
+    }
+
+    @Override
+    public long getP50() {
+        return this.getPercentile(0.5);
+    }
+
+    @Override
+    public long getP99() {
+        return this.getPercentile(0.99);
+    }
+
+    @Override
+    public long getP999() {
+        return this.getPercentile(0.999);
+    }
+
+    /**
+     * @param quantile between 0 and 1
+     * @return the upper bound of the bucket holding the value at {@quantile}, 0 if nothing was recorded
+     */
+    public long getPercentile(double quantile) {
+        long[] counts = new long[BUCKET_COUNT];
+        long total = 0;
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            counts[i] = this.buckets[i].sum();
+            total += counts[i];
+        }
+        if (total == 0) {
+            return 0;
+        }
+        long rank = Math.max(1, (long) Math.ceil(quantile * total));
+        long seen = 0;
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            seen += counts[i];
+            if (seen >= rank) {
+                return Math.min(upperBoundOf(i), this.getMax());
+            }
+        }
+        return this.getMax();
+    }
+
+    @Override
+    public String toString() {
+        return this.name + "{count=" + this.getCount()
+            + ", mean=" + Math.round(this.getMean())
+            + ", p50=" + this.getP50()
+            + ", p99=" + this.getP99()
+            + ", max=" + this.getMax() + "}";
+    }
+
+    static int bucketOf(long value) {
+        return (value == 0) ? 0 : BUCKET_COUNT - Long.numberOfLeadingZeros(value);
+    }
+
+    private static long upperBoundOf(int bucket) {
+        return (bucket == 0) ? 0 : (bucket == BUCKET_COUNT - 1) ? Long.MAX_VALUE : (1L << bucket) - 1;
+    }
+}
@@ -0,0 +1,14 @@
+package psuteparuk.insightdata.anomalydetection.metrics;
+
+/**
+ * JMX view of a {Histogram}.
+ */
+public interface HistogramMBean {
+    long getCount();
+    long getSum();
+    long getMax();
+    double getMean();
+    long getP50();
+    long getP99();
+    long getP999();
+}
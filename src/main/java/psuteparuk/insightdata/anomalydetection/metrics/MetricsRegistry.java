@@ -0,0 +1,84 @@
+package psuteparuk.insightdata.anomalydetection.metrics;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.StringJoiner;
+
+/**
+ * Named counters and histograms, in the order they were created.
+ * The registry starts disabled: its metrics ignore what they are given until
+ * it is enabled, so an instrumented section costs a volatile read.
+ *
+ * Each metric can be exposed as an MBean named
+ * "{@domain}:type=Counter|Histogram,name={@name}".
+ */
+public class MetricsRegistry {
+    final private Map<String, Counter> counters = new LinkedHashMap<>();
+    final private Map<String, Histogram> histograms = new LinkedHashMap<>();
+    private volatile boolean isEnabled = false;
+
+    public boolean isEnabled() {
+        return this.isEnabled;
+    }
+
+    public void setEnabled(boolean isEnabled) {
+        this.isEnabled = isEnabled;
+    }
+
+    /**
+     * @param name
+     * @return the counter with that name, created if there is none
+     */
+    public synchronized Counter counter(String name) {
+        return this.counters.computeIfAbsent(name, (counterName) -> new Counter(counterName, this));
+    }
+
+    /**
+     * @param name
+     * @return the histogram with that name, created if there is none
+     */
+    public synchronized Histogram histogram(String name) {
+        return this.histograms.computeIfAbsent(name, (histogramName) -> new Histogram(histogramName, this));
+    }
+
+    /**
+     * Register an MBean for every metric created so far.
+     * @param mBeanServer
+     * @param domain
+     * @throws JMException if a metric cannot be registered, e.g. it already is
+     */
+    public synchronized void registerMBeans(MBeanServer mBeanServer, String domain) throws JMException {
+        for (Counter counter : this.counters.values()) {
+            mBeanServer.registerMBean(counter, objectName(domain, "Counter", counter.getName()));
+        }
+        for (Histogram histogram : this.histograms.values()) {
+            mBeanServer.registerMBean(histogram, objectName(domain, "Histogram", histogram.getName()));
+        }
+    }
+
+    /**
+     * @return one line with the value of every metric that has recorded something
+     */
+    public synchronized String summary() {
+        StringJoiner summary = new StringJoiner(", ", "Metrics: ", "");
+        List<Object> metrics = new ArrayList<>();
+        metrics.addAll(this.counters.values());
+        metrics.addAll(this.histograms.values());
+        for (Object metric : metrics) {
+            long count = (metric instanceof Counter) ? ((Counter) metric).getCount() : ((Histogram) metric).getCount();
+            if (count > 0) {
+                summary.add(metric.toString());
+            }
+        }
+        return summary.toString();
+    }
+
+    private static ObjectName objectName(String domain, String type, String name) throws JMException {
+        return new ObjectName(domain + ":type=" + type + ",name=" + ObjectName.quote(name));
+    }
+}
@@ -0,0 +1,74 @@
+package psuteparuk.insightdata.anomalydetection.metrics;
+
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import javax.management.JMException;
+
+/**
+ * The metrics of the pipeline stages, shared by the processors, the network and
+ * the writer. They are disabled until {@enable} is called.
+ *
+ * Latencies are in nanoseconds. Group sizes are the number of users in a "depth"
+ * group, merge lengths the number of purchases a merge takes (at most T).
+ */
+public final class PipelineMetrics {
+    public static final String JMX_DOMAIN = "psuteparuk.insightdata.anomalydetection";
+    public static final MetricsRegistry REGISTRY = new MetricsRegistry();
+
+    // Parsing
+    public static final Counter LINES_PARSED = REGISTRY.counter("lines.parsed");
+    public static final Counter LINES_INVALID = REGISTRY.counter("lines.invalid");
+    public static final Histogram PARSE_NANOS = REGISTRY.histogram("parse.nanos");
+
+    // Stream events
+    public static final Counter PURCHASES = REGISTRY.counter("stream.purchases");
+    public static final Counter FRIENDSHIP_CHANGES = REGISTRY.counter("stream.friendshipChanges");
+    public static final Counter ANOMALIES = REGISTRY.counter("stream.anomalies");
+    public static final Histogram ANOMALY_CHECK_NANOS = REGISTRY.histogram("anomalyCheck.nanos");
+    // From the append of a flagged purchase to the log to its flag, when the source tracks it
+    public static final Histogram FLAG_LAG_MICROS = REGISTRY.histogram("flag.lag.micros");
+
+    // Network
+    public static final Histogram DEPTH_GROUP_NANOS = REGISTRY.histogram("depthGroup.nanos");
+    public static final Histogram GROUP_SIZE = REGISTRY.histogram("depthGroup.size");
+    public static final Histogram MERGE_NANOS = REGISTRY.histogram("merge.nanos");
+    public static final Histogram MERGE_LENGTH = REGISTRY.histogram("merge.length");
+
+    // Output
+    public static final Histogram OUTPUT_ENQUEUE_NANOS = REGISTRY.histogram("output.enqueue.nanos");
+    public static final Histogram OUTPUT_FLUSH_NANOS = REGISTRY.histogram("output.flush.nanos");
+    public static final Histogram OUTPUT_FLUSH_BYTES = REGISTRY.histogram("output.flush.bytes");
+
+    private PipelineMetrics() {
+    }
+
+    /**
+     * Start recording, expose the metrics as MBeans of the platform MBean server
+     * and print a summary line every {@summaryIntervalMillis}.
+     * @param summaryIntervalMillis 0 disables the summary line
+     */
+    public static void enable(long summaryIntervalMillis) {
+        REGISTRY.setEnabled(true);
+        try {
+            REGISTRY.registerMBeans(ManagementFactory.getPlatformMBeanServer(), JMX_DOMAIN);
+        } catch (JMException e) {
+            System.out.println("Cannot register the metrics MBeans: " + e.getMessage());
+        }
+
+        if (summaryIntervalMillis > 0) {
+            ScheduledExecutorService reporter = Executors.newSingleThreadScheduledExecutor((runnable) -> {
+                Thread thread = new Thread(runnable, "metrics-reporter");
+                thread.setDaemon(true);
+                return thread;
+            });
+            reporter.scheduleAtFixedRate(
+                () -> System.out.println(REGISTRY.summary()),
+                summaryIntervalMillis,
+                summaryIntervalMillis,
+                TimeUnit.MILLISECONDS
+            );
+        }
+    }
+}
@@ -0,0 +1,141 @@
+package psuteparuk.insightdata.anomalydetection.network;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * A bounded cache of "depth" groups keyed by user ID.
+ *
+ * A depth group only depends on the neighbors of the nodes that the
+ * breadth-first-search expanded, i.e. the nodes less than {@depthDegree} hops
+ * away from the user. Each entry remembers the adjacency version of those nodes
+ * at the time of the search. A befriend or unfriend that could change the group
+ * must add or remove a neighbor of one of them, which bumps its version,
+ * so comparing versions tells exactly whether the entry is still valid.
+ *
+ * The least recently used entry is evicted once the cache is full.
+ */
+public class DepthGroupCache {
+    final private int capacity;
+    final private Map<String, Entry> entries;
+
+    private long hitCount;
+    private long missCount;
+    private long invalidationCount;
+    private long evictionCount;
+
+    @SuppressWarnings("serial") // the entries are never serialized
+    public DepthGroupCache(int capacity) {
+        this.capacity = capacity;
+        // access-ordered so the eldest entry is the least recently used one
+        this.entries = new LinkedHashMap<String, Entry>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Entry> eldest) {
+                if (size() > DepthGroupCache.this.capacity) {
+                    evictionCount++;
+                    return true;
+                }
+                return false;
+            }
+        };
+    }
+
+    public boolean isEnabled() {
+        return this.capacity > 0;
+    }
+
+    /**
+     * @param userId
+     * @param network network the group was computed from
+     * @return the cached group, or null if there is none or it is stale
+     */
+    public Set<String> get(String userId, SocialNetwork<?> network) {
+        Entry entry = this.entries.get(userId);
+        if (entry == null) {
+            this.missCount++;
+            return null;
+        }
+        for (int i = 0; i < entry.expandedIds.length; i++) {
+            if (network.getVersion(entry.expandedIds[i]) != entry.expandedVersions[i]) {
+                this.entries.remove(userId);
+                this.invalidationCount++;
+                this.missCount++;
+                return null;
+            }
+        }
+        this.hitCount++;
+        return entry.depthGroup;
+    }
+
+    /**
+     * @param userId
+     * @param depthGroup
+     * @param expandedIds nodes whose neighbors were visited to build the group
+     * @param network network the group was computed from
+     */
+    public void put(String userId, Set<String> depthGroup, List<String> expandedIds, SocialNetwork<?> network) {
+        if (!this.isEnabled()) {
+            return;
+        }
+        String[] ids = expandedIds.toArray(new String[expandedIds.size()]);
+        long[] versions = new long[ids.length];
+        for (int i = 0; i < ids.length; i++) {
+            versions[i] = network.getVersion(ids[i]);
+        }
+        this.entries.put(userId, new Entry(depthGroup, ids, versions));
+    }
+
+    /**
+     * Drop every entry, e.g. when the depth parameter changes.
+     */
+    public void clear() {
+        this.entries.clear();
+    }
+
+    /**
+     * Counters
+     */
+
+    public long getHitCount() {
+        return this.hitCount;
+    }
+
+    public long getMissCount() {
+        return this.missCount;
+    }
+
+    public long getInvalidationCount() {
+        return this.invalidationCount;
+    }
+
+    public long getEvictionCount() {
+        return this.evictionCount;
+    }
+
+    public int size() {
+        return this.entries.size();
+    }
+
+    @Override
+    public String toString() {
+        return "Depth group cache: size=" + this.size()
+            + ", hits=" + this.hitCount
+            + ", misses=" + this.missCount
+            + ", invalidations=" + this.invalidationCount
+            + ", evictions=" + this.evictionCount;
+    }
+
+    private static class Entry {
+        final private Set<String> depthGroup;
+        final private String[] expandedIds;
+        final private long[] expandedVersions;
+
+        Entry(Set<String> depthGroup, String[] expandedIds, long[] expandedVersions) {
+            this.depthGroup = depthGroup;
+            this.expandedIds = expandedIds;
+            this.expandedVersions = expandedVersions;
+        }
+    }
+}
@@ -0,0 +1,12 @@
+package psuteparuk.insightdata.anomalydetection.network;
+
+/**
+ * How {UserNetwork} finds the "depth" group of a buyer
+ *  - SEARCH runs a breadth-first search on each purchase, with the results kept in the {DepthGroupCache}.
+ *  - INCREMENTAL keeps every group up to date on each befriend and unfriend
+ *      in a {ReachabilityIndex}, so a purchase reads its group without a search.
+ */
+public enum DepthGroupMode {
+    SEARCH,
+    INCREMENTAL
+}
@@ -0,0 +1,117 @@
+package psuteparuk.insightdata.anomalydetection.network;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.IntConsumer;
+import java.util.stream.IntStream;
+
+/**
+ * Event indexes of a batch partitioned by user, so that each user's
+ * events can be applied by a single thread.
+ * The indexes of a user are kept in log order in one shared int array.
+ */
+class EventPartition {
+    final private List<String> userIds = new ArrayList<>();
+    final private Map<String, Integer> userPositions = new HashMap<>();
+    private int[] eventCounts = new int[16];
+    private int[] offsets;
+    private int[] eventIndexes;
+
+    // Events are added in two passes, first counted then placed
+    private int[] cursors = null;
+
+    int size() {
+        return this.userIds.size();
+    }
+
+    String getUserId(int user) {
+        return this.userIds.get(user);
+    }
+
+    int getStart(int user) {
+        return this.offsets[user];
+    }
+
+    int getEnd(int user) {
+        return this.offsets[user + 1];
+    }
+
+    int[] getEventIndexes() {
+        return this.eventIndexes;
+    }
+
+    /**
+     * First pass: count an event of {@userId}.
+     * @param userId
+     * @return the position of the user, to place the event with
+     */
+    int count(String userId) {
+        Integer user = this.userPositions.get(userId);
+        if (user == null) {
+            user = this.userIds.size();
+            this.userIds.add(userId);
+            this.userPositions.put(userId, user);
+            if (user == this.eventCounts.length) {
+                this.eventCounts = Arrays.copyOf(this.eventCounts, user << 1);
+            }
+        }
+        this.eventCounts[user]++;
+        return user;
+    }
+
+    /**
+     * Second pass: place the event {@eventIndex} of the user at position {@user}.
+     * Events must be placed in the same order as they were counted.
+     * @param user
+     * @param eventIndex
+     */
+    void place(int user, int eventIndex) {
+        if (this.cursors == null) {
+            this.computeOffsets();
+        }
+        this.eventIndexes[this.cursors[user]++] = eventIndex;
+    }
+
+    private void computeOffsets() {
+        int userCount = this.userIds.size();
+        this.offsets = new int[userCount + 1];
+        for (int user = 0; user < userCount; user++) {
+            this.offsets[user + 1] = this.offsets[user] + this.eventCounts[user];
+        }
+        this.eventIndexes = new int[this.offsets[userCount]];
+        this.cursors = Arrays.copyOf(this.offsets, userCount);
+    }
+
+    /**
+     * Run {@action} for every user, spread over {@parallelism} threads.
+     * @param parallelism
+     * @param action called with the user position
+     */
+    void forEachUser(int parallelism, IntConsumer action) {
+        this.forEachUser(0, this.size(), parallelism, action);
+    }
+
+    /**
+     * Run {@action} for the users at positions [{@start}, {@end}).
+     * @param start
+     * @param end
+     * @param parallelism
+     * @param action called with the user position
+     */
+    void forEachUser(int start, int end, int parallelism, IntConsumer action) {
+        if (parallelism <= 1) {
+            IntStream.range(start, end).forEach(action);
+            return;
+        }
+        ForkJoinPool pool = new ForkJoinPool(parallelism);
+        try {
+            pool.submit(() -> IntStream.range(start, end).parallel().forEach(action)).join();
+        } finally {
+            pool.shutdown();
+        }
+    }
+}
@@ -0,0 +1,45 @@
+package psuteparuk.insightdata.anomalydetection.network;
+
+import java.util.Collection;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+/**
+ * Backend that stores the nodes of a SocialNetwork.
+ * Every node has an ID, its data, a set of neighbor IDs and an adjacency version.
+ * Neighbor operations are one-directional, the SocialNetwork keeps edges symmetric.
+ * @param <T>
+ */
+public interface GraphStorage<T> {
+    boolean contains(String nodeId);
+
+    T getData(String nodeId) throws NoSuchElementException;
+
+    /**
+     * Update the data of the node, creating the node if it does not exist.
+     * @param nodeId
+     * @param nodeData
+     */
+    void putData(String nodeId, T nodeData);
+
+    Set<String> getNeighborIds(String nodeId) throws NoSuchElementException;
+
+    /**
+     * @return whether the neighbor set of {@nodeId} has changed
+     */
+    boolean addNeighbor(String nodeId, String neighborId) throws NoSuchElementException;
+
+    /**
+     * @return whether the neighbor set of {@nodeId} has changed
+     */
+    boolean removeNeighbor(String nodeId, String neighborId) throws NoSuchElementException;
+
+    long getVersion(String nodeId) throws NoSuchElementException;
+
+    int size();
+
+    /**
+     * @return a read-only view of every node ID
+     */
+    Collection<String> getNodeIds();
+}
@@ -0,0 +1,21 @@
+package psuteparuk.insightdata.anomalydetection.network;
+
+/**
+ * Available GraphStorage backends
+ *  - HASH keeps a HashMap of GraphNode objects, each holding a HashSet of neighbor IDs.
+ *  - INTERNED maps IDs to dense ints and keeps neighbors in primitive int sets.
+ */
+public enum GraphStorageType {
+    HASH,
+    INTERNED;
+
+    public <T> GraphStorage<T> create() {
+        switch (this) {
+            case INTERNED:
+                return new InternedGraphStorage<>();
+            case HASH:
+            default:
+                return new HashGraphStorage<>();
+        }
+    }
+}
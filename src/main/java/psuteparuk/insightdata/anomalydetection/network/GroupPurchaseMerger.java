@@ -0,0 +1,200 @@
+package psuteparuk.insightdata.anomalydetection.network;
+
+import psuteparuk.insightdata.anomalydetection.metrics.PipelineMetrics;
+
+import java.util.Arrays;
+
+/**
+ * Merge the purchases of a group of users, newest first, and aggregate the
+ * latest ones into GroupStats without building the merged list.
+ *
+ * Each member's purchases are already sorted by timestamp, so we keep a cursor
+ * (the age of the next purchase to take) per member and a binary max-heap of
+ * member slots keyed by the purchase key (timestamp, then arrival) under their cursor. Every pop feeds the
+ * amount into a running sum and sum of squares, which is all the mean and sd need.
+ *
+ * A member can also be given purchases that are not in its UserData yet (see
+ * {PurchaseEpoch}): they are read as its newest ones, in front of those of its
+ * UserData, as if they had been added to it.
+ *
+ * The member, cursor and heap arrays are reused between calls and only grow,
+ * so a merge does not allocate once they are large enough for the biggest group.
+ * An instance is not thread-safe.
+ */
+class GroupPurchaseMerger {
+    private UserData[] members = new UserData[16];
+    private int[] purchaseCounts = new int[16];
+    // purchases not added to the member's UserData yet, oldest first
+    private long[][] pendingKeys = new long[16][];
+    private double[][] pendingAmounts = new double[16][];
+    private int[] pendingCounts = new int[16];
+    private int[] cursors = new int[16];
+    private int[] heap = new int[16]; // member slots
+    private long[] heapKeys = new long[16]; // purchase key under each slot's cursor
+    private int memberCount;
+    private int heapSize;
+
+    /**
+     * Start a new merge.
+     */
+    void reset() {
+        // drop the references so the merger does not keep users alive
+        Arrays.fill(this.members, 0, this.memberCount, null);
+        Arrays.fill(this.pendingKeys, 0, this.memberCount, null);
+        Arrays.fill(this.pendingAmounts, 0, this.memberCount, null);
+        this.memberCount = 0;
+        this.heapSize = 0;
+    }
+
+    /**
+     * Add a member whose purchases take part in the merge.
+     * Members without any purchase are ignored.
+     * @param userData
+     */
+    void addMember(UserData userData) {
+        this.addMember(userData, null, null, 0);
+    }
+
+    /**
+     * Add a member as if its {@pendingCount} first pending purchases had been added to it.
+     * @param userData
+     * @param pendingKeys keys of the pending purchases, oldest first
+     * @param pendingAmounts amounts of the pending purchases, oldest first
+     * @param pendingCount
+     */
+    void addMember(UserData userData, long[] pendingKeys, double[] pendingAmounts, int pendingCount) {
+        int purchaseCount = Math.min(
+            userData.getTrackedNumberOfPurchases(),
+            userData.getPurchaseCount() + pendingCount
+        );
+        if (purchaseCount == 0) {
+            return;
+        }
+        if (this.memberCount == this.members.length) {
+            int capacity = this.memberCount << 1;
+            this.members = Arrays.copyOf(this.members, capacity);
+            this.purchaseCounts = Arrays.copyOf(this.purchaseCounts, capacity);
+            this.pendingKeys = Arrays.copyOf(this.pendingKeys, capacity);
+            this.pendingAmounts = Arrays.copyOf(this.pendingAmounts, capacity);
+            this.pendingCounts = Arrays.copyOf(this.pendingCounts, capacity);
+            this.cursors = Arrays.copyOf(this.cursors, capacity);
+            this.heap = Arrays.copyOf(this.heap, capacity);
+            this.heapKeys = Arrays.copyOf(this.heapKeys, capacity);
+        }
+        int slot = this.memberCount++;
+        this.members[slot] = userData;
+        this.purchaseCounts[slot] = purchaseCount;
+        this.pendingKeys[slot] = pendingKeys;
+        this.pendingAmounts[slot] = pendingAmounts;
+        this.pendingCounts[slot] = pendingCount;
+        this.cursors[slot] = 0;
+        this.heap[this.heapSize] = slot;
+        this.heapKeys[this.heapSize] = this.keyOf(slot);
+        this.heapSize++;
+    }
+
+    /**
+     * Take the {@trackedNumber} latest purchases across all members
+     * and calculate their mean and sd in the same pass.
+     * @param trackedNumber
+     * @return the stats of the latest purchases
+     */
+    GroupStats aggregate(int trackedNumber) {
+        long start = PipelineMetrics.MERGE_NANOS.startTimer();
+        this.heapify();
+        double sum = 0.0;
+        double sumOfSquares = 0.0;
+        int count = 0;
+        while (this.heapSize > 0 && count < trackedNumber) {
+            double amount = this.amountOf(this.heap[0]);
+            sum += amount;
+            sumOfSquares += amount * amount;
+            count++;
+            this.popHead();
+        }
+        PipelineMetrics.MERGE_NANOS.stopTimer(start);
+        PipelineMetrics.MERGE_LENGTH.record(count);
+        return GroupStats.fromSums(sum, sumOfSquares, count);
+    }
+
+    /**
+     * Take the {@trackedNumber} latest purchases across all members, newest first.
+     * @param trackedNumber
+     * @param keys receives the keys of the purchases
+     * @param amounts receives the amounts of the purchases
+     * @return the number of purchases taken
+     */
+    int collect(int trackedNumber, long[] keys, double[] amounts) {
+        long start = PipelineMetrics.MERGE_NANOS.startTimer();
+        this.heapify();
+        int count = 0;
+        while (this.heapSize > 0 && count < trackedNumber) {
+            keys[count] = this.heapKeys[0];
+            amounts[count] = this.amountOf(this.heap[0]);
+            count++;
+            this.popHead();
+        }
+        PipelineMetrics.MERGE_NANOS.stopTimer(start);
+        PipelineMetrics.MERGE_LENGTH.record(count);
+        return count;
+    }
+
+    // heapify in O(N)
+    private void heapify() {
+        for (int i = (this.heapSize >>> 1) - 1; i >= 0; i--) {
+            this.siftDown(i);
+        }
+    }
+
+    /**
+     * Move the cursor of the head to the next older purchase, or drop the member when exhausted.
+     */
+    private void popHead() {
+        int slot = this.heap[0];
+        if (++this.cursors[slot] < this.purchaseCounts[slot]) {
+            this.heapKeys[0] = this.keyOf(slot);
+        } else {
+            this.heapSize--;
+            this.heap[0] = this.heap[this.heapSize];
+            this.heapKeys[0] = this.heapKeys[this.heapSize];
+        }
+        this.siftDown(0);
+    }
+
+    private long keyOf(int slot) {
+        int age = this.cursors[slot];
+        int pendingCount = this.pendingCounts[slot];
+        return (age < pendingCount)
+            ? this.pendingKeys[slot][pendingCount - 1 - age]
+            : this.members[slot].getPurchaseKey(age - pendingCount);
+    }
+
+    private double amountOf(int slot) {
+        int age = this.cursors[slot];
+        int pendingCount = this.pendingCounts[slot];
+        return (age < pendingCount)
+            ? this.pendingAmounts[slot][pendingCount - 1 - age]
+            : this.members[slot].getPurchaseAmount(age - pendingCount);
+    }
+
+    private void siftDown(int index) {
+        int slot = this.heap[index];
+        long key = this.heapKeys[index];
+        int half = this.heapSize >>> 1;
+        while (index < half) {
+            int child = (index << 1) + 1;
+            int right = child + 1;
+            if (right < this.heapSize && this.heapKeys[right] > this.heapKeys[child]) {
+                child = right;
+            }
+            if (key >= this.heapKeys[child]) {
+                break;
+            }
+            this.heap[index] = this.heap[child];
+            this.heapKeys[index] = this.heapKeys[child];
+            index = child;
+        }
+        this.heap[index] = slot;
+        this.heapKeys[index] = key;
+    }
+}
@@ -19,6 +19,18 @@ public abstract class GroupStats {
         );
     }
 
+    /**
+     * @param sum sum of the amounts, added from the newest to the oldest purchase
+     * @param sumOfSquares sum of the squared amounts, in the same order
+     * @param count number of purchases
+     * @return the mean and sd of the purchases, NaN if there is none
+     */
+    public static GroupStats fromSums(double sum, double sumOfSquares, int count) {
+        double mean = sum / count;
+        double sd = Math.sqrt(sumOfSquares / count - mean * mean);
+        return create(mean, sd);
+    }
+
     /**
      * AutoValue implementations
      */
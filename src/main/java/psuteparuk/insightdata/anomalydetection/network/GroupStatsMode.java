@@ -0,0 +1,12 @@
+package psuteparuk.insightdata.anomalydetection.network;
+
+/**
+ * How {UserNetwork} calculates the group stats of a purchase
+ *  - PULL merges the latest purchases of every member of the group on each purchase.
+ *  - ADAPTIVE also keeps windows of the latest purchases of some groups up to date
+ *      on each purchase, for the users that read more than their group buys (see {GroupWindows}).
+ */
+public enum GroupStatsMode {
+    PULL,
+    ADAPTIVE
+}
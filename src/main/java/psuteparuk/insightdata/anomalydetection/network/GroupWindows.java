@@ -0,0 +1,287 @@
+package psuteparuk.insightdata.anomalydetection.network;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Materialized windows of the {@trackedNumber} latest purchases of the "depth"
+ * group of some users, so that their group stats are read without a merge.
+ *
+ * A group is symmetric (v is in the group of u when u is in the group of v), so the
+ * users whose window a purchase belongs to are the users of the buyer's own group.
+ * Each purchase is pushed into the windows of those that have one, in key order.
+ * A window is built from a merge on a read (pull) and dropped when a befriend
+ * or unfriend may change its group.
+ *
+ * Whether a user keeps a window is decided per user from what is observed: a window
+ * costs an insertion for every purchase of its group and saves a merge for every purchase
+ * of its user. Once the insertions outweigh the merges saved, the window is dropped and
+ * the user is pulled for the next reads, twice as many each time it happens, so the
+ * users with a large, busy group do not cause a storm of insertions.
+ *
+ * A window is only exact while the purchases of each member are in key order,
+ * which is what the merge expects. A purchase older than its buyer's latest one
+ * drops the windows of the buyer's group, and they are not built again until the
+ * buyer has tracked {@trackedNumber} more purchases.
+ */
+public class GroupWindows {
+    private static final int PUSH_COST = 1; // in members visited by a merge
+    private static final int MAX_PULLED_READS = 1 << 10;
+
+    final private int trackedNumber;
+    final private Map<String, Window> windows = new HashMap<>();
+    // users whose tracked purchases are not in key order, with the number of purchases until they are
+    final private Map<String, Integer> disorderedUsers = new HashMap<>();
+    private int materializedCount = 0;
+
+    private long hitCount = 0;
+    private long missCount = 0;
+    private long pushCount = 0;
+    private long demotionCount = 0;
+
+    /**
+     * @param trackedNumber
+     */
+    public GroupWindows(int trackedNumber) {
+        this.trackedNumber = trackedNumber;
+    }
+
+    /**
+     * @param userId
+     * @return the stats of the user's window, or null if the user has none
+     */
+    GroupStats getStats(String userId) {
+        Window window = this.windows.get(userId);
+        if (window == null || !window.isMaterialized()) {
+            this.missCount++;
+            return null;
+        }
+        this.hitCount++;
+        window.readCount++;
+        return window.stats();
+    }
+
+    /**
+     * Called on a read that was pulled.
+     * @param userId
+     * @param depthGroup
+     * @return whether a window should be built for the user
+     */
+    boolean shouldMaterialize(String userId, Set<String> depthGroup) {
+        Window window = this.windows.computeIfAbsent(userId, (id) -> new Window());
+        if (window.pulledReadsLeft > 0) {
+            window.pulledReadsLeft--;
+            return false;
+        }
+        if (!this.disorderedUsers.isEmpty()) {
+            for (String nodeId : depthGroup) {
+                if (this.disorderedUsers.containsKey(nodeId)) {
+                    return false;
+                }
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Build the window of a user from the merge of its group.
+     * @param userId
+     * @param groupSize
+     * @param groupPurchaseMerger with every member of the group added
+     * @return the stats of the window
+     */
+    GroupStats materialize(String userId, int groupSize, GroupPurchaseMerger groupPurchaseMerger) {
+        Window window = this.windows.get(userId);
+        window.keys = new long[this.trackedNumber];
+        window.amounts = new double[this.trackedNumber];
+        window.head = 0;
+        window.size = groupPurchaseMerger.collect(this.trackedNumber, window.keys, window.amounts);
+        window.stats = null;
+        window.readCount = 1;
+        window.pushCount = 0;
+        // a merge visits each member, then takes up to T purchases
+        window.pullCost = groupSize + this.trackedNumber;
+        this.materializedCount++;
+        return window.stats();
+    }
+
+    /**
+     * @return whether no user has a window, so purchases have nowhere to be pushed
+     */
+    boolean isEmpty() {
+        return this.materializedCount == 0;
+    }
+
+    /**
+     * Push a purchase that was just added to its buyer.
+     * @param buyerId
+     * @param key
+     * @param amount
+     * @param isInOrder whether the purchase is not older than the buyer's previous latest one
+     * @param depthGroup group of the buyer, can be empty if there is no window
+     */
+    void push(String buyerId, long key, double amount, boolean isInOrder, Set<String> depthGroup) {
+        if (!isInOrder) {
+            this.disorderedUsers.put(buyerId, this.trackedNumber);
+        } else if (!this.disorderedUsers.isEmpty()) {
+            this.disorderedUsers.computeIfPresent(buyerId, (id, count) -> (count == 1) ? null : count - 1);
+        }
+        if (this.materializedCount == 0) {
+            return;
+        }
+
+        for (String nodeId : depthGroup) {
+            Window window = this.windows.get(nodeId);
+            if (window == null || !window.isMaterialized()) {
+                continue;
+            }
+            if (!isInOrder) {
+                this.drop(window);
+                continue;
+            }
+            this.pushCount++;
+            window.pushCount++;
+            if (window.pushCount * PUSH_COST > window.readCount * window.pullCost) {
+                this.drop(window);
+                window.pullBackoff = Math.min(MAX_PULLED_READS, Math.max(1, window.pullBackoff << 1));
+                window.pulledReadsLeft = window.pullBackoff;
+                this.demotionCount++;
+                continue;
+            }
+            window.insert(key, amount);
+        }
+    }
+
+    /**
+     * Drop the window of a user whose group may have changed.
+     * @param userId
+     */
+    void invalidate(String userId) {
+        Window window = this.windows.get(userId);
+        if (window != null && window.isMaterialized()) {
+            this.drop(window);
+        }
+    }
+
+    /**
+     * Drop every window, e.g. when the purchases or friendships were changed in bulk.
+     */
+    void clear() {
+        this.windows.clear();
+        this.disorderedUsers.clear();
+        this.materializedCount = 0;
+    }
+
+    public int size() {
+        return this.materializedCount;
+    }
+
+    public long getHitCount() {
+        return this.hitCount;
+    }
+
+    public long getMissCount() {
+        return this.missCount;
+    }
+
+    public long getPushCount() {
+        return this.pushCount;
+    }
+
+    public long getDemotionCount() {
+        return this.demotionCount;
+    }
+
+    @Override
+    public String toString() {
+        return "Group windows: size=" + this.size()
+            + ", hits=" + this.hitCount
+            + ", misses=" + this.missCount
+            + ", pushes=" + this.pushCount
+            + ", demotions=" + this.demotionCount;
+    }
+
+    private void drop(Window window) {
+        window.keys = null;
+        window.amounts = null;
+        window.stats = null;
+        this.materializedCount--;
+    }
+
+    /**
+     * The latest purchases of a group newest first, and what it costs to keep them.
+     * The purchases are a circular buffer starting at {@head}, so the usual insertion
+     * of a purchase newer than all the others moves nothing.
+     * A user without a window keeps its entry for the pull backoff.
+     */
+    private static class Window {
+        private long[] keys = null; // null when not materialized
+        private double[] amounts;
+        private int head;
+        private int size;
+        private GroupStats stats; // null when a purchase was pushed since the last read
+
+        private long readCount;
+        private long pushCount;
+        private long pullCost;
+        private int pullBackoff = 0;
+        private int pulledReadsLeft = 0;
+
+        boolean isMaterialized() {
+            return this.keys != null;
+        }
+
+        /**
+         * Insert a purchase at its place by key, dropping the oldest one if the window is full.
+         */
+        void insert(long key, double amount) {
+            int capacity = this.keys.length;
+            if (this.size == capacity && (capacity == 0 || key < this.keys[this.indexOf(capacity - 1)])) {
+                return;
+            }
+            // the new oldest slot when full, otherwise the free slot in front of the head
+            this.head = this.indexOf(capacity - 1);
+            if (this.size < capacity) {
+                this.size++;
+            }
+            // move the newer purchases one step towards the head
+            int position = 0;
+            while (position + 1 < this.size && this.keys[this.indexOf(position + 1)] > key) {
+                this.keys[this.indexOf(position)] = this.keys[this.indexOf(position + 1)];
+                this.amounts[this.indexOf(position)] = this.amounts[this.indexOf(position + 1)];
+                position++;
+            }
+            this.keys[this.indexOf(position)] = key;
+            this.amounts[this.indexOf(position)] = amount;
+            this.stats = null;
+        }
+
+        /**
+         * Sums are taken from the newest to the oldest purchase, like the merge does,
+         * so the stats are the same to the last bit.
+         */
+        GroupStats stats() {
+            if (this.stats == null) {
+                double sum = 0.0;
+                double sumOfSquares = 0.0;
+                for (int i = 0; i < this.size; i++) {
+                    double amount = this.amounts[this.indexOf(i)];
+                    sum += amount;
+                    sumOfSquares += amount * amount;
+                }
+                this.stats = GroupStats.fromSums(sum, sumOfSquares, this.size);
+            }
+            return this.stats;
+        }
+
+        /**
+         * @param position 0 for the newest purchase
+         * @return the slot of the purchase at {@position}
+         */
+        private int indexOf(int position) {
+            int index = this.head + position;
+            return (index < this.keys.length) ? index : index - this.keys.length;
+        }
+    }
+}
@@ -0,0 +1,82 @@
+package psuteparuk.insightdata.anomalydetection.network;
+
+import psuteparuk.insightdata.anomalydetection.common.GraphNode;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+/**
+ * The underlying data structure uses a HashMap to map an ID
+ * to the corresponding GraphNode. Each GraphNode then stores
+ * a set of its friends' IDs.
+ * @param <T>
+ */
+public class HashGraphStorage<T> implements GraphStorage<T> {
+    final private Map<String, GraphNode<T>> nodeIdMap;
+
+    public HashGraphStorage() {
+        this.nodeIdMap = new HashMap<>();
+    }
+
+    @Override
+    public boolean contains(String nodeId) {
+        return this.nodeIdMap.containsKey(nodeId);
+    }
+
+    @Override
+    public T getData(String nodeId) throws NoSuchElementException {
+        return this.getNode(nodeId).getData();
+    }
+
+    @Override
+    public void putData(String nodeId, T nodeData) {
+        GraphNode<T> node = this.nodeIdMap.get(nodeId);
+        if (node != null) {
+            node.setData(nodeData);
+        } else {
+            this.nodeIdMap.put(nodeId, new GraphNode<>(nodeId, nodeData));
+        }
+    }
+
+    @Override
+    public Set<String> getNeighborIds(String nodeId) throws NoSuchElementException {
+        return this.getNode(nodeId).getNeighborIds();
+    }
+
+    @Override
+    public boolean addNeighbor(String nodeId, String neighborId) throws NoSuchElementException {
+        return this.getNode(nodeId).addNeighbor(neighborId);
+    }
+
+    @Override
+    public boolean removeNeighbor(String nodeId, String neighborId) throws NoSuchElementException {
+        return this.getNode(nodeId).removeNeighbor(neighborId);
+    }
+
+    @Override
+    public long getVersion(String nodeId) throws NoSuchElementException {
+        return this.getNode(nodeId).getVersion();
+    }
+
+    @Override
+    public int size() {
+        return this.nodeIdMap.size();
+    }
+
+    @Override
+    public Collection<String> getNodeIds() {
+        return Collections.unmodifiableSet(this.nodeIdMap.keySet());
+    }
+
+    private GraphNode<T> getNode(String nodeId) throws NoSuchElementException {
+        GraphNode<T> node = this.nodeIdMap.get(nodeId);
+        if (node == null) {
+            throw new NoSuchElementException("No such node found");
+        }
+        return node;
+    }
+}
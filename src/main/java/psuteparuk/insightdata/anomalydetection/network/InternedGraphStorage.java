@@ -0,0 +1,170 @@
+package psuteparuk.insightdata.anomalydetection.network;
+
+import psuteparuk.insightdata.anomalydetection.common.IdInterner;
+import psuteparuk.insightdata.anomalydetection.common.IntHashSet;
+
+import java.util.AbstractList;
+import java.util.AbstractSet;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+/**
+ * Each ID is interned once into a dense int index. Data, neighbors and versions
+ * are then kept in arrays indexed by it, and each node's neighbors are an
+ * IntHashSet of indexes. There is no per-node or per-edge object apart from
+ * the node's own neighbor set.
+ *
+ * The neighbor IDs are exposed as a read-only Set view that maps indexes back
+ * to the interned Strings.
+ * @param <T>
+ */
+public class InternedGraphStorage<T> implements GraphStorage<T> {
+    final private IdInterner interner;
+    private Object[] data;
+    private IntHashSet[] neighbors;
+    private long[] versions;
+
+    public InternedGraphStorage() {
+        this.interner = new IdInterner();
+        this.data = new Object[16];
+        this.neighbors = new IntHashSet[16];
+        this.versions = new long[16];
+    }
+
+    @Override
+    public boolean contains(String nodeId) {
+        return this.interner.find(nodeId) >= 0;
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public T getData(String nodeId) throws NoSuchElementException {
+        return (T) this.data[this.indexOf(nodeId)];
+    }
+
+    @Override
+    public void putData(String nodeId, T nodeData) {
+        int index = this.interner.intern(nodeId);
+        if (index == this.neighbors.length) {
+            int capacity = index << 1;
+            this.data = Arrays.copyOf(this.data, capacity);
+            this.neighbors = Arrays.copyOf(this.neighbors, capacity);
+            this.versions = Arrays.copyOf(this.versions, capacity);
+        }
+        if (this.neighbors[index] == null) {
+            this.neighbors[index] = new IntHashSet();
+        }
+        this.data[index] = nodeData;
+    }
+
+    @Override
+    public Set<String> getNeighborIds(String nodeId) throws NoSuchElementException {
+        return new NeighborIdSet(this.neighbors[this.indexOf(nodeId)]);
+    }
+
+    @Override
+    public boolean addNeighbor(String nodeId, String neighborId) throws NoSuchElementException {
+        int index = this.indexOf(nodeId);
+        if (this.neighbors[index].add(this.indexOf(neighborId))) {
+            this.versions[index]++;
+            return true;
+        }
+        return false;
+    }
+
+    @Override
+    public boolean removeNeighbor(String nodeId, String neighborId) throws NoSuchElementException {
+        int index = this.indexOf(nodeId);
+        if (this.neighbors[index].remove(this.indexOf(neighborId))) {
+            this.versions[index]++;
+            return true;
+        }
+        return false;
+    }
+
+    @Override
+    public long getVersion(String nodeId) throws NoSuchElementException {
+        return this.versions[this.indexOf(nodeId)];
+    }
+
+    @Override
+    public int size() {
+        return this.interner.size();
+    }
+
+    /**
+     * The IDs in the order they were interned.
+     */
+    @Override
+    public Collection<String> getNodeIds() {
+        return new AbstractList<String>() {
+            @Override
+            public String get(int index) {
+                return interner.name(index);
+            }
+
+            @Override
+            public int size() {
+                return interner.size();
+            }
+        };
+    }
+
+    private int indexOf(String nodeId) throws NoSuchElementException {
+        int index = this.interner.find(nodeId);
+        if (index < 0) {
+            throw new NoSuchElementException("No such node found");
+        }
+        return index;
+    }
+
+    /**
+     * Read-only view of a neighbor index set as IDs.
+     */
+    private class NeighborIdSet extends AbstractSet<String> {
+        final private IntHashSet indexes;
+
+        NeighborIdSet(IntHashSet indexes) {
+            this.indexes = indexes;
+        }
+
+        @Override
+        public int size() {
+            return this.indexes.size();
+        }
+
+        @Override
+        public boolean contains(Object o) {
+            if (!(o instanceof String)) {
+                return false;
+            }
+            int index = interner.find((String) o);
+            return index >= 0 && this.indexes.contains(index);
+        }
+
+        @Override
+        public Iterator<String> iterator() {
+            return new Iterator<String>() {
+                private int slot = indexes.nextSlot(0);
+
+                @Override
+                public boolean hasNext() {
+                    return this.slot >= 0;
+                }
+
+                @Override
+                public String next() {
+                    if (this.slot < 0) {
+                        throw new NoSuchElementException();
+                    }
+                    String nodeId = interner.name(indexes.keyAt(this.slot));
+                    this.slot = indexes.nextSlot(this.slot + 1);
+                    return nodeId;
+                }
+            };
+        }
+    }
+}
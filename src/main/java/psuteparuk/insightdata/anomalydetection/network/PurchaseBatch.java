@@ -0,0 +1,66 @@
+package psuteparuk.insightdata.anomalydetection.network;
+
+import java.util.Arrays;
+
+/**
+ * Purchases to be bulk loaded into a {UserNetwork}, kept in log order
+ * as columns of primitive arrays.
+ */
+public class PurchaseBatch {
+    private String[] buyerIds = new String[16];
+    private long[] timestamps = new long[16];
+    private double[] amounts = new double[16];
+    private int size = 0;
+
+    /**
+     * @param buyerId
+     * @param timestamp purchase time in epoch seconds
+     * @param amount
+     */
+    public void add(String buyerId, long timestamp, double amount) {
+        if (this.size == this.buyerIds.length) {
+            this.grow(this.size + 1);
+        }
+        this.buyerIds[this.size] = buyerId;
+        this.timestamps[this.size] = timestamp;
+        this.amounts[this.size] = amount;
+        this.size++;
+    }
+
+    /**
+     * Append every purchase of {@other}, after the ones already in this batch.
+     * @param other
+     */
+    public void addAll(PurchaseBatch other) {
+        if (this.size + other.size > this.buyerIds.length) {
+            this.grow(this.size + other.size);
+        }
+        System.arraycopy(other.buyerIds, 0, this.buyerIds, this.size, other.size);
+        System.arraycopy(other.timestamps, 0, this.timestamps, this.size, other.size);
+        System.arraycopy(other.amounts, 0, this.amounts, this.size, other.size);
+        this.size += other.size;
+    }
+
+    public int size() {
+        return this.size;
+    }
+
+    String getBuyerId(int index) {
+        return this.buyerIds[index];
+    }
+
+    long getTimestamp(int index) {
+        return this.timestamps[index];
+    }
+
+    double getAmount(int index) {
+        return this.amounts[index];
+    }
+
+    private void grow(int minCapacity) {
+        int capacity = Math.max(minCapacity, this.buyerIds.length << 1);
+        this.buyerIds = Arrays.copyOf(this.buyerIds, capacity);
+        this.timestamps = Arrays.copyOf(this.timestamps, capacity);
+        this.amounts = Arrays.copyOf(this.amounts, capacity);
+    }
+}
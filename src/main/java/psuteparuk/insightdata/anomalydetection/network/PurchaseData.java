@@ -2,31 +2,70 @@ package psuteparuk.insightdata.anomalydetection.network;
 
 import com.google.auto.value.AutoValue;
 
-import java.util.Date;
 import java.util.List;
 
 /**
  * An AutoValue immutable representing a purchase data including
- * {@amount} and {@timestamp}.
+ * {@amount}, {@timestamp} (epoch seconds) and {@sequence}, the order in which
+ * the purchase arrived.
+ *
+ * Purchases are ordered by timestamp, then by arrival. Both fit in a single
+ * ordering {@key}: the timestamp in the high 32 bits and the low 32 bits of the
+ * sequence below it, so comparing two purchases is comparing two longs.
+ * The limits of the key:
+ *  - timestamps are clamped to a signed int, from 1901-12-13 20:45:52 to 2038-01-19 03:14:07 UTC:
+ *      the purchases after (or before) that are ordered by arrival among themselves
+ *  - the sequence wraps after 2^32 purchases: a purchase with the same timestamp
+ *      as one that arrived before the wrap is then ordered before it
  */
 @AutoValue
 public abstract class PurchaseData {
+    private static final long SEQUENCE_MASK = 0xFFFFFFFFL;
+    public static final long MIN_KEY_TIMESTAMP = Integer.MIN_VALUE;
+    public static final long MAX_KEY_TIMESTAMP = Integer.MAX_VALUE;
+
     public static PurchaseData create(
         double amount,
-        Date timestamp
+        long timestamp,
+        long sequence
     ) {
         return new AutoValue_PurchaseData(
             amount,
-            timestamp
+            timestamp,
+            sequence & SEQUENCE_MASK
         );
     }
 
+    /**
+     * @param amount
+     * @param key see {@key}
+     * @return the purchase with that ordering key, its timestamp clamped as in the key
+     */
+    public static PurchaseData fromKey(double amount, long key) {
+        return create(amount, key >> 32, key);
+    }
+
+    /**
+     * @param timestamp epoch seconds
+     * @param sequence
+     * @return the ordering key of a purchase
+     */
+    public static long key(long timestamp, long sequence) {
+        long keyTimestamp = Math.max(MIN_KEY_TIMESTAMP, Math.min(MAX_KEY_TIMESTAMP, timestamp));
+        return (keyTimestamp << 32) | (sequence & SEQUENCE_MASK);
+    }
+
     /**
      * AutoValue implementations
      */
 
     public abstract double amount();
-    public abstract Date timestamp();
+    public abstract long timestamp();
+    public abstract long sequence();
+
+    public long key() {
+        return key(timestamp(), sequence());
+    }
 
     /**
      * @param purchaseDataList
@@ -0,0 +1,208 @@
+package psuteparuk.insightdata.anomalydetection.network;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.IntConsumer;
+import java.util.stream.IntStream;
+
+/**
+ * The purchases of the stream between two befriend/unfriend events.
+ *
+ * The graph does not change during an epoch, so the "depth" groups of its purchases
+ * can be searched and their stats calculated in parallel. Each purchase must still
+ * only see the purchases that arrived before it: the purchases of the epoch are kept
+ * pending, out of the network, and the stats of a purchase merge the network with
+ * the pending purchases of its group that arrived before it (see {GroupPurchaseMerger}).
+ * Once the whole epoch is evaluated, the pending purchases are added to the network
+ * in arrival order.
+ *
+ * The stats are the same as calling addPurchase then calculateGroupStats for each
+ * purchase in arrival order.
+ */
+public class PurchaseEpoch {
+    final private UserNetwork userNetwork;
+    final private int capacity;
+    final private ForkJoinPool pool; // null when evaluated on the calling thread only
+    final private ThreadLocal<GroupPurchaseMerger> groupPurchaseMergers =
+        ThreadLocal.withInitial(GroupPurchaseMerger::new);
+
+    final private String[] buyerIds;
+    final private PurchaseData[] purchases;
+    private int size = 0;
+    final private Map<String, PendingPurchases> pendingPurchases = new HashMap<>();
+
+    /**
+     * @param userNetwork
+     * @param parallelism number of threads evaluating an epoch
+     * @param capacity maximum number of purchases in an epoch
+     */
+    public PurchaseEpoch(UserNetwork userNetwork, int parallelism, int capacity) {
+        this.userNetwork = userNetwork;
+        this.capacity = capacity;
+        this.pool = (parallelism > 1) ? new ForkJoinPool(parallelism) : null;
+        this.buyerIds = new String[capacity];
+        this.purchases = new PurchaseData[capacity];
+    }
+
+    public int size() {
+        return this.size;
+    }
+
+    public boolean isEmpty() {
+        return this.size == 0;
+    }
+
+    public boolean isFull() {
+        return this.size == this.capacity;
+    }
+
+    /**
+     * Add a purchase that arrived after every purchase of the epoch.
+     * @param buyerId
+     * @param purchaseData
+     */
+    public void add(String buyerId, PurchaseData purchaseData) {
+        if (this.isFull()) {
+            throw new IllegalStateException("The epoch is full.");
+        }
+        this.buyerIds[this.size] = buyerId;
+        this.purchases[this.size] = purchaseData;
+        this.pendingPurchases
+            .computeIfAbsent(buyerId, (id) -> new PendingPurchases())
+            .add(this.size, purchaseData);
+        this.size++;
+    }
+
+    /**
+     * Calculate the group stats of every purchase, add the purchases to
+     * the network and start a new epoch.
+     * @return the stats of each purchase, in arrival order
+     */
+    public GroupStats[] evaluate() {
+        // new buyers are created first, the graph is only read afterwards
+        for (int i = 0; i < this.size; i++) {
+            if (!this.userNetwork.contains(this.buyerIds[i])) {
+                this.userNetwork.putNode(this.buyerIds[i], this.userNetwork.initializeData(this.buyerIds[i]));
+            }
+        }
+
+        Map<String, Set<String>> depthGroups = this.findDepthGroups();
+
+        GroupStats[] groupStats = new GroupStats[this.size];
+        this.forEach(this.size, (i) -> groupStats[i] = this.calculateGroupStats(i, depthGroups.get(this.buyerIds[i])));
+
+        for (int i = 0; i < this.size; i++) {
+            this.userNetwork.addPurchase(this.buyerIds[i], this.purchases[i]);
+        }
+        Arrays.fill(this.buyerIds, 0, this.size, null);
+        Arrays.fill(this.purchases, 0, this.size, null);
+        this.pendingPurchases.clear();
+        this.size = 0;
+        return groupStats;
+    }
+
+    /**
+     * Stop the threads, the epoch cannot be evaluated in parallel anymore.
+     */
+    public void shutdown() {
+        if (this.pool != null) {
+            this.pool.shutdown();
+        }
+    }
+
+    /**
+     * Take the groups of the buyers from the cache, search the others in parallel
+     * and cache them.
+     */
+    private Map<String, Set<String>> findDepthGroups() {
+        Map<String, Set<String>> depthGroups = new HashMap<>();
+        List<String> uncachedIds = new ArrayList<>();
+        for (String buyerId : this.pendingPurchases.keySet()) {
+            Set<String> depthGroup = this.userNetwork.getCachedDepthGroup(buyerId);
+            if (depthGroup == null) {
+                uncachedIds.add(buyerId);
+            } else {
+                depthGroups.put(buyerId, depthGroup);
+            }
+        }
+
+        List<Set<String>> searchedGroups = new ArrayList<>(Collections.nCopies(uncachedIds.size(), null));
+        List<List<String>> expandedIds = new ArrayList<>(Collections.nCopies(uncachedIds.size(), null));
+        this.forEach(uncachedIds.size(), (i) -> {
+            List<String> groupExpandedIds = new ArrayList<>();
+            searchedGroups.set(i, Collections.unmodifiableSet(
+                this.userNetwork.searchDepthGroup(uncachedIds.get(i), groupExpandedIds)
+            ));
+            expandedIds.set(i, groupExpandedIds);
+        });
+        for (int i = 0; i < uncachedIds.size(); i++) {
+            this.userNetwork.cacheDepthGroup(uncachedIds.get(i), searchedGroups.get(i), expandedIds.get(i));
+            depthGroups.put(uncachedIds.get(i), searchedGroups.get(i));
+        }
+        return depthGroups;
+    }
+
+    /**
+     * @param index position of the purchase in the epoch
+     * @param depthGroup group of its buyer
+     * @return the stats as if only the purchases before it had been added
+     */
+    private GroupStats calculateGroupStats(int index, Set<String> depthGroup) {
+        GroupPurchaseMerger groupPurchaseMerger = this.groupPurchaseMergers.get();
+        groupPurchaseMerger.reset();
+        for (String nodeId : depthGroup) {
+            UserData userData = this.userNetwork.getData(nodeId);
+            PendingPurchases pending = this.pendingPurchases.get(nodeId);
+            if (pending == null) {
+                groupPurchaseMerger.addMember(userData);
+            } else {
+                groupPurchaseMerger.addMember(userData, pending.keys, pending.amounts, pending.countBefore(index));
+            }
+        }
+        return groupPurchaseMerger.aggregate(this.userNetwork.getTrackedNumber());
+    }
+
+    private void forEach(int count, IntConsumer action) {
+        if (this.pool == null || count < 2) {
+            IntStream.range(0, count).forEach(action);
+            return;
+        }
+        this.pool.submit(() -> IntStream.range(0, count).parallel().forEach(action)).join();
+    }
+
+    /**
+     * The pending purchases of one buyer, in arrival order.
+     */
+    private static class PendingPurchases {
+        private int[] indexes = new int[4]; // positions in the epoch
+        private long[] keys = new long[4];
+        private double[] amounts = new double[4];
+        private int count = 0;
+
+        void add(int index, PurchaseData purchaseData) {
+            if (this.count == this.indexes.length) {
+                this.indexes = Arrays.copyOf(this.indexes, this.count << 1);
+                this.keys = Arrays.copyOf(this.keys, this.count << 1);
+                this.amounts = Arrays.copyOf(this.amounts, this.count << 1);
+            }
+            this.indexes[this.count] = index;
+            this.keys[this.count] = purchaseData.key();
+            this.amounts[this.count] = purchaseData.amount();
+            this.count++;
+        }
+
+        /**
+         * @return the number of purchases that arrived before the purchase at {@index}
+         */
+        int countBefore(int index) {
+            int position = Arrays.binarySearch(this.indexes, 0, this.count, index);
+            return (position >= 0) ? position : -position - 1;
+        }
+    }
+}
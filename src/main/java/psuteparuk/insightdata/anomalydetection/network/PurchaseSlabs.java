@@ -0,0 +1,105 @@
+package psuteparuk.insightdata.anomalydetection.network;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Arrays;
+
+/**
+ * The tracked purchases of every user, outside of the heap.
+ * Each user with a purchase gets a slot: {@trackedNumber} keys then
+ * {@trackedNumber} amounts, in the order of its circular buffer (see {UserData}).
+ * Slots are addressed by their index and packed in direct buffers of
+ * {@SLAB_BYTES} by default, so the heap only holds one small object per slab and the
+ * garbage collector never scans nor copies the purchases.
+ *
+ * Slots are allocated by any thread. A slot is only written by the thread that
+ * owns its user at the time, and read by any thread once that write is published
+ * (see {UserNetwork}), as for the arrays of the on-heap users.
+ * The slots are never freed, like the users of the network.
+ */
+public class PurchaseSlabs {
+    static final int NO_SLOT = -1;
+
+    static final int SLAB_BYTES = 64 << 20;
+
+    final private int trackedNumber;
+    final private int slotBytes;
+    final private int slotsPerSlab;
+
+    private volatile ByteBuffer[] slabs = new ByteBuffer[0];
+    private int slotCount = 0;
+
+    /**
+     * @param trackedNumber number of tracked purchases of the users, at least 1
+     */
+    public PurchaseSlabs(int trackedNumber) {
+        this(trackedNumber, SLAB_BYTES);
+    }
+
+    /**
+     * @param trackedNumber number of tracked purchases of the users, at least 1
+     * @param slabBytes size of a slab, rounded down to a whole number of slots
+     */
+    PurchaseSlabs(int trackedNumber, int slabBytes) {
+        this.trackedNumber = trackedNumber;
+        this.slotBytes = trackedNumber * 16;
+        this.slotsPerSlab = Math.max(1, slabBytes / this.slotBytes);
+    }
+
+    public int getTrackedNumber() {
+        return this.trackedNumber;
+    }
+
+    /**
+     * @return the index of a new slot, with a new slab if the last one is full
+     */
+    synchronized int allocate() {
+        int slot = this.slotCount++;
+        int slab = slot / this.slotsPerSlab;
+        if (slab == this.slabs.length) {
+            ByteBuffer[] grown = Arrays.copyOf(this.slabs, slab + 1);
+            grown[slab] = ByteBuffer.allocateDirect(this.slotsPerSlab * this.slotBytes).order(ByteOrder.nativeOrder());
+            this.slabs = grown;
+        }
+        return slot;
+    }
+
+    /**
+     * @param slot
+     * @param index position in the circular buffer of the user
+     * @param key
+     * @param amount
+     */
+    void put(int slot, int index, long key, double amount) {
+        ByteBuffer slab = this.slabs[slot / this.slotsPerSlab];
+        int offset = (slot % this.slotsPerSlab) * this.slotBytes + 8 * index;
+        slab.putLong(offset, key);
+        slab.putDouble(offset + 8 * this.trackedNumber, amount);
+    }
+
+    long getKey(int slot, int index) {
+        return this.slabs[slot / this.slotsPerSlab].getLong((slot % this.slotsPerSlab) * this.slotBytes + 8 * index);
+    }
+
+    double getAmount(int slot, int index) {
+        return this.slabs[slot / this.slotsPerSlab].getDouble((slot % this.slotsPerSlab) * this.slotBytes + 8 * (this.trackedNumber + index));
+    }
+
+    public synchronized int getSlotCount() {
+        return this.slotCount;
+    }
+
+    /**
+     * @return the size of the allocated slabs
+     */
+    public synchronized long getCapacityBytes() {
+        return (long) this.slabs.length * this.slotsPerSlab * this.slotBytes;
+    }
+
+    @Override
+    public synchronized String toString() {
+        return "Purchase slabs: slots=" + this.slotCount
+            + ", slabs=" + this.slabs.length
+            + ", bytes=" + this.getCapacityBytes();
+    }
+}
@@ -0,0 +1,11 @@
+package psuteparuk.insightdata.anomalydetection.network;
+
+/**
+ * Where the tracked purchases of the users are kept
+ *  - HEAP keeps two primitive arrays per user, optionally bounded by a {TieredPurchaseStore}.
+ *  - OFF_HEAP keeps every user's purchases in large direct buffers (see {PurchaseSlabs}).
+ */
+public enum PurchaseStorageType {
+    HEAP,
+    OFF_HEAP
+}
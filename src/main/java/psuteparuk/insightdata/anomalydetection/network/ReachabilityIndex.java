@@ -0,0 +1,200 @@
+package psuteparuk.insightdata.anomalydetection.network;
+
+import psuteparuk.insightdata.anomalydetection.common.IdInterner;
+import psuteparuk.insightdata.anomalydetection.common.IntCountMap;
+
+import java.util.AbstractSet;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.Objects;
+import java.util.Set;
+
+/**
+ * The "depth" groups of every user, updated on each befriend and unfriend
+ * instead of searched on each purchase.
+ *
+ * The search of {UserNetwork} stops at its second end-of-level marker, so for a
+ * depth degree of 1 or more a group is the users within two hops. For each user u
+ * and each user v within two hops of it, the index counts the ways v is reached:
+ * 1 if they are friends, plus the number of friends they have in common.
+ * A befriend or unfriend of a and b only changes the counts of (a, b), of a and the
+ * friends of b, and of b and the friends of a, so it takes O(deg(a) + deg(b)) time.
+ * v leaves the group of u when its count drops to 0.
+ *
+ * Users are interned into dense ints and each user's counts are an {IntCountMap},
+ * since there are up to sum(deg^2) of them.
+ * Self-friendships are not counted, the search never puts a user in its own group.
+ */
+class ReachabilityIndex {
+    final private SocialNetwork<?> socialNetwork;
+    private IdInterner interner;
+    private IntCountMap[] reachCounts;
+
+    /**
+     * Build the index from the current friendships of {@socialNetwork}.
+     * @param socialNetwork
+     */
+    ReachabilityIndex(SocialNetwork<?> socialNetwork) {
+        this.socialNetwork = socialNetwork;
+        this.rebuild();
+    }
+
+    /**
+     * @param userId
+     * @return a read-only view of the users within two hops of {@userId}
+     */
+    Set<String> getGroup(String userId) {
+        int index = this.interner.find(userId);
+        if (index < 0 || this.reachCounts[index] == null) {
+            return Collections.emptySet();
+        }
+        return new ReachedIdSet(this.reachCounts[index]);
+    }
+
+    /**
+     * Count every pair again, e.g. after friendships were changed in bulk.
+     * Takes O(sum of deg^2) time.
+     */
+    void rebuild() {
+        this.interner = new IdInterner();
+        this.reachCounts = new IntCountMap[16];
+        int[] friendIndexes = new int[16];
+        for (String userId : this.socialNetwork.getNodeIds()) {
+            int friendCount = 0;
+            for (String friendId : this.socialNetwork.getFriends(userId)) {
+                if (Objects.equals(friendId, userId)) {
+                    continue;
+                }
+                if (friendCount == friendIndexes.length) {
+                    friendIndexes = Arrays.copyOf(friendIndexes, friendCount << 1);
+                }
+                friendIndexes[friendCount++] = this.intern(friendId);
+            }
+            if (friendCount == 0) {
+                continue;
+            }
+
+            int index = this.intern(userId);
+            for (int i = 0; i < friendCount; i++) {
+                this.increment(index, friendIndexes[i]);
+                // every other friend is reached through userId
+                for (int j = 0; j < friendCount; j++) {
+                    if (j != i) {
+                        this.increment(friendIndexes[i], friendIndexes[j]);
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Called once {@userId1} and {@userId2} have become friends.
+     * @param userId1
+     * @param userId2
+     */
+    void addFriendship(String userId1, String userId2) {
+        this.updateFriendship(userId1, userId2, 1);
+    }
+
+    /**
+     * Called once {@userId1} and {@userId2} are not friends anymore.
+     * @param userId1
+     * @param userId2
+     */
+    void removeFriendship(String userId1, String userId2) {
+        this.updateFriendship(userId1, userId2, -1);
+    }
+
+    private void updateFriendship(String userId1, String userId2, int delta) {
+        int index1 = this.intern(userId1);
+        int index2 = this.intern(userId2);
+        this.update(index1, index2, delta);
+        this.update(index2, index1, delta);
+        // the paths friend - userId1 - userId2, then userId1 - userId2 - friend
+        this.updateThroughFriends(userId1, index2, delta);
+        this.updateThroughFriends(userId2, index1, delta);
+    }
+
+    private void updateThroughFriends(String middleId, int endIndex, int delta) {
+        int middleIndex = this.interner.find(middleId);
+        for (String friendId : this.socialNetwork.getFriends(middleId)) {
+            int friendIndex = this.intern(friendId);
+            if (friendIndex != middleIndex && friendIndex != endIndex) {
+                this.update(friendIndex, endIndex, delta);
+                this.update(endIndex, friendIndex, delta);
+            }
+        }
+    }
+
+    private void update(int index, int reachedIndex, int delta) {
+        if (delta > 0) {
+            this.increment(index, reachedIndex);
+        } else if (this.reachCounts[index].decrement(reachedIndex) == 0 && this.reachCounts[index].isEmpty()) {
+            this.reachCounts[index] = null;
+        }
+    }
+
+    private void increment(int index, int reachedIndex) {
+        if (this.reachCounts[index] == null) {
+            this.reachCounts[index] = new IntCountMap();
+        }
+        this.reachCounts[index].increment(reachedIndex);
+    }
+
+    private int intern(String userId) {
+        int index = this.interner.intern(userId);
+        if (index == this.reachCounts.length) {
+            this.reachCounts = Arrays.copyOf(this.reachCounts, index << 1);
+        }
+        return index;
+    }
+
+    /**
+     * Read-only view of a user's counts as the IDs of the reached users.
+     */
+    private class ReachedIdSet extends AbstractSet<String> {
+        final private IntCountMap counts;
+
+        ReachedIdSet(IntCountMap counts) {
+            this.counts = counts;
+        }
+
+        @Override
+        public int size() {
+            return this.counts.size();
+        }
+
+        @Override
+        public boolean contains(Object o) {
+            if (!(o instanceof String)) {
+                return false;
+            }
+            int index = interner.find((String) o);
+            return index >= 0 && this.counts.contains(index);
+        }
+
+        @Override
+        public Iterator<String> iterator() {
+            return new Iterator<String>() {
+                private int slot = counts.nextSlot(0);
+
+                @Override
+                public boolean hasNext() {
+                    return this.slot >= 0;
+                }
+
+                @Override
+                public String next() {
+                    if (this.slot < 0) {
+                        throw new NoSuchElementException();
+                    }
+                    String userId = interner.name(counts.keyAt(this.slot));
+                    this.slot = counts.nextSlot(this.slot + 1);
+                    return userId;
+                }
+            };
+        }
+    }
+}
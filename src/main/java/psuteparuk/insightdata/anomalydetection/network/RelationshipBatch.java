@@ -0,0 +1,75 @@
+package psuteparuk.insightdata.anomalydetection.network;
+
+import java.util.Arrays;
+
+/**
+ * Befriend and unfriend events to be bulk loaded into a {SocialNetwork},
+ * kept in log order as columns of primitive arrays.
+ */
+public class RelationshipBatch {
+    private String[] user1Ids = new String[16];
+    private String[] user2Ids = new String[16];
+    private boolean[] isBefriends = new boolean[16];
+    private long[] timestamps = new long[16];
+    private int size = 0;
+
+    /**
+     * @param user1Id
+     * @param user2Id
+     * @param isBefriend true for a befriend event, false for an unfriend event
+     * @param timestamp event time in epoch seconds
+     */
+    public void add(String user1Id, String user2Id, boolean isBefriend, long timestamp) {
+        if (this.size == this.user1Ids.length) {
+            this.grow(this.size + 1);
+        }
+        this.user1Ids[this.size] = user1Id;
+        this.user2Ids[this.size] = user2Id;
+        this.isBefriends[this.size] = isBefriend;
+        this.timestamps[this.size] = timestamp;
+        this.size++;
+    }
+
+    /**
+     * Append every event of {@other}, after the ones already in this batch.
+     * @param other
+     */
+    public void addAll(RelationshipBatch other) {
+        if (this.size + other.size > this.user1Ids.length) {
+            this.grow(this.size + other.size);
+        }
+        System.arraycopy(other.user1Ids, 0, this.user1Ids, this.size, other.size);
+        System.arraycopy(other.user2Ids, 0, this.user2Ids, this.size, other.size);
+        System.arraycopy(other.isBefriends, 0, this.isBefriends, this.size, other.size);
+        System.arraycopy(other.timestamps, 0, this.timestamps, this.size, other.size);
+        this.size += other.size;
+    }
+
+    public int size() {
+        return this.size;
+    }
+
+    String getUser1Id(int index) {
+        return this.user1Ids[index];
+    }
+
+    String getUser2Id(int index) {
+        return this.user2Ids[index];
+    }
+
+    boolean isBefriend(int index) {
+        return this.isBefriends[index];
+    }
+
+    long getTimestamp(int index) {
+        return this.timestamps[index];
+    }
+
+    private void grow(int minCapacity) {
+        int capacity = Math.max(minCapacity, this.user1Ids.length << 1);
+        this.user1Ids = Arrays.copyOf(this.user1Ids, capacity);
+        this.user2Ids = Arrays.copyOf(this.user2Ids, capacity);
+        this.isBefriends = Arrays.copyOf(this.isBefriends, capacity);
+        this.timestamps = Arrays.copyOf(this.timestamps, capacity);
+    }
+}
@@ -1,33 +1,37 @@
 package psuteparuk.insightdata.anomalydetection.network;
 
-import psuteparuk.insightdata.anomalydetection.common.GraphNode;
+import psuteparuk.insightdata.anomalydetection.common.PrimitiveSort;
 
-import java.util.HashMap;
-import java.util.Map;
+import java.util.Collection;
+import java.util.HashSet;
 import java.util.NoSuchElementException;
 import java.util.Set;
 
 /**
  * A generic graph representing a social network.
  * Contain methods such as getFriends, befriend, unfriend.
- * The underlying data structure uses a HashMap to map an ID
- * to the corresponding GraphNode. Each GraphNode then stores
- * a set of its friends' IDs.
+ * The nodes are kept in a GraphStorage. By default it uses a HashMap
+ * to map an ID to the corresponding GraphNode, and each GraphNode then
+ * stores a set of its friends' IDs (see {GraphStorageType} for the others).
  * @param <T>
  */
 public class SocialNetwork<T> {
-    private Map<String, GraphNode<T>> nodeIdMap;
+    final private GraphStorage<T> storage;
 
     public SocialNetwork() {
-        this.nodeIdMap = new HashMap<>();
+        this(GraphStorageType.HASH);
+    }
+
+    public SocialNetwork(GraphStorageType storageType) {
+        this.storage = storageType.create();
     }
 
     public boolean contains(String nodeId) {
-        return this.nodeIdMap.containsKey(nodeId);
+        return this.storage.contains(nodeId);
     }
 
     public T getData(String nodeId) throws NoSuchElementException {
-        return this.getNode(nodeId).getData();
+        return this.storage.getData(nodeId);
     }
 
     /**
@@ -35,7 +39,31 @@ public class SocialNetwork<T> {
      * @return the set of friends' IDs
      */
     public Set<String> getFriends(String nodeId) throws NoSuchElementException {
-        return this.getNode(nodeId).getNeighborIds();
+        return this.storage.getNeighborIds(nodeId);
+    }
+
+    /**
+     * The version of a node changes whenever a befriend or unfriend
+     * actually adds or removes one of its neighbors.
+     * @param nodeId
+     * @return the adjacency version of the node
+     */
+    public long getVersion(String nodeId) throws NoSuchElementException {
+        return this.storage.getVersion(nodeId);
+    }
+
+    /**
+     * @return the number of nodes in the network
+     */
+    public int size() {
+        return this.storage.size();
+    }
+
+    /**
+     * @return a read-only view of the IDs of every node
+     */
+    public Collection<String> getNodeIds() {
+        return this.storage.getNodeIds();
     }
 
     /**
@@ -45,15 +73,12 @@ public class SocialNetwork<T> {
      * @param nodeData
      */
     public void putNode(String nodeId, T nodeData) {
-        if (this.contains(nodeId)) {
-            this.getNode(nodeId).setData(nodeData);
-        } else {
-            this.nodeIdMap.put(nodeId, new GraphNode<>(nodeId, nodeData));
-        }
+        this.storage.putData(nodeId, nodeData);
     }
 
     /**
-     * Connect two nodes
+     * Connect two nodes. Both nodes get a new version if they were not
+     * already connected.
      * @param nodeId1
      * @param nodeId2
      */
@@ -64,22 +89,96 @@ public class SocialNetwork<T> {
         if (!this.contains(nodeId2)) {
             this.putNode(nodeId2, this.initializeData(nodeId2));
         }
-        this.getNode(nodeId1).addNeighbor(nodeId2);
-        this.getNode(nodeId2).addNeighbor(nodeId1);
+        this.storage.addNeighbor(nodeId1, nodeId2);
+        this.storage.addNeighbor(nodeId2, nodeId1);
     }
 
     /**
-     * Disconnect two nodes
+     * Disconnect two nodes. Both nodes get a new version if they were
+     * connected.
      * @param nodeId1
      * @param nodeId2
      */
     public void unfriend(String nodeId1, String nodeId2) {
         if (this.contains(nodeId1) && this.contains(nodeId2)) {
-            this.getNode(nodeId1).removeNeighbor(nodeId2);
-            this.getNode(nodeId2).removeNeighbor(nodeId1);
+            this.storage.removeNeighbor(nodeId1, nodeId2);
+            this.storage.removeNeighbor(nodeId2, nodeId1);
         }
     }
 
+    /**
+     * Apply a batch of befriend and unfriend events, ordered by timestamp
+     * (events with the same timestamp keep their batch order). The result is the same
+     * as calling befriend and unfriend for each event in that order.
+     *
+     * The nodes of befriend events are created first. Then the events are partitioned
+     * by user and each user only updates its own neighbors, from the last event
+     * it has with each of them, so users are updated in parallel on {@parallelism} threads.
+     * @param batch
+     * @param parallelism
+     */
+    public void bulkUpdateFriendships(RelationshipBatch batch, int parallelism) {
+        EventPartition partition = new EventPartition();
+        int[] user1Positions = new int[batch.size()];
+        int[] user2Positions = new int[batch.size()];
+        for (int i = 0; i < batch.size(); i++) {
+            String user1Id = batch.getUser1Id(i);
+            String user2Id = batch.getUser2Id(i);
+            if (batch.isBefriend(i)) {
+                if (!this.contains(user1Id)) {
+                    this.putNode(user1Id, this.initializeData(user1Id));
+                }
+                if (!this.contains(user2Id)) {
+                    this.putNode(user2Id, this.initializeData(user2Id));
+                }
+            }
+            user1Positions[i] = partition.count(user1Id);
+            user2Positions[i] = user2Id.equals(user1Id) ? -1 : partition.count(user2Id);
+        }
+        for (int i = 0; i < batch.size(); i++) {
+            partition.place(user1Positions[i], i);
+            if (user2Positions[i] >= 0) {
+                partition.place(user2Positions[i], i);
+            }
+        }
+
+        int[] eventIndexes = partition.getEventIndexes();
+        partition.forEachUser(parallelism, (user) -> {
+            String userId = partition.getUserId(user);
+            if (!this.contains(userId)) {
+                return; // only unfriend events, which are no-ops
+            }
+            int start = partition.getStart(user);
+            int end = partition.getEnd(user);
+            long[] timestamps = new long[end - start];
+            int[] sortedIndexes = new int[end - start];
+            for (int i = start; i < end; i++) {
+                timestamps[i - start] = batch.getTimestamp(eventIndexes[i]);
+                sortedIndexes[i - start] = eventIndexes[i];
+            }
+            PrimitiveSort.stableSort(timestamps, sortedIndexes, 0, sortedIndexes.length);
+
+            // The last event between two users decides whether they end up friends,
+            // so walk the events backwards and skip the ones that a later event overrides.
+            Set<String> decidedFriendIds = new HashSet<>();
+            for (int i = sortedIndexes.length - 1; i >= 0; i--) {
+                int eventIndex = sortedIndexes[i];
+                String friendId = userId.equals(batch.getUser1Id(eventIndex))
+                    ? batch.getUser2Id(eventIndex)
+                    : batch.getUser1Id(eventIndex);
+                if (!decidedFriendIds.add(friendId)) {
+                    continue;
+                }
+                if (batch.isBefriend(eventIndex)) {
+                    this.storage.addNeighbor(userId, friendId);
+                } else if (this.contains(friendId)) {
+                    // an unfriend of a missing node is a no-op, there is no edge to remove
+                    this.storage.removeNeighbor(userId, friendId);
+                }
+            }
+        });
+    }
+
     /**
      * Specify the initialization of the node data
      * @param nodeId
@@ -87,12 +186,4 @@ public class SocialNetwork<T> {
     public T initializeData(String nodeId) {
         return null;
     }
-
-    private GraphNode<T> getNode(String nodeId) throws NoSuchElementException {
-        if (this.contains(nodeId)) {
-            return this.nodeIdMap.get(nodeId);
-        } else {
-            throw new NoSuchElementException("No such node found");
-        }
-    }
 }
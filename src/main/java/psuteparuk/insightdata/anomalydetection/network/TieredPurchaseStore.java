@@ -0,0 +1,253 @@
+package psuteparuk.insightdata.anomalydetection.network;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.concurrent.atomic.LongAdder;
+
+import static java.nio.file.StandardOpenOption.CREATE;
+import static java.nio.file.StandardOpenOption.READ;
+import static java.nio.file.StandardOpenOption.TRUNCATE_EXISTING;
+import static java.nio.file.StandardOpenOption.WRITE;
+
+/**
+ * Two tiers for the tracked purchases of the users: the hot tier is the arrays of
+ * {UserData} on the heap, the cold tier a memory-mapped file with one fixed-size
+ * slot per user (the keys then the amounts, in the order of its circular buffer).
+ *
+ * The hot users are kept in a clock: a user is marked when its purchases are read or
+ * added, and once the hot tier is over {@heapBudgetBytes}, the hand clears the marks
+ * it passes and moves the first unmarked user to the cold tier. A user keeps its
+ * slot, and is only written again if it got a new purchase while it was hot. A cold
+ * user is paged back in the next time a purchase older than its latest one is read,
+ * e.g. when the merge of a "depth" group reaches it.
+ *
+ * Users are paged in from any thread, but they are only moved out by {@enforceBudget},
+ * which must be called when no other thread reads the network (see {UserNetwork}).
+ * In between, the hot tier can go over the budget by the users read since.
+ */
+public class TieredPurchaseStore implements Closeable {
+    static final int NO_SLOT = -1;
+    static final int NOT_HOT = -1;
+
+    private static final long SEGMENT_BYTES = 64L << 20;
+    private static final int ARRAY_HEADER_BYTES = 16;
+
+    final private int trackedNumber;
+    final private long heapBudgetBytes;
+    final private Path filePath;
+    final private boolean isTemporaryFile;
+    final private FileChannel fileChannel;
+    final private int slotBytes;
+    final private int slotsPerSegment;
+    final private long userHeapBytes; // heap taken by the arrays of a hot user
+
+    private volatile MappedByteBuffer[] segments = new MappedByteBuffer[0];
+    private int slotCount = 0;
+
+    // The clock of the hot users
+    private UserData[] ring = new UserData[16];
+    private int ringSize = 0;
+    private int hand = 0;
+    private long hotBytes = 0;
+
+    final private LongAdder hotHitCount = new LongAdder();
+    final private LongAdder coldHitCount = new LongAdder();
+    private long evictionCount = 0;
+
+    /**
+     * @param trackedNumber number of tracked purchases of the users
+     * @param heapBudgetBytes maximum size of the purchases on the heap
+     * @param filePath file of the cold tier, or null for a temporary file deleted on exit
+     * @throws UncheckedIOException if the file cannot be created
+     */
+    public TieredPurchaseStore(int trackedNumber, long heapBudgetBytes, String filePath) {
+        this.trackedNumber = trackedNumber;
+        this.heapBudgetBytes = heapBudgetBytes;
+        this.slotBytes = Math.max(1, trackedNumber) * 16;
+        this.slotsPerSegment = (int) Math.max(1, SEGMENT_BYTES / this.slotBytes);
+        this.userHeapBytes = 2L * (ARRAY_HEADER_BYTES + 8L * trackedNumber);
+        try {
+            this.isTemporaryFile = (filePath == null);
+            this.filePath = this.isTemporaryFile
+                ? Files.createTempFile("cold_purchases", ".bin")
+                : Paths.get(filePath);
+            if (this.isTemporaryFile) {
+                this.filePath.toFile().deleteOnExit();
+            }
+            this.fileChannel = FileChannel.open(this.filePath, READ, WRITE, CREATE, TRUNCATE_EXISTING);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Cannot create the cold purchase store", e);
+        }
+    }
+
+    public int getTrackedNumber() {
+        return this.trackedNumber;
+    }
+
+    public long getHeapBudgetBytes() {
+        return this.heapBudgetBytes;
+    }
+
+    /**
+     * Add a user to the hot tier, once its arrays are on the heap.
+     * @param userData
+     */
+    synchronized void admit(UserData userData) {
+        if (userData.ringPosition != NOT_HOT) {
+            return;
+        }
+        if (this.ringSize == this.ring.length) {
+            this.ring = Arrays.copyOf(this.ring, this.ringSize << 1);
+        }
+        userData.ringPosition = this.ringSize;
+        this.ring[this.ringSize++] = userData;
+        this.hotBytes += this.userHeapBytes;
+    }
+
+    /**
+     * Move users to the cold tier until the hot tier fits in the budget.
+     * No other thread may read or update the users meanwhile.
+     */
+    public synchronized void enforceBudget() {
+        while (this.hotBytes > this.heapBudgetBytes && this.ringSize > 0) {
+            if (this.hand >= this.ringSize) {
+                this.hand = 0;
+            }
+            UserData userData = this.ring[this.hand];
+            if (userData.isReferenced) {
+                userData.isReferenced = false;
+                this.hand++;
+            } else {
+                this.evict(userData);
+            }
+        }
+    }
+
+    private void evict(UserData userData) {
+        if (userData.coldSlot == NO_SLOT) {
+            userData.coldSlot = this.allocateSlot();
+            userData.isDirty = true;
+        }
+        if (userData.isDirty) {
+            this.write(userData.coldSlot, userData.getHotKeys(), userData.getHotAmounts());
+            userData.isDirty = false;
+        }
+        userData.release();
+
+        // the last user takes its place in the clock
+        int position = userData.ringPosition;
+        UserData last = this.ring[--this.ringSize];
+        this.ring[position] = last;
+        last.ringPosition = position;
+        this.ring[this.ringSize] = null;
+        userData.ringPosition = NOT_HOT;
+        this.hotBytes -= this.userHeapBytes;
+        this.evictionCount++;
+    }
+
+    private int allocateSlot() {
+        int slot = this.slotCount++;
+        int segment = slot / this.slotsPerSegment;
+        if (segment == this.segments.length) {
+            try {
+                MappedByteBuffer mapped = this.fileChannel.map(
+                    FileChannel.MapMode.READ_WRITE,
+                    (long) segment * this.slotsPerSegment * this.slotBytes,
+                    (long) this.slotsPerSegment * this.slotBytes
+                );
+                MappedByteBuffer[] grown = Arrays.copyOf(this.segments, segment + 1);
+                grown[segment] = mapped;
+                this.segments = grown;
+            } catch (IOException e) {
+                throw new UncheckedIOException("Cannot grow the cold purchase store", e);
+            }
+        }
+        return slot;
+    }
+
+    private void write(int slot, long[] keys, double[] amounts) {
+        MappedByteBuffer segment = this.segments[slot / this.slotsPerSegment];
+        int offset = (slot % this.slotsPerSegment) * this.slotBytes;
+        for (int i = 0; i < this.trackedNumber; i++) {
+            segment.putLong(offset + 8 * i, keys[i]);
+            segment.putDouble(offset + 8 * (this.trackedNumber + i), amounts[i]);
+        }
+    }
+
+    /**
+     * Page the purchases of a cold user in, from any thread.
+     * @param slot
+     * @param keys receives the keys
+     * @param amounts receives the amounts
+     */
+    void read(int slot, long[] keys, double[] amounts) {
+        this.coldHitCount.increment();
+        MappedByteBuffer segment = this.segments[slot / this.slotsPerSegment];
+        int offset = (slot % this.slotsPerSegment) * this.slotBytes;
+        for (int i = 0; i < this.trackedNumber; i++) {
+            keys[i] = segment.getLong(offset + 8 * i);
+            amounts[i] = segment.getDouble(offset + 8 * (this.trackedNumber + i));
+        }
+    }
+
+    void recordHotHit() {
+        this.hotHitCount.increment();
+    }
+
+    /**
+     * Counters
+     */
+
+    public long getHotHitCount() {
+        return this.hotHitCount.sum();
+    }
+
+    public long getColdHitCount() {
+        return this.coldHitCount.sum();
+    }
+
+    public synchronized long getEvictionCount() {
+        return this.evictionCount;
+    }
+
+    public synchronized int getHotUserCount() {
+        return this.ringSize;
+    }
+
+    public synchronized long getHotBytes() {
+        return this.hotBytes;
+    }
+
+    public synchronized int getColdSlotCount() {
+        return this.slotCount;
+    }
+
+    /**
+     * Close the file of the cold tier, the users it holds cannot be read anymore.
+     */
+    @Override
+    public void close() throws IOException {
+        this.fileChannel.close();
+        if (this.isTemporaryFile) {
+            Files.deleteIfExists(this.filePath);
+        }
+    }
+
+    @Override
+    public synchronized String toString() {
+        return "Purchase store: hot users=" + this.ringSize
+            + ", hot bytes=" + this.hotBytes
+            + ", budget bytes=" + this.heapBudgetBytes
+            + ", cold slots=" + this.slotCount
+            + ", hot hits=" + this.getHotHitCount()
+            + ", cold hits=" + this.getColdHitCount()
+            + ", evictions=" + this.evictionCount;
+    }
+}
@@ -6,42 +6,276 @@ import java.util.Deque;
 /**
  * Store user's related data.
  * This includes the latest purchases this user made.
- * We don't need random access for the list of these track purchases
- * so we store them in a linked list.
- * In fact, we use the ArrayDeque class, which implements the Deque class.
- * The number of tracked purchases are bounded so the memory used is constant.
- * As we push the new purchase into the tail of the ArrayDeque, we pop the
- * one on the other end, which is the oldest on in the list.
+ * The number of tracked purchases are bounded so we store them in a fixed-size
+ * circular buffer. As we write the new purchase after the newest one, we overwrite
+ * the oldest one once the buffer is full.
+ *
+ * The buffer is kept as two parallel primitive arrays, the ordering keys (see
+ * {PurchaseData}) and the amounts, so a tracked purchase costs 16 bytes and no object.
+ * The purchases can be read by their age (0 being the latest one) so that a merge
+ * can keep a cursor into each user's purchases without copying them.
+ *
+ * The arrays are only allocated with the first purchase. With a {TieredPurchaseStore},
+ * they can also be moved out of the heap, and are paged back in the next time a
+ * purchase older than the latest one is read. The latest purchase is always kept on
+ * the heap, so a merge can order the user, and take its latest purchase, without
+ * paging it in.
+ *
+ * With {PurchaseSlabs}, the buffer is a slot of a direct buffer instead of the two
+ * arrays, and is read in place by the merge.
  */
 public class UserData {
     final private String id;
     final private int trackedNumberOfPurchases;
-    private Deque<PurchaseData> latestPurchases;
+    private TieredPurchaseStore store; // null when the purchases always stay on the heap
+    private PurchaseSlabs slabs; // null when the purchases are on the heap
+    private int slabSlot = PurchaseSlabs.NO_SLOT;
+
+    // null before the first purchase and while the purchases are in the cold tier.
+    // The amounts are written before the keys, so reading the keys first sees both.
+    private volatile long[] purchaseKeys;
+    private double[] purchaseAmounts;
+    private int newestIndex; // position of the latest purchase in the circular buffer
+    private int purchaseCount;
+    private long latestKey;
+    private double latestAmount;
+
+    // State of the tiered store, only used by the store
+    int coldSlot = TieredPurchaseStore.NO_SLOT; // copy of the purchases in the cold tier
+    int ringPosition = TieredPurchaseStore.NOT_HOT;
+    boolean isDirty; // changed since it was last written to the cold tier
+    boolean isReferenced; // read since the clock hand last passed it
 
     public UserData(String id, int trackedNumberOfPurchases) {
+        this(id, trackedNumberOfPurchases, (TieredPurchaseStore) null);
+    }
+
+    /**
+     * @param id
+     * @param trackedNumberOfPurchases
+     * @param store store that may move the purchases out of the heap, or null
+     */
+    UserData(String id, int trackedNumberOfPurchases, TieredPurchaseStore store) {
         this.id = id;
         this.trackedNumberOfPurchases = trackedNumberOfPurchases;
-        // Store the lastest purchase list as an ArrayDeque (optimized LinkedList)
-        this.latestPurchases = new ArrayDeque<>(trackedNumberOfPurchases);
+        this.store = store;
+        this.newestIndex = -1;
+        this.purchaseCount = 0;
+    }
+
+    /**
+     * @param id
+     * @param trackedNumberOfPurchases the tracked number of {@slabs}
+     * @param slabs off-heap storage of the purchases
+     */
+    UserData(String id, int trackedNumberOfPurchases, PurchaseSlabs slabs) {
+        this(id, trackedNumberOfPurchases, (TieredPurchaseStore) null);
+        this.slabs = slabs;
     }
 
     public String getId() {
         return this.id;
     }
 
+    /**
+     * @return a copy of the tracked purchases from the oldest to the latest one
+     */
     public Deque<PurchaseData> getLatestPurchases() {
-        return this.latestPurchases;
+        Deque<PurchaseData> purchases = new ArrayDeque<>(this.purchaseCount);
+        for (int age = this.purchaseCount - 1; age >= 0; age--) {
+            purchases.addLast(this.getLatestPurchase(age));
+        }
+        return purchases;
+    }
+
+    public int getTrackedNumberOfPurchases() {
+        return this.trackedNumberOfPurchases;
+    }
+
+    public int getPurchaseCount() {
+        return this.purchaseCount;
+    }
+
+    /**
+     * @param age 0 for the latest purchase, up to {@getPurchaseCount} - 1 for the oldest one
+     * @return the tracked purchase of that age
+     */
+    public PurchaseData getLatestPurchase(int age) {
+        return PurchaseData.fromKey(this.getPurchaseAmount(age), this.getPurchaseKey(age));
+    }
+
+    /**
+     * @param age 0 for the latest purchase, up to {@getPurchaseCount} - 1 for the oldest one
+     * @return the ordering key of the tracked purchase of that age
+     */
+    public long getPurchaseKey(int age) {
+        if (age == 0) {
+            return this.latestKey;
+        }
+        if (this.slabs != null) {
+            return this.slabs.getKey(this.slabSlot, this.indexOf(age));
+        }
+        return this.hotKeys()[this.indexOf(age)];
+    }
+
+    /**
+     * @param age 0 for the latest purchase, up to {@getPurchaseCount} - 1 for the oldest one
+     * @return the amount of the tracked purchase of that age
+     */
+    public double getPurchaseAmount(int age) {
+        if (age == 0) {
+            return this.latestAmount;
+        }
+        if (this.slabs != null) {
+            return this.slabs.getAmount(this.slabSlot, this.indexOf(age));
+        }
+        this.hotKeys();
+        return this.purchaseAmounts[this.indexOf(age)];
     }
 
     /**
-     * Add the new purchase data onto the list. Pop the oldest one if necessary
+     * Add the new purchase data onto the list. Overwrite the oldest one if necessary
      * to keep the number of tracked purchase constant.
      * @param purchaseData
      */
     public void addPurchase(PurchaseData purchaseData) {
-        if (this.latestPurchases.size() >= this.trackedNumberOfPurchases) {
-            this.latestPurchases.pollFirst();
+        this.addPurchase(purchaseData.key(), purchaseData.amount());
+    }
+
+    /**
+     * @param key ordering key of the purchase, not older than the latest tracked one
+     * @param amount
+     */
+    public void addPurchase(long key, double amount) {
+        if (this.trackedNumberOfPurchases == 0) {
+            return;
+        }
+        if (this.slabs == null && this.purchaseKeys == null) {
+            if (this.purchaseCount == 0) {
+                this.allocate();
+            } else {
+                this.pageIn();
+            }
+        }
+        if (++this.newestIndex == this.trackedNumberOfPurchases) {
+            this.newestIndex = 0;
+        }
+        if (this.slabs != null) {
+            if (this.slabSlot == PurchaseSlabs.NO_SLOT) {
+                this.slabSlot = this.slabs.allocate();
+            }
+            this.slabs.put(this.slabSlot, this.newestIndex, key, amount);
+        } else {
+            this.purchaseKeys[this.newestIndex] = key;
+            this.purchaseAmounts[this.newestIndex] = amount;
         }
-        this.latestPurchases.addLast(purchaseData);
+        this.latestKey = key;
+        this.latestAmount = amount;
+        if (this.purchaseCount < this.trackedNumberOfPurchases) {
+            this.purchaseCount++;
+        }
+        this.isDirty = true;
+        this.isReferenced = true;
+    }
+
+    /**
+     * @return the keys on the heap, paged in if needed
+     */
+    private long[] hotKeys() {
+        long[] keys = this.purchaseKeys;
+        if (this.store == null) {
+            return keys;
+        }
+        if (keys == null) {
+            return this.pageIn();
+        }
+        this.isReferenced = true;
+        this.store.recordHotHit();
+        return keys;
+    }
+
+    private void allocate() {
+        this.purchaseAmounts = new double[this.trackedNumberOfPurchases];
+        this.purchaseKeys = new long[this.trackedNumberOfPurchases];
+        if (this.store != null) {
+            this.store.admit(this);
+        }
+    }
+
+    /**
+     * Several threads can read the same user while an epoch is evaluated.
+     */
+    private synchronized long[] pageIn() {
+        long[] keys = this.purchaseKeys;
+        if (keys != null) {
+            return keys;
+        }
+        keys = new long[this.trackedNumberOfPurchases];
+        double[] amounts = new double[this.trackedNumberOfPurchases];
+        this.store.read(this.coldSlot, keys, amounts);
+        this.purchaseAmounts = amounts;
+        this.purchaseKeys = keys;
+        this.isReferenced = true;
+        this.store.admit(this);
+        return keys;
+    }
+
+    /**
+     * Let {@store} move the purchases of an existing user out of the heap.
+     * @param store
+     */
+    void attach(TieredPurchaseStore store) {
+        this.store = store;
+        if (this.purchaseKeys != null) {
+            this.isDirty = true;
+            store.admit(this);
+        }
+    }
+
+    /**
+     * Move the purchases of an existing user to {@slabs}, at the same
+     * positions of its circular buffer.
+     * @param slabs
+     */
+    void moveTo(PurchaseSlabs slabs) {
+        if (this.slabs != null) {
+            return;
+        }
+        if (this.purchaseCount > 0) {
+            long[] keys = (this.purchaseKeys == null) ? this.pageIn() : this.purchaseKeys;
+            double[] amounts = this.purchaseAmounts;
+            this.slabSlot = slabs.allocate();
+            for (int i = 0; i < this.trackedNumberOfPurchases; i++) {
+                slabs.put(this.slabSlot, i, keys[i], amounts[i]);
+            }
+        }
+        this.slabs = slabs;
+        this.store = null;
+        this.release();
+    }
+
+    /**
+     * Arrays of the purchases for the store, null while they are in the cold tier.
+     */
+
+    long[] getHotKeys() {
+        return this.purchaseKeys;
+    }
+
+    double[] getHotAmounts() {
+        return this.purchaseAmounts;
+    }
+
+    /**
+     * Drop the arrays once the store has a copy of them.
+     */
+    void release() {
+        this.purchaseKeys = null;
+        this.purchaseAmounts = null;
+    }
+
+    private int indexOf(int age) {
+        int index = this.newestIndex - age;
+        return (index < 0) ? index + this.trackedNumberOfPurchases : index;
     }
 }
@@ -1,6 +1,7 @@
 package psuteparuk.insightdata.anomalydetection.network;
 
-import psuteparuk.insightdata.anomalydetection.common.SinglyLinkedNode;
+import psuteparuk.insightdata.anomalydetection.common.PrimitiveSort;
+import psuteparuk.insightdata.anomalydetection.metrics.PipelineMetrics;
 
 import java.util.*;
 
@@ -14,11 +15,60 @@ import java.util.*;
  * To calculate the "close" friend or "depth" group, we utilize
  * the breadth-first-search algorithm.
  * To calculate the {@trackedNumber} latest purchases of the "depth" group,
- * we utilize the PriorityQueue to merge multiple sorted lists.
+ * we merge multiple sorted lists with a heap (see {GroupPurchaseMerger}).
+ *
+ * Purchases are far more frequent than relationship changes, so the "depth"
+ * groups are kept in a bounded cache and only recomputed when an edge around
+ * them has changed. With the INCREMENTAL {DepthGroupMode}, they are instead kept
+ * up to date on each befriend and unfriend by a {ReachabilityIndex}.
+ *
+ * With the ADAPTIVE {GroupStatsMode}, the latest purchases of some groups are also
+ * kept up to date on each purchase, so their stats are read without a merge
+ * (see {GroupWindows}).
+ *
+ * With a purchase heap budget, the purchases of the users that were not read lately
+ * are moved to a memory-mapped file (see {TieredPurchaseStore}). The budget is
+ * enforced after each purchase and each stats calculation, and between the chunks
+ * of users of a bulk load, where no other thread reads the network.
+ * With the OFF_HEAP {PurchaseStorageType}, the purchases of every user are instead
+ * kept in direct buffers (see {PurchaseSlabs}).
  */
 public class UserNetwork extends SocialNetwork<UserData> {
+    public static final int DEFAULT_DEPTH_GROUP_CACHE_SIZE = 10000;
+    static final int BULK_USER_CHUNK_SIZE = 65536;
+
     private int depthDegree;
     private int trackedNumber;
+    private long purchaseSequence; // arrival order of the next purchase
+    final private DepthGroupCache depthGroupCache;
+    final private GroupPurchaseMerger groupPurchaseMerger = new GroupPurchaseMerger();
+    private ReachabilityIndex reachabilityIndex = null; // only in INCREMENTAL mode
+    private GroupWindows groupWindows = null; // only in ADAPTIVE mode
+    private long purchaseHeapBudgetBytes = 0; // 0 keeps every purchase on the heap
+    private String coldStoreFilePath = null;
+    private TieredPurchaseStore purchaseStore = null;
+    private PurchaseStorageType purchaseStorageType = PurchaseStorageType.HEAP;
+    private PurchaseSlabs purchaseSlabs = null; // only with OFF_HEAP purchases
+
+    public UserNetwork() {
+        this(DEFAULT_DEPTH_GROUP_CACHE_SIZE);
+    }
+
+    /**
+     * @param depthGroupCacheSize maximum number of cached "depth" groups, 0 disables the cache
+     */
+    public UserNetwork(int depthGroupCacheSize) {
+        this(depthGroupCacheSize, GraphStorageType.HASH);
+    }
+
+    /**
+     * @param depthGroupCacheSize maximum number of cached "depth" groups, 0 disables the cache
+     * @param storageType backend storing the users and their friends
+     */
+    public UserNetwork(int depthGroupCacheSize, GraphStorageType storageType) {
+        super(storageType);
+        this.depthGroupCache = new DepthGroupCache(depthGroupCacheSize);
+    }
 
     /**
      * Parameters Setters
@@ -26,15 +76,246 @@ public class UserNetwork extends SocialNetwork<UserData> {
 
     public void setDepthDegree(int depthDegree) {
         this.depthDegree = depthDegree;
+        this.depthGroupCache.clear();
+        if (this.groupWindows != null) {
+            this.groupWindows.clear();
+        }
     }
 
     public void setTrackedNumber(int trackedNumber) {
         this.trackedNumber = trackedNumber;
+        if (this.groupWindows != null) {
+            this.groupWindows = new GroupWindows(trackedNumber);
+        }
+        if (this.purchaseHeapBudgetBytes > 0
+            && (this.purchaseStore == null || this.purchaseStore.getTrackedNumber() != trackedNumber)) {
+            this.createPurchaseStore();
+        }
+        if (this.purchaseStorageType == PurchaseStorageType.OFF_HEAP && trackedNumber > 0
+            && (this.purchaseSlabs == null || this.purchaseSlabs.getTrackedNumber() != trackedNumber)) {
+            this.createPurchaseSlabs();
+        }
+    }
+
+    /**
+     * Switching to OFF_HEAP moves the purchases of the existing users out of the heap,
+     * the slabs are created once the tracked number is known.
+     * Users already moved stay off the heap when switching back to HEAP.
+     * @param purchaseStorageType
+     * @throws IllegalStateException if OFF_HEAP is set with a purchase heap budget
+     */
+    public void setPurchaseStorageType(PurchaseStorageType purchaseStorageType) {
+        if (purchaseStorageType == this.purchaseStorageType) {
+            return;
+        }
+        if (purchaseStorageType == PurchaseStorageType.OFF_HEAP && this.purchaseHeapBudgetBytes > 0) {
+            throw new IllegalStateException("A purchase heap budget only applies to HEAP purchases");
+        }
+        this.purchaseStorageType = purchaseStorageType;
+        this.purchaseSlabs = null;
+        if (purchaseStorageType == PurchaseStorageType.OFF_HEAP && this.trackedNumber > 0) {
+            this.createPurchaseSlabs();
+        }
+    }
+
+    public PurchaseStorageType getPurchaseStorageType() {
+        return this.purchaseStorageType;
+    }
+
+    /**
+     * @return the slabs of the OFF_HEAP purchases, null with HEAP purchases
+     */
+    public PurchaseSlabs getPurchaseSlabs() {
+        return this.purchaseSlabs;
+    }
+
+    private void createPurchaseSlabs() {
+        this.purchaseSlabs = new PurchaseSlabs(this.trackedNumber);
+        for (String nodeId : this.getNodeIds()) {
+            UserData userData = this.getData(nodeId);
+            if (userData != null && userData.getTrackedNumberOfPurchases() == this.trackedNumber) {
+                userData.moveTo(this.purchaseSlabs);
+            }
+        }
+    }
+
+    /**
+     * Keep the purchases within {@heapBudgetBytes} on the heap, the existing users included.
+     * The store is created once the tracked number is known.
+     * @param heapBudgetBytes maximum size of the purchases on the heap, 0 keeps them all
+     * @param coldStoreFilePath file of the cold tier, or null for a temporary file
+     * @throws IllegalStateException if the purchases are OFF_HEAP
+     */
+    public void setPurchaseHeapBudget(long heapBudgetBytes, String coldStoreFilePath) {
+        if (heapBudgetBytes > 0 && this.purchaseStorageType == PurchaseStorageType.OFF_HEAP) {
+            throw new IllegalStateException("A purchase heap budget only applies to HEAP purchases");
+        }
+        this.purchaseHeapBudgetBytes = heapBudgetBytes;
+        this.coldStoreFilePath = coldStoreFilePath;
+        if (heapBudgetBytes <= 0) {
+            this.purchaseStore = null;
+        } else if (this.trackedNumber > 0) {
+            this.createPurchaseStore();
+        }
+    }
+
+    /**
+     * Users that tracked another number of purchases keep the store they had,
+     * the budget is no longer enforced on them.
+     */
+    private void createPurchaseStore() {
+        this.purchaseStore = new TieredPurchaseStore(this.trackedNumber, this.purchaseHeapBudgetBytes, this.coldStoreFilePath);
+        for (String nodeId : this.getNodeIds()) {
+            UserData userData = this.getData(nodeId);
+            if (userData != null && userData.getTrackedNumberOfPurchases() == this.trackedNumber) {
+                userData.attach(this.purchaseStore);
+            }
+        }
+        this.purchaseStore.enforceBudget();
+    }
+
+    /**
+     * @return the store of the purchases, null without a purchase heap budget
+     */
+    public TieredPurchaseStore getPurchaseStore() {
+        return this.purchaseStore;
+    }
+
+    /**
+     * Move purchases out of the heap if they are over the budget.
+     * Only called where no other thread reads the network.
+     */
+    void enforcePurchaseHeapBudget() {
+        if (this.purchaseStore != null) {
+            this.purchaseStore.enforceBudget();
+        }
+    }
+
+    /**
+     * Switching to INCREMENTAL builds the index from the current friendships.
+     * @param depthGroupMode
+     */
+    public void setDepthGroupMode(DepthGroupMode depthGroupMode) {
+        if (depthGroupMode == this.getDepthGroupMode()) {
+            return;
+        }
+        this.reachabilityIndex = (depthGroupMode == DepthGroupMode.INCREMENTAL) ? new ReachabilityIndex(this) : null;
+    }
+
+    public int getDepthDegree() {
+        return this.depthDegree;
+    }
+
+    public int getTrackedNumber() {
+        return this.trackedNumber;
+    }
+
+    /**
+     * Windows are built on the reads that follow.
+     * @param groupStatsMode
+     */
+    public void setGroupStatsMode(GroupStatsMode groupStatsMode) {
+        if (groupStatsMode == this.getGroupStatsMode()) {
+            return;
+        }
+        this.groupWindows = (groupStatsMode == GroupStatsMode.ADAPTIVE) ? new GroupWindows(this.trackedNumber) : null;
+    }
+
+    public GroupStatsMode getGroupStatsMode() {
+        return (this.groupWindows == null) ? GroupStatsMode.PULL : GroupStatsMode.ADAPTIVE;
+    }
+
+    /**
+     * @return the windows of the ADAPTIVE mode, null in PULL mode
+     */
+    public GroupWindows getGroupWindows() {
+        return this.groupWindows;
+    }
+
+    public DepthGroupMode getDepthGroupMode() {
+        return (this.reachabilityIndex == null) ? DepthGroupMode.SEARCH : DepthGroupMode.INCREMENTAL;
+    }
+
+    public DepthGroupCache getDepthGroupCache() {
+        return this.depthGroupCache;
     }
 
     @Override
     public UserData initializeData(String userId) {
-        return new UserData(userId, this.trackedNumber);
+        return (this.purchaseSlabs != null)
+            ? new UserData(userId, this.trackedNumber, this.purchaseSlabs)
+            : new UserData(userId, this.trackedNumber, this.purchaseStore);
+    }
+
+    /**
+     * Friendship updates also update the reachability index in INCREMENTAL mode,
+     * and drop the windows of the groups they may change in ADAPTIVE mode.
+     */
+
+    @Override
+    public void befriend(String nodeId1, String nodeId2) {
+        boolean isNewFriendship = this.tracksFriendships()
+            && !Objects.equals(nodeId1, nodeId2)
+            && !this.areFriends(nodeId1, nodeId2);
+        super.befriend(nodeId1, nodeId2);
+        if (isNewFriendship) {
+            if (this.reachabilityIndex != null) {
+                this.reachabilityIndex.addFriendship(nodeId1, nodeId2);
+            }
+            this.invalidateGroupWindows(nodeId1, nodeId2);
+        }
+    }
+
+    @Override
+    public void unfriend(String nodeId1, String nodeId2) {
+        boolean isRemovedFriendship = this.tracksFriendships()
+            && !Objects.equals(nodeId1, nodeId2)
+            && this.areFriends(nodeId1, nodeId2);
+        super.unfriend(nodeId1, nodeId2);
+        if (isRemovedFriendship) {
+            if (this.reachabilityIndex != null) {
+                this.reachabilityIndex.removeFriendship(nodeId1, nodeId2);
+            }
+            this.invalidateGroupWindows(nodeId1, nodeId2);
+        }
+    }
+
+    /**
+     * The reachability index is rebuilt and the windows dropped once the whole batch is applied.
+     */
+    @Override
+    public void bulkUpdateFriendships(RelationshipBatch batch, int parallelism) {
+        super.bulkUpdateFriendships(batch, parallelism);
+        if (this.reachabilityIndex != null) {
+            this.reachabilityIndex.rebuild();
+        }
+        if (this.groupWindows != null) {
+            this.groupWindows.clear();
+        }
+    }
+
+    private boolean tracksFriendships() {
+        return this.reachabilityIndex != null || this.groupWindows != null;
+    }
+
+    /**
+     * A group is the users within two hops (see {ReachabilityIndex}), so a friendship
+     * only changes the groups of its two users and of their friends.
+     */
+    private void invalidateGroupWindows(String nodeId1, String nodeId2) {
+        if (this.groupWindows == null || this.groupWindows.isEmpty()) {
+            return;
+        }
+        for (String nodeId : new String[] { nodeId1, nodeId2 }) {
+            this.groupWindows.invalidate(nodeId);
+            for (String friendId : this.getFriends(nodeId)) {
+                this.groupWindows.invalidate(friendId);
+            }
+        }
+    }
+
+    private boolean areFriends(String nodeId1, String nodeId2) {
+        return this.contains(nodeId1) && this.contains(nodeId2) && this.getFriends(nodeId1).contains(nodeId2);
     }
 
     /**
@@ -48,6 +329,23 @@ public class UserNetwork extends SocialNetwork<UserData> {
         return purchaseData.amount() > groupStats.anomalyThreshold();
     }
 
+    /**
+     * @param amount
+     * @param timestamp epoch seconds
+     * @return a purchase that arrives after every purchase created or bulk added so far
+     */
+    public PurchaseData newPurchase(double amount, long timestamp) {
+        return PurchaseData.create(amount, timestamp, this.purchaseSequence++);
+    }
+
+    long getPurchaseSequence() {
+        return this.purchaseSequence;
+    }
+
+    void setPurchaseSequence(long purchaseSequence) {
+        this.purchaseSequence = purchaseSequence;
+    }
+
     /**
      * Add a user's purchase into the network
      * @param userId
@@ -55,86 +353,162 @@ public class UserNetwork extends SocialNetwork<UserData> {
      */
     public void addPurchase(String userId, PurchaseData purchaseData) {
         UserData userData = (this.contains(userId)) ? this.getData(userId) : this.initializeData(userId);
+        boolean isInOrder = userData.getPurchaseCount() == 0 || purchaseData.key() > userData.getPurchaseKey(0);
         userData.addPurchase(purchaseData);
         this.putNode(userId, userData);
+
+        // push the purchase into the windows of the buyer's group
+        if (this.groupWindows != null) {
+            this.groupWindows.push(
+                userId,
+                purchaseData.key(),
+                purchaseData.amount(),
+                isInOrder,
+                this.groupWindows.isEmpty() ? Collections.emptySet() : this.getDepthGroup(userId)
+            );
+        }
+        this.enforcePurchaseHeapBudget();
+    }
+
+    /**
+     * Add a batch of purchases, ordered by timestamp per user (purchases with the
+     * same timestamp keep their batch order). The result is the same as calling
+     * addPurchase with newPurchase for each purchase in batch order, then sorting
+     * them by timestamp.
+     *
+     * The users are created first. Then the purchases are partitioned by buyer
+     * and each buyer's purchases are sorted and added on {@parallelism} threads.
+     * Only the {@trackedNumber} latest ones of each buyer are actually added.
+     * With a purchase heap budget, the buyers are added by chunks and the budget
+     * is enforced after each chunk.
+     * @param batch
+     * @param parallelism
+     */
+    public void bulkAddPurchases(PurchaseBatch batch, int parallelism) {
+        if (this.groupWindows != null) {
+            this.groupWindows.clear();
+        }
+        EventPartition partition = new EventPartition();
+        int[] buyerPositions = new int[batch.size()];
+        for (int i = 0; i < batch.size(); i++) {
+            String buyerId = batch.getBuyerId(i);
+            if (!this.contains(buyerId)) {
+                this.putNode(buyerId, this.initializeData(buyerId));
+            }
+            buyerPositions[i] = partition.count(buyerId);
+        }
+        for (int i = 0; i < batch.size(); i++) {
+            partition.place(buyerPositions[i], i);
+        }
+
+        // the batch index is the arrival order
+        final long firstSequence = this.purchaseSequence;
+        this.purchaseSequence += batch.size();
+
+        int[] eventIndexes = partition.getEventIndexes();
+        int chunkSize = (this.purchaseStore == null) ? partition.size() : BULK_USER_CHUNK_SIZE;
+        for (int chunkStart = 0; chunkStart < partition.size(); chunkStart += chunkSize) {
+            int chunkEnd = (int) Math.min((long) chunkStart + chunkSize, partition.size());
+            partition.forEachUser(chunkStart, chunkEnd, parallelism, (user) -> {
+                UserData userData = this.getData(partition.getUserId(user));
+                int start = partition.getStart(user);
+                int end = partition.getEnd(user);
+                long[] keys = new long[end - start];
+                int[] sortedIndexes = new int[end - start];
+                for (int i = start; i < end; i++) {
+                    keys[i - start] = PurchaseData.key(batch.getTimestamp(eventIndexes[i]), firstSequence + eventIndexes[i]);
+                    sortedIndexes[i - start] = eventIndexes[i];
+                }
+                PrimitiveSort.stableSort(keys, sortedIndexes, 0, sortedIndexes.length);
+
+                for (int i = Math.max(0, sortedIndexes.length - this.trackedNumber); i < sortedIndexes.length; i++) {
+                    userData.addPurchase(keys[i], batch.getAmount(sortedIndexes[i]));
+                }
+            });
+            this.enforcePurchaseHeapBudget();
+        }
     }
 
     /**
      * Find the {@trackedNumber} latest purchases in the "depth" group of a user
      * and calculate the stats (mean and sd).
+     * Each node in the "depth" group contains a sorted list of its own {@trackedNumber}
+     * latest purchases. The merger walks these lists with a heap, newest first, and
+     * aggregates the first {@trackedNumber} purchases it pops without building a merged list.
+     * In ADAPTIVE mode, the stats are read from the user's window when it has one.
      * @param userId
      * @return a stats of the latest purchases
      */
     public GroupStats calculateGroupStats(String userId) {
-        List<PurchaseData> groupLatestPurchases = this.getGroupLatestPurchases(userId);
-        double mean = PurchaseData.calculateMean(groupLatestPurchases);
-        double sd = PurchaseData.calculateStandardDeviation(groupLatestPurchases);
-        return GroupStats.create(mean, sd);
+        if (this.groupWindows != null) {
+            GroupStats groupStats = this.groupWindows.getStats(userId);
+            if (groupStats != null) {
+                return groupStats;
+            }
+        }
+
+        Set<String> depthGroup = this.getDepthGroup(userId);
+        this.groupPurchaseMerger.reset();
+        for (String nodeId : depthGroup) {
+            this.groupPurchaseMerger.addMember(this.getData(nodeId));
+        }
+        GroupStats groupStats = (this.groupWindows != null && this.groupWindows.shouldMaterialize(userId, depthGroup))
+            ? this.groupWindows.materialize(userId, depthGroup.size(), this.groupPurchaseMerger)
+            : this.groupPurchaseMerger.aggregate(this.trackedNumber);
+        this.enforcePurchaseHeapBudget();
+        return groupStats;
     }
 
     /**
-     * Find the {@trackedNumber} latest purchases in the "depth" group of a user.
-     * Each node in the "depth" contains a sorted list of its own {@trackedNumber} latest purchases.
-     * This function merge these sorted lists into a new sorted list, keeping only
-     * {@trackedNumber} latest ones.
-     * To achieve this, it utilizes a PriorityQueue. We first push the head of each list into
-     * the PriorityQueue. For each dequeue, we take the next node in the list of that dequeued node and
-     * push it into the queue again.
+     * Find nodes within {@depthDegree} hops from the specified user.
+     * Serve the group from the cache when none of the edges it depends on has changed.
      * @param userId
-     * @return
+     * @return a Set of "close" nodes (nodes that are within {@depthDegree} hops)
      */
-    private List<PurchaseData> getGroupLatestPurchases(String userId) {
-        // return list. keep track of only {@trackedNumber} of purchases
-        List<PurchaseData> groupLatestPurchases = new ArrayList<>(this.trackedNumber);
+    Set<String> getDepthGroup(String userId) {
+        long start = PipelineMetrics.DEPTH_GROUP_NANOS.startTimer();
+        Set<String> depthGroup = this.getCachedDepthGroup(userId);
+        if (depthGroup == null) {
+            List<String> expandedIds = new ArrayList<>();
+            depthGroup = Collections.unmodifiableSet(this.searchDepthGroup(userId, expandedIds));
+            this.cacheDepthGroup(userId, depthGroup, expandedIds);
+        }
+        PipelineMetrics.DEPTH_GROUP_NANOS.stopTimer(start);
+        PipelineMetrics.GROUP_SIZE.record(depthGroup.size());
+        return depthGroup;
+    }
 
-        // PriorityQueue used for merge operation of multiple sorted lists
-        // At each point in time, the queue will never contain more than the number of nodes
-        // in the "depth" group
-        Set<String> depthGroup = this.getDepthGroup(userId);
-        PriorityQueue<SinglyLinkedNode<PurchaseData>> mergeBuffer = new PriorityQueue<>(
-            depthGroup.size(),
-            Comparator.comparing(
-                (SinglyLinkedNode<PurchaseData> purchaseDataNode) -> purchaseDataNode.getData().timestamp()
-            ).reversed()
-        );
-
-        // We first convert the list of latest purchases of each friend into a singly-linked list.
-        // This is so that we know which purchase data we need to push into the queue next
-        // when we dequeue data from the queue.
-        // Note that we reverse the order of the list so the latest one is at the head.
-        List<SinglyLinkedNode<PurchaseData>> depthGroupPurchases = new ArrayList<>(depthGroup.size());
-        depthGroup.forEach((nodeId) -> {
-            Deque<PurchaseData> latestPurchases = this.getData(nodeId).getLatestPurchases();
-
-            List<SinglyLinkedNode<PurchaseData>> currentNodePurchases = new ArrayList<>(latestPurchases.size());
-            latestPurchases.forEach((purchase) -> currentNodePurchases.add(new SinglyLinkedNode<>(purchase)));
-            for (int purchaseInd = currentNodePurchases.size()-1; purchaseInd > 0; --purchaseInd) {
-                currentNodePurchases.get(purchaseInd).setNext(currentNodePurchases.get(purchaseInd-1));
-            }
-            depthGroupPurchases.add(currentNodePurchases.get(currentNodePurchases.size()-1));
-        });
-        depthGroupPurchases.forEach(mergeBuffer::add);
-
-        // Actual merge operation. Only need {@trackedNumber} of latest purchase data.
-        int count = this.trackedNumber;
-        while (!mergeBuffer.isEmpty() && count-- > 0) {
-            SinglyLinkedNode<PurchaseData> purchaseDataNode = mergeBuffer.poll();
-            groupLatestPurchases.add(purchaseDataNode.getData());
-            if (purchaseDataNode.hasNext()) {
-                mergeBuffer.add(purchaseDataNode.getNext());
-            }
+    /**
+     * In INCREMENTAL mode, the group kept by the reachability index is always valid
+     * (a depth degree of 0 still searches, its group is only the friends).
+     * @param userId
+     * @return the cached "depth" group of the user, or null if it is not cached or no longer valid
+     */
+    Set<String> getCachedDepthGroup(String userId) {
+        if (this.reachabilityIndex != null && this.depthDegree > 0) {
+            return this.reachabilityIndex.getGroup(userId);
         }
+        return this.depthGroupCache.get(userId, this);
+    }
 
-        return groupLatestPurchases;
+    /**
+     * @param userId
+     * @param depthGroup
+     * @param expandedIds the nodes whose friends were visited during the search
+     */
+    void cacheDepthGroup(String userId, Set<String> depthGroup, List<String> expandedIds) {
+        this.depthGroupCache.put(userId, depthGroup, expandedIds, this);
     }
 
     /**
      * Breadth-first algorithm to find nodes within {@depthDegree} hops
      * from the specified user.
+     * It only reads the graph, so it can run on several threads while the graph does not change.
      * @param userId
+     * @param expandedIds collects the nodes whose friends were visited
      * @return a Set of "close" nodes (nodes that are within {@depthDegree} hops)
      */
-    private Set<String> getDepthGroup(String userId) {
+    Set<String> searchDepthGroup(String userId, List<String> expandedIds) {
         Set<String> depthGroup = new HashSet<>();
 
         // keep tracked of visited node
@@ -168,6 +542,7 @@ public class UserNetwork extends SocialNetwork<UserData> {
             }
 
             final int currentDepth = depth;
+            expandedIds.add(currentNodeId);
             this.getFriends(currentNodeId).forEach((friendId) -> {
                 // If an unvisited node is found, push it into the return set
                 if (!isVisited.containsKey(friendId) || !isVisited.get(friendId)) {
@@ -0,0 +1,286 @@
+package psuteparuk.insightdata.anomalydetection.network;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedInputStream;
+import java.util.zip.CheckedOutputStream;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static java.nio.file.StandardCopyOption.ATOMIC_MOVE;
+import static java.nio.file.StandardCopyOption.REPLACE_EXISTING;
+
+/**
+ * A compact binary snapshot of a {UserNetwork}, to restore it without
+ * replaying the batch log.
+ *
+ * Layout (big-endian):
+ *  - magic "ANDS", format version
+ *  - the batch log it was built from: absolute path, size and modification time
+ *      (an empty path when it is not known)
+ *  - D, T and the sequence of the next purchase
+ *  - the users: ID, number of tracked purchases, then each purchase from the
+ *      oldest to the latest as (timestamp key, amount)
+ *  - the edges: for each user, its friends that come after it (or itself) in the
+ *      user list, as indexes into that list, so each edge is written once
+ *  - a CRC32 of everything before it
+ *
+ * A snapshot is written to a temporary file and moved into place, so a crash
+ * while writing never leaves a truncated snapshot behind.
+ *
+ * A snapshot is only restored for the batch log it was built from, unchanged.
+ * The size and the modification time are checked rather than the content, so that
+ * checking a multi-GB log does not cost as much as replaying it.
+ */
+public class UserNetworkSnapshot {
+    private static final int MAGIC = 0x414E4453; // "ANDS"
+    private static final int FORMAT_VERSION = 3;
+    private static final int BUFFER_SIZE = 1 << 16;
+    private static final int ENFORCE_INTERVAL = 4096; // users written between two enforcements of the purchase heap budget
+    private static final int MAX_ID_LENGTH = 1 << 16; // guards against corrupted lengths
+
+    private UserNetworkSnapshot() {
+    }
+
+    /**
+     * @param userNetwork
+     * @param snapshotFilePath
+     * @param batchLogPath the batch log the network was built from, or null
+     * @throws IOException if the snapshot cannot be written or the batch log cannot be read
+     */
+    public static void write(UserNetwork userNetwork, String snapshotFilePath, String batchLogPath) throws IOException {
+        BatchLogIdentity batchLogIdentity = BatchLogIdentity.of(batchLogPath);
+        Path snapshotPath = Paths.get(snapshotFilePath);
+        Path temporaryPath = Paths.get(snapshotFilePath + ".tmp");
+
+        try (OutputStream fileOutput = new BufferedOutputStream(Files.newOutputStream(temporaryPath), BUFFER_SIZE)) {
+            CheckedOutputStream checkedOutput = new CheckedOutputStream(fileOutput, new CRC32());
+            DataOutputStream output = new DataOutputStream(checkedOutput);
+            output.writeInt(MAGIC);
+            output.writeInt(FORMAT_VERSION);
+            batchLogIdentity.write(output);
+            output.writeInt(userNetwork.getDepthDegree());
+            output.writeInt(userNetwork.getTrackedNumber());
+            output.writeLong(userNetwork.getPurchaseSequence());
+
+            String[] userIds = userNetwork.getNodeIds().toArray(new String[0]);
+            Map<String, Integer> userIndexes = new HashMap<>(userIds.length * 2);
+            output.writeInt(userIds.length);
+            for (int i = 0; i < userIds.length; i++) {
+                userIndexes.put(userIds[i], i);
+                writeId(output, userIds[i]);
+                UserData userData = userNetwork.getData(userIds[i]);
+                int purchaseCount = (userData == null) ? 0 : userData.getPurchaseCount();
+                output.writeInt(purchaseCount);
+                for (int age = purchaseCount - 1; age >= 0; age--) {
+                    output.writeLong(userData.getPurchaseKey(age));
+                    output.writeDouble(userData.getPurchaseAmount(age));
+                }
+                // the users paged in to be written are moved out again as we go
+                if ((i & (ENFORCE_INTERVAL - 1)) == ENFORCE_INTERVAL - 1) {
+                    userNetwork.enforcePurchaseHeapBudget();
+                }
+            }
+
+            int[] friendIndexes = new int[16];
+            for (int i = 0; i < userIds.length; i++) {
+                int friendCount = 0;
+                for (String friendId : userNetwork.getFriends(userIds[i])) {
+                    int friendIndex = userIndexes.get(friendId);
+                    if (friendIndex >= i) {
+                        if (friendCount == friendIndexes.length) {
+                            friendIndexes = Arrays.copyOf(friendIndexes, friendCount << 1);
+                        }
+                        friendIndexes[friendCount++] = friendIndex;
+                    }
+                }
+                output.writeInt(friendCount);
+                for (int j = 0; j < friendCount; j++) {
+                    output.writeInt(friendIndexes[j]);
+                }
+            }
+            output.flush();
+
+            // the checksum itself is not part of the checksum
+            new DataOutputStream(fileOutput).writeLong(checkedOutput.getChecksum().getValue());
+        }
+        Files.move(temporaryPath, snapshotPath, REPLACE_EXISTING, ATOMIC_MOVE);
+    }
+
+    /**
+     * @param snapshotFilePath
+     * @param batchLogPath the batch log the network should be built from, or null
+     * @param depthGroupCacheSize see {UserNetwork}
+     * @param storageType see {UserNetwork}
+     * @return a new network in the state of the snapshot
+     * @throws IOException if the snapshot cannot be read, is not valid,
+     * or was not built from the batch log as it is now
+     */
+    public static UserNetwork restore(
+        String snapshotFilePath,
+        String batchLogPath,
+        int depthGroupCacheSize,
+        GraphStorageType storageType
+    ) throws IOException {
+        UserNetwork userNetwork = new UserNetwork(depthGroupCacheSize, storageType);
+
+        try (InputStream fileInput = new BufferedInputStream(Files.newInputStream(Paths.get(snapshotFilePath)), BUFFER_SIZE)) {
+            CheckedInputStream checkedInput = new CheckedInputStream(fileInput, new CRC32());
+            DataInputStream input = new DataInputStream(checkedInput);
+            if (input.readInt() != MAGIC) {
+                throw new IOException("Not a snapshot file");
+            }
+            int formatVersion = input.readInt();
+            if (formatVersion != FORMAT_VERSION) {
+                throw new IOException("Unsupported snapshot version " + formatVersion);
+            }
+            if (!BatchLogIdentity.read(input).equals(BatchLogIdentity.of(batchLogPath))) {
+                throw new IOException("Snapshot of another batch log, or the batch log changed");
+            }
+            userNetwork.setDepthDegree(input.readInt());
+            userNetwork.setTrackedNumber(input.readInt());
+            userNetwork.setPurchaseSequence(input.readLong());
+
+            int userCount = readCount(input);
+            // every user takes at least 8 bytes, guards against a corrupted count
+            if (userCount > Files.size(Paths.get(snapshotFilePath)) / 8) {
+                throw new IOException("Invalid user count " + userCount);
+            }
+            String[] userIds = new String[userCount];
+            for (int i = 0; i < userCount; i++) {
+                userIds[i] = readId(input);
+                UserData userData = userNetwork.initializeData(userIds[i]);
+                int purchaseCount = readCount(input);
+                for (int j = 0; j < purchaseCount; j++) {
+                    userData.addPurchase(input.readLong(), input.readDouble());
+                }
+                userNetwork.putNode(userIds[i], userData);
+            }
+
+            for (int i = 0; i < userCount; i++) {
+                int friendCount = readCount(input);
+                for (int j = 0; j < friendCount; j++) {
+                    int friendIndex = input.readInt();
+                    if (friendIndex < i || friendIndex >= userCount) {
+                        throw new IOException("Invalid friend index " + friendIndex);
+                    }
+                    userNetwork.befriend(userIds[i], userIds[friendIndex]);
+                }
+            }
+
+            long expectedChecksum = checkedInput.getChecksum().getValue();
+            if (new DataInputStream(fileInput).readLong() != expectedChecksum) {
+                throw new IOException("Snapshot checksum mismatch");
+            }
+            if (fileInput.read() != -1) {
+                throw new IOException("Unexpected data after the snapshot");
+            }
+        } catch (EOFException e) {
+            throw new IOException("Truncated snapshot", e);
+        }
+        return userNetwork;
+    }
+
+    /**
+     * IDs are written as a length and UTF-8 bytes, a length of -1 stands for null.
+     */
+    private static void writeId(DataOutputStream output, String id) throws IOException {
+        if (id == null) {
+            output.writeInt(-1);
+            return;
+        }
+        byte[] bytes = id.getBytes(UTF_8);
+        output.writeInt(bytes.length);
+        output.write(bytes);
+    }
+
+    private static String readId(DataInputStream input) throws IOException {
+        int length = input.readInt();
+        if (length == -1) {
+            return null;
+        }
+        if (length < 0 || length > MAX_ID_LENGTH) {
+            throw new IOException("Invalid ID length " + length);
+        }
+        byte[] bytes = new byte[length];
+        input.readFully(bytes);
+        return new String(bytes, UTF_8);
+    }
+
+    private static int readCount(DataInputStream input) throws IOException {
+        int count = input.readInt();
+        if (count < 0) {
+            throw new IOException("Invalid count " + count);
+        }
+        return count;
+    }
+
+    /**
+     * What identifies a batch log cheaply: its absolute path, size and modification time.
+     */
+    private static class BatchLogIdentity {
+        final private String path;
+        final private long size;
+        final private long lastModifiedMillis;
+
+        private BatchLogIdentity(String path, long size, long lastModifiedMillis) {
+            this.path = path;
+            this.size = size;
+            this.lastModifiedMillis = lastModifiedMillis;
+        }
+
+        static BatchLogIdentity of(String batchLogPath) throws IOException {
+            if (batchLogPath == null) {
+                return new BatchLogIdentity("", -1, -1);
+            }
+            Path path = Paths.get(batchLogPath).toAbsolutePath().normalize();
+            return new BatchLogIdentity(
+                path.toString(),
+                Files.size(path),
+                Files.getLastModifiedTime(path).toMillis()
+            );
+        }
+
+        static BatchLogIdentity read(DataInputStream input) throws IOException {
+            String path = readId(input);
+            long size = input.readLong();
+            long lastModifiedMillis = input.readLong();
+            return new BatchLogIdentity((path == null) ? "" : path, size, lastModifiedMillis);
+        }
+
+        void write(DataOutputStream output) throws IOException {
+            writeId(output, this.path);
+            output.writeLong(this.size);
+            output.writeLong(this.lastModifiedMillis);
+        }
+
+        @Override
+        public boolean equals(Object object) {
+            if (!(object instanceof BatchLogIdentity)) {
+                return false;
+            }
+            BatchLogIdentity other = (BatchLogIdentity) object;
+            return this.path.equals(other.path)
+                && this.size == other.size
+                && this.lastModifiedMillis == other.lastModifiedMillis;
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(this.path, this.size, this.lastModifiedMillis);
+        }
+    }
+}
@@ -1,14 +1,17 @@
 package psuteparuk.insightdata.anomalydetection.worker;
 
-import io.reactivex.Observable;
+import io.reactivex.Completable;
+import io.reactivex.Flowable;
 import io.reactivex.Scheduler;
+import io.reactivex.flowables.ConnectableFlowable;
 import psuteparuk.insightdata.anomalydetection.event.EventEntry;
 import psuteparuk.insightdata.anomalydetection.event.EventType;
-import psuteparuk.insightdata.anomalydetection.network.PurchaseData;
+import psuteparuk.insightdata.anomalydetection.io.BinaryEventSource;
+import psuteparuk.insightdata.anomalydetection.network.NetworkParameters;
+import psuteparuk.insightdata.anomalydetection.network.PurchaseBatch;
+import psuteparuk.insightdata.anomalydetection.network.RelationshipBatch;
 import psuteparuk.insightdata.anomalydetection.network.UserNetwork;
 
-import java.util.Comparator;
-
 /**
  * Process the batch log.
  * The caveat here is that the events in the batch log may not be in the right order.
@@ -18,92 +21,145 @@ import java.util.Comparator;
  * The purchase event and befriend/unfriend events can be processed separately
  * since we keep no inter-node information apart from their "friend" relationship.
  * In fact, we can run both transformation on different threads.
+ * Both share a single read of the batch log, collect their events and
+ * bulk load them into the network on {@parallelism} threads.
+ * Events without a timestamp (or purchases without an amount) cannot be ordered
+ * or applied and are skipped.
  */
 public class BatchLogProcessor extends LogProcessor {
     final private UserNetwork userNetwork;
+    final private int parallelism;
 
     public BatchLogProcessor(
-        Observable<String> batchLogSource,
+        Flowable<String> batchLogSource,
         Scheduler scheduler,
         UserNetwork userNetwork
     ) {
-        super(batchLogSource, scheduler);
+        this(batchLogSource, scheduler, userNetwork, Runtime.getRuntime().availableProcessors());
+    }
+
+    public BatchLogProcessor(
+        Flowable<String> batchLogSource,
+        Scheduler scheduler,
+        UserNetwork userNetwork,
+        int parallelism
+    ) {
+        this(batchLogSource, scheduler, userNetwork, parallelism, DEFAULT_PREFETCH);
+    }
+
+    /**
+     * @param batchLogSource
+     * @param scheduler
+     * @param userNetwork
+     * @param parallelism number of threads bulk loading the network
+     * @param prefetch maximum number of lines read ahead of the processing
+     */
+    public BatchLogProcessor(
+        Flowable<String> batchLogSource,
+        Scheduler scheduler,
+        UserNetwork userNetwork,
+        int parallelism,
+        int prefetch
+    ) {
+        super(batchLogSource, scheduler, prefetch);
         this.userNetwork = userNetwork;
+        this.parallelism = parallelism;
     }
 
+    /**
+     * Load a binary batch log, see {BinaryEventLog}.
+     * @param binaryEventSource
+     * @param scheduler
+     * @param userNetwork
+     * @param parallelism number of threads bulk loading the network
+     * @param prefetch maximum number of events read ahead of the processing
+     */
+    public BatchLogProcessor(
+        BinaryEventSource binaryEventSource,
+        Scheduler scheduler,
+        UserNetwork userNetwork,
+        int parallelism,
+        int prefetch
+    ) {
+        super(binaryEventSource, scheduler, prefetch);
+        this.userNetwork = userNetwork;
+        this.parallelism = parallelism;
+    }
+
+    /**
+     * Return only once the whole batch log has been applied to the network,
+     * so that a stream processor started afterwards sees the complete network.
+     */
     @Override
     public void run() {
-        setNetworkParameters();
-        processPurchaseEvents();
-        processRelationshipEvents();
+        ConnectableFlowable<EventEntry> entrySource = getEntrySource().publish();
+        processPurchaseEvents(entrySource);
+        processRelationshipEvents(entrySource);
+
+        // Subscribed last, so it completes after both consumers have finished
+        Completable batchCompletion = entrySource.ignoreElements().onErrorComplete().cache();
+        batchCompletion.subscribe();
+        entrySource.connect();
+        batchCompletion.blockingAwait();
     }
 
     /**
      * Update the User Network parameters states
      */
-    private void setNetworkParameters() {
-        getNetworkParametersSource()
-            .subscribe((networkParameters) -> {
-                this.userNetwork.setDepthDegree(networkParameters.getDepthDegree());
-                this.userNetwork.setTrackedNumber(networkParameters.getTrackedNumber());
-            });
+    @Override
+    void onNetworkParameters(NetworkParameters networkParameters) {
+        this.userNetwork.setDepthDegree(networkParameters.getDepthDegree());
+        this.userNetwork.setTrackedNumber(networkParameters.getTrackedNumber());
     }
 
     /**
      * Purchases in batch log may not come in a timestamp-order manner.
-     * To address this problem, we will group the purchase events by user ids,
-     * and sort the events by timestamp. We can then add each purchase to
-     * the network and keeping only the latest ones.
+     * To address this problem, the network groups the purchase events by user ids,
+     * and sorts the events by timestamp. It then adds each purchase to
+     * the user and keeps only the latest ones.
      */
-    private void processPurchaseEvents() {
-        getEntrySource()
+    private void processPurchaseEvents(Flowable<EventEntry> entrySource) {
+        final PurchaseBatch purchaseBatch = new PurchaseBatch();
+        entrySource
             .filter((entry) -> entry.getEventType() == EventType.PURCHASE)
-            .groupBy(EventEntry::getBuyerId)
-            .flatMap((userPurchases$) -> userPurchases$
-                .toSortedList(Comparator.comparing(EventEntry::getTimestamp))
-                .toObservable()
-            )
+            .filter((entry) -> entry.getTimestamp() != null && entry.getAmount() != null)
             .subscribe(
-                (sortedUserPurchases) -> {
-                    String buyerId = sortedUserPurchases.get(0).getBuyerId();
-                    sortedUserPurchases.forEach((purchaseEntry) -> {
-                        PurchaseData purchaseData = PurchaseData.create(
-                            purchaseEntry.getAmount(),
-                            purchaseEntry.getTimestamp()
-                        );
-                        this.userNetwork.addPurchase(buyerId, purchaseData);
-                    });
-                },
+                (purchaseEntry) -> purchaseBatch.add(
+                    purchaseEntry.getBuyerId(),
+                    purchaseEntry.getTimestamp(),
+                    purchaseEntry.getAmount()
+                ),
                 Throwable::printStackTrace,
-                () -> System.out.println("Finish purchase batch process.")
+                () -> {
+                    this.userNetwork.bulkAddPurchases(purchaseBatch, this.parallelism);
+                    System.out.println("Finish purchase batch process.");
+                }
             );
     }
 
     /**
      * Relationship events can be processed independently from the purchase events.
      * We keep only local node information in the user network from the batch computation.
-     * Here also, we sort the events by timestamp first and then update the relationship
-     * in the network event by event.
+     * Here also, the events are sorted by timestamp first and the relationships
+     * are then updated event by event, each user on its own.
      */
-    private void processRelationshipEvents() {
-        getEntrySource()
+    private void processRelationshipEvents(Flowable<EventEntry> entrySource) {
+        final RelationshipBatch relationshipBatch = new RelationshipBatch();
+        entrySource
             .filter((entry) -> entry.getEventType() == EventType.BEFRIEND || entry.getEventType() == EventType.UNFRIEND)
-            .toSortedList(Comparator.comparing(EventEntry::getTimestamp))
-            .toObservable()
+            .filter((entry) -> entry.getTimestamp() != null)
             .subscribe(
-                (sortedUserRelationshipEvents) -> sortedUserRelationshipEvents.forEach((relationshipEvent) -> {
-                    String user1Id = relationshipEvent.getUser1Id();
-                    String user2Id = relationshipEvent.getUser2Id();
-
-                    EventType eventType = relationshipEvent.getEventType();
-                    if (eventType == EventType.BEFRIEND) {
-                        this.userNetwork.befriend(user1Id, user2Id);
-                    } else if (eventType == EventType.UNFRIEND) {
-                        this.userNetwork.unfriend(user1Id, user2Id);
-                    }
-                }),
+                (relationshipEntry) -> relationshipBatch.add(
+                    relationshipEntry.getUser1Id(),
+                    relationshipEntry.getUser2Id(),
+                    relationshipEntry.getEventType() == EventType.BEFRIEND,
+                    relationshipEntry.getTimestamp()
+                ),
                 Throwable::printStackTrace,
-                () -> System.out.println("Finish relationship batch process.")
+                () -> {
+                    this.userNetwork.bulkUpdateFriendships(relationshipBatch, this.parallelism);
+                    System.out.println("Finish relationship batch process.");
+                }
             );
     }
 }
@@ -0,0 +1,11 @@
+package psuteparuk.insightdata.anomalydetection.worker;
+
+/**
+ * How the batch log is loaded
+ *  - RX reads it line by line through the {BatchLogProcessor} Rx pipeline.
+ *  - MAPPED memory-maps it and parses chunks in parallel with the {MappedBatchLogLoader}.
+ */
+public enum BatchMode {
+    RX,
+    MAPPED
+}
@@ -0,0 +1,71 @@
+package psuteparuk.insightdata.anomalydetection.worker;
+
+import psuteparuk.insightdata.anomalydetection.common.TwoDecimalFormat;
+import psuteparuk.insightdata.anomalydetection.common.Utf8;
+import psuteparuk.insightdata.anomalydetection.io.EncodedMessage;
+
+import java.nio.ByteBuffer;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+/**
+ * A flagged purchase: its original message without the closing brace,
+ * followed by the mean and sd of its "close" friends group with two decimals.
+ *
+ * It is encoded by the writer thread straight into its output buffer: the chars
+ * of the original message are encoded in place, without trimming it into a new
+ * String, and the mean and sd are formatted by {TwoDecimalFormat}.
+ */
+class FlaggedPurchaseMessage implements EncodedMessage {
+    private static final byte[] MEAN_PREFIX = ", \"mean\": \"".getBytes(UTF_8);
+    private static final byte[] SD_PREFIX = "\", \"sd\": \"".getBytes(UTF_8);
+    private static final byte[] SUFFIX = "\"}".getBytes(UTF_8);
+
+    final private String originalMessage;
+    final private double mean;
+    final private double sd;
+
+    FlaggedPurchaseMessage(String originalMessage, double mean, double sd) {
+        this.originalMessage = originalMessage;
+        this.mean = mean;
+        this.sd = sd;
+    }
+
+    @Override
+    public int maxLength() {
+        return Utf8.maxLength(this.originalMessage.length())
+            + MEAN_PREFIX.length + SD_PREFIX.length + SUFFIX.length
+            + 2 * TwoDecimalFormat.MAX_LENGTH;
+    }
+
+    /**
+     * Same as String.trim() then dropping the last char.
+     */
+    @Override
+    public void encodeTo(ByteBuffer buffer) {
+        int start = 0;
+        int end = this.originalMessage.length();
+        while (start < end && this.originalMessage.charAt(start) <= ' ') {
+            start++;
+        }
+        while (start < end && this.originalMessage.charAt(end - 1) <= ' ') {
+            end--;
+        }
+        Utf8.encode(this.originalMessage, start, Math.max(start, end - 1), buffer);
+        buffer.put(MEAN_PREFIX);
+        TwoDecimalFormat.format(this.mean, buffer);
+        buffer.put(SD_PREFIX);
+        TwoDecimalFormat.format(this.sd, buffer);
+        buffer.put(SUFFIX);
+    }
+
+    /**
+     * @return the message as it is written to the output file
+     */
+    @Override
+    public String toString() {
+        ByteBuffer buffer = ByteBuffer.allocate(this.maxLength());
+        this.encodeTo(buffer);
+        return new String(buffer.array(), 0, buffer.position(), UTF_8);
+    }
+}
@@ -1,86 +1,146 @@
 package psuteparuk.insightdata.anomalydetection.worker;
 
-import com.fasterxml.jackson.core.JsonParseException;
-import com.fasterxml.jackson.databind.DeserializationFeature;
-import com.fasterxml.jackson.databind.JsonMappingException;
-import com.fasterxml.jackson.databind.ObjectMapper;
-import io.reactivex.Observable;
+import io.reactivex.Flowable;
 import io.reactivex.Scheduler;
-import io.reactivex.subjects.ReplaySubject;
-import io.reactivex.subjects.Subject;
+import psuteparuk.insightdata.anomalydetection.event.EventDecoder;
 import psuteparuk.insightdata.anomalydetection.event.EventEntry;
 import psuteparuk.insightdata.anomalydetection.event.EventType;
+import psuteparuk.insightdata.anomalydetection.io.BinaryEventSource;
+import psuteparuk.insightdata.anomalydetection.io.LineAppendTimes;
+import psuteparuk.insightdata.anomalydetection.metrics.PipelineMetrics;
 import psuteparuk.insightdata.anomalydetection.network.NetworkParameters;
 
-import java.util.Objects;
-
 /**
  * Abstract class providing streams that transform each event in the event log
  * to a suitable object representation.
+ *
+ * Every line is decoded exactly once. The same decode yields the event and
+ * the network parameters, and nothing is kept once a subscriber has consumed an event.
  */
 abstract class LogProcessor implements Runnable {
-    // Input event log
-    private final Observable<String> logSource;
+    public static final int DEFAULT_PREFETCH = 1024;
+
+    // Input event log, either json lines or an already decoded binary log
+    private final Flowable<String> logSource;
+    private final BinaryEventSource binaryEventSource;
     // Specify the thread the transformation should be run on
     private final Scheduler scheduler;
-    // Jackson object mapper
-    private final ObjectMapper objectMapper = new ObjectMapper();
+    // Maximum number of lines read ahead of the processing
+    private final int prefetch;
+    // Streaming decoder for log lines, only used on the scheduler's thread
+    private final EventDecoder eventDecoder = new EventDecoder();
+    // Only the first parameters line of a log is used
+    private boolean hasNetworkParameters = false;
+    // Append times of the lines when the source tracks them, null otherwise
+    private LineAppendTimes lineAppendTimes = null;
+    private long lineAppendTimeMicros = LineAppendTimes.UNKNOWN;
 
-    LogProcessor(Observable<String> logSource, Scheduler scheduler) {
+    LogProcessor(Flowable<String> logSource, Scheduler scheduler) {
+        this(logSource, scheduler, DEFAULT_PREFETCH);
+    }
+
+    LogProcessor(Flowable<String> logSource, Scheduler scheduler, int prefetch) {
         this.logSource = logSource;
+        this.binaryEventSource = null;
+        this.scheduler = scheduler;
+        this.prefetch = prefetch;
+    }
+
+    /**
+     * The network parameters of a binary log are known up front,
+     * they are handed over before its first event.
+     * @param binaryEventSource
+     * @param scheduler
+     * @param prefetch
+     */
+    LogProcessor(BinaryEventSource binaryEventSource, Scheduler scheduler, int prefetch) {
+        this.logSource = null;
+        this.binaryEventSource = binaryEventSource;
         this.scheduler = scheduler;
-        this.objectMapper.configure(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES, false);
+        this.prefetch = prefetch;
     }
 
     /**
      * Transform each json event into an {EventEntry} object.
-     * @return a Subject emitting {EventEntry} objects.
+     * Each subscription reads the log again, so a processor with several
+     * consumers should share a single subscription (e.g. with publish).
+     *
+     * At most {@prefetch} lines wait for the scheduler's thread: the source is only
+     * asked for more as they are processed, so a slow stage slows the reading down.
+     * @return a Flowable emitting valid {EventEntry} objects.
      */
-    Observable<EventEntry> getEntrySource() {
-        // Declare as a ReplaySubject so any subscribers can start reading from the start of the log file
-        final Subject<EventEntry> eventEntrySource = ReplaySubject.create();
+    Flowable<EventEntry> getEntrySource() {
+        if (this.binaryEventSource != null) {
+            return this.binaryEventSource.toFlowable()
+                .observeOn(this.scheduler, false, this.prefetch)
+                .map(this::acceptBinaryEntry);
+        }
+        return this.logSource
+            .observeOn(this.scheduler, false, this.prefetch)
+            // the decoder also saves the original string representation for output use
+            .map(this::decodeLine)
+            .filter((entry) -> entry.getEventType() != EventType.INVALID);
+    }
 
-        logSource
-            .observeOn(this.scheduler)
-            .map((entry) -> {
-                try {
-                    EventEntry eventEntry = objectMapper.readValue(entry, EventEntry.class);
-                    if (eventEntry != null && eventEntry.getEventType() != EventType.INVALID) {
-                        // save original string representation for output use
-                        eventEntry.setOriginalMessage(entry);
-                    }
-                    return eventEntry;
-                } catch (JsonMappingException | JsonParseException e) {
-                    return new EventEntry(EventType.INVALID.toString(), null, null, null, null, null);
-                }
-            })
-            .filter((entry) -> entry.getEventType() != EventType.INVALID)
-            .subscribe(eventEntrySource);
+    /**
+     * Take the append time of each decoded line from {@lineAppendTimes},
+     * which must be filled by the source of this processor.
+     * @param lineAppendTimes
+     */
+    public void setLineAppendTimes(LineAppendTimes lineAppendTimes) {
+        this.lineAppendTimes = lineAppendTimes;
+    }
 
-        return eventEntrySource;
+    /**
+     * @return the append time of the last decoded line in epoch microseconds,
+     * or {LineAppendTimes.UNKNOWN} if the source does not track them
+     */
+    long getLineAppendTimeMicros() {
+        return this.lineAppendTimeMicros;
     }
 
     /**
-     * Transform the network parameters, e.g. depth of graph, number of tracked purchases
-     * into the corresponding Java object representation.
-     * @return a Subject emitting {NetworkParameters} objects.
+     * Called with the first valid network parameters, e.g. depth of graph,
+     * number of tracked purchases, before any event that follows them in the log is emitted.
+     * Ignored by default.
+     * @param networkParameters
      */
-    Observable<NetworkParameters> getNetworkParametersSource() {
-        // Declare as a ReplaySubject so any subscribers can start reading from the start of the log file
-        final Subject<NetworkParameters> networkParametersSource = ReplaySubject.create();
+    void onNetworkParameters(NetworkParameters networkParameters) {
+    }
 
-        logSource
-            .observeOn(this.scheduler)
-            .map((entry) -> {
-                try {
-                    return objectMapper.readValue(entry, NetworkParameters.class);
-                } catch (JsonMappingException | JsonParseException e) {
-                    return new NetworkParameters(null, null);
-                }
-            })
-            .filter((param) -> Objects.nonNull(param.getDepthDegree()) && Objects.nonNull(param.getTrackedNumber()))
-            .subscribe(networkParametersSource);
+    /**
+     * Binary logs only hold valid events.
+     */
+    private EventEntry acceptBinaryEntry(EventEntry entry) {
+        if (!this.hasNetworkParameters) {
+            this.hasNetworkParameters = true;
+            NetworkParameters networkParameters = this.binaryEventSource.getBinaryEventLog().getNetworkParameters();
+            if (networkParameters != null) {
+                this.onNetworkParameters(networkParameters);
+            }
+        }
+        PipelineMetrics.LINES_PARSED.increment();
+        return entry;
+    }
 
-        return networkParametersSource.take(1);
+    private EventEntry decodeLine(String line) {
+        if (this.lineAppendTimes != null) {
+            this.lineAppendTimeMicros = this.lineAppendTimes.poll();
+        }
+        long start = PipelineMetrics.PARSE_NANOS.startTimer();
+        EventEntry entry = this.eventDecoder.decode(line);
+        PipelineMetrics.PARSE_NANOS.stopTimer(start);
+        PipelineMetrics.LINES_PARSED.increment();
+        if (entry.getEventType() == EventType.INVALID) {
+            PipelineMetrics.LINES_INVALID.increment();
+        }
+        if (!this.hasNetworkParameters) {
+            NetworkParameters networkParameters = this.eventDecoder.getNetworkParameters();
+            if (networkParameters != null) {
+                this.hasNetworkParameters = true;
+                this.onNetworkParameters(networkParameters);
+            }
+        }
+        return entry;
     }
 }
@@ -0,0 +1,268 @@
+package psuteparuk.insightdata.anomalydetection.worker;
+
+import psuteparuk.insightdata.anomalydetection.event.EventDecoder;
+import psuteparuk.insightdata.anomalydetection.event.EventEntry;
+import psuteparuk.insightdata.anomalydetection.event.EventType;
+import psuteparuk.insightdata.anomalydetection.network.NetworkParameters;
+import psuteparuk.insightdata.anomalydetection.network.PurchaseBatch;
+import psuteparuk.insightdata.anomalydetection.network.RelationshipBatch;
+import psuteparuk.insightdata.anomalydetection.network.UserNetwork;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Paths;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.TimeUnit;
+
+import static java.nio.file.StandardOpenOption.READ;
+
+/**
+ * Load the batch log without going through Rx, for large batch logs.
+ * The file is memory-mapped and split into chunks that end on a line boundary,
+ * and the chunks are decoded in parallel on a fork-join pool, straight from the
+ * mapping through a small window. The chunk results are appended in
+ * file order as they are joined, with a few chunks decoded ahead, and bulk loaded
+ * into the network like {BatchLogProcessor} does, so the resulting network is the same.
+ *
+ * Events without a timestamp (or purchases without an amount) are skipped as in
+ * {BatchLogProcessor}. The time spent in each phase is printed at the end.
+ */
+public class MappedBatchLogLoader implements Runnable {
+    public static final int DEFAULT_CHUNK_SIZE = 8 * 1024 * 1024;
+    // Chunks decoded ahead of the merge, per thread
+    private static final int CHUNKS_AHEAD_PER_THREAD = 2;
+    private static final int WINDOW_BYTES = 64 * 1024;
+
+    final private String batchFilePath;
+    final private UserNetwork userNetwork;
+    final private int parallelism;
+    final private int chunkSize;
+
+    public MappedBatchLogLoader(String batchFilePath, UserNetwork userNetwork, int parallelism) {
+        this(batchFilePath, userNetwork, parallelism, DEFAULT_CHUNK_SIZE);
+    }
+
+    /**
+     * @param batchFilePath
+     * @param userNetwork
+     * @param parallelism number of threads decoding chunks
+     * @param chunkSize approximate size of a chunk in bytes
+     */
+    public MappedBatchLogLoader(String batchFilePath, UserNetwork userNetwork, int parallelism, int chunkSize) {
+        this.batchFilePath = batchFilePath;
+        this.userNetwork = userNetwork;
+        this.parallelism = parallelism;
+        this.chunkSize = chunkSize;
+    }
+
+    @Override
+    public void run() {
+        try (FileChannel fileChannel = FileChannel.open(Paths.get(this.batchFilePath), READ)) {
+            this.load(fileChannel);
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    private void load(FileChannel fileChannel) throws IOException {
+        long startTime = System.nanoTime();
+        long[] chunkBounds = this.splitChunks(fileChannel);
+        long splitTime = System.nanoTime();
+
+        ChunkResult merged = this.decodeChunks(fileChannel, chunkBounds);
+        long mergeTime = System.nanoTime();
+
+        if (merged.networkParameters != null) {
+            this.userNetwork.setDepthDegree(merged.networkParameters.getDepthDegree());
+            this.userNetwork.setTrackedNumber(merged.networkParameters.getTrackedNumber());
+        }
+        this.userNetwork.bulkAddPurchases(merged.purchaseBatch, this.parallelism);
+        System.out.println("Finish purchase batch process.");
+        long purchaseTime = System.nanoTime();
+        this.userNetwork.bulkUpdateFriendships(merged.relationshipBatch, this.parallelism);
+        System.out.println("Finish relationship batch process.");
+        long relationshipTime = System.nanoTime();
+
+        System.out.println("Batch load: " + merged.lineCount + " lines in " + (chunkBounds.length - 1) + " chunks"
+            + ", split " + toMillis(splitTime - startTime) + " ms"
+            + ", decode and merge " + toMillis(mergeTime - splitTime) + " ms"
+            + ", purchases " + toMillis(purchaseTime - mergeTime) + " ms"
+            + ", relationships " + toMillis(relationshipTime - purchaseTime) + " ms");
+    }
+
+    /**
+     * @return the chunk boundaries, chunk i is [bounds[i], bounds[i + 1])
+     */
+    private long[] splitChunks(FileChannel fileChannel) throws IOException {
+        long fileSize = fileChannel.size();
+        List<Long> bounds = new ArrayList<>();
+        bounds.add(0L);
+        ByteBuffer scanBuffer = ByteBuffer.allocate(4096);
+        long chunkStart = 0;
+        while (chunkStart < fileSize) {
+            long chunkEnd = this.findLineEnd(fileChannel, chunkStart + this.chunkSize, fileSize, scanBuffer);
+            bounds.add(chunkEnd);
+            chunkStart = chunkEnd;
+        }
+
+        long[] chunkBounds = new long[bounds.size()];
+        for (int i = 0; i < chunkBounds.length; i++) {
+            chunkBounds[i] = bounds.get(i);
+        }
+        return chunkBounds;
+    }
+
+    /**
+     * @return the position right after the first newline at or after {@position},
+     * or the end of the file
+     */
+    private long findLineEnd(FileChannel fileChannel, long position, long fileSize, ByteBuffer scanBuffer) throws IOException {
+        while (position < fileSize) {
+            scanBuffer.clear();
+            int read = fileChannel.read(scanBuffer, position);
+            if (read <= 0) {
+                break;
+            }
+            for (int i = 0; i < read; i++) {
+                if (scanBuffer.get(i) == '\n') {
+                    return position + i + 1;
+                }
+            }
+            position += read;
+        }
+        return fileSize;
+    }
+
+    /**
+     * Decode the chunks in parallel and append their results in file order as they
+     * are joined. Only a few chunks are submitted ahead of the one being joined, so
+     * the results waiting to be appended stay bounded.
+     * @return the events of the whole file, in file order
+     */
+    private ChunkResult decodeChunks(FileChannel fileChannel, long[] chunkBounds) {
+        int chunkCount = chunkBounds.length - 1;
+        ForkJoinPool pool = new ForkJoinPool(this.parallelism);
+        try {
+            ChunkResult merged = new ChunkResult();
+            ArrayDeque<ForkJoinTask<ChunkResult>> tasks = new ArrayDeque<>();
+            int submittedCount = 0;
+            for (int i = 0; i < chunkCount; i++) {
+                while (submittedCount < chunkCount && submittedCount < i + CHUNKS_AHEAD_PER_THREAD * this.parallelism) {
+                    long chunkStart = chunkBounds[submittedCount];
+                    long chunkEnd = chunkBounds[submittedCount + 1];
+                    tasks.add(pool.submit(() -> decodeChunk(fileChannel, chunkStart, chunkEnd)));
+                    submittedCount++;
+                }
+                merged.addAll(tasks.poll().join());
+            }
+            return merged;
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    /**
+     * Decode the lines of one chunk, straight from its mapping: the chunk is copied
+     * {@WINDOW_BYTES} at a time into a window, and the unfinished line at the end of
+     * the window is moved to its front before the next copy.
+     * Lines end with '\n', '\r' or "\r\n" as with Files.lines.
+     */
+    private static ChunkResult decodeChunk(FileChannel fileChannel, long chunkStart, long chunkEnd) throws IOException {
+        MappedByteBuffer mappedChunk = fileChannel.map(FileChannel.MapMode.READ_ONLY, chunkStart, chunkEnd - chunkStart);
+        byte[] window = new byte[WINDOW_BYTES];
+        int carriedLength = 0; // the unfinished line at the front of the window
+
+        EventDecoder eventDecoder = new EventDecoder();
+        // the entry is copied into the batches, so it can be reused for every line
+        EventEntry reusedEntry = new EventEntry();
+        ChunkResult chunkResult = new ChunkResult();
+        while (true) {
+            int copyLength = Math.min(window.length - carriedLength, mappedChunk.remaining());
+            mappedChunk.get(window, carriedLength, copyLength);
+            int windowEnd = carriedLength + copyLength;
+            boolean isChunkEnd = !mappedChunk.hasRemaining();
+
+            int lineStart = 0;
+            for (int i = carriedLength; i <= windowEnd; i++) {
+                if (i < windowEnd ? (window[i] != '\n' && window[i] != '\r') : !isChunkEnd) {
+                    continue;
+                }
+                if (i > lineStart) {
+                    chunkResult.lineCount++;
+                    EventEntry entry = eventDecoder.decode(window, lineStart, i - lineStart, reusedEntry);
+                    chunkResult.add(entry, eventDecoder.getNetworkParameters());
+                }
+                lineStart = i + 1;
+            }
+            if (isChunkEnd) {
+                return chunkResult;
+            }
+
+            carriedLength = windowEnd - lineStart;
+            System.arraycopy(window, lineStart, window, 0, carriedLength);
+            if (carriedLength == window.length) {
+                window = Arrays.copyOf(window, 2 * window.length);
+            }
+        }
+    }
+
+    private static long toMillis(long nanos) {
+        return TimeUnit.NANOSECONDS.toMillis(nanos);
+    }
+
+    /**
+     * Events of one chunk, or of the chunks merged so far, in file order
+     */
+    private static class ChunkResult {
+        final private PurchaseBatch purchaseBatch = new PurchaseBatch();
+        final private RelationshipBatch relationshipBatch = new RelationshipBatch();
+        private NetworkParameters networkParameters = null;
+        private int lineCount = 0;
+
+        /**
+         * Append the events of the next chunk, the first parameters line of the log wins.
+         * @param next
+         */
+        void addAll(ChunkResult next) {
+            if (this.networkParameters == null) {
+                this.networkParameters = next.networkParameters;
+            }
+            this.lineCount += next.lineCount;
+            this.purchaseBatch.addAll(next.purchaseBatch);
+            this.relationshipBatch.addAll(next.relationshipBatch);
+        }
+
+        void add(EventEntry entry, NetworkParameters lineNetworkParameters) {
+            if (this.networkParameters == null) {
+                this.networkParameters = lineNetworkParameters;
+            }
+            if (entry.getTimestamp() == null) {
+                return;
+            }
+            switch (entry.getEventType()) {
+                case PURCHASE:
+                    if (entry.getAmount() != null) {
+                        this.purchaseBatch.add(entry.getBuyerId(), entry.getTimestamp(), entry.getAmount());
+                    }
+                    break;
+                case BEFRIEND:
+                case UNFRIEND:
+                    this.relationshipBatch.add(
+                        entry.getUser1Id(),
+                        entry.getUser2Id(),
+                        entry.getEventType() == EventType.BEFRIEND,
+                        entry.getTimestamp()
+                    );
+                    break;
+                default:
+            }
+        }
+    }
+}
@@ -1,17 +1,23 @@
 package psuteparuk.insightdata.anomalydetection.worker;
 
-import io.reactivex.Observable;
+import io.reactivex.Flowable;
 import io.reactivex.Scheduler;
-import io.reactivex.schedulers.Schedulers;
-import io.reactivex.subjects.BehaviorSubject;
+import io.reactivex.subjects.PublishSubject;
 import io.reactivex.subjects.Subject;
 import psuteparuk.insightdata.anomalydetection.network.GroupStats;
 import psuteparuk.insightdata.anomalydetection.event.EventEntry;
+import psuteparuk.insightdata.anomalydetection.io.BinaryEventSource;
+import psuteparuk.insightdata.anomalydetection.io.EncodedMessage;
 import psuteparuk.insightdata.anomalydetection.io.FileEventWriter;
+import psuteparuk.insightdata.anomalydetection.io.LineAppendTimes;
+import psuteparuk.insightdata.anomalydetection.metrics.PipelineMetrics;
 import psuteparuk.insightdata.anomalydetection.network.PurchaseData;
+import psuteparuk.insightdata.anomalydetection.network.PurchaseEpoch;
 import psuteparuk.insightdata.anomalydetection.network.UserNetwork;
 
-import java.text.DecimalFormat;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
 
 /**
  * Process the stream log.
@@ -22,25 +28,83 @@ import java.text.DecimalFormat;
  * This is because we need to calculate the "close" friends group for each buyer
  * using the state of whole network at that specific moment in time. That means the
  * relationships need to be up-to-date.
+ *
+ * In EPOCH mode, the purchases between two befriend/unfriend events only need
+ * the same state of the relationships. They are buffered into a {PurchaseEpoch}
+ * that is evaluated in parallel before the next relationship change (or once it
+ * is full, or at the end of the stream), and their anomalies are emitted in order.
  */
 public class StreamLogProcessor extends LogProcessor {
-    // Emit strings that will be written to the output log
-    final private Subject<String> outputLogSink = BehaviorSubject.create();
+    public static final int DEFAULT_EPOCH_SIZE = 4096;
+
+    // Emit messages that will be written to the output log
+    final private Subject<EncodedMessage> outputLogSink = PublishSubject.create();
     final private FileEventWriter fileEventWriter;
     final private UserNetwork userNetwork;
 
-    // Show numbers by only two decimal places
-    final private DecimalFormat decimalFormat = new DecimalFormat("#0.00");
+    // Purchases waiting to be evaluated in EPOCH mode, null in SERIAL mode
+    final private PurchaseEpoch purchaseEpoch;
+    final private List<EventEntry> epochEntries = new ArrayList<>();
+    final private List<PurchaseData> epochPurchases = new ArrayList<>();
+    final private List<Long> epochAppendTimes = new ArrayList<>();
 
     public StreamLogProcessor(
-        Observable<String> streamLogSource,
+        Flowable<String> streamLogSource,
         FileEventWriter fileEventWriter,
         Scheduler scheduler,
         UserNetwork userNetwork
     ) {
-        super(streamLogSource, scheduler);
+        this(streamLogSource, fileEventWriter, scheduler, userNetwork, StreamMode.SERIAL, 1, DEFAULT_EPOCH_SIZE, DEFAULT_PREFETCH);
+    }
+
+    /**
+     * @param streamLogSource
+     * @param fileEventWriter
+     * @param scheduler
+     * @param userNetwork
+     * @param streamMode
+     * @param parallelism number of threads evaluating an epoch in EPOCH mode
+     * @param epochSize maximum number of purchases in an epoch
+     * @param prefetch maximum number of lines read ahead of the processing
+     */
+    public StreamLogProcessor(
+        Flowable<String> streamLogSource,
+        FileEventWriter fileEventWriter,
+        Scheduler scheduler,
+        UserNetwork userNetwork,
+        StreamMode streamMode,
+        int parallelism,
+        int epochSize,
+        int prefetch
+    ) {
+        super(streamLogSource, scheduler, prefetch);
+        this.fileEventWriter = fileEventWriter;
+        this.userNetwork = userNetwork;
+        this.purchaseEpoch = (streamMode == StreamMode.EPOCH)
+            ? new PurchaseEpoch(userNetwork, parallelism, epochSize)
+            : null;
+    }
+
+    /**
+     * Process a binary stream log, see {BinaryEventLog}.
+     * The other parameters are the same as for a json stream log.
+     */
+    public StreamLogProcessor(
+        BinaryEventSource binaryEventSource,
+        FileEventWriter fileEventWriter,
+        Scheduler scheduler,
+        UserNetwork userNetwork,
+        StreamMode streamMode,
+        int parallelism,
+        int epochSize,
+        int prefetch
+    ) {
+        super(binaryEventSource, scheduler, prefetch);
         this.fileEventWriter = fileEventWriter;
         this.userNetwork = userNetwork;
+        this.purchaseEpoch = (streamMode == StreamMode.EPOCH)
+            ? new PurchaseEpoch(userNetwork, parallelism, epochSize)
+            : null;
     }
 
     @Override
@@ -50,12 +114,18 @@ public class StreamLogProcessor extends LogProcessor {
     }
 
     /**
-     * Push result to be written to output file
+     * Push result to be written to output file.
+     * The writer encodes the message on its own thread, straight into its buffer.
+     * It queues the message and blocks when its queue is full,
+     * so a burst of anomalies slows the stream down instead of piling up in memory.
      */
     private void subscribeToOutput() {
         this.outputLogSink
-            .observeOn(Schedulers.io())
-            .subscribe(fileEventWriter::write);
+            .subscribe(
+                fileEventWriter::write,
+                Throwable::printStackTrace,
+                fileEventWriter::close
+            );
     }
 
     /**
@@ -79,36 +149,130 @@ public class StreamLogProcessor extends LogProcessor {
                         default:
                     }
                 },
-                Throwable::printStackTrace,
-                () -> System.out.println("Finish stream process.")
+                (error) -> {
+                    error.printStackTrace();
+                    if (this.purchaseEpoch != null) {
+                        this.purchaseEpoch.shutdown();
+                    }
+                    // Close the writer too, so the purchases flagged before the error are in the file
+                    this.outputLogSink.onComplete();
+                },
+                () -> {
+                    this.evaluateEpoch();
+                    if (this.purchaseEpoch != null) {
+                        this.purchaseEpoch.shutdown();
+                    }
+                    // Close the writer so every flagged purchase is in the file
+                    this.outputLogSink.onComplete();
+                    System.out.println("Finish stream process.");
+                    System.out.println(this.userNetwork.getDepthGroupCache());
+                    if (this.userNetwork.getGroupWindows() != null) {
+                        System.out.println(this.userNetwork.getGroupWindows());
+                    }
+                    if (this.userNetwork.getPurchaseStore() != null) {
+                        System.out.println(this.userNetwork.getPurchaseStore());
+                    }
+                    if (this.userNetwork.getPurchaseSlabs() != null) {
+                        System.out.println(this.userNetwork.getPurchaseSlabs());
+                    }
+                    if (PipelineMetrics.REGISTRY.isEnabled()) {
+                        System.out.println(PipelineMetrics.REGISTRY.summary());
+                    }
+                }
             );
     }
 
     private void processPurchaseEntry(EventEntry entry) {
+        PipelineMetrics.PURCHASES.increment();
+        if (this.purchaseEpoch != null) {
+            this.bufferPurchaseEntry(entry);
+            return;
+        }
+
         // Update the tracked purchases of this event's buyer
         String buyerId = entry.getBuyerId();
-        PurchaseData purchaseData = PurchaseData.create(entry.getAmount(), entry.getTimestamp());
+        PurchaseData purchaseData = this.userNetwork.newPurchase(entry.getAmount(), entry.getTimestamp());
         this.userNetwork.addPurchase(buyerId, purchaseData);
 
         // Calculate the "close" friend group stats (mean, sd).
         // If the purchase is anomaly, push the result to the output log.
+        long start = PipelineMetrics.ANOMALY_CHECK_NANOS.startTimer();
         GroupStats groupStats = this.userNetwork.calculateGroupStats(buyerId);
-        if (this.userNetwork.isPurchaseAnomaly(purchaseData, groupStats)) {
-            this.outputLogSink.onNext(buildOutputMessage(entry, groupStats));
+        boolean isAnomaly = this.userNetwork.isPurchaseAnomaly(purchaseData, groupStats);
+        PipelineMetrics.ANOMALY_CHECK_NANOS.stopTimer(start);
+        if (isAnomaly) {
+            this.emitAnomaly(entry, groupStats, this.getLineAppendTimeMicros());
+        }
+    }
+
+    /**
+     * Keep the purchase for the current epoch, evaluate the epoch once it is full.
+     * The entry is not reused by the source, so it can be kept until then.
+     */
+    private void bufferPurchaseEntry(EventEntry entry) {
+        PurchaseData purchaseData = this.userNetwork.newPurchase(entry.getAmount(), entry.getTimestamp());
+        this.purchaseEpoch.add(entry.getBuyerId(), purchaseData);
+        this.epochEntries.add(entry);
+        this.epochPurchases.add(purchaseData);
+        this.epochAppendTimes.add(this.getLineAppendTimeMicros());
+        if (this.purchaseEpoch.isFull()) {
+            this.evaluateEpoch();
+        }
+    }
+
+    /**
+     * Evaluate the buffered purchases, if any, and emit their anomalies in arrival order.
+     */
+    private void evaluateEpoch() {
+        if (this.purchaseEpoch == null || this.purchaseEpoch.isEmpty()) {
+            return;
+        }
+        // The check of an epoch is recorded as one sample
+        long start = PipelineMetrics.ANOMALY_CHECK_NANOS.startTimer();
+        GroupStats[] groupStats = this.purchaseEpoch.evaluate();
+        PipelineMetrics.ANOMALY_CHECK_NANOS.stopTimer(start);
+        for (int i = 0; i < groupStats.length; i++) {
+            if (this.userNetwork.isPurchaseAnomaly(this.epochPurchases.get(i), groupStats[i])) {
+                this.emitAnomaly(this.epochEntries.get(i), groupStats[i], this.epochAppendTimes.get(i));
+            }
+        }
+        this.epochEntries.clear();
+        this.epochPurchases.clear();
+        this.epochAppendTimes.clear();
+    }
+
+    /**
+     * @param entry
+     * @param groupStats
+     * @param appendTimeMicros when the purchase was appended to the log, if known,
+     *     to record the lag from its append to its flag
+     */
+    private void emitAnomaly(EventEntry entry, GroupStats groupStats, long appendTimeMicros) {
+        PipelineMetrics.ANOMALIES.increment();
+        if (appendTimeMicros != LineAppendTimes.UNKNOWN) {
+            PipelineMetrics.FLAG_LAG_MICROS.record(
+                TimeUnit.MILLISECONDS.toMicros(System.currentTimeMillis()) - appendTimeMicros
+            );
         }
+        this.outputLogSink.onNext(new FlaggedPurchaseMessage(entry.getOriginalMessage(), groupStats.mean(), groupStats.sd()));
     }
 
     /**
      * Befriend and Unfriend can be updated in constant time.
+     * In EPOCH mode, the purchases before them are evaluated first.
      */
 
     private void processBefriendEntry(EventEntry entry) {
+        this.evaluateEpoch();
+        PipelineMetrics.FRIENDSHIP_CHANGES.increment();
         String user1Id = entry.getUser1Id();
         String user2Id = entry.getUser2Id();
         this.userNetwork.befriend(user1Id, user2Id);
     }
 
     private void processUnfriendEntry(EventEntry entry) {
+        this.evaluateEpoch();
+        PipelineMetrics.FRIENDSHIP_CHANGES.increment();
         String user1Id = entry.getUser1Id();
         String user2Id = entry.getUser2Id();
         this.userNetwork.unfriend(user1Id, user2Id);
@@ -119,15 +283,7 @@ public class StreamLogProcessor extends LogProcessor {
      * @param groupStats
      * @return String representation of the output event.
      */
-    private String buildOutputMessage(EventEntry entry, GroupStats groupStats) {
-        StringBuilder outputEvent = new StringBuilder();
-        outputEvent.append(entry.getOriginalMessage().trim());
-        outputEvent.deleteCharAt(outputEvent.length() - 1);
-        outputEvent.append(", \"mean\": \"");
-        outputEvent.append(decimalFormat.format(groupStats.mean()));
-        outputEvent.append("\", \"sd\": \"");
-        outputEvent.append(decimalFormat.format(groupStats.sd()));
-        outputEvent.append("\"}");
-        return outputEvent.toString();
+    String buildOutputMessage(EventEntry entry, GroupStats groupStats) {
+        return new FlaggedPurchaseMessage(entry.getOriginalMessage(), groupStats.mean(), groupStats.sd()).toString();
     }
 }
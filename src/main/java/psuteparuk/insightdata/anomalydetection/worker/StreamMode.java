@@ -0,0 +1,12 @@
+package psuteparuk.insightdata.anomalydetection.worker;
+
+/**
+ * How the purchases of the stream log are evaluated
+ *  - SERIAL adds each purchase and calculates its group stats one after the other.
+ *  - EPOCH buffers the purchases between two befriend/unfriend events and evaluates
+ *      them in parallel as one {PurchaseEpoch}, with the same output.
+ */
+public enum StreamMode {
+    SERIAL,
+    EPOCH
+}
@@ -0,0 +1,38 @@
+package psuteparuk.insightdata.anomalydetection.common;
+
+import org.junit.Test;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class IntCountMapTest {
+    @Test
+    public void incrementAndDecrement() throws Exception {
+        IntCountMap map = new IntCountMap();
+        Map<Integer, Integer> expected = new HashMap<>();
+        Random random = new Random(7);
+        for (int i = 0; i < 100000; i++) {
+            int key = random.nextInt(500);
+            if (random.nextInt(2) == 0) {
+                Integer count = expected.computeIfPresent(key, (k, c) -> (c == 1) ? null : c - 1);
+                int expectedCount = (count != null) ? count : (map.contains(key) ? 0 : -1);
+                assertEquals(expectedCount, map.decrement(key));
+            } else {
+                assertEquals((int) expected.merge(key, 1, Integer::sum), map.increment(key));
+            }
+            assertEquals(expected.size(), map.size());
+        }
+        for (int key = 0; key < 500; key++) {
+            assertEquals((int) expected.getOrDefault(key, 0), map.count(key));
+        }
+
+        Map<Integer, Integer> iterated = new HashMap<>();
+        for (int slot = map.nextSlot(0); slot >= 0; slot = map.nextSlot(slot + 1)) {
+            iterated.put(map.keyAt(slot), map.count(map.keyAt(slot)));
+        }
+        assertEquals(expected, iterated);
+    }
+}
@@ -0,0 +1,44 @@
+package psuteparuk.insightdata.anomalydetection.common;
+
+import org.junit.Test;
+
+import java.util.HashSet;
+import java.util.Random;
+import java.util.Set;
+
+import static org.junit.Assert.*;
+
+public class IntHashSetTest {
+    @Test
+    public void addAndRemove() throws Exception {
+        IntHashSet set = new IntHashSet();
+        Set<Integer> expected = new HashSet<>();
+        Random random = new Random(7);
+        for (int i = 0; i < 100000; i++) {
+            int key = random.nextInt(500);
+            if (random.nextInt(3) == 0) {
+                assertEquals(expected.remove(key), set.remove(key));
+            } else {
+                assertEquals(expected.add(key), set.add(key));
+            }
+            assertEquals(expected.size(), set.size());
+        }
+        for (int key = 0; key < 500; key++) {
+            assertEquals(expected.contains(key), set.contains(key));
+        }
+    }
+
+    @Test
+    public void nextSlot() throws Exception {
+        IntHashSet set = new IntHashSet();
+        for (int key = 0; key < 50; key += 5) {
+            set.add(key);
+        }
+        Set<Integer> keys = new HashSet<>();
+        for (int slot = set.nextSlot(0); slot >= 0; slot = set.nextSlot(slot + 1)) {
+            keys.add(set.keyAt(slot));
+        }
+        assertEquals(10, keys.size());
+        assertTrue(keys.contains(45));
+    }
+}
@@ -0,0 +1,63 @@
+package psuteparuk.insightdata.anomalydetection.common;
+
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.text.DecimalFormat;
+import java.util.Random;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.junit.Assert.*;
+
+public class TwoDecimalFormatTest {
+    private final DecimalFormat decimalFormat = new DecimalFormat("#0.00");
+    private final ByteBuffer buffer = ByteBuffer.allocate(TwoDecimalFormat.MAX_LENGTH);
+
+    @Test
+    public void formatLikeDecimalFormat() {
+        double[] values = {
+            0, -0.0, 1, -1, 0.5, 0.125, 0.375, 0.005, 0.015, 0.025, 0.045, 1.005, 1.115, 2.675,
+            -0.001, -0.005, -0.0051, 16.83, 29.1, 21.46, 1601.83, 99.995, 999999.995,
+            Double.MIN_VALUE, -Double.MIN_VALUE, Double.MIN_NORMAL,
+            9999999999999.99, 1e13, 1e13 - 0.001, 1e15, 1e20, 123456789012.345,
+            Double.MAX_VALUE, -Double.MAX_VALUE, Double.NaN, Double.POSITIVE_INFINITY, Double.NEGATIVE_INFINITY
+        };
+        for (double value : values) {
+            assertFormat(value);
+        }
+    }
+
+    @Test
+    public void formatTiesLikeDecimalFormat() {
+        // x.xx5 in decimal, mostly just above or below a tie in binary
+        for (long thousandths = 5; thousandths < 10000000; thousandths += 10) {
+            assertFormat(thousandths / 1000.0);
+            assertFormat(-thousandths / 1000.0);
+        }
+        // exact ties in binary
+        for (long eighths = 1; eighths < 100000; eighths += 2) {
+            assertFormat(eighths / 8.0);
+        }
+    }
+
+    @Test
+    public void formatRandomLikeDecimalFormat() {
+        Random random = new Random(42);
+        for (int i = 0; i < 1000000; i++) {
+            // amounts, means and sds across magnitudes
+            double value = random.nextDouble() * Math.pow(10, random.nextInt(16) - 2);
+            assertFormat(random.nextBoolean() ? value : -value);
+            assertFormat(Math.round(value * 100) / 100.0);
+        }
+        for (int i = 0; i < 100000; i++) {
+            assertFormat(Double.longBitsToDouble(random.nextLong()));
+        }
+    }
+
+    private void assertFormat(double value) {
+        this.buffer.clear();
+        TwoDecimalFormat.format(value, this.buffer);
+        String formatted = new String(this.buffer.array(), 0, this.buffer.position(), UTF_8);
+        assertEquals(String.valueOf(value), this.decimalFormat.format(value), formatted);
+    }
+}
@@ -0,0 +1,129 @@
+package psuteparuk.insightdata.anomalydetection.event;
+
+import org.junit.Test;
+import psuteparuk.insightdata.anomalydetection.io.BinaryEventSource;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.TimeZone;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.junit.Assert.*;
+
+public class BinaryEventLogTest {
+    private final EventDecoder eventDecoder = new EventDecoder();
+
+    @Test
+    public void replayLikeJson() throws Exception {
+        List<String> lines = Arrays.asList(
+            "{\"D\":\"3\", \"T\":\"50\"}",
+            "{\"event_type\":\"purchase\", \"timestamp\":\"2017-06-13 11:33:01\", \"id\": \"1\", \"amount\": \"16.83\"}",
+            "{\"event_type\":\"befriend\", \"timestamp\":\"2017-06-13 11:33:01\", \"id1\": \"1\", \"id2\": \"2\"}",
+            "{\"event_type\":\"unfriend\", \"timestamp\":\"2017-06-13 11:33:02\", \"id1\": \"2\", \"id2\": \"1\"}",
+            "not json",
+            "{\"event_type\":\"PURCHASE\"}",
+            // not in the canonical layout, kept as they are
+            "{\"event_type\":\"purchase\",\"timestamp\":\"2017-06-13 11:33:01\",\"id\":\"1\",\"amount\":\"16.8\"}",
+            "{\"event_type\":\"purchase\", \"timestamp\":\"2017-06-13 11:33:01\", \"id\": \"\u00e91\", \"amount\": \"0.125\"}",
+            "{\"event_type\":\"purchase\", \"timestamp\":\"2017-06-13 11:33:01\", \"id\": \"3\", \"amount\": \"12345678901.123456\"}",
+            "{\"event_type\":\"purchase\", \"id\": \"3\"}",
+            "{\"event_type\":\"befriend\", \"timestamp\":\"2017-06-13 11:33\", \"id1\": \"3\"}"
+        );
+        File jsonFile = writeLog(lines);
+        File binaryFile = File.createTempFile("batch_log", ".bin");
+        binaryFile.deleteOnExit();
+        new BinaryEventLogWriter().convert(jsonFile.getPath(), binaryFile.getPath());
+
+        assertTrue(BinaryEventLog.isBinary(binaryFile.getPath()));
+        assertFalse(BinaryEventLog.isBinary(jsonFile.getPath()));
+
+        List<EventEntry> expected = new ArrayList<>();
+        for (String line : lines) {
+            EventEntry entry = this.eventDecoder.decode(line);
+            if (entry.getEventType() != EventType.INVALID) {
+                expected.add(entry);
+            }
+        }
+
+        try (BinaryEventLog binaryEventLog = BinaryEventLog.open(binaryFile.getPath())) {
+            assertEquals(expected.size(), binaryEventLog.getRecordCount());
+            assertEquals(3, (int) binaryEventLog.getNetworkParameters().getDepthDegree());
+            assertEquals(50, (int) binaryEventLog.getNetworkParameters().getTrackedNumber());
+
+            List<EventEntry> replayed = new BinaryEventSource(binaryEventLog).toFlowable().toList().blockingGet();
+            assertEquals(expected.size(), replayed.size());
+            for (int i = 0; i < expected.size(); i++) {
+                assertSameEntry(expected.get(i), replayed.get(i));
+            }
+        }
+    }
+
+    @Test
+    public void noNetworkParameters() throws Exception {
+        File jsonFile = writeLog(Arrays.asList(
+            "{\"event_type\":\"purchase\", \"timestamp\":\"2017-06-13 11:33:01\", \"id\": \"1\", \"amount\": \"16.83\"}"
+        ));
+        File binaryFile = File.createTempFile("stream_log", ".bin");
+        binaryFile.deleteOnExit();
+        new BinaryEventLogWriter().convert(jsonFile.getPath(), binaryFile.getPath());
+
+        try (BinaryEventLog binaryEventLog = BinaryEventLog.open(binaryFile.getPath())) {
+            assertNull(binaryEventLog.getNetworkParameters());
+            assertEquals(1, binaryEventLog.getRecordCount());
+        }
+    }
+
+    @Test
+    public void replayInAnotherTimeZone() throws Exception {
+        List<String> lines = Arrays.asList(
+            "{\"event_type\":\"purchase\", \"timestamp\":\"2017-06-13 08:20:18\", \"id\": \"1\", \"amount\": \"16.83\"}",
+            "{\"event_type\":\"befriend\", \"timestamp\":\"2017-11-05 01:30:00\", \"id1\": \"1\", \"id2\": \"2\"}"
+        );
+        File jsonFile = writeLog(lines);
+        File binaryFile = File.createTempFile("stream_log", ".bin");
+        binaryFile.deleteOnExit();
+        TimeZone defaultTimeZone = TimeZone.getDefault();
+        try {
+            TimeZone.setDefault(TimeZone.getTimeZone("UTC"));
+            new BinaryEventLogWriter().convert(jsonFile.getPath(), binaryFile.getPath());
+
+            TimeZone.setDefault(TimeZone.getTimeZone("America/New_York"));
+            try (BinaryEventLog binaryEventLog = BinaryEventLog.open(binaryFile.getPath())) {
+                assertEquals("UTC", binaryEventLog.getTimeZone().getID());
+                List<EventEntry> replayed = new BinaryEventSource(binaryEventLog).toFlowable().toList().blockingGet();
+                assertEquals(lines.size(), replayed.size());
+                for (int i = 0; i < lines.size(); i++) {
+                    assertEquals(lines.get(i), replayed.get(i).getOriginalMessage());
+                }
+            }
+        } finally {
+            TimeZone.setDefault(defaultTimeZone);
+        }
+    }
+
+    @Test(expected = IOException.class)
+    public void openJson() throws Exception {
+        BinaryEventLog.open(writeLog(Arrays.asList("{\"D\":\"3\", \"T\":\"50\"}")).getPath());
+    }
+
+    private static void assertSameEntry(EventEntry expected, EventEntry actual) {
+        assertEquals(expected.getEventType(), actual.getEventType());
+        assertEquals(expected.getTimestamp(), actual.getTimestamp());
+        assertEquals(expected.getAmount(), actual.getAmount());
+        assertEquals(expected.getBuyerId(), actual.getBuyerId());
+        assertEquals(expected.getUser1Id(), actual.getUser1Id());
+        assertEquals(expected.getUser2Id(), actual.getUser2Id());
+        assertEquals(expected.getOriginalMessage(), actual.getOriginalMessage());
+    }
+
+    private static File writeLog(List<String> lines) throws IOException {
+        File jsonFile = File.createTempFile("batch_log", ".json");
+        jsonFile.deleteOnExit();
+        Files.write(jsonFile.toPath(), lines, UTF_8);
+        return jsonFile;
+    }
+}
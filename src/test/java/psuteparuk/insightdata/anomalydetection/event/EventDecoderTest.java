@@ -0,0 +1,104 @@
+package psuteparuk.insightdata.anomalydetection.event;
+
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class EventDecoderTest {
+    private final ObjectMapper objectMapper = new ObjectMapper()
+        .configure(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES, false);
+    private final EventDecoder eventDecoder = new EventDecoder();
+
+    @Test
+    public void decodeLikeObjectMapper() throws Exception {
+        List<String> lines = Arrays.asList(
+            "{\"event_type\":\"purchase\", \"timestamp\":\"2017-06-13 11:33:01\", \"id\": \"1\", \"amount\": \"16.83\"}",
+            "{\"event_type\":\"befriend\", \"timestamp\":\"2017-06-13 11:33:01\", \"id1\": \"1\", \"id2\": \"2\"}",
+            "{\"event_type\":\"unfriend\", \"timestamp\":\"2017-06-13 11:33:01\", \"id1\": \"1\", \"id2\": \"3\"}",
+            "{\"D\":\"3\", \"T\":\"50\"}",
+            "", "  ", "[]", "\"purchase\"", "{}", "not json", "{'event_type':'purchase'}",
+            "{\"event_type\":\"purchase\"",
+            "{\"event_type\":\"purchase\"} trailing",
+            "{\"event_type\":\"PURCHASE\"}",
+            "{\"event_type\":null, \"id\":\"1\"}",
+            "{\"event_type\":\"purchase\", \"id\":null, \"amount\":null, \"timestamp\":null}",
+            "{\"event_type\":\"purchase\", \"amount\":16.83, \"id\":5}",
+            "{\"event_type\":\"purchase\", \"amount\":true}",
+            "{\"event_type\":\"purchase\", \"amount\":[1]}",
+            "{\"event_type\":\"purchase\", \"amount\":{}}",
+            "{\"event_type\":\"purchase\", \"extra\":{\"a\":[1, {\"b\":2}]}, \"id\":\"1\"}",
+            "{\"event_type\":\"purchase\", \"event_type\":\"befriend\"}",
+            "{\"event_type\":\"purchase\", \"amount\":\" 16.8\"}",
+            "{\"event_type\":\"purchase\", \"amount\":\"1e3\"}",
+            "{\"event_type\":\"purchase\", \"amount\":\"-.5\"}",
+            "{\"event_type\":\"purchase\", \"amount\":\"5.\"}",
+            "{\"event_type\":\"purchase\", \"amount\":\".\"}",
+            "{\"event_type\":\"purchase\", \"amount\":\"-\"}",
+            "{\"event_type\":\"purchase\", \"amount\":\"NaN\"}",
+            "{\"event_type\":\"purchase\", \"amount\":\"12345678901234567.89\"}",
+            "{\"event_type\":\"purchase\", \"amount\":\"0.0000000000000000000000001\"}",
+            "{\"event_type\":\"purchase\", \"timestamp\":\"2017-06-13 11:33:01xyz\"}",
+            "{\"event_type\":\"purchase\", \"timestamp\":\"yesterday\"}"
+        );
+        for (String line : lines) {
+            assertSameEntry(line);
+        }
+    }
+
+    @Test
+    public void decodeAmounts() throws Exception {
+        Random random = new Random(11);
+        for (int i = 0; i < 100000; i++) {
+            String amount;
+            switch (i % 3) {
+                case 0:
+                    amount = String.format("%.2f", random.nextDouble() * 10000);
+                    break;
+                case 1:
+                    amount = Double.toString(random.nextDouble() * Math.pow(10, random.nextInt(12)));
+                    break;
+                default:
+                    amount = Long.toString(random.nextLong() % 1000000000000000L);
+            }
+            assertSameEntry("{\"event_type\":\"purchase\", \"id\": \"1\", \"amount\": \"" + amount + "\"}");
+        }
+    }
+
+    @Test
+    public void decodeReusesEntry() throws Exception {
+        EventEntry entry = new EventEntry();
+        eventDecoder.decode("{\"event_type\":\"purchase\", \"id\": \"1\", \"amount\": \"16.83\"}", entry);
+        assertSame(entry, eventDecoder.decode("{\"event_type\":\"befriend\", \"id1\": \"1\", \"id2\": \"2\"}", entry));
+        assertEquals(EventType.BEFRIEND, entry.getEventType());
+        assertNull(entry.getBuyerId());
+        assertNull(entry.getAmount());
+    }
+
+    private void assertSameEntry(String line) {
+        EventEntry expected;
+        try {
+            expected = objectMapper.readValue(line, EventEntry.class);
+        } catch (Exception e) {
+            expected = null;
+        }
+        EventEntry actual = eventDecoder.decode(line);
+        if (expected == null || expected.getEventType() == EventType.INVALID) {
+            assertEquals(line, EventType.INVALID, actual.getEventType());
+            assertNull(line, actual.getOriginalMessage());
+            return;
+        }
+        assertEquals(line, expected.getEventType(), actual.getEventType());
+        assertEquals(line, expected.getTimestamp(), actual.getTimestamp());
+        assertEquals(line, expected.getAmount(), actual.getAmount());
+        assertEquals(line, expected.getBuyerId(), actual.getBuyerId());
+        assertEquals(line, expected.getUser1Id(), actual.getUser1Id());
+        assertEquals(line, expected.getUser2Id(), actual.getUser2Id());
+        assertEquals(line, line, actual.getOriginalMessage());
+    }
+}
@@ -0,0 +1,70 @@
+package psuteparuk.insightdata.anomalydetection.event;
+
+import org.junit.Test;
+
+import java.text.ParseException;
+import java.text.SimpleDateFormat;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.TimeZone;
+
+import static org.junit.Assert.*;
+
+public class TimestampDecoderTest {
+    @Test
+    public void decodeLikeSimpleDateFormat() throws Exception {
+        List<String> timestamps = Arrays.asList(
+            "2017-06-13 11:33:01", "2017-06-13 11:33:01", "2017-06-13 11:33:02", "2017-06-13 10:33:02",
+            "2017-06-13 12:00:00", "2017-06-13 00:00:00", "2017-06-13 13:59:59", "2017-06-13 23:00:00",
+            "2017-06-13 24:00:00", "2017-06-13 99:00:00", "2017-13-01 00:00:00", "2017-00-00 00:00:00",
+            "2017-02-31 00:00:00", "2016-02-29 01:02:03", "1969-12-31 11:59:59", "0000-01-01 00:00:00",
+            "2017-06-13 11:60:00", "2017-06-13 11:33:99",
+            // daylight saving time changes in New York
+            "2017-03-12 02:30:00", "2017-03-12 03:30:00", "2017-11-05 01:30:00", "2017-11-05 02:30:00",
+            // out of the fixed-width layout
+            "2017-6-13 1:2:3", "2017-06-13 11:33:01 trailing", "2017-06-13T11:33:01", "+2017-06-13 11:33:01",
+            "17-06-13 11:33:01", "2017-06-13 11:33", "", "not a timestamp", "2017-06-13 1a:33:01"
+        );
+        TimeZone defaultTimeZone = TimeZone.getDefault();
+        try {
+            for (String timeZone : Arrays.asList("UTC", "America/New_York", "Asia/Kolkata")) {
+                TimeZone.setDefault(TimeZone.getTimeZone(timeZone));
+                TimestampDecoder timestampDecoder = new TimestampDecoder();
+                for (String timestamp : timestamps) {
+                    assertEquals(timeZone + " " + timestamp, parse(timestamp), timestampDecoder.decode(timestamp));
+                }
+            }
+        } finally {
+            TimeZone.setDefault(defaultTimeZone);
+        }
+        assertEquals(TimestampDecoder.INVALID, new TimestampDecoder().decode((String) null));
+    }
+
+    @Test
+    public void decodeRandomTimestamps() throws Exception {
+        Random random = new Random(5);
+        TimestampDecoder timestampDecoder = new TimestampDecoder();
+        for (int i = 0; i < 10000; i++) {
+            String timestamp = String.format(
+                "%04d-%02d-%02d %02d:%02d:%02d",
+                1990 + random.nextInt(40),
+                1 + random.nextInt(12),
+                1 + random.nextInt(31),
+                random.nextInt(24),
+                random.nextInt(60),
+                random.nextInt(60)
+            );
+            char[] chars = ("{" + timestamp + "}").toCharArray();
+            assertEquals(timestamp, parse(timestamp), timestampDecoder.decode(chars, 1, timestamp.length()));
+        }
+    }
+
+    private static long parse(String timestamp) {
+        try {
+            return Math.floorDiv(new SimpleDateFormat("yyyy-MM-dd hh:mm:ss").parse(timestamp).getTime(), 1000L);
+        } catch (ParseException e) {
+            return TimestampDecoder.INVALID;
+        }
+    }
+}
@@ -0,0 +1,135 @@
+package psuteparuk.insightdata.anomalydetection.io;
+
+import org.junit.Test;
+
+import java.io.File;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.junit.Assert.*;
+
+public class FileEventWriterTest {
+    @Test
+    public void write() throws Exception {
+        File outputFile = File.createTempFile("flagged", ".json");
+        outputFile.deleteOnExit();
+        Files.write(outputFile.toPath(), Collections.singletonList("previous content"), UTF_8);
+
+        // A tiny queue and flush size so the writer blocks and flushes many times
+        FileEventWriter fileEventWriter = new FileEventWriter(outputFile.getPath(), 4, 64, 1, FsyncPolicy.EVERY_FLUSH);
+        List<String> messages = new ArrayList<>();
+        for (int i = 0; i < 1000; i++) {
+            String message = "{\"id\": \"" + i + "\", \"amount\": \"\u00e9" + i + "\"}";
+            messages.add(message);
+            fileEventWriter.write(message);
+        }
+        fileEventWriter.close();
+
+        assertEquals(messages, Files.readAllLines(outputFile.toPath(), UTF_8));
+    }
+
+    @Test
+    public void writeEncoded() throws Exception {
+        File outputFile = File.createTempFile("flagged", ".json");
+        outputFile.deleteOnExit();
+
+        // bigger than the pending buffer, so it grows
+        String longMessage = String.join("", Collections.nCopies(100, "\u00e9"));
+        FileEventWriter fileEventWriter = new FileEventWriter(outputFile.getPath(), 4, 64, 1, FsyncPolicy.NEVER);
+        fileEventWriter.write("1");
+        fileEventWriter.write(new EncodedMessage() {
+            @Override
+            public int maxLength() {
+                return 3 * longMessage.length();
+            }
+
+            @Override
+            public void encodeTo(ByteBuffer buffer) {
+                buffer.put(longMessage.getBytes(UTF_8));
+            }
+        });
+        fileEventWriter.write("3");
+        fileEventWriter.close();
+
+        assertEquals(Arrays.asList("1", longMessage, "3"), Files.readAllLines(outputFile.toPath(), UTF_8));
+    }
+
+    @Test
+    public void close() throws Exception {
+        File outputFile = File.createTempFile("flagged", ".json");
+        outputFile.deleteOnExit();
+
+        FileEventWriter fileEventWriter = new FileEventWriter(outputFile.getPath());
+        fileEventWriter.write("1");
+        fileEventWriter.close();
+        fileEventWriter.close();
+        assertEquals(Collections.singletonList("1"), Files.readAllLines(outputFile.toPath(), UTF_8));
+
+        try {
+            fileEventWriter.write("2");
+            fail();
+        } catch (IllegalStateException e) {
+            // expected
+        }
+    }
+
+    @Test
+    public void writerThreadFailure() throws Exception {
+        File outputFile = File.createTempFile("flagged", ".json");
+        outputFile.deleteOnExit();
+
+        RuntimeException encodeFailure = new RuntimeException("cannot encode");
+        FileEventWriter fileEventWriter = new FileEventWriter(outputFile.getPath(), 4, 64, 1, FsyncPolicy.NEVER);
+        fileEventWriter.write(new EncodedMessage() {
+            @Override
+            public int maxLength() {
+                return 1;
+            }
+
+            @Override
+            public void encodeTo(ByteBuffer buffer) {
+                throw encodeFailure;
+            }
+        });
+        // the queue fills up behind the failed writer thread, then the producer fails instead of waiting
+        try {
+            for (int i = 0; i < 100; i++) {
+                fileEventWriter.write(String.valueOf(i));
+            }
+            fail();
+        } catch (IllegalStateException e) {
+            assertSame(encodeFailure, e.getCause());
+        }
+        try {
+            fileEventWriter.close();
+            fail();
+        } catch (IllegalStateException e) {
+            assertSame(encodeFailure, e.getCause());
+        }
+    }
+
+    @Test
+    public void interruptedWrite() throws Exception {
+        File outputFile = File.createTempFile("flagged", ".json");
+        outputFile.deleteOnExit();
+
+        FileEventWriter fileEventWriter = new FileEventWriter(outputFile.getPath());
+        Thread.currentThread().interrupt();
+        try {
+            fileEventWriter.write("1");
+            fail();
+        } catch (IllegalStateException e) {
+            assertTrue(e.getCause() instanceof InterruptedException);
+        }
+        assertTrue(Thread.interrupted());
+
+        fileEventWriter.write("2");
+        fileEventWriter.close();
+        assertEquals(Collections.singletonList("2"), Files.readAllLines(outputFile.toPath(), UTF_8));
+    }
+}
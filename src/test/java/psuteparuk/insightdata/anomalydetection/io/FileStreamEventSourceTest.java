@@ -0,0 +1,46 @@
+package psuteparuk.insightdata.anomalydetection.io;
+
+import io.reactivex.subscribers.TestSubscriber;
+import org.junit.Test;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.util.ArrayList;
+import java.util.List;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.junit.Assert.*;
+
+public class FileStreamEventSourceTest {
+    @Test
+    public void toFlowable() throws Exception {
+        File inputFile = File.createTempFile("stream_log", ".json");
+        inputFile.deleteOnExit();
+        List<String> lines = new ArrayList<>();
+        for (int i = 0; i < 1000; i++) {
+            lines.add("{\"id\": \"" + i + "\", \"amount\": \"\u00e9" + i + "\"}");
+        }
+        Files.write(inputFile.toPath(), lines, UTF_8);
+
+        // A tiny buffer so lines span several reads
+        FileStreamEventSource source = new FileStreamEventSource(inputFile.getPath(), 16);
+        TestSubscriber<String> subscriber = source.toFlowable().test(3);
+        subscriber.assertValues(lines.get(0), lines.get(1), lines.get(2));
+        subscriber.assertNotComplete();
+        subscriber.request(Long.MAX_VALUE);
+        subscriber.assertValueSequence(lines);
+        subscriber.assertComplete();
+
+        // every subscription reads the file again
+        source.toFlowable().test().assertValueCount(1000);
+    }
+
+    @Test
+    public void missingFile() throws Exception {
+        new FileStreamEventSource("/nonexistent/stream_log.json")
+            .toFlowable()
+            .test()
+            .assertError(NoSuchFileException.class);
+    }
+}
@@ -0,0 +1,98 @@
+package psuteparuk.insightdata.anomalydetection.io;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.zip.GZIPOutputStream;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.junit.Assert.*;
+
+public class PipelinedGzipInputStreamTest {
+    @Test
+    public void read() throws Exception {
+        byte[] content = new byte[100000];
+        new Random(42).nextBytes(content);
+        // two concatenated members
+        ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+        compressed.write(gzip(Arrays.copyOfRange(content, 0, 30000)));
+        compressed.write(gzip(Arrays.copyOfRange(content, 30000, content.length)));
+
+        // tiny blocks so the reader waits on the inflater and reuses the blocks
+        try (InputStream input = new PipelinedGzipInputStream(new ByteArrayInputStream(compressed.toByteArray()), 7, 2)) {
+            ByteArrayOutputStream inflated = new ByteArrayOutputStream();
+            inflated.write(input.read());
+            byte[] buffer = new byte[1000];
+            int length;
+            while ((length = input.read(buffer, 0, buffer.length)) != -1) {
+                inflated.write(buffer, 0, length);
+            }
+            assertArrayEquals(content, inflated.toByteArray());
+            assertEquals(-1, input.read());
+        }
+    }
+
+    @Test
+    public void closeBeforeTheEnd() throws Exception {
+        byte[] content = new byte[1 << 20];
+        InputStream input = new PipelinedGzipInputStream(new ByteArrayInputStream(gzip(content)), 1024, 2);
+        assertEquals(0, input.read());
+        // the inflater is blocked on a full queue, closing must not hang
+        input.close();
+        try {
+            input.read();
+            fail();
+        } catch (IOException e) {
+            // closed
+        }
+    }
+
+    @Test(expected = IOException.class)
+    public void corrupted() throws Exception {
+        byte[] compressed = gzip("{\"D\":\"3\", \"T\":\"50\"}\n".getBytes(UTF_8));
+        try (InputStream input = new PipelinedGzipInputStream(
+            new ByteArrayInputStream(Arrays.copyOf(compressed, compressed.length - 6)), 1024, 2
+        )) {
+            while (input.read() != -1) {
+                // truncated, fails before the end
+            }
+        }
+    }
+
+    @Test
+    public void fileStreamEventSource() throws Exception {
+        List<String> lines = new ArrayList<>();
+        for (int i = 0; i < 1000; i++) {
+            lines.add("{\"id\": \"" + i + "\", \"amount\": \"\u00e9" + i + "\"}");
+        }
+        File plainFile = File.createTempFile("batch_log", ".json");
+        plainFile.deleteOnExit();
+        Files.write(plainFile.toPath(), lines, UTF_8);
+        File gzipFile = File.createTempFile("batch_log", ".json.gz");
+        gzipFile.deleteOnExit();
+        Files.write(gzipFile.toPath(), gzip(Files.readAllBytes(plainFile.toPath())));
+
+        assertTrue(PipelinedGzipInputStream.isGzip(gzipFile.getPath()));
+        assertFalse(PipelinedGzipInputStream.isGzip(plainFile.getPath()));
+        new FileStreamEventSource(gzipFile.getPath(), 16).toFlowable().test().assertValueSequence(lines);
+        new FileStreamEventSource(plainFile.getPath(), 16).toFlowable().test().assertValueSequence(lines);
+    }
+
+    private static byte[] gzip(byte[] content) throws IOException {
+        ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+        try (OutputStream output = new GZIPOutputStream(compressed)) {
+            output.write(content);
+        }
+        return compressed.toByteArray();
+    }
+}
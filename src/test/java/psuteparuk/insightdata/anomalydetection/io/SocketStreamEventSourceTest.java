@@ -0,0 +1,100 @@
+package psuteparuk.insightdata.anomalydetection.io;
+
+import io.reactivex.schedulers.Schedulers;
+import io.reactivex.subscribers.TestSubscriber;
+import org.junit.Test;
+
+import java.io.OutputStream;
+import java.net.ConnectException;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.junit.Assert.*;
+
+public class SocketStreamEventSourceTest {
+    private static int freePort() throws Exception {
+        try (ServerSocket serverSocket = new ServerSocket(0)) {
+            return serverSocket.getLocalPort();
+        }
+    }
+
+    private static Socket connect(int port) throws Exception {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+        while (true) {
+            try {
+                return new Socket(SocketStreamEventSource.DEFAULT_HOST, port);
+            } catch (ConnectException e) {
+                if (System.nanoTime() > deadline) {
+                    throw e;
+                }
+                Thread.sleep(10);
+            }
+        }
+    }
+
+    @Test
+    public void severalConnections() throws Exception {
+        int port = freePort();
+        LineAppendTimes lineAppendTimes = new LineAppendTimes();
+        // a single buffered line per connection, so reading pauses and resumes all the time
+        SocketStreamEventSource source = new SocketStreamEventSource(
+            SocketStreamEventSource.DEFAULT_HOST, port, 1, 500, 16, lineAppendTimes
+        );
+        TestSubscriber<String> subscriber = source.toFlowable().subscribeOn(Schedulers.io()).test();
+
+        List<Thread> producers = new ArrayList<>();
+        for (int producer = 0; producer < 3; producer++) {
+            final int producerId = producer;
+            Socket socket = connect(port);
+            Thread thread = new Thread(() -> {
+                try (OutputStream output = socket.getOutputStream()) {
+                    StringBuilder lines = new StringBuilder();
+                    for (int i = 0; i < 1000; i++) {
+                        lines.append(producerId).append(':').append(i).append("\r\n");
+                    }
+                    // the last line ends with the connection
+                    lines.append(producerId).append(":end");
+                    output.write(lines.toString().getBytes(UTF_8));
+                } catch (Exception e) {
+                    throw new RuntimeException(e);
+                }
+            });
+            thread.start();
+            producers.add(thread);
+        }
+        for (Thread thread : producers) {
+            thread.join();
+        }
+
+        assertTrue(subscriber.await(10, TimeUnit.SECONDS));
+        subscriber.assertComplete();
+        subscriber.assertValueCount(3 * 1001);
+
+        // each connection's lines are in order
+        int[] nextLines = new int[3];
+        for (String line : subscriber.values()) {
+            String[] parts = line.split(":");
+            int producerId = Integer.parseInt(parts[0]);
+            String expected = (nextLines[producerId] == 1000) ? "end" : String.valueOf(nextLines[producerId]);
+            assertEquals(expected, parts[1]);
+            nextLines[producerId]++;
+        }
+
+        for (int i = 0; i < 3 * 1001; i++) {
+            assertNotEquals(LineAppendTimes.UNKNOWN, lineAppendTimes.poll());
+        }
+    }
+
+    @Test
+    public void idleTimeout() throws Exception {
+        new SocketStreamEventSource(freePort(), 100)
+            .toFlowable()
+            .test()
+            .assertNoValues()
+            .assertComplete();
+    }
+}
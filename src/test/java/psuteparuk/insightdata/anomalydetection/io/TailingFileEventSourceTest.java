@@ -0,0 +1,118 @@
+package psuteparuk.insightdata.anomalydetection.io;
+
+import io.reactivex.schedulers.Schedulers;
+import io.reactivex.subscribers.TestSubscriber;
+import org.junit.Test;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static java.nio.file.StandardOpenOption.APPEND;
+import static org.junit.Assert.*;
+
+public class TailingFileEventSourceTest {
+    private static void append(Path path, String content) throws Exception {
+        Files.write(path, content.getBytes(UTF_8), APPEND);
+    }
+
+    private static void awaitValueCount(TestSubscriber<String> subscriber, int count) throws Exception {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+        while (subscriber.valueCount() < count && System.nanoTime() < deadline) {
+            Thread.sleep(5);
+        }
+        subscriber.assertValueCount(count);
+    }
+
+    @Test
+    public void followAppends() throws Exception {
+        Path folder = Files.createTempDirectory("tail");
+        Path streamLog = folder.resolve("stream_log.json");
+        Files.write(streamLog, "1\n2\n3".getBytes(UTF_8));
+
+        TailingFileEventSource source = new TailingFileEventSource(streamLog.toString(), 20, 0, 4, null);
+        TestSubscriber<String> subscriber = source.toFlowable().subscribeOn(Schedulers.io()).test();
+
+        // the last line is only emitted once it is complete
+        awaitValueCount(subscriber, 2);
+        append(streamLog, "4\r\n5\n");
+        awaitValueCount(subscriber, 4);
+        subscriber.assertValues("1", "2", "34", "5");
+        subscriber.assertNotComplete();
+
+        subscriber.cancel();
+    }
+
+    @Test
+    public void appendTimesOnceCaughtUp() throws Exception {
+        Path folder = Files.createTempDirectory("tail");
+        Path streamLog = folder.resolve("stream_log.json");
+        Files.write(streamLog, "1\n2\n".getBytes(UTF_8));
+
+        LineAppendTimes lineAppendTimes = new LineAppendTimes();
+        TailingFileEventSource source = new TailingFileEventSource(streamLog.toString(), 20, 0, 4, lineAppendTimes);
+        TestSubscriber<String> subscriber = source.toFlowable().subscribeOn(Schedulers.io()).test();
+
+        // the lines already in the file
+        awaitValueCount(subscriber, 2);
+        assertEquals(LineAppendTimes.UNKNOWN, lineAppendTimes.poll());
+        assertEquals(LineAppendTimes.UNKNOWN, lineAppendTimes.poll());
+
+        append(streamLog, "3\n");
+        awaitValueCount(subscriber, 3);
+        assertNotEquals(LineAppendTimes.UNKNOWN, lineAppendTimes.poll());
+
+        // "44" is read with more bytes behind it, "55" at the end of the file
+        append(streamLog, "44\n55\n");
+        awaitValueCount(subscriber, 5);
+        subscriber.assertValues("1", "2", "3", "44", "55");
+        assertEquals(LineAppendTimes.UNKNOWN, lineAppendTimes.poll());
+        assertNotEquals(LineAppendTimes.UNKNOWN, lineAppendTimes.poll());
+        assertEquals(LineAppendTimes.UNKNOWN, lineAppendTimes.poll());
+
+        subscriber.cancel();
+    }
+
+    @Test
+    public void rotationAndTruncation() throws Exception {
+        Path folder = Files.createTempDirectory("tail");
+        Path streamLog = folder.resolve("stream_log.json");
+        Files.write(streamLog, "1\n2\n".getBytes(UTF_8));
+
+        TailingFileEventSource source = new TailingFileEventSource(streamLog.toString(), 20, 0);
+        TestSubscriber<String> subscriber = source.toFlowable().subscribeOn(Schedulers.io()).test();
+        awaitValueCount(subscriber, 2);
+
+        // rotated: the last line of the old file, then the new file
+        append(streamLog, "3");
+        Files.move(streamLog, folder.resolve("stream_log.json.1"));
+        Files.write(streamLog, "4\n".getBytes(UTF_8));
+        awaitValueCount(subscriber, 4);
+
+        // truncated: read again from the start
+        Files.write(streamLog, new byte[0]);
+        awaitValueCount(subscriber, 4);
+        Thread.sleep(100);
+        append(streamLog, "5\n");
+        awaitValueCount(subscriber, 5);
+        subscriber.assertValues("1", "2", "3", "4", "5");
+
+        subscriber.cancel();
+    }
+
+    @Test
+    public void idleTimeout() throws Exception {
+        File streamLog = File.createTempFile("stream_log", ".json");
+        streamLog.deleteOnExit();
+        Files.write(streamLog.toPath(), "1\n2\n3".getBytes(UTF_8));
+
+        // the last line is complete once the file stops growing
+        new TailingFileEventSource(streamLog.getPath(), 20, 200)
+            .toFlowable()
+            .test()
+            .assertValues("1", "2", "3")
+            .assertComplete();
+    }
+}
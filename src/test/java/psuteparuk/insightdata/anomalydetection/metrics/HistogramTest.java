@@ -0,0 +1,50 @@
+package psuteparuk.insightdata.anomalydetection.metrics;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class HistogramTest {
+    @Test
+    public void bucketOf() throws Exception {
+        assertEquals(0, Histogram.bucketOf(0));
+        assertEquals(1, Histogram.bucketOf(1));
+        assertEquals(2, Histogram.bucketOf(2));
+        assertEquals(2, Histogram.bucketOf(3));
+        assertEquals(11, Histogram.bucketOf(1024));
+        assertEquals(63, Histogram.bucketOf(Long.MAX_VALUE));
+    }
+
+    @Test
+    public void percentiles() throws Exception {
+        MetricsRegistry registry = new MetricsRegistry();
+        registry.setEnabled(true);
+        Histogram histogram = registry.histogram("test");
+        for (long value = 1; value <= 100; value++) {
+            histogram.record(value);
+        }
+
+        assertEquals(100, histogram.getCount());
+        assertEquals(5050, histogram.getSum());
+        assertEquals(100, histogram.getMax());
+        assertEquals(50.5, histogram.getMean(), 1e-9);
+        // the upper bound of [32, 63], then of [64, 127] capped at the maximum
+        assertEquals(63, histogram.getP50());
+        assertEquals(100, histogram.getP99());
+        assertEquals(1, histogram.getPercentile(0.0));
+    }
+
+    @Test
+    public void disabledRecordsNothing() throws Exception {
+        MetricsRegistry registry = new MetricsRegistry();
+        Histogram histogram = registry.histogram("test");
+        histogram.record(10);
+        histogram.stopTimer(histogram.startTimer());
+        assertEquals(0, histogram.getCount());
+        assertEquals(0, histogram.getP50());
+
+        registry.setEnabled(true);
+        histogram.stopTimer(histogram.startTimer());
+        assertEquals(1, histogram.getCount());
+    }
+}
@@ -0,0 +1,44 @@
+package psuteparuk.insightdata.anomalydetection.metrics;
+
+import org.junit.Test;
+
+import javax.management.MBeanServer;
+import javax.management.MBeanServerFactory;
+import javax.management.ObjectName;
+
+import static org.junit.Assert.*;
+
+public class MetricsRegistryTest {
+    @Test
+    public void sameNameSameMetric() throws Exception {
+        MetricsRegistry registry = new MetricsRegistry();
+        assertSame(registry.counter("a"), registry.counter("a"));
+        assertSame(registry.histogram("a"), registry.histogram("a"));
+        assertNotSame(registry.counter("a"), registry.counter("b"));
+    }
+
+    @Test
+    public void registerMBeans() throws Exception {
+        MetricsRegistry registry = new MetricsRegistry();
+        registry.setEnabled(true);
+        registry.counter("lines").add(3);
+        registry.histogram("latency").record(7);
+
+        MBeanServer mBeanServer = MBeanServerFactory.newMBeanServer();
+        registry.registerMBeans(mBeanServer, "test");
+        assertEquals(3L, mBeanServer.getAttribute(new ObjectName("test:type=Counter,name=\"lines\""), "Count"));
+        ObjectName histogramName = new ObjectName("test:type=Histogram,name=\"latency\"");
+        assertEquals(1L, mBeanServer.getAttribute(histogramName, "Count"));
+        assertEquals(7L, mBeanServer.getAttribute(histogramName, "Max"));
+    }
+
+    @Test
+    public void summarySkipsEmptyMetrics() throws Exception {
+        MetricsRegistry registry = new MetricsRegistry();
+        registry.setEnabled(true);
+        registry.counter("lines").increment();
+        registry.counter("unused");
+        registry.histogram("latency").record(2);
+        assertEquals("Metrics: lines=1, latency{count=1, mean=2, p50=2, p99=2, max=2}", registry.summary());
+    }
+}
@@ -0,0 +1,93 @@
+package psuteparuk.insightdata.anomalydetection.network;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+
+import static org.junit.Assert.*;
+
+public class DepthGroupCacheTest {
+    @Test
+    public void get() throws Exception {
+        SocialNetwork<Void> network = new SocialNetwork<>();
+        network.befriend("1", "2");
+        network.befriend("3", "4");
+        DepthGroupCache cache = new DepthGroupCache(10);
+        Set<String> group = new HashSet<>(Collections.singletonList("2"));
+
+        assertNull(cache.get("1", network));
+        cache.put("1", group, Collections.singletonList("1"), network);
+        assertSame(group, cache.get("1", network));
+
+        // An edge away from the expanded nodes keeps the entry
+        network.unfriend("3", "4");
+        assertSame(group, cache.get("1", network));
+
+        // Befriending an existing friend is not a change
+        network.befriend("2", "1");
+        assertSame(group, cache.get("1", network));
+
+        network.befriend("1", "3");
+        assertNull(cache.get("1", network));
+        assertEquals(3, cache.getHitCount());
+        assertEquals(2, cache.getMissCount());
+        assertEquals(1, cache.getInvalidationCount());
+    }
+
+    @Test
+    public void put() throws Exception {
+        SocialNetwork<Void> network = new SocialNetwork<>();
+        network.befriend("1", "2");
+        network.befriend("2", "3");
+        DepthGroupCache cache = new DepthGroupCache(2);
+        for (String id : Arrays.asList("1", "2", "3")) {
+            cache.put(id, Collections.emptySet(), Collections.singletonList(id), network);
+        }
+
+        assertEquals(2, cache.size());
+        assertEquals(1, cache.getEvictionCount());
+        assertNull(cache.get("1", network));
+        assertNotNull(cache.get("3", network));
+    }
+
+    @Test
+    public void calculateGroupStats() throws Exception {
+        UserNetwork cached = new UserNetwork();
+        UserNetwork uncached = new UserNetwork(0);
+        for (UserNetwork userNetwork : Arrays.asList(cached, uncached)) {
+            userNetwork.setDepthDegree(2);
+            userNetwork.setTrackedNumber(3);
+            for (String userId : Arrays.asList("1", "2", "3", "4")) {
+                userNetwork.addPurchase(userId, userNetwork.newPurchase(1.0, 0));
+            }
+        }
+
+        String[][] events = {
+            { "befriend", "1", "2" }, { "purchase", "2", "10" }, { "purchase", "1", "1" },
+            { "befriend", "2", "3" }, { "purchase", "3", "20" }, { "purchase", "1", "1" },
+            { "befriend", "3", "4" }, { "purchase", "4", "30" }, { "purchase", "1", "1" },
+            { "unfriend", "2", "3" }, { "purchase", "1", "1" }, { "purchase", "4", "5" },
+        };
+        long time = 1;
+        for (String[] event : events) {
+            for (UserNetwork userNetwork : Arrays.asList(cached, uncached)) {
+                if (event[0].equals("befriend")) {
+                    userNetwork.befriend(event[1], event[2]);
+                } else if (event[0].equals("unfriend")) {
+                    userNetwork.unfriend(event[1], event[2]);
+                } else {
+                    userNetwork.addPurchase(event[1], userNetwork.newPurchase(Double.parseDouble(event[2]), time));
+                }
+            }
+            time++;
+            if (event[0].equals("purchase")) {
+                assertEquals(uncached.calculateGroupStats(event[1]), cached.calculateGroupStats(event[1]));
+            }
+        }
+        assertTrue(cached.getDepthGroupCache().getHitCount() > 0);
+        assertTrue(cached.getDepthGroupCache().getInvalidationCount() > 0);
+    }
+}
@@ -0,0 +1,66 @@
+package psuteparuk.insightdata.anomalydetection.network;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class GroupWindowsTest {
+    private static final int USER_COUNT = 80;
+
+    @Test
+    public void sameAsPull() throws Exception {
+        for (DepthGroupMode depthGroupMode : DepthGroupMode.values()) {
+            for (int depthDegree = 1; depthDegree <= 2; depthDegree++) {
+                this.compareWithPull(depthGroupMode, depthDegree, new Random(depthDegree));
+            }
+        }
+    }
+
+    /**
+     * Apply the same random events to a PULL and an ADAPTIVE network, and compare
+     * the stats of each purchase. User "0" befriends many users, so its windows
+     * receive more purchases than they save merges.
+     */
+    private void compareWithPull(DepthGroupMode depthGroupMode, int depthDegree, Random random) {
+        UserNetwork pull = new UserNetwork();
+        UserNetwork adaptive = new UserNetwork();
+        for (UserNetwork userNetwork : new UserNetwork[] { pull, adaptive }) {
+            userNetwork.setDepthDegree(depthDegree);
+            userNetwork.setTrackedNumber(5);
+            userNetwork.setDepthGroupMode(depthGroupMode);
+        }
+        adaptive.setGroupStatsMode(GroupStatsMode.ADAPTIVE);
+
+        long timestamp = 0;
+        for (int i = 0; i < 20000; i++) {
+            String user1Id = String.valueOf(random.nextInt(USER_COUNT));
+            String user2Id = (random.nextInt(4) == 0) ? "0" : String.valueOf(random.nextInt(USER_COUNT));
+            int eventType = random.nextInt(100);
+            if (eventType < 3) {
+                pull.befriend(user1Id, user2Id);
+                adaptive.befriend(user1Id, user2Id);
+            } else if (eventType < 5) {
+                pull.unfriend(user1Id, user2Id);
+                adaptive.unfriend(user1Id, user2Id);
+            } else {
+                // mostly in order, sometimes older than the buyer's latest purchase
+                timestamp += random.nextInt(3);
+                long purchaseTimestamp = (random.nextInt(50) == 0) ? timestamp - random.nextInt(10) : timestamp;
+                double amount = random.nextInt(10000) / 100.0;
+                pull.addPurchase(user1Id, pull.newPurchase(amount, purchaseTimestamp));
+                adaptive.addPurchase(user1Id, adaptive.newPurchase(amount, purchaseTimestamp));
+                assertEquals(
+                    "event " + i,
+                    pull.calculateGroupStats(user1Id),
+                    adaptive.calculateGroupStats(user1Id)
+                );
+            }
+        }
+
+        GroupWindows groupWindows = adaptive.getGroupWindows();
+        assertTrue(groupWindows.toString(), groupWindows.getHitCount() > 0);
+        assertTrue(groupWindows.toString(), groupWindows.getDemotionCount() > 0);
+    }
+}
@@ -15,4 +15,27 @@ public class PurchaseDataTest {
 
     }
 
+    @Test
+    public void keyOrder() throws Exception {
+        assertTrue(PurchaseData.key(-1, 5) < PurchaseData.key(0, 0));
+        assertTrue(PurchaseData.key(10, 1) < PurchaseData.key(10, 2));
+        assertTrue(PurchaseData.key(10, 0xFFFFFFFFL) < PurchaseData.key(11, 0));
+        // 2038-01-19 03:14:08 UTC and later do not overflow into the sign bit
+        assertTrue(PurchaseData.key(Integer.MAX_VALUE - 1, 7) < PurchaseData.key(1L << 31, 0));
+        assertTrue(PurchaseData.key(1L << 31, 3) < PurchaseData.key(1L << 40, 4));
+        assertTrue(PurchaseData.key(Long.MIN_VALUE, 0) < PurchaseData.key(Integer.MIN_VALUE + 1L, 0));
+
+        PurchaseData purchaseData = PurchaseData.fromKey(1.5, PurchaseData.key(1L << 40, 4));
+        assertEquals(PurchaseData.MAX_KEY_TIMESTAMP, purchaseData.timestamp());
+        assertEquals(4, purchaseData.sequence());
+    }
+
+    @Test
+    public void sequenceWrap() throws Exception {
+        long lastBeforeWrap = (1L << 32) - 1;
+        assertEquals(PurchaseData.key(10, 0), PurchaseData.key(10, 1L << 32));
+        // the wrap only reorders purchases with the same timestamp
+        assertTrue(PurchaseData.key(10, lastBeforeWrap) < PurchaseData.key(11, lastBeforeWrap + 1));
+        assertTrue(PurchaseData.key(10, lastBeforeWrap + 1) < PurchaseData.key(10, lastBeforeWrap));
+    }
 }
\ No newline at end of file
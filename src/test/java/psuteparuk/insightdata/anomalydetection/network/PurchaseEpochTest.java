@@ -0,0 +1,84 @@
+package psuteparuk.insightdata.anomalydetection.network;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class PurchaseEpochTest {
+    @Test
+    public void evaluate() throws Exception {
+        for (GraphStorageType storageType : GraphStorageType.values()) {
+            for (int depthDegree = 1; depthDegree <= 2; depthDegree++) {
+                this.compareWithSerial(storageType, depthDegree, new Random(depthDegree));
+            }
+        }
+    }
+
+    @Test
+    public void evaluateEmpty() throws Exception {
+        PurchaseEpoch purchaseEpoch = new PurchaseEpoch(new UserNetwork(), 2, 4);
+        assertTrue(purchaseEpoch.isEmpty());
+        assertEquals(0, purchaseEpoch.evaluate().length);
+        purchaseEpoch.shutdown();
+    }
+
+    /**
+     * Apply the same random events to a network one purchase at a time
+     * and to a network through epochs, and compare the stats of each purchase.
+     */
+    private void compareWithSerial(GraphStorageType storageType, int depthDegree, Random random) {
+        UserNetwork serial = new UserNetwork(16, storageType);
+        UserNetwork epochNetwork = new UserNetwork(16, storageType);
+        for (UserNetwork userNetwork : new UserNetwork[] { serial, epochNetwork }) {
+            userNetwork.setDepthDegree(depthDegree);
+            userNetwork.setTrackedNumber(4);
+        }
+        PurchaseEpoch purchaseEpoch = new PurchaseEpoch(epochNetwork, 3, 7);
+
+        List<GroupStats> serialStats = new ArrayList<>();
+        List<GroupStats> epochStats = new ArrayList<>();
+        for (int i = 0; i < 3000; i++) {
+            String user1Id = String.valueOf(random.nextInt(40));
+            String user2Id = String.valueOf(random.nextInt(40));
+            int eventType = random.nextInt(10);
+            if (eventType < 2 && !user1Id.equals(user2Id)) {
+                epochStats.addAll(Arrays.asList(purchaseEpoch.evaluate()));
+                if (eventType == 0) {
+                    serial.befriend(user1Id, user2Id);
+                    epochNetwork.befriend(user1Id, user2Id);
+                } else {
+                    serial.unfriend(user1Id, user2Id);
+                    epochNetwork.unfriend(user1Id, user2Id);
+                }
+            } else {
+                // few distinct timestamps, so that ties keep the arrival order
+                double amount = random.nextInt(10000) / 100.0;
+                long timestamp = random.nextInt(20);
+                PurchaseData purchaseData = serial.newPurchase(amount, timestamp);
+                serial.addPurchase(user1Id, purchaseData);
+                serialStats.add(serial.calculateGroupStats(user1Id));
+
+                purchaseEpoch.add(user1Id, epochNetwork.newPurchase(amount, timestamp));
+                if (purchaseEpoch.isFull()) {
+                    epochStats.addAll(Arrays.asList(purchaseEpoch.evaluate()));
+                }
+            }
+        }
+        epochStats.addAll(Arrays.asList(purchaseEpoch.evaluate()));
+        purchaseEpoch.shutdown();
+
+        assertEquals(serialStats, epochStats);
+        assertEquals(serial.getNodeIds(), epochNetwork.getNodeIds());
+        for (String userId : serial.getNodeIds()) {
+            assertEquals(
+                new ArrayList<>(serial.getData(userId).getLatestPurchases()),
+                new ArrayList<>(epochNetwork.getData(userId).getLatestPurchases())
+            );
+        }
+    }
+}
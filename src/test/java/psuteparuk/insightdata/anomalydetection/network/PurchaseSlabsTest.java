@@ -0,0 +1,83 @@
+package psuteparuk.insightdata.anomalydetection.network;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class PurchaseSlabsTest {
+    @Test
+    public void addPurchase() throws Exception {
+        // 15 slots per slab
+        PurchaseSlabs slabs = new PurchaseSlabs(4, 1000);
+        UserData[] users = new UserData[40];
+        for (int i = 0; i < users.length; i++) {
+            users[i] = new UserData(String.valueOf(i), 4, slabs);
+        }
+        for (int purchase = 1; purchase <= 6; purchase++) {
+            for (int i = 0; i < users.length; i++) {
+                users[i].addPurchase(PurchaseData.create(i * 100 + purchase, purchase, i));
+            }
+        }
+        assertEquals(40, slabs.getSlotCount());
+        assertEquals(3 * 15 * 64, slabs.getCapacityBytes());
+
+        // only the 4 latest purchases are kept, as on the heap
+        for (int i = 0; i < users.length; i++) {
+            assertEquals(4, users[i].getPurchaseCount());
+            for (int age = 0; age < 4; age++) {
+                assertEquals(i * 100 + 6 - age, users[i].getPurchaseAmount(age), 0);
+                assertEquals(PurchaseData.key(6 - age, i), users[i].getPurchaseKey(age));
+            }
+        }
+    }
+
+    @Test
+    public void sameStatsAsOnHeap() throws Exception {
+        Random random = new Random(3);
+        UserNetwork onHeap = new UserNetwork();
+        UserNetwork offHeap = new UserNetwork();
+        // existing users are moved to the slabs
+        for (UserNetwork userNetwork : new UserNetwork[] { onHeap, offHeap }) {
+            userNetwork.setDepthDegree(2);
+            userNetwork.setTrackedNumber(5);
+            for (int i = 0; i < 100; i++) {
+                userNetwork.addPurchase(String.valueOf(i), userNetwork.newPurchase(i, i % 3));
+            }
+        }
+        offHeap.setPurchaseStorageType(PurchaseStorageType.OFF_HEAP);
+        assertEquals(100, offHeap.getPurchaseSlabs().getSlotCount());
+
+        for (int i = 0; i < 300; i++) {
+            String userId1 = String.valueOf(random.nextInt(150));
+            String userId2 = String.valueOf(random.nextInt(150));
+            onHeap.befriend(userId1, userId2);
+            offHeap.befriend(userId1, userId2);
+        }
+        PurchaseBatch batch = new PurchaseBatch();
+        for (int i = 0; i < 2000; i++) {
+            batch.add(String.valueOf(random.nextInt(150)), random.nextInt(20), random.nextInt(10000) / 100.0);
+        }
+        onHeap.bulkAddPurchases(batch, 1);
+        offHeap.bulkAddPurchases(batch, 3);
+        for (int i = 0; i < 2000; i++) {
+            String buyerId = String.valueOf(random.nextInt(150));
+            double amount = random.nextInt(10000) / 100.0;
+            GroupStats expected = onHeap.calculateGroupStats(buyerId);
+            GroupStats actual = offHeap.calculateGroupStats(buyerId);
+            assertEquals(expected.mean(), actual.mean(), 0);
+            assertEquals(expected.sd(), actual.sd(), 0);
+            onHeap.addPurchase(buyerId, onHeap.newPurchase(amount, 20 + i));
+            offHeap.addPurchase(buyerId, offHeap.newPurchase(amount, 20 + i));
+        }
+        assertEquals(150, offHeap.getPurchaseSlabs().getSlotCount());
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void noHeapBudget() throws Exception {
+        UserNetwork userNetwork = new UserNetwork();
+        userNetwork.setPurchaseStorageType(PurchaseStorageType.OFF_HEAP);
+        userNetwork.setPurchaseHeapBudget(1 << 20, null);
+    }
+}
@@ -0,0 +1,82 @@
+package psuteparuk.insightdata.anomalydetection.network;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class ReachabilityIndexTest {
+    private static final int USER_COUNT = 60;
+
+    @Test
+    public void churn() throws Exception {
+        for (GraphStorageType storageType : GraphStorageType.values()) {
+            for (int depthDegree = 0; depthDegree <= 3; depthDegree++) {
+                Random random = new Random(depthDegree);
+                UserNetwork userNetwork = new UserNetwork(0, storageType);
+                userNetwork.setDepthDegree(depthDegree);
+                // some friendships before the index is built
+                this.changeFriendships(userNetwork, random, 100);
+                userNetwork.setDepthGroupMode(DepthGroupMode.INCREMENTAL);
+
+                for (int round = 0; round < 40; round++) {
+                    this.changeFriendships(userNetwork, random, 50);
+                    this.assertSameAsSearch(userNetwork);
+                }
+            }
+        }
+    }
+
+    @Test
+    public void bulkUpdateFriendships() throws Exception {
+        Random random = new Random(3);
+        UserNetwork userNetwork = new UserNetwork(0);
+        userNetwork.setDepthDegree(2);
+        userNetwork.setDepthGroupMode(DepthGroupMode.INCREMENTAL);
+        this.changeFriendships(userNetwork, random, 100);
+
+        RelationshipBatch batch = new RelationshipBatch();
+        for (int i = 0; i < 300; i++) {
+            batch.add(this.randomUserId(random), this.randomUserId(random), random.nextInt(4) != 0, random.nextInt(50));
+        }
+        userNetwork.bulkUpdateFriendships(batch, 2);
+        this.assertSameAsSearch(userNetwork);
+    }
+
+    /**
+     * Random befriends and unfriends, including friendships that already exist,
+     * unfriends of users that are not friends and self-friendships.
+     */
+    private void changeFriendships(UserNetwork userNetwork, Random random, int count) {
+        for (int i = 0; i < count; i++) {
+            String user1Id = this.randomUserId(random);
+            String user2Id = (random.nextInt(20) == 0) ? user1Id : this.randomUserId(random);
+            int eventType = random.nextInt(10);
+            if (eventType < 5) {
+                userNetwork.befriend(user1Id, user2Id);
+            } else if (eventType < 9 && userNetwork.contains(user1Id) && !userNetwork.getFriends(user1Id).isEmpty()) {
+                // keep the graph sparse by mostly removing existing friendships
+                userNetwork.unfriend(user1Id, userNetwork.getFriends(user1Id).iterator().next());
+            } else {
+                userNetwork.unfriend(user1Id, user2Id);
+            }
+        }
+    }
+
+    private String randomUserId(Random random) {
+        return String.valueOf(random.nextInt(USER_COUNT));
+    }
+
+    private void assertSameAsSearch(UserNetwork userNetwork) {
+        for (String userId : new ArrayList<>(userNetwork.getNodeIds())) {
+            assertEquals(
+                userId,
+                userNetwork.searchDepthGroup(userId, new ArrayList<>()),
+                new HashSet<>(userNetwork.getDepthGroup(userId))
+            );
+        }
+    }
+}
@@ -2,6 +2,12 @@ package psuteparuk.insightdata.anomalydetection.network;
 
 import org.junit.Test;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+
 import static org.junit.Assert.*;
 
 public class SocialNetworkTest {
@@ -35,4 +41,52 @@ public class SocialNetworkTest {
 
     }
 
-}
\ No newline at end of file
+    @Test
+    public void bulkUpdateFriendships() throws Exception {
+        for (GraphStorageType storageType : GraphStorageType.values()) {
+            Random random = new Random(3);
+            SocialNetwork<Void> sequential = new SocialNetwork<>(storageType);
+            SocialNetwork<Void> bulk = new SocialNetwork<>(storageType);
+            // existing edges and nodes before the batch
+            for (SocialNetwork<Void> network : Arrays.asList(sequential, bulk)) {
+                network.befriend("0", "1");
+                network.befriend("2", "3");
+                network.putNode("50", null);
+            }
+
+            RelationshipBatch batch = new RelationshipBatch();
+            List<Integer> order = new ArrayList<>();
+            List<long[]> events = new ArrayList<>();
+            for (int i = 0; i < 5000; i++) {
+                // ids above 40 only appear in unfriend events, some of them are self loops
+                boolean isBefriend = random.nextBoolean();
+                int bound = isBefriend ? 40 : 60;
+                long user1 = random.nextInt(bound);
+                long user2 = random.nextInt(10) == 0 ? user1 : random.nextInt(bound);
+                long timestamp = random.nextInt(100);
+                batch.add(String.valueOf(user1), String.valueOf(user2), isBefriend, timestamp);
+                events.add(new long[] { user1, user2, isBefriend ? 1 : 0, timestamp });
+                order.add(i);
+            }
+            order.sort(Comparator.comparingLong((i) -> events.get(i)[3]));
+            for (int i : order) {
+                long[] event = events.get(i);
+                if (event[2] == 1) {
+                    sequential.befriend(String.valueOf(event[0]), String.valueOf(event[1]));
+                } else {
+                    sequential.unfriend(String.valueOf(event[0]), String.valueOf(event[1]));
+                }
+            }
+            bulk.bulkUpdateFriendships(batch, 3);
+
+            assertEquals(sequential.size(), bulk.size());
+            for (int i = 0; i < 60; i++) {
+                String nodeId = String.valueOf(i);
+                assertEquals(sequential.contains(nodeId), bulk.contains(nodeId));
+                if (sequential.contains(nodeId)) {
+                    assertEquals(sequential.getFriends(nodeId), bulk.getFriends(nodeId));
+                }
+            }
+        }
+    }
+}
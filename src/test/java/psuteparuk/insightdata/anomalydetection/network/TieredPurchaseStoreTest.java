@@ -0,0 +1,112 @@
+package psuteparuk.insightdata.anomalydetection.network;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class TieredPurchaseStoreTest {
+    @Test
+    public void sameStatsAsOnHeap() throws Exception {
+        Random random = new Random(11);
+        UserNetwork onHeap = new UserNetwork();
+        UserNetwork tiered = new UserNetwork();
+        for (UserNetwork userNetwork : new UserNetwork[] { onHeap, tiered }) {
+            userNetwork.setDepthDegree(2);
+            userNetwork.setTrackedNumber(4);
+        }
+        // room for about 10 users on the heap
+        tiered.setPurchaseHeapBudget(1000, null);
+        TieredPurchaseStore store = tiered.getPurchaseStore();
+        assertNotNull(store);
+
+        for (int i = 0; i < 200; i++) {
+            onHeap.addPurchase(String.valueOf(i), onHeap.newPurchase(i, -1));
+            tiered.addPurchase(String.valueOf(i), tiered.newPurchase(i, -1));
+        }
+        for (int i = 0; i < 300; i++) {
+            String userId1 = String.valueOf(random.nextInt(200));
+            String userId2 = String.valueOf(random.nextInt(200));
+            onHeap.befriend(userId1, userId2);
+            tiered.befriend(userId1, userId2);
+        }
+        for (int i = 0; i < 5000; i++) {
+            String buyerId = String.valueOf(random.nextInt(200));
+            double amount = random.nextInt(10000) / 100.0;
+            GroupStats expected = onHeap.calculateGroupStats(buyerId);
+            GroupStats actual = tiered.calculateGroupStats(buyerId);
+            assertEquals(expected.mean(), actual.mean(), 0);
+            assertEquals(expected.sd(), actual.sd(), 0);
+            onHeap.addPurchase(buyerId, onHeap.newPurchase(amount, i));
+            tiered.addPurchase(buyerId, tiered.newPurchase(amount, i));
+            assertTrue(store.getHotBytes() <= store.getHeapBudgetBytes());
+        }
+
+        assertSamePurchases(onHeap, tiered);
+        assertTrue(store.getEvictionCount() > 0);
+        assertTrue(store.getColdHitCount() > 0);
+        assertTrue(store.getHotHitCount() > 0);
+        assertTrue(store.getColdSlotCount() <= 200);
+        store.close();
+    }
+
+    @Test
+    public void bulkAddWithinBudget() throws Exception {
+        Random random = new Random(5);
+        UserNetwork onHeap = new UserNetwork();
+        UserNetwork tiered = new UserNetwork();
+        // the budget is set before the tracked number is known, as when a batch log is loaded
+        tiered.setPurchaseHeapBudget(2000, null);
+        assertNull(tiered.getPurchaseStore());
+        PurchaseBatch batch = new PurchaseBatch();
+        for (int i = 0; i < 20000; i++) {
+            batch.add(String.valueOf(random.nextInt(UserNetwork.BULK_USER_CHUNK_SIZE + 1000)), random.nextInt(100), i % 997);
+        }
+        for (UserNetwork userNetwork : new UserNetwork[] { onHeap, tiered }) {
+            userNetwork.setTrackedNumber(3);
+            userNetwork.bulkAddPurchases(batch, 2);
+        }
+        TieredPurchaseStore store = tiered.getPurchaseStore();
+        assertTrue(store.getHotBytes() <= store.getHeapBudgetBytes());
+        assertTrue(store.getEvictionCount() > 0);
+
+        assertSamePurchases(onHeap, tiered);
+        store.close();
+    }
+
+    @Test
+    public void attachExistingUsers() throws Exception {
+        UserNetwork userNetwork = new UserNetwork();
+        userNetwork.setTrackedNumber(2);
+        for (int i = 0; i < 100; i++) {
+            userNetwork.addPurchase(String.valueOf(i % 10), userNetwork.newPurchase(i, i));
+        }
+        userNetwork.setPurchaseHeapBudget(1, null);
+        TieredPurchaseStore store = userNetwork.getPurchaseStore();
+        assertEquals(0, store.getHotUserCount());
+        assertEquals(10, store.getColdSlotCount());
+
+        // the latest purchase is read without paging the user in
+        UserData userData = userNetwork.getData("3");
+        assertEquals(93, userData.getPurchaseAmount(0), 0);
+        assertEquals(0, store.getColdHitCount());
+        assertEquals(83, userData.getPurchaseAmount(1), 0);
+        assertEquals(1, store.getColdHitCount());
+        assertEquals(1, store.getHotUserCount());
+        store.close();
+    }
+
+    private void assertSamePurchases(UserNetwork expectedNetwork, UserNetwork actualNetwork) {
+        assertEquals(expectedNetwork.size(), actualNetwork.size());
+        for (String userId : expectedNetwork.getNodeIds()) {
+            UserData expected = expectedNetwork.getData(userId);
+            UserData actual = actualNetwork.getData(userId);
+            assertEquals(expected.getPurchaseCount(), actual.getPurchaseCount());
+            for (int age = 0; age < expected.getPurchaseCount(); age++) {
+                assertEquals(expected.getPurchaseKey(age), actual.getPurchaseKey(age));
+                assertEquals(expected.getPurchaseAmount(age), actual.getPurchaseAmount(age), 0);
+            }
+        }
+    }
+}
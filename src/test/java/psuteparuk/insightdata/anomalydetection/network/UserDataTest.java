@@ -7,7 +7,18 @@ import static org.junit.Assert.*;
 public class UserDataTest {
     @Test
     public void addPurchase() throws Exception {
+        UserData userData = new UserData("1", 3);
+        for (int i = 1; i <= 5; i++) {
+            userData.addPurchase(PurchaseData.create(i * 10.0, i, 0));
+        }
 
+        // only the 3 latest purchases are kept, readable by age
+        assertEquals(3, userData.getPurchaseCount());
+        assertEquals(50.0, userData.getPurchaseAmount(0), 0.0);
+        assertEquals(30.0, userData.getPurchaseAmount(2), 0.0);
+        assertEquals(PurchaseData.key(5, 0), userData.getPurchaseKey(0));
+        assertEquals(PurchaseData.create(40.0, 4, 0), userData.getLatestPurchase(1));
+        assertEquals(30.0, userData.getLatestPurchases().peekFirst().amount(), 0.0);
     }
 
-}
\ No newline at end of file
+}
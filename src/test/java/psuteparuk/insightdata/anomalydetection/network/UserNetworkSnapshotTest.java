@@ -0,0 +1,133 @@
+package psuteparuk.insightdata.anomalydetection.network;
+
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Random;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.junit.Assert.*;
+
+public class UserNetworkSnapshotTest {
+    @Test
+    public void restore() throws Exception {
+        for (GraphStorageType storageType : GraphStorageType.values()) {
+            UserNetwork userNetwork = buildNetwork(storageType);
+            File snapshotFile = File.createTempFile("network", ".snapshot");
+            snapshotFile.deleteOnExit();
+            UserNetworkSnapshot.write(userNetwork, snapshotFile.getPath(), null);
+
+            UserNetwork restored = UserNetworkSnapshot.restore(snapshotFile.getPath(), null, 10, storageType);
+            assertEquals(userNetwork.getDepthDegree(), restored.getDepthDegree());
+            assertEquals(userNetwork.getTrackedNumber(), restored.getTrackedNumber());
+            assertEquals(userNetwork.size(), restored.size());
+            for (String userId : userNetwork.getNodeIds()) {
+                assertEquals(userNetwork.getFriends(userId), restored.getFriends(userId));
+                assertEquals(
+                    new ArrayList<>(userNetwork.getData(userId).getLatestPurchases()),
+                    new ArrayList<>(restored.getData(userId).getLatestPurchases())
+                );
+                assertEquals(userNetwork.calculateGroupStats(userId), restored.calculateGroupStats(userId));
+            }
+        }
+    }
+
+    @Test
+    public void restoreInvalid() throws Exception {
+        File snapshotFile = File.createTempFile("network", ".snapshot");
+        snapshotFile.deleteOnExit();
+        UserNetworkSnapshot.write(buildNetwork(GraphStorageType.HASH), snapshotFile.getPath(), null);
+
+        // flip one byte in the middle of the snapshot
+        try (RandomAccessFile file = new RandomAccessFile(snapshotFile, "rw")) {
+            long position = file.length() / 2;
+            file.seek(position);
+            int value = file.read();
+            file.seek(position);
+            file.write(value ^ 0x01);
+        }
+        assertRestoreFails(snapshotFile);
+
+        // truncate it
+        UserNetworkSnapshot.write(buildNetwork(GraphStorageType.HASH), snapshotFile.getPath(), null);
+        try (RandomAccessFile file = new RandomAccessFile(snapshotFile, "rw")) {
+            file.setLength(file.length() - 3);
+        }
+        assertRestoreFails(snapshotFile);
+    }
+
+    @Test
+    public void restoreChangedBatchLog() throws Exception {
+        File batchFile = File.createTempFile("batch_log", ".json");
+        batchFile.deleteOnExit();
+        Files.write(batchFile.toPath(), Collections.singletonList("{\"D\":\"2\", \"T\":\"4\"}"), UTF_8);
+        File snapshotFile = File.createTempFile("network", ".snapshot");
+        snapshotFile.deleteOnExit();
+        UserNetworkSnapshot.write(buildNetwork(GraphStorageType.HASH), snapshotFile.getPath(), batchFile.getPath());
+
+        // the same batch log, also through another path to it
+        assertNotNull(UserNetworkSnapshot.restore(snapshotFile.getPath(), batchFile.getPath(), 10, GraphStorageType.HASH));
+        String otherPath = batchFile.getParent() + File.separator + "." + File.separator + batchFile.getName();
+        assertNotNull(UserNetworkSnapshot.restore(snapshotFile.getPath(), otherPath, 10, GraphStorageType.HASH));
+
+        // no batch log, or another one
+        assertRestoreFails(snapshotFile, null);
+        File otherBatchFile = File.createTempFile("batch_log", ".json");
+        otherBatchFile.deleteOnExit();
+        Files.copy(batchFile.toPath(), otherBatchFile.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.COPY_ATTRIBUTES);
+        assertRestoreFails(snapshotFile, otherBatchFile.getPath());
+
+        // modified in place with the same size
+        assertTrue(batchFile.setLastModified(batchFile.lastModified() - 60000));
+        assertRestoreFails(snapshotFile, batchFile.getPath());
+
+        // appended to
+        UserNetworkSnapshot.write(buildNetwork(GraphStorageType.HASH), snapshotFile.getPath(), batchFile.getPath());
+        Files.write(batchFile.toPath(), Collections.singletonList("{}"), UTF_8, StandardOpenOption.APPEND);
+        assertRestoreFails(snapshotFile, batchFile.getPath());
+    }
+
+    private static void assertRestoreFails(File snapshotFile) {
+        assertRestoreFails(snapshotFile, null);
+    }
+
+    private static void assertRestoreFails(File snapshotFile, String batchLogPath) {
+        try {
+            UserNetworkSnapshot.restore(snapshotFile.getPath(), batchLogPath, 10, GraphStorageType.HASH);
+            fail();
+        } catch (IOException e) {
+            // expected
+        }
+    }
+
+    private static UserNetwork buildNetwork(GraphStorageType storageType) {
+        Random random = new Random(13);
+        UserNetwork userNetwork = new UserNetwork(10, storageType);
+        userNetwork.setDepthDegree(2);
+        userNetwork.setTrackedNumber(4);
+        for (int i = 0; i < 2000; i++) {
+            String user1Id = String.valueOf(random.nextInt(200));
+            String user2Id = String.valueOf(random.nextInt(200));
+            switch (random.nextInt(3)) {
+                case 0:
+                    userNetwork.befriend(user1Id, user2Id);
+                    break;
+                case 1:
+                    userNetwork.unfriend(user1Id, user2Id);
+                    break;
+                default:
+                    userNetwork.addPurchase(user1Id, userNetwork.newPurchase(random.nextInt(10000) / 100.0, i));
+            }
+        }
+        // a user without purchases nor friends
+        userNetwork.putNode("lonely", userNetwork.initializeData("lonely"));
+        return userNetwork;
+    }
+}
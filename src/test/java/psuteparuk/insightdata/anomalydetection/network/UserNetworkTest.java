@@ -2,6 +2,11 @@ package psuteparuk.insightdata.anomalydetection.network;
 
 import org.junit.Test;
 
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+
 import static org.junit.Assert.*;
 
 public class UserNetworkTest {
@@ -17,7 +22,83 @@ public class UserNetworkTest {
 
     @Test
     public void calculateGroupStats() throws Exception {
+        // A - B - C - D, E - B, F - A, and G alone
+        UserNetwork userNetwork = new UserNetwork();
+        userNetwork.setDepthDegree(2);
+        userNetwork.setTrackedNumber(2);
+        userNetwork.befriend("A", "B");
+        userNetwork.befriend("B", "C");
+        userNetwork.befriend("C", "D");
+        userNetwork.befriend("E", "B");
+        userNetwork.befriend("F", "A");
+        userNetwork.addPurchase("B", userNetwork.newPurchase(10, 1));
+        userNetwork.addPurchase("C", userNetwork.newPurchase(90, 2));
+        userNetwork.addPurchase("C", userNetwork.newPurchase(30, 3));
+        userNetwork.addPurchase("B", userNetwork.newPurchase(20, 3));
+        userNetwork.addPurchase("C", userNetwork.newPurchase(60, 3));
+        userNetwork.addPurchase("A", userNetwork.newPurchase(500, 4));
+        userNetwork.addPurchase("D", userNetwork.newPurchase(1000, 5));
+        userNetwork.addPurchase("G", userNetwork.newPurchase(70, 6));
+
+        // group of A: B, C and F (no purchase). The 3 purchases at 3 are the newest and
+        // the last 2 to arrive are kept: 60 and 20. 30, 90 and 10 are cut by T
+        GroupStats groupStats = userNetwork.calculateGroupStats("A");
+        assertEquals(40, groupStats.mean(), 1e-9);
+        assertEquals(20, groupStats.sd(), 1e-9);
+
+        // E has no purchase, its group is B, A and C: 500 and 60
+        groupStats = userNetwork.calculateGroupStats("E");
+        assertEquals(280, groupStats.mean(), 1e-9);
+        assertEquals(220, groupStats.sd(), 1e-9);
+
+        // the own purchase of D is not in its group C, B: 60 and 20
+        groupStats = userNetwork.calculateGroupStats("D");
+        assertEquals(40, groupStats.mean(), 1e-9);
+        assertEquals(20, groupStats.sd(), 1e-9);
 
+        // G has no friend: no stats, and no purchase is an anomaly
+        groupStats = userNetwork.calculateGroupStats("G");
+        assertTrue(Double.isNaN(groupStats.mean()));
+        assertTrue(Double.isNaN(groupStats.sd()));
+        assertFalse(userNetwork.isPurchaseAnomaly(userNetwork.newPurchase(1e9, 7), groupStats));
     }
 
-}
\ No newline at end of file
+    @Test
+    public void bulkAddPurchases() throws Exception {
+        Random random = new Random(7);
+        UserNetwork sequential = new UserNetwork();
+        UserNetwork bulk = new UserNetwork();
+        for (UserNetwork userNetwork : new UserNetwork[] { sequential, bulk }) {
+            userNetwork.setTrackedNumber(5);
+            userNetwork.addPurchase("0", userNetwork.newPurchase(1.0, -1));
+        }
+
+        PurchaseBatch batch = new PurchaseBatch();
+        List<PurchaseData> purchases = new ArrayList<>();
+        List<String> buyerIds = new ArrayList<>();
+        List<Integer> order = new ArrayList<>();
+        for (int i = 0; i < 5000; i++) {
+            String buyerId = String.valueOf(random.nextInt(100));
+            // few distinct timestamps, so that ties keep the batch order
+            PurchaseData purchaseData = sequential.newPurchase(random.nextInt(10000) / 100.0, random.nextInt(50));
+            batch.add(buyerId, purchaseData.timestamp(), purchaseData.amount());
+            buyerIds.add(buyerId);
+            purchases.add(purchaseData);
+            order.add(i);
+        }
+        order.sort(Comparator.comparingLong((i) -> purchases.get(i).timestamp()));
+        for (int i : order) {
+            sequential.addPurchase(buyerIds.get(i), purchases.get(i));
+        }
+        bulk.bulkAddPurchases(batch, 3);
+
+        assertEquals(sequential.size(), bulk.size());
+        for (int i = 0; i < 100; i++) {
+            String userId = String.valueOf(i);
+            assertEquals(
+                new ArrayList<>(sequential.getData(userId).getLatestPurchases()),
+                new ArrayList<>(bulk.getData(userId).getLatestPurchases())
+            );
+        }
+    }
+}
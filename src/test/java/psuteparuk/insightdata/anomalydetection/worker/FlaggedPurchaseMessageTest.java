@@ -0,0 +1,57 @@
+package psuteparuk.insightdata.anomalydetection.worker;
+
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.text.DecimalFormat;
+import java.util.Arrays;
+import java.util.List;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.junit.Assert.*;
+
+public class FlaggedPurchaseMessageTest {
+    private final DecimalFormat decimalFormat = new DecimalFormat("#0.00");
+
+    @Test
+    public void encodeLikeStringBuilder() {
+        List<String> messages = Arrays.asList(
+            "{\"event_type\":\"purchase\", \"timestamp\":\"2017-06-13 11:33:01\", \"id\": \"1\", \"amount\": \"1601.83\"}",
+            "  {\"event_type\":\"purchase\", \"id\": \"1\"}\t ",
+            "{\"event_type\":\"purchase\", \"id\": \"\u00e9\u4e2d\ud83d\ude00\"}",
+            // a lone surrogate, and a pair split by dropping the last char
+            "{\"id\": \"\ud83d\"}",
+            "{\"id\": \"1\"}\ud83d\ude00",
+            "}",
+            " } "
+        );
+        double[][] stats = { {29.1, 21.46}, {0.125, 2.675}, {-0.001, 0}, {1e20, Double.NaN} };
+        for (String message : messages) {
+            for (double[] stat : stats) {
+                FlaggedPurchaseMessage flaggedPurchaseMessage = new FlaggedPurchaseMessage(message, stat[0], stat[1]);
+                ByteBuffer buffer = ByteBuffer.allocate(flaggedPurchaseMessage.maxLength());
+                flaggedPurchaseMessage.encodeTo(buffer);
+                byte[] encoded = Arrays.copyOf(buffer.array(), buffer.position());
+
+                byte[] expected = buildWithStringBuilder(message, stat[0], stat[1]).getBytes(UTF_8);
+                assertArrayEquals(message, expected, encoded);
+                assertEquals(new String(expected, UTF_8), flaggedPurchaseMessage.toString());
+            }
+        }
+    }
+
+    /**
+     * How the output message used to be built.
+     */
+    private String buildWithStringBuilder(String message, double mean, double sd) {
+        StringBuilder outputEvent = new StringBuilder();
+        outputEvent.append(message.trim());
+        outputEvent.deleteCharAt(outputEvent.length() - 1);
+        outputEvent.append(", \"mean\": \"");
+        outputEvent.append(decimalFormat.format(mean));
+        outputEvent.append("\", \"sd\": \"");
+        outputEvent.append(decimalFormat.format(sd));
+        outputEvent.append("\"}");
+        return outputEvent.toString();
+    }
+}
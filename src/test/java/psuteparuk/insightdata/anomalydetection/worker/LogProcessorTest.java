@@ -1,18 +1,98 @@
 package psuteparuk.insightdata.anomalydetection.worker;
 
+import io.reactivex.Flowable;
+import io.reactivex.schedulers.Schedulers;
+import io.reactivex.subscribers.TestSubscriber;
 import org.junit.Test;
+import psuteparuk.insightdata.anomalydetection.event.EventEntry;
+import psuteparuk.insightdata.anomalydetection.network.NetworkParameters;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import static org.junit.Assert.*;
 
 public class LogProcessorTest {
+    private static final String[] LOG = {
+        "{\"D\":\"3\", \"T\":\"50\"}",
+        "{\"event_type\":\"purchase\", \"timestamp\":\"2017-06-13 11:33:01\", \"id\": \"1\", \"amount\": \"16.83\"}",
+        "not json",
+        "{\"D\":\"1\", \"T\":\"2\"}",
+        "{\"event_type\":\"befriend\", \"timestamp\":\"2017-06-13 11:33:01\", \"id1\": \"1\", \"id2\": \"2\"}",
+    };
+
+    private static class RecordingLogProcessor extends LogProcessor {
+        final List<NetworkParameters> networkParameters = new ArrayList<>();
+        final List<Integer> eventCountsAtParameters = new ArrayList<>();
+        final List<EventEntry> entries = new ArrayList<>();
+
+        RecordingLogProcessor(String... lines) {
+            super(Flowable.fromArray(lines), Schedulers.trampoline());
+        }
+
+        RecordingLogProcessor(Flowable<String> logSource, int prefetch) {
+            super(logSource, Schedulers.trampoline(), prefetch);
+        }
+
+        @Override
+        public void run() {
+            getEntrySource().subscribe(this.entries::add);
+        }
+
+        @Override
+        void onNetworkParameters(NetworkParameters networkParameters) {
+            this.networkParameters.add(networkParameters);
+            this.eventCountsAtParameters.add(this.entries.size());
+        }
+    }
+
     @Test
     public void getEntrySource() throws Exception {
+        RecordingLogProcessor logProcessor = new RecordingLogProcessor(LOG);
+        logProcessor.run();
 
+        assertEquals(2, logProcessor.entries.size());
+        assertEquals("1", logProcessor.entries.get(0).getBuyerId());
+        assertEquals(LOG[1], logProcessor.entries.get(0).getOriginalMessage());
+        assertEquals("2", logProcessor.entries.get(1).getUser2Id());
     }
 
     @Test
-    public void getNetworkParametersSource() throws Exception {
+    public void onNetworkParameters() throws Exception {
+        RecordingLogProcessor logProcessor = new RecordingLogProcessor(LOG);
+        logProcessor.run();
+
+        // Only the first parameters line counts, and it comes before the events
+        assertEquals(1, logProcessor.networkParameters.size());
+        assertEquals(Integer.valueOf(3), logProcessor.networkParameters.get(0).getDepthDegree());
+        assertEquals(Integer.valueOf(50), logProcessor.networkParameters.get(0).getTrackedNumber());
+        assertEquals(Integer.valueOf(0), logProcessor.eventCountsAtParameters.get(0));
 
+        RecordingLogProcessor invalidLogProcessor = new RecordingLogProcessor(
+            "{\"D\":\"3\"}",
+            "{\"D\":\"x\", \"T\":\"50\"}",
+            "{\"D\":[3], \"T\":\"50\"}"
+        );
+        invalidLogProcessor.run();
+        assertTrue(invalidLogProcessor.networkParameters.isEmpty());
     }
 
-}
\ No newline at end of file
+    @Test
+    public void getEntrySourceReadsOnlyWhatIsRequested() throws Exception {
+        AtomicInteger readCount = new AtomicInteger();
+        Flowable<String> logSource = Flowable.range(0, 10000)
+            .map((i) -> LOG[1])
+            .doOnNext((line) -> readCount.incrementAndGet());
+        RecordingLogProcessor logProcessor = new RecordingLogProcessor(logSource, 16);
+
+        TestSubscriber<EventEntry> subscriber = logProcessor.getEntrySource().test(0);
+        assertEquals(16, readCount.get());
+        subscriber.request(10);
+        subscriber.assertValueCount(10);
+        assertTrue(readCount.get() <= 10 + 16);
+        subscriber.request(Long.MAX_VALUE);
+        subscriber.assertValueCount(10000);
+        subscriber.assertComplete();
+    }
+}
@@ -0,0 +1,79 @@
+package psuteparuk.insightdata.anomalydetection.worker;
+
+import io.reactivex.Flowable;
+import io.reactivex.schedulers.Schedulers;
+import org.junit.Test;
+import psuteparuk.insightdata.anomalydetection.network.PurchaseData;
+import psuteparuk.insightdata.anomalydetection.network.UserNetwork;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.stream.Collectors;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.junit.Assert.*;
+
+public class MappedBatchLogLoaderTest {
+    @Test
+    public void runLikeBatchLogProcessor() throws Exception {
+        Random random = new Random(5);
+        List<String> lines = new ArrayList<>();
+        lines.add("not json");
+        lines.add("{\"D\":\"2\", \"T\":\"3\"}");
+        for (int i = 0; i < 2000; i++) {
+            // few distinct seconds, so that many events share a timestamp
+            String timestamp = "2017-06-13 11:33:" + String.format("%02d", random.nextInt(20));
+            int eventType = random.nextInt(4);
+            if (eventType < 2) {
+                lines.add("{\"event_type\":\"purchase\", \"timestamp\":\"" + timestamp
+                    + "\", \"id\": \"" + random.nextInt(30) + "\", \"amount\": \"" + random.nextInt(10000) / 100.0 + "\"}");
+            } else {
+                lines.add("{\"event_type\":\"" + (eventType == 2 ? "befriend" : "unfriend") + "\", \"timestamp\":\"" + timestamp
+                    + "\", \"id1\": \"" + random.nextInt(30) + "\", \"id2\": \"" + random.nextInt(30) + "\"}");
+            }
+            if (i % 100 == 0) {
+                lines.add("");
+            }
+            if (i == 1000) {
+                // longer than the window a chunk is decoded through
+                lines.add(String.join("", Collections.nCopies(100000, "x")));
+            }
+        }
+        File batchFile = File.createTempFile("batch_log", ".json");
+        batchFile.deleteOnExit();
+        // mixed line terminators
+        StringBuilder content = new StringBuilder();
+        for (int i = 0; i < lines.size(); i++) {
+            content.append(lines.get(i)).append(i % 7 == 0 ? "\r\n" : "\n");
+        }
+        Files.write(batchFile.toPath(), content.toString().getBytes(UTF_8));
+
+        UserNetwork expected = new UserNetwork();
+        new BatchLogProcessor(Flowable.fromIterable(lines), Schedulers.trampoline(), expected).run();
+
+        // many small chunks, and one chunk that spans several windows
+        for (int chunkSize : new int[] { 500, 1 << 20 }) {
+            UserNetwork actual = new UserNetwork();
+            new MappedBatchLogLoader(batchFile.getPath(), actual, 3, chunkSize).run();
+
+            assertEquals(expected.size(), actual.size());
+            for (int i = 0; i < 30; i++) {
+                String userId = String.valueOf(i);
+                assertEquals(expected.contains(userId), actual.contains(userId));
+                if (expected.contains(userId)) {
+                    assertEquals(expected.getFriends(userId), actual.getFriends(userId));
+                    assertEquals(purchases(expected, userId), purchases(actual, userId));
+                    assertEquals(expected.calculateGroupStats(userId), actual.calculateGroupStats(userId));
+                }
+            }
+        }
+    }
+
+    private static List<PurchaseData> purchases(UserNetwork userNetwork, String userId) {
+        return userNetwork.getData(userId).getLatestPurchases().stream().collect(Collectors.toList());
+    }
+}